@@ -11,6 +11,7 @@ import org.springframework.context.annotation.Configuration;
 
 import com.marklogic.repository.JsonUserRepository;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 
 /**
@@ -24,6 +25,8 @@ import jakarta.annotation.PostConstruct;
  * 
  * If a users.json file is provided, the repository will be initialized and
  * used by OAuth and SAML handlers for user authentication and role lookup.
+ * Unless users.json.reload-on-change is false, the file is reloaded whenever
+ * it changes on disk.
  * 
  * @since 2.0
  */
@@ -41,6 +44,12 @@ public class JsonUserRepositoryConfig {
     @Value("${users.json.path:}")
     private String usersJsonPathProperty;
     
+    @Value("${users.json.reload-on-change:true}")
+    private boolean reloadOnChange;
+    
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+    
     @PostConstruct
     public void initializeUserRepository() {
         String usersJsonPath = null;
@@ -81,6 +90,9 @@ public class JsonUserRepositoryConfig {
                 if (jsonUserRepository.isInitialized()) {
                     logger.info("✅ JSON user repository initialized successfully from: {}", usersJsonPath);
                     logger.info("   Loaded {} users with role mappings", jsonUserRepository.getUserCount());
+                    if (reloadOnChange) {
+                        jsonUserRepository.watch(meterRegistry);
+                    }
                 } else {
                     logger.warn("⚠️  JSON user repository initialization completed but no users loaded");
                 }
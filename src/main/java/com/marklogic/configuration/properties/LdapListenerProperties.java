@@ -27,6 +27,65 @@ public class LdapListenerProperties {
     private String truststorePath;
     private String truststorePassword;
 
+    // Backend connection pool (shared by all clients of this listener)
+    private int poolInitialConnections = 1;
+    private int poolMaxConnections = 10;
+    private long poolMaxWaitMillis = 5000;
+    private long poolMaxConnectionAgeMillis = 0;
+
+    // Search result cache (opt-in, shared by all clients of this listener)
+    private boolean searchCacheEnabled = false;
+    private long searchCacheTtlMillis = 30000;
+    private int searchCacheMaxResults = 10000;
+    private long searchCacheMaxBytes = 16 * 1024 * 1024;
+
+    // Bind result cache (opt-in, shared by all clients of this listener)
+    private boolean bindCacheEnabled = false;
+    private long bindCacheTtlMillis = 60000;
+    private long bindCacheNegativeTtlMillis = 5000;
+    private int bindCacheMaxEntries = 10000;
+
+    // Per-client token bucket rate limiting (0 requests per second disables it)
+    private double rateLimitRequestsPerSecond = 100;
+    private int rateLimitBurst = 100;
+    private boolean rateLimitPerBindDn = false;
+
+    // Proxied search streaming: backend paging, per-search limits (0 = unlimited)
+    // and the bounded queue between the backend reader and the client
+    private int searchPageSize = 0;
+    private int searchMaxEntries = 0;
+    private long searchMaxBytes = 0;
+    private int searchQueueEntries = 1000;
+    private long searchQueueBytes = 4 * 1024 * 1024;
+
+    // Client-paged searches holding a backend connection between pages, per client
+    private int searchPagedMaxOpen = 4;
+    private long searchPagedIdleMillis = 60000;
+
+    // Single-flight coalescing of identical concurrent searches (opt-in)
+    private boolean searchCoalesceEnabled = false;
+    private long searchCoalesceMaxWaitMillis = 5000;
+    private int searchCoalesceMaxFanOut = 1000;
+    private long searchCoalesceMaxBytes = 4 * 1024 * 1024;
+
+    // Hedged searches, compares and simple binds (opt-in): resend to another
+    // server once the recent latency percentile has passed, within a budget
+    private boolean hedgeEnabled = false;
+    private double hedgePercentile = 95;
+    private double hedgeBudgetPercent = 5;
+    private long hedgeMinDelayMillis = 5;
+
+    // Operations from one client connection processed concurrently (0 = one at a time)
+    private int pipelineMaxOutstanding = 0;
+
+    // Raw PDU passthrough: frames messages at the byte level and decodes only
+    // what the security checks need (plain TCP only, no request processor)
+    private boolean passthrough = false;
+    private int passthroughBufferBytes = 64 * 1024;
+
+    // Connection engine: sdk (a platform thread per client) or virtual-threads
+    private String listenerEngine = "sdk";
+
     public String getIpAddress() {
         return ipAddress;
     }
@@ -154,4 +213,276 @@ public class LdapListenerProperties {
     public void setTruststorePassword(String truststorePassword) {
         this.truststorePassword = truststorePassword;
     }
+
+    public int getPoolInitialConnections() {
+        return poolInitialConnections;
+    }
+
+    public void setPoolInitialConnections(int poolInitialConnections) {
+        this.poolInitialConnections = poolInitialConnections;
+    }
+
+    public int getPoolMaxConnections() {
+        return poolMaxConnections;
+    }
+
+    public void setPoolMaxConnections(int poolMaxConnections) {
+        this.poolMaxConnections = poolMaxConnections;
+    }
+
+    public long getPoolMaxWaitMillis() {
+        return poolMaxWaitMillis;
+    }
+
+    public void setPoolMaxWaitMillis(long poolMaxWaitMillis) {
+        this.poolMaxWaitMillis = poolMaxWaitMillis;
+    }
+
+    public long getPoolMaxConnectionAgeMillis() {
+        return poolMaxConnectionAgeMillis;
+    }
+
+    public void setPoolMaxConnectionAgeMillis(long poolMaxConnectionAgeMillis) {
+        this.poolMaxConnectionAgeMillis = poolMaxConnectionAgeMillis;
+    }
+
+    public boolean isSearchCacheEnabled() {
+        return searchCacheEnabled;
+    }
+
+    public void setSearchCacheEnabled(boolean searchCacheEnabled) {
+        this.searchCacheEnabled = searchCacheEnabled;
+    }
+
+    public long getSearchCacheTtlMillis() {
+        return searchCacheTtlMillis;
+    }
+
+    public void setSearchCacheTtlMillis(long searchCacheTtlMillis) {
+        this.searchCacheTtlMillis = searchCacheTtlMillis;
+    }
+
+    public int getSearchCacheMaxResults() {
+        return searchCacheMaxResults;
+    }
+
+    public void setSearchCacheMaxResults(int searchCacheMaxResults) {
+        this.searchCacheMaxResults = searchCacheMaxResults;
+    }
+
+    public long getSearchCacheMaxBytes() {
+        return searchCacheMaxBytes;
+    }
+
+    public void setSearchCacheMaxBytes(long searchCacheMaxBytes) {
+        this.searchCacheMaxBytes = searchCacheMaxBytes;
+    }
+
+    public boolean isBindCacheEnabled() {
+        return bindCacheEnabled;
+    }
+
+    public void setBindCacheEnabled(boolean bindCacheEnabled) {
+        this.bindCacheEnabled = bindCacheEnabled;
+    }
+
+    public long getBindCacheTtlMillis() {
+        return bindCacheTtlMillis;
+    }
+
+    public void setBindCacheTtlMillis(long bindCacheTtlMillis) {
+        this.bindCacheTtlMillis = bindCacheTtlMillis;
+    }
+
+    public long getBindCacheNegativeTtlMillis() {
+        return bindCacheNegativeTtlMillis;
+    }
+
+    public void setBindCacheNegativeTtlMillis(long bindCacheNegativeTtlMillis) {
+        this.bindCacheNegativeTtlMillis = bindCacheNegativeTtlMillis;
+    }
+
+    public int getBindCacheMaxEntries() {
+        return bindCacheMaxEntries;
+    }
+
+    public void setBindCacheMaxEntries(int bindCacheMaxEntries) {
+        this.bindCacheMaxEntries = bindCacheMaxEntries;
+    }
+
+    public double getRateLimitRequestsPerSecond() {
+        return rateLimitRequestsPerSecond;
+    }
+
+    public void setRateLimitRequestsPerSecond(double rateLimitRequestsPerSecond) {
+        this.rateLimitRequestsPerSecond = rateLimitRequestsPerSecond;
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    public void setRateLimitBurst(int rateLimitBurst) {
+        this.rateLimitBurst = rateLimitBurst;
+    }
+
+    public boolean isRateLimitPerBindDn() {
+        return rateLimitPerBindDn;
+    }
+
+    public void setRateLimitPerBindDn(boolean rateLimitPerBindDn) {
+        this.rateLimitPerBindDn = rateLimitPerBindDn;
+    }
+
+    public int getSearchPageSize() {
+        return searchPageSize;
+    }
+
+    public void setSearchPageSize(int searchPageSize) {
+        this.searchPageSize = searchPageSize;
+    }
+
+    public int getSearchMaxEntries() {
+        return searchMaxEntries;
+    }
+
+    public void setSearchMaxEntries(int searchMaxEntries) {
+        this.searchMaxEntries = searchMaxEntries;
+    }
+
+    public long getSearchMaxBytes() {
+        return searchMaxBytes;
+    }
+
+    public void setSearchMaxBytes(long searchMaxBytes) {
+        this.searchMaxBytes = searchMaxBytes;
+    }
+
+    public int getSearchQueueEntries() {
+        return searchQueueEntries;
+    }
+
+    public void setSearchQueueEntries(int searchQueueEntries) {
+        this.searchQueueEntries = searchQueueEntries;
+    }
+
+    public long getSearchQueueBytes() {
+        return searchQueueBytes;
+    }
+
+    public void setSearchQueueBytes(long searchQueueBytes) {
+        this.searchQueueBytes = searchQueueBytes;
+    }
+
+    public int getSearchPagedMaxOpen() {
+        return searchPagedMaxOpen;
+    }
+
+    public void setSearchPagedMaxOpen(int searchPagedMaxOpen) {
+        this.searchPagedMaxOpen = searchPagedMaxOpen;
+    }
+
+    public long getSearchPagedIdleMillis() {
+        return searchPagedIdleMillis;
+    }
+
+    public void setSearchPagedIdleMillis(long searchPagedIdleMillis) {
+        this.searchPagedIdleMillis = searchPagedIdleMillis;
+    }
+
+    public int getPipelineMaxOutstanding() {
+        return pipelineMaxOutstanding;
+    }
+
+    public void setPipelineMaxOutstanding(int pipelineMaxOutstanding) {
+        this.pipelineMaxOutstanding = pipelineMaxOutstanding;
+    }
+
+    public boolean isPassthrough() {
+        return passthrough;
+    }
+
+    public void setPassthrough(boolean passthrough) {
+        this.passthrough = passthrough;
+    }
+
+    public int getPassthroughBufferBytes() {
+        return passthroughBufferBytes;
+    }
+
+    public void setPassthroughBufferBytes(int passthroughBufferBytes) {
+        this.passthroughBufferBytes = passthroughBufferBytes;
+    }
+
+    public boolean isSearchCoalesceEnabled() {
+        return searchCoalesceEnabled;
+    }
+
+    public void setSearchCoalesceEnabled(boolean searchCoalesceEnabled) {
+        this.searchCoalesceEnabled = searchCoalesceEnabled;
+    }
+
+    public long getSearchCoalesceMaxWaitMillis() {
+        return searchCoalesceMaxWaitMillis;
+    }
+
+    public void setSearchCoalesceMaxWaitMillis(long searchCoalesceMaxWaitMillis) {
+        this.searchCoalesceMaxWaitMillis = searchCoalesceMaxWaitMillis;
+    }
+
+    public int getSearchCoalesceMaxFanOut() {
+        return searchCoalesceMaxFanOut;
+    }
+
+    public void setSearchCoalesceMaxFanOut(int searchCoalesceMaxFanOut) {
+        this.searchCoalesceMaxFanOut = searchCoalesceMaxFanOut;
+    }
+
+    public long getSearchCoalesceMaxBytes() {
+        return searchCoalesceMaxBytes;
+    }
+
+    public void setSearchCoalesceMaxBytes(long searchCoalesceMaxBytes) {
+        this.searchCoalesceMaxBytes = searchCoalesceMaxBytes;
+    }
+
+    public boolean isHedgeEnabled() {
+        return hedgeEnabled;
+    }
+
+    public void setHedgeEnabled(boolean hedgeEnabled) {
+        this.hedgeEnabled = hedgeEnabled;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public double getHedgeBudgetPercent() {
+        return hedgeBudgetPercent;
+    }
+
+    public void setHedgeBudgetPercent(double hedgeBudgetPercent) {
+        this.hedgeBudgetPercent = hedgeBudgetPercent;
+    }
+
+    public long getHedgeMinDelayMillis() {
+        return hedgeMinDelayMillis;
+    }
+
+    public void setHedgeMinDelayMillis(long hedgeMinDelayMillis) {
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+    }
+
+    public String getListenerEngine() {
+        return listenerEngine;
+    }
+
+    public void setListenerEngine(String listenerEngine) {
+        this.listenerEngine = listenerEngine;
+    }
 }
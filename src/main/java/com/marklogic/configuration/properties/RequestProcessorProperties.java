@@ -8,6 +8,9 @@ public class RequestProcessorProperties {
 
     private String authClass;
     private String debugLevel = "INFO";
+
+    // Reload the users file given in parm1 when it changes on disk
+    private boolean reloadOnChange = true;
     
     // Generic parameters for processor-specific configuration
     private String parm1;
@@ -116,4 +119,12 @@ public class RequestProcessorProperties {
     public void setParm10(String parm10) {
         this.parm10 = parm10;
     }
+
+    public boolean isReloadOnChange() {
+        return reloadOnChange;
+    }
+
+    public void setReloadOnChange(boolean reloadOnChange) {
+        this.reloadOnChange = reloadOnChange;
+    }
 }
@@ -30,6 +30,28 @@ public class ServerSetProperties {
     private String truststorePassword;
     private String truststorePath;
 
+    // Background health checking and per-server circuit breaking (opt-in)
+    private boolean healthCheckEnabled = false;
+    private long healthCheckIntervalMillis = 10000;
+    private long healthCheckTimeoutMillis = 3000;
+    private String healthCheckBindDn;
+    private String healthCheckBindPassword;
+    private int circuitFailureThreshold = 3;
+    private long circuitOpenMillis = 30000;
+
+    // Base DNs held by this set; listeners route operations under them to this set
+    private List<String> suffixes = new ArrayList<>();
+
+    // Adaptive (AIMD) limit on operations in progress on this set, with a
+    // bounded queue for the excess (opt-in, shared by every listener using the set)
+    private boolean concurrencyLimitEnabled = false;
+    private int concurrencyLimitInitial = 20;
+    private int concurrencyLimitMin = 2;
+    private int concurrencyLimitMax = 200;
+    private int concurrencyLimitQueueSize = 500;
+    private long concurrencyLimitQueueTimeoutMillis = 1000;
+    private long concurrencyLimitLatencyThresholdMillis = 2000;
+
     public List<String> getServers() {
         return servers;
     }
@@ -149,4 +171,124 @@ public class ServerSetProperties {
     public void setTruststorePath(String truststorePath) {
         this.truststorePath = truststorePath;
     }
+
+    public boolean isHealthCheckEnabled() {
+        return healthCheckEnabled;
+    }
+
+    public void setHealthCheckEnabled(boolean healthCheckEnabled) {
+        this.healthCheckEnabled = healthCheckEnabled;
+    }
+
+    public long getHealthCheckIntervalMillis() {
+        return healthCheckIntervalMillis;
+    }
+
+    public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+    }
+
+    public long getHealthCheckTimeoutMillis() {
+        return healthCheckTimeoutMillis;
+    }
+
+    public void setHealthCheckTimeoutMillis(long healthCheckTimeoutMillis) {
+        this.healthCheckTimeoutMillis = healthCheckTimeoutMillis;
+    }
+
+    public String getHealthCheckBindDn() {
+        return healthCheckBindDn;
+    }
+
+    public void setHealthCheckBindDn(String healthCheckBindDn) {
+        this.healthCheckBindDn = healthCheckBindDn;
+    }
+
+    public String getHealthCheckBindPassword() {
+        return healthCheckBindPassword;
+    }
+
+    public void setHealthCheckBindPassword(String healthCheckBindPassword) {
+        this.healthCheckBindPassword = healthCheckBindPassword;
+    }
+
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public void setCircuitFailureThreshold(int circuitFailureThreshold) {
+        this.circuitFailureThreshold = circuitFailureThreshold;
+    }
+
+    public long getCircuitOpenMillis() {
+        return circuitOpenMillis;
+    }
+
+    public void setCircuitOpenMillis(long circuitOpenMillis) {
+        this.circuitOpenMillis = circuitOpenMillis;
+    }
+
+    public List<String> getSuffixes() {
+        return suffixes;
+    }
+
+    public void setSuffixes(List<String> suffixes) {
+        this.suffixes = suffixes;
+    }
+
+    public boolean isConcurrencyLimitEnabled() {
+        return concurrencyLimitEnabled;
+    }
+
+    public void setConcurrencyLimitEnabled(boolean concurrencyLimitEnabled) {
+        this.concurrencyLimitEnabled = concurrencyLimitEnabled;
+    }
+
+    public int getConcurrencyLimitInitial() {
+        return concurrencyLimitInitial;
+    }
+
+    public void setConcurrencyLimitInitial(int concurrencyLimitInitial) {
+        this.concurrencyLimitInitial = concurrencyLimitInitial;
+    }
+
+    public int getConcurrencyLimitMin() {
+        return concurrencyLimitMin;
+    }
+
+    public void setConcurrencyLimitMin(int concurrencyLimitMin) {
+        this.concurrencyLimitMin = concurrencyLimitMin;
+    }
+
+    public int getConcurrencyLimitMax() {
+        return concurrencyLimitMax;
+    }
+
+    public void setConcurrencyLimitMax(int concurrencyLimitMax) {
+        this.concurrencyLimitMax = concurrencyLimitMax;
+    }
+
+    public int getConcurrencyLimitQueueSize() {
+        return concurrencyLimitQueueSize;
+    }
+
+    public void setConcurrencyLimitQueueSize(int concurrencyLimitQueueSize) {
+        this.concurrencyLimitQueueSize = concurrencyLimitQueueSize;
+    }
+
+    public long getConcurrencyLimitQueueTimeoutMillis() {
+        return concurrencyLimitQueueTimeoutMillis;
+    }
+
+    public void setConcurrencyLimitQueueTimeoutMillis(long concurrencyLimitQueueTimeoutMillis) {
+        this.concurrencyLimitQueueTimeoutMillis = concurrencyLimitQueueTimeoutMillis;
+    }
+
+    public long getConcurrencyLimitLatencyThresholdMillis() {
+        return concurrencyLimitLatencyThresholdMillis;
+    }
+
+    public void setConcurrencyLimitLatencyThresholdMillis(long concurrencyLimitLatencyThresholdMillis) {
+        this.concurrencyLimitLatencyThresholdMillis = concurrencyLimitLatencyThresholdMillis;
+    }
 }
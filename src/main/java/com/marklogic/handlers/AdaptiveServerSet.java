@@ -0,0 +1,250 @@
+package com.marklogic.handlers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.SocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.ServerSet;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Server set that sends new connections to the backend servers that are
+ * currently answering fastest.
+ *
+ * <p>Unlike {@code FastestConnectServerSet}, which only measures TCP connect
+ * time, this set is fed the latency and outcome of real operations through
+ * {@link #recordResult(String, long, boolean)}. Each server keeps an
+ * exponentially weighted moving average of its latency and error rate, and a
+ * connection goes to the better of two randomly chosen servers
+ * ("power of two choices"), which spreads load across good servers without
+ * herding onto the single fastest one.
+ *
+ * <p>A server's score decays towards zero while it receives no traffic, so a
+ * server that was degraded is eventually chosen again and re-measured rather
+ * than being excluded for good. {@link #shouldRetire(String)} tells the
+ * connection pool when a connection points at a server that is clearly worse
+ * than the best one, so pooled traffic moves away from it too.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class AdaptiveServerSet extends ServerSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveServerSet.class);
+
+    // Weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.2;
+
+    // Error rate multiplies the latency score by up to this factor
+    private static final double ERROR_PENALTY = 10.0;
+
+    // Latency recorded for a failed connection attempt
+    private static final long CONNECT_FAILURE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    // A pooled connection is retired when its server scores this much worse than the best
+    private static final double RETIRE_FACTOR = 4.0;
+    private static final long RETIRE_MIN_DIFFERENCE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** Default time for an idle server's score to decay by a factor of e. */
+    public static final long DEFAULT_DECAY_MILLIS = 30000;
+
+    /**
+     * Moving averages for one backend server.
+     */
+    private static final class Backend {
+        private final String host;
+        private final int port;
+        private final String hostPort;
+
+        private double latencyNanos;
+        private double errorRate;
+        private long lastSampleNanos;
+
+        private Backend(String host, int port, long now) {
+            this.host = host;
+            this.port = port;
+            this.hostPort = host + ':' + port;
+            this.lastSampleNanos = now;
+        }
+
+        private synchronized void record(long nanos, boolean error, long now) {
+            latencyNanos += ALPHA * (nanos - latencyNanos);
+            errorRate += ALPHA * ((error ? 1.0 : 0.0) - errorRate);
+            lastSampleNanos = now;
+        }
+
+        private synchronized double score(long now, long decayNanos) {
+            double decay = Math.exp(-(double) (now - lastSampleNanos) / decayNanos);
+            return latencyNanos * decay * (1.0 + ERROR_PENALTY * errorRate * decay);
+        }
+    }
+
+    private final Backend[] backends;
+    private final Map<String, Backend> byHostPort;
+    private final SocketFactory socketFactory;
+    private final LDAPConnectionOptions connectionOptions;
+    private final long decayNanos;
+
+    /**
+     * @param addresses     Backend server addresses
+     * @param ports         Backend server ports, parallel to {@code addresses}
+     * @param socketFactory Socket factory for connections, or {@code null} for plain sockets
+     */
+    public AdaptiveServerSet(String[] addresses, int[] ports, SocketFactory socketFactory) {
+        this(addresses, ports, socketFactory, null, DEFAULT_DECAY_MILLIS);
+    }
+
+    /**
+     * @param addresses         Backend server addresses
+     * @param ports             Backend server ports, parallel to {@code addresses}
+     * @param socketFactory     Socket factory for connections, or {@code null} for plain sockets
+     * @param connectionOptions Options for new connections, or {@code null} for defaults
+     * @param decayMillis       Time for an idle server's score to decay by a factor of e
+     */
+    public AdaptiveServerSet(String[] addresses, int[] ports, SocketFactory socketFactory,
+                             LDAPConnectionOptions connectionOptions, long decayMillis) {
+        if (addresses == null || ports == null || addresses.length == 0 || addresses.length != ports.length) {
+            throw new IllegalArgumentException("addresses and ports must be non-empty and of equal length");
+        }
+        long now = System.nanoTime();
+        this.backends = new Backend[addresses.length];
+        this.byHostPort = new HashMap<>();
+        for (int i = 0; i < addresses.length; i++) {
+            backends[i] = new Backend(addresses[i], ports[i], now);
+            byHostPort.put(backends[i].hostPort, backends[i]);
+        }
+        this.socketFactory = socketFactory == null ? SocketFactory.getDefault() : socketFactory;
+        this.connectionOptions = connectionOptions == null ? new LDAPConnectionOptions() : connectionOptions;
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, decayMillis));
+    }
+
+    @Override
+    public LDAPConnection getConnection() throws LDAPException {
+        return getConnection(null);
+    }
+
+    @Override
+    public LDAPConnection getConnection(LDAPConnectionPoolHealthCheck healthCheck) throws LDAPException {
+        List<Backend> remaining = new ArrayList<>(List.of(backends));
+        LDAPException lastFailure = null;
+        while (!remaining.isEmpty()) {
+            Backend backend = choose(remaining, System.nanoTime());
+            remaining.remove(backend);
+
+            try {
+                LDAPConnection connection = new LDAPConnection(socketFactory, connectionOptions,
+                        backend.host, backend.port);
+                try {
+                    doBindPostConnectAndHealthCheckProcessing(connection, null, null, healthCheck);
+                } catch (LDAPException e) {
+                    connection.close();
+                    throw e;
+                }
+                associateConnectionWithThisServerSet(connection);
+                return connection;
+            } catch (LDAPException e) {
+                logger.debug("Connection to {} failed: {}", backend.hostPort, e.getMessage());
+                backend.record(CONNECT_FAILURE_NANOS, true, System.nanoTime());
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+
+    /**
+     * Picks the better scoring of two random candidates.
+     */
+    private Backend choose(List<Backend> candidates, long now) {
+        int n = candidates.size();
+        if (n == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(n);
+        int second = random.nextInt(n - 1);
+        if (second >= first) {
+            second++;
+        }
+        Backend a = candidates.get(first);
+        Backend b = candidates.get(second);
+        return a.score(now, decayNanos) <= b.score(now, decayNanos) ? a : b;
+    }
+
+    /**
+     * @return {@code host:port} of the server a new connection would be made to
+     */
+    String chooseServer() {
+        return choose(List.of(backends), System.nanoTime()).hostPort;
+    }
+
+    /**
+     * Feeds the outcome of an operation into the server's moving averages.
+     *
+     * @param hostPort Server the operation ran on, as returned by {@link LDAPConnection#getHostPort()}
+     * @param nanos    Operation latency
+     * @param error    Whether the server failed the operation (as opposed to a client error
+     *                 such as invalid credentials)
+     */
+    public void recordResult(String hostPort, long nanos, boolean error) {
+        Backend backend = byHostPort.get(hostPort);
+        if (backend != null) {
+            backend.record(nanos, error, System.nanoTime());
+        }
+    }
+
+    /**
+     * @return {@code true} if a pooled connection to the server should be closed
+     *         so that its replacement is made to a better server
+     */
+    public boolean shouldRetire(String hostPort) {
+        Backend backend = byHostPort.get(hostPort);
+        if (backend == null || backends.length == 1) {
+            return false;
+        }
+        long now = System.nanoTime();
+        double score = backend.score(now, decayNanos);
+        double best = Double.MAX_VALUE;
+        for (Backend b : backends) {
+            best = Math.min(best, b.score(now, decayNanos));
+        }
+        return score > best * RETIRE_FACTOR && score - best > RETIRE_MIN_DIFFERENCE_NANOS;
+    }
+
+    /**
+     * @return {@code true} if the result code indicates a server-side failure
+     *         that should count against the server
+     */
+    public static boolean isServerError(ResultCode resultCode) {
+        return !ResultCode.isConnectionUsable(resultCode)
+                || resultCode == ResultCode.BUSY
+                || resultCode == ResultCode.UNAVAILABLE
+                || resultCode == ResultCode.TIMEOUT
+                || resultCode == ResultCode.OTHER;
+    }
+
+    @Override
+    public void toString(StringBuilder buffer) {
+        long now = System.nanoTime();
+        buffer.append("AdaptiveServerSet(servers={");
+        for (int i = 0; i < backends.length; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(backends[i].hostPort).append(" score=")
+                    .append(TimeUnit.NANOSECONDS.toMicros((long) backends[i].score(now, decayNanos))).append("us");
+        }
+        buffer.append("})");
+    }
+}
@@ -0,0 +1,211 @@
+package com.marklogic.handlers;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.SocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.ServerSetProperties;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Background health checker and circuit breakers for backend LDAP servers.
+ *
+ * <p>Every server of a server set with {@code health-check-enabled=true} gets a
+ * {@link CircuitBreaker} and is probed periodically with a root DSE read (or a
+ * simple bind if a health check bind DN is configured) on a fresh connection
+ * with a short timeout. Server-side failures of real operations are fed into
+ * the same breakers by {@link LDAPBackendPool}. Connection pools consult the
+ * breakers through {@link CircuitBreakerHealthCheck}, so open servers receive no
+ * new connections and pooled connections to them are discarded.
+ *
+ * <p>Breakers are keyed by {@code host:port} and shared by every listener using
+ * the server.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class BackendHealthMonitor implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendHealthMonitor.class);
+
+    // Number of recent state changes kept for the actuator health endpoint
+    private static final int MAX_TRANSITIONS = 50;
+
+    /**
+     * A recorded breaker state change.
+     */
+    public record Transition(String server, CircuitBreaker.State from, CircuitBreaker.State to,
+                             long timestampMillis) {
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final ArrayDeque<Transition> transitions = new ArrayDeque<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param meterRegistry Registry for breaker state gauges and transition
+     *                      counters, or {@code null}
+     */
+    public BackendHealthMonitor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Starts health checking a backend server. Servers already registered by
+     * another server set keep their existing breaker and probe.
+     *
+     * @param host          Server host
+     * @param port          Server port
+     * @param socketFactory Socket factory for probe connections, or {@code null} for plain sockets
+     * @param setCfg        Server set configuration providing the check settings
+     */
+    public synchronized void register(String host, int port, SocketFactory socketFactory, ServerSetProperties setCfg) {
+        String hostPort = host + ':' + port;
+        if (breakers.containsKey(hostPort)) {
+            return;
+        }
+        CircuitBreaker breaker = new CircuitBreaker(hostPort, setCfg.getCircuitFailureThreshold(),
+                setCfg.getCircuitOpenMillis(), this::recordTransition);
+        breakers.put(hostPort, breaker);
+        registerMeters(breaker);
+
+        if (scheduler == null) {
+            scheduler = Executors.newScheduledThreadPool(2, r -> {
+                Thread thread = new Thread(r, "ldap-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long interval = Math.max(100, setCfg.getHealthCheckIntervalMillis());
+        scheduler.scheduleWithFixedDelay(
+                () -> probe(breaker, host, port, socketFactory, setCfg),
+                0, interval, TimeUnit.MILLISECONDS);
+        logger.info("Health checking backend {} every {}ms (timeout {}ms)",
+                hostPort, interval, setCfg.getHealthCheckTimeoutMillis());
+    }
+
+    private void probe(CircuitBreaker breaker, String host, int port, SocketFactory socketFactory,
+                       ServerSetProperties setCfg) {
+        LDAPConnectionOptions options = new LDAPConnectionOptions();
+        options.setConnectTimeoutMillis((int) setCfg.getHealthCheckTimeoutMillis());
+        options.setResponseTimeoutMillis(setCfg.getHealthCheckTimeoutMillis());
+        try (LDAPConnection connection = new LDAPConnection(
+                socketFactory == null ? SocketFactory.getDefault() : socketFactory, options, host, port)) {
+            if (setCfg.getHealthCheckBindDn() != null && !setCfg.getHealthCheckBindDn().isEmpty()) {
+                connection.bind(setCfg.getHealthCheckBindDn(), setCfg.getHealthCheckBindPassword());
+            } else {
+                // Any answer, including "no root DSE", shows the server is processing requests
+                connection.getRootDSE();
+            }
+            breaker.recordSuccess();
+        } catch (LDAPException e) {
+            logger.debug("Health check of {} failed: {}", breaker.getServer(), e.getMessage());
+            breaker.recordFailure(e.getResultCode() + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            logger.warn("Health check of {} failed unexpectedly", breaker.getServer(), e);
+            breaker.recordFailure(e.toString());
+        }
+    }
+
+    private void registerMeters(CircuitBreaker breaker) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("ldap.backend.circuit.state", breaker, b -> b.getState().ordinal())
+                .description("Circuit breaker state (0 closed, 1 half-open, 2 open)")
+                .tag("server", breaker.getServer())
+                .register(meterRegistry);
+    }
+
+    private void recordTransition(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+        synchronized (transitions) {
+            if (transitions.size() == MAX_TRANSITIONS) {
+                transitions.removeFirst();
+            }
+            transitions.addLast(new Transition(breaker.getServer(), from, to, System.currentTimeMillis()));
+        }
+        if (meterRegistry != null) {
+            Counter.builder("ldap.backend.circuit.transitions")
+                    .description("Circuit breaker state changes")
+                    .tags("server", breaker.getServer(), "state", to.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    /**
+     * @return {@code false} only if the server has an open circuit breaker
+     */
+    public boolean isAvailable(String hostPort) {
+        CircuitBreaker breaker = breakers.get(hostPort);
+        return breaker == null || breaker.isAvailable();
+    }
+
+    /**
+     * Feeds the outcome of a client operation into the server's breaker.
+     *
+     * @param hostPort    Server the operation ran on
+     * @param serverError Whether the server failed the operation
+     * @param error       Description of the failure, used when {@code serverError} is set
+     */
+    public void recordOperation(String hostPort, boolean serverError, String error) {
+        CircuitBreaker breaker = breakers.get(hostPort);
+        if (breaker == null) {
+            return;
+        }
+        if (serverError) {
+            breaker.recordFailure(error);
+        } else {
+            breaker.recordSuccess();
+        }
+    }
+
+    /**
+     * @return Breakers of every health checked server
+     */
+    public Collection<CircuitBreaker> getBreakers() {
+        return Collections.unmodifiableCollection(breakers.values());
+    }
+
+    /**
+     * @return Most recent breaker state changes, oldest first
+     */
+    public List<Transition> getRecentTransitions() {
+        synchronized (transitions) {
+            return new ArrayList<>(transitions);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (meterRegistry != null) {
+            meterRegistry.find("ldap.backend.circuit.state").meters().forEach(meterRegistry::remove);
+            meterRegistry.find("ldap.backend.circuit.transitions").meters().forEach(meterRegistry::remove);
+        }
+        breakers.clear();
+    }
+}
@@ -0,0 +1,191 @@
+package com.marklogic.handlers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Cache of recent simple bind outcomes for a single proxy listener.
+ *
+ * <p>Passwords are never stored. Each bind is reduced to a SHA-256 digest of a
+ * random per-cache salt, the normalized DN and the password, and only the last
+ * outcome per DN is kept: a successful bind for {@link #getPositiveTtlMillis()}
+ * and an {@code invalidCredentials} failure for the (normally much shorter)
+ * negative TTL. A bind with a different password for the same DN misses and, once
+ * the backend has answered, replaces the previous outcome, so a failed bind
+ * immediately invalidates a cached success for that DN.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class BindResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(BindResultCache.class);
+
+    private static final class CachedBind {
+        private final byte[] digest;
+        private final boolean success;
+        private final long expiresAt;
+
+        private CachedBind(byte[] digest, boolean success, long expiresAt) {
+            this.digest = digest;
+            this.success = success;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final String name;
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
+    private final byte[] salt = new byte[32];
+
+    // Last bind outcome per normalized DN, least recently used first
+    private final Map<String, CachedBind> binds;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param name        Listener name, used in logs
+     * @param listenerCfg Listener configuration providing the TTLs and size limit
+     */
+    public BindResultCache(String name, LdapListenerProperties listenerCfg) {
+        this.name = name;
+        this.positiveTtlMillis = listenerCfg.getBindCacheTtlMillis();
+        this.negativeTtlMillis = listenerCfg.getBindCacheNegativeTtlMillis();
+        final int maxEntries = listenerCfg.getBindCacheMaxEntries();
+        this.binds = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedBind> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        new SecureRandom().nextBytes(salt);
+        logger.info("Bind result cache '{}' enabled (ttl={}ms, negativeTtl={}ms, maxEntries={})",
+                name, positiveTtlMillis, negativeTtlMillis, maxEntries);
+    }
+
+    /**
+     * Looks up the outcome of a previous bind with the same DN and password.
+     *
+     * @param bindDN   Bind DN
+     * @param password Bind password
+     * @return {@link ResultCode#SUCCESS} or {@link ResultCode#INVALID_CREDENTIALS}
+     *         on a hit, {@code null} on a miss
+     */
+    public ResultCode get(String bindDN, byte[] password) {
+        String dn = normalize(bindDN);
+        if (dn == null) {
+            return null;
+        }
+        byte[] digest = digest(dn, password);
+
+        synchronized (binds) {
+            CachedBind cached = binds.get(dn);
+            if (cached != null && cached.expiresAt > System.currentTimeMillis()
+                    && MessageDigest.isEqual(cached.digest, digest)) {
+                hits.incrementAndGet();
+                return cached.success ? ResultCode.SUCCESS : ResultCode.INVALID_CREDENTIALS;
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Records the backend's answer to a bind. Only successes and invalid
+     * credentials are cached; any other failure removes the DN's cached outcome.
+     */
+    public void put(String bindDN, byte[] password, ResultCode resultCode) {
+        String dn = normalize(bindDN);
+        if (dn == null) {
+            return;
+        }
+
+        synchronized (binds) {
+            if (resultCode == ResultCode.SUCCESS) {
+                binds.put(dn, new CachedBind(digest(dn, password), true,
+                        System.currentTimeMillis() + positiveTtlMillis));
+            } else if (resultCode == ResultCode.INVALID_CREDENTIALS && negativeTtlMillis > 0) {
+                binds.put(dn, new CachedBind(digest(dn, password), false,
+                        System.currentTimeMillis() + negativeTtlMillis));
+            } else {
+                binds.remove(dn);
+            }
+        }
+    }
+
+    /**
+     * Removes every cached outcome.
+     */
+    public void clear() {
+        synchronized (binds) {
+            binds.clear();
+        }
+    }
+
+    private byte[] digest(String normalizedDN, byte[] password) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(salt);
+            sha.update(normalizedDN.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(password);
+            return sha.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is a mandatory JCA algorithm
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalize(String bindDN) {
+        try {
+            return new DN(bindDN).toNormalizedString();
+        } catch (LDAPException e) {
+            return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getPositiveTtlMillis() {
+        return positiveTtlMillis;
+    }
+
+    public long getNegativeTtlMillis() {
+        return negativeTtlMillis;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of DNs with a cached outcome
+     */
+    public int size() {
+        synchronized (binds) {
+            return binds.size();
+        }
+    }
+}
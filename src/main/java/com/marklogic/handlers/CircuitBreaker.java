@@ -0,0 +1,179 @@
+package com.marklogic.handlers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Circuit breaker for one backend server.
+ *
+ * <p>The breaker is {@link State#CLOSED} while the server is healthy. After
+ * {@code failureThreshold} consecutive failures (health check probes or
+ * operations that failed on the server's side) it opens and the server
+ * receives no new connections. Once {@code openMillis} have passed it becomes
+ * {@link State#HALF_OPEN}: connections are allowed again, the next success
+ * closes the breaker and the next failure opens it for another period.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * Breaker state.
+     */
+    public enum State {
+        /** Server is healthy and receives traffic. */
+        CLOSED,
+        /** Server is on probation; traffic is allowed and the next result decides. */
+        HALF_OPEN,
+        /** Server failed repeatedly and receives no new connections. */
+        OPEN
+    }
+
+    /**
+     * Notified after every state change.
+     */
+    @FunctionalInterface
+    public interface TransitionListener {
+        void stateChanged(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String server;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+    private final TransitionListener listener;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long lastTransitionMillis = System.currentTimeMillis();
+    private String lastError;
+
+    /**
+     * @param server           Server {@code host:port}, used in logs
+     * @param failureThreshold Consecutive failures that open the breaker
+     * @param openMillis       Time the breaker stays open before allowing a trial
+     * @param listener         Transition listener, or {@code null}
+     */
+    public CircuitBreaker(String server, int failureThreshold, long openMillis, TransitionListener listener) {
+        this(server, failureThreshold, openMillis, listener, System::nanoTime);
+    }
+
+    CircuitBreaker(String server, int failureThreshold, long openMillis, TransitionListener listener,
+                   LongSupplier clock) {
+        this.server = server;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, openMillis));
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    /**
+     * @return {@code true} if new connections to the server are allowed
+     */
+    public boolean isAvailable() {
+        State from;
+        synchronized (this) {
+            if (state != State.OPEN) {
+                return true;
+            }
+            if (clock.getAsLong() - openedAt < openNanos) {
+                return false;
+            }
+            from = transition(State.HALF_OPEN);
+        }
+        notifyListener(from, State.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * Records a successful probe or operation.
+     */
+    public void recordSuccess() {
+        State from;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (state == State.OPEN && clock.getAsLong() - openedAt < openNanos) {
+                // Stay open for the full period so a flapping server is not readmitted at once
+                return;
+            }
+            from = transition(State.CLOSED);
+        }
+        notifyListener(from, State.CLOSED);
+    }
+
+    /**
+     * Records a failed probe or a server-side operation failure.
+     *
+     * @param error Description of the failure
+     */
+    public void recordFailure(String error) {
+        State from;
+        synchronized (this) {
+            lastError = error;
+            consecutiveFailures++;
+            boolean open = state == State.HALF_OPEN
+                    || (state == State.CLOSED && consecutiveFailures >= failureThreshold);
+            if (!open) {
+                return;
+            }
+            openedAt = clock.getAsLong();
+            from = transition(State.OPEN);
+        }
+        notifyListener(from, State.OPEN);
+    }
+
+    private State transition(State to) {
+        State from = state;
+        state = to;
+        lastTransitionMillis = System.currentTimeMillis();
+        return from;
+    }
+
+    private void notifyListener(State from, State to) {
+        if (to == State.OPEN) {
+            logger.warn("Circuit for backend {} opened after {} failure(s): {}", server, getConsecutiveFailures(), getLastError());
+        } else {
+            logger.info("Circuit for backend {} is now {}", server, to);
+        }
+        if (listener != null) {
+            listener.stateChanged(this, from, to);
+        }
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return Wall-clock time of the last state change, in milliseconds since the epoch
+     */
+    public synchronized long getLastTransitionMillis() {
+        return lastTransitionMillis;
+    }
+
+    /**
+     * @return Description of the most recent failure, or {@code null} if there was none
+     */
+    public synchronized String getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,58 @@
+package com.marklogic.handlers;
+
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Connection pool health check that rejects connections to servers whose
+ * circuit breaker is open.
+ *
+ * <p>The stock server sets (round robin, failover, fewest connections, ...)
+ * treat a connection rejected by the health check like a failed connect and
+ * move on to the next server, so they skip open servers without knowing about
+ * the breakers. On checkout and during the pool's background checks, pooled
+ * connections to an open server are discarded and replaced.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class CircuitBreakerHealthCheck extends LDAPConnectionPoolHealthCheck {
+
+    private final BackendHealthMonitor monitor;
+
+    /**
+     * @param monitor Monitor holding the server circuit breakers
+     */
+    public CircuitBreakerHealthCheck(BackendHealthMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void ensureNewConnectionValid(LDAPConnection connection) throws LDAPException {
+        ensureAvailable(connection);
+    }
+
+    @Override
+    public void ensureConnectionValidForCheckout(LDAPConnection connection) throws LDAPException {
+        ensureAvailable(connection);
+    }
+
+    @Override
+    public void ensureConnectionValidForContinuedUse(LDAPConnection connection) throws LDAPException {
+        ensureAvailable(connection);
+    }
+
+    private void ensureAvailable(LDAPConnection connection) throws LDAPException {
+        String hostPort = connection.getHostPort();
+        if (!monitor.isAvailable(hostPort)) {
+            throw new LDAPException(ResultCode.SERVER_DOWN, "Circuit breaker open for backend " + hostPort);
+        }
+    }
+
+    @Override
+    public void toString(StringBuilder buffer) {
+        buffer.append("CircuitBreakerHealthCheck()");
+    }
+}
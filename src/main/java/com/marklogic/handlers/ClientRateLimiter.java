@@ -0,0 +1,139 @@
+package com.marklogic.handlers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Per-client token bucket rate limiter for a single listener.
+ *
+ * <p>Each client key (the client address, optionally combined with its bind DN)
+ * gets its own bucket holding up to {@code burst} tokens that refill at
+ * {@code requestsPerSecond}. A bucket is a single {@link AtomicLong} holding the
+ * "theoretical arrival time" of the next request (the generic cell rate
+ * algorithm), so acquiring a token is one compare-and-set with no locking, and
+ * buckets for different clients never contend. Buckets that have refilled
+ * completely carry no state and are dropped periodically.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class ClientRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientRateLimiter.class);
+
+    // How often (in acquisitions) idle buckets are swept
+    private static final int SWEEP_INTERVAL = 4096;
+
+    private final String name;
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final boolean perBindDN;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param name        Listener name, used in logs
+     * @param listenerCfg Listener configuration providing the rate and burst
+     */
+    public ClientRateLimiter(String name, LdapListenerProperties listenerCfg) {
+        this(name, listenerCfg.getRateLimitRequestsPerSecond(), listenerCfg.getRateLimitBurst(),
+                listenerCfg.isRateLimitPerBindDn());
+    }
+
+    /**
+     * @param name              Listener name, used in logs
+     * @param requestsPerSecond Sustained requests per second allowed per client
+     * @param burst             Requests a client may issue at once after being idle
+     * @param perBindDN         Whether each bind DN on a client address gets its own bucket
+     */
+    public ClientRateLimiter(String name, double requestsPerSecond, int burst, boolean perBindDN) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("requestsPerSecond must be positive");
+        }
+        this.name = name;
+        this.emissionIntervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * (Math.max(1, burst) - 1L);
+        this.perBindDN = perBindDN;
+        logger.info("Rate limiter '{}' enabled ({} requests/s, burst {}, per bind DN: {})",
+                name, requestsPerSecond, Math.max(1, burst), perBindDN);
+    }
+
+    /**
+     * Builds the bucket key for a client.
+     *
+     * @param clientAddress Client IP address
+     * @param bindDN        DN the client is bound as, or {@code null}/empty for anonymous
+     * @return The key to pass to {@link #tryAcquire(String)}
+     */
+    public String clientKey(String clientAddress, String bindDN) {
+        if (!perBindDN || bindDN == null || bindDN.isEmpty()) {
+            return clientAddress;
+        }
+        return clientAddress + ' ' + bindDN;
+    }
+
+    /**
+     * Takes one token from the client's bucket.
+     *
+     * @param clientKey Key from {@link #clientKey(String, String)}
+     * @return {@code true} if the request may proceed, {@code false} if it must be rejected
+     */
+    public boolean tryAcquire(String clientKey) {
+        long now = System.nanoTime();
+        if (acquisitions.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweep(now);
+        }
+
+        while (true) {
+            AtomicLong bucket = buckets.computeIfAbsent(clientKey, k -> new AtomicLong(now));
+            long tat = bucket.get();
+            long start = tat - now > 0 ? tat : now;
+            if (start - now > burstToleranceNanos) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            // A sweep may have dropped the bucket since it was looked up; the
+            // token then counts only if taken from the bucket now in the map
+            if (bucket.compareAndSet(tat, start + emissionIntervalNanos) && buckets.get(clientKey) == bucket) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drops buckets that have refilled completely; they are recreated full on demand.
+     */
+    private void sweep(long now) {
+        buckets.forEach((key, bucket) -> {
+            if (bucket.get() - now <= 0) {
+                buckets.remove(key, bucket);
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Number of requests rejected since startup
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return Number of clients currently holding a partially drained bucket
+     */
+    public int getTrackedClients() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,292 @@
+package com.marklogic.handlers;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.ServerSetProperties;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Adaptive limit on the operations in progress on one backend server set.
+ *
+ * <p>The limit follows additive increase, multiplicative decrease (AIMD): an
+ * operation that completes within the latency threshold while the set is at
+ * least half busy raises the limit by {@code 1/limit}, so by about one per
+ * round of operations, and an operation that exceeds the threshold or fails
+ * with a sign of overload ({@code busy}, {@code unavailable}, a timeout or a
+ * lost connection) cuts it by a tenth. The limit stays between the configured
+ * minimum and maximum.
+ *
+ * <p>Operations over the limit wait in a bounded queue. Binds wait in a queue
+ * of their own that is served first, so logins keep working while bulk
+ * searches are held back. An operation still queued when its deadline passes,
+ * or arriving at a full queue, is rejected with {@link ResultCode#BUSY} instead
+ * of adding to the backend's load.
+ *
+ * <p>Limiters are keyed by server set and shared by every listener using the set.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class ConcurrencyLimiter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private static final class Waiter {
+        private final Condition admitted;
+        private boolean granted;
+
+        private Waiter(Condition admitted) {
+            this.admitted = admitted;
+        }
+    }
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long queueTimeoutNanos;
+    private final long latencyThresholdNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Waiter> priorityQueue = new ArrayDeque<>();
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long rejected;
+
+    private final MeterRegistry meterRegistry;
+    private final List<Meter> meters = new ArrayList<>();
+
+    /**
+     * @param name          Server set name, used in logs and as the {@code set} tag
+     * @param setCfg        Server set configuration providing the limits and queue settings
+     * @param meterRegistry Registry for the limiter gauges, or {@code null}
+     */
+    public ConcurrencyLimiter(String name, ServerSetProperties setCfg, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.minLimit = Math.max(1, setCfg.getConcurrencyLimitMin());
+        this.maxLimit = Math.max(minLimit, setCfg.getConcurrencyLimitMax());
+        this.queueSize = Math.max(0, setCfg.getConcurrencyLimitQueueSize());
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(setCfg.getConcurrencyLimitQueueTimeoutMillis());
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(setCfg.getConcurrencyLimitLatencyThresholdMillis());
+        this.limit = Math.min(Math.max(setCfg.getConcurrencyLimitInitial(), minLimit), maxLimit);
+        this.meterRegistry = meterRegistry;
+        registerMeters();
+        logger.info("Concurrency limit for server set '{}' enabled (initial={}, min={}, max={}, queue={}, "
+                + "queueTimeout={}ms)", name, (int) limit, minLimit, maxLimit, queueSize,
+                setCfg.getConcurrencyLimitQueueTimeoutMillis());
+    }
+
+    /**
+     * Waits until the operation may be sent to the backend. Every successful
+     * call must be paired with {@link #release()}.
+     *
+     * @param priority {@code true} for binds, which are admitted before other queued operations
+     * @throws LDAPException with {@link ResultCode#BUSY} if the queue is full or
+     *         the operation was not admitted before its deadline, or
+     *         {@link ResultCode#CANCELED} if the thread was interrupted
+     */
+    public void acquire(boolean priority) throws LDAPException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit && priorityQueue.isEmpty() && (priority || queue.isEmpty())) {
+                inFlight++;
+                return;
+            }
+            if (priorityQueue.size() + queue.size() >= queueSize) {
+                rejected++;
+                throw busy("queue is full");
+            }
+
+            Waiter waiter = new Waiter(lock.newCondition());
+            (priority ? priorityQueue : queue).addLast(waiter);
+            long remaining = queueTimeoutNanos;
+            try {
+                while (!waiter.granted) {
+                    if (remaining <= 0) {
+                        (priority ? priorityQueue : queue).remove(waiter);
+                        rejected++;
+                        throw busy("no capacity within " + TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos) + "ms");
+                    }
+                    remaining = waiter.admitted.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.granted) {
+                    inFlight--;
+                    admitWaiting();
+                } else {
+                    (priority ? priorityQueue : queue).remove(waiter);
+                }
+                throw new LDAPException(ResultCode.CANCELED, "Interrupted while waiting for the backend", e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private LDAPException busy(String reason) {
+        logger.debug("Concurrency limit for server set '{}' rejected an operation: {}", name, reason);
+        return new LDAPException(ResultCode.BUSY,
+                "Backend server set '" + name + "' is overloaded (" + reason + "); try again later");
+    }
+
+    /**
+     * Adjusts the limit for a completed backend operation.
+     *
+     * @param nanos      Latency of the operation
+     * @param resultCode Result of the operation
+     */
+    public void recordResult(long nanos, ResultCode resultCode) {
+        lock.lock();
+        try {
+            if (nanos > latencyThresholdNanos || isOverload(resultCode)) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else if (inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            admitWaiting();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends an operation admitted by {@link #acquire(boolean)} and admits the next waiting one.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            admitWaiting();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void admitWaiting() {
+        while (inFlight < (int) limit) {
+            Waiter next = priorityQueue.pollFirst();
+            if (next == null) {
+                next = queue.pollFirst();
+            }
+            if (next == null) {
+                return;
+            }
+            next.granted = true;
+            inFlight++;
+            next.admitted.signal();
+        }
+    }
+
+    static boolean isOverload(ResultCode resultCode) {
+        return resultCode == ResultCode.BUSY || resultCode == ResultCode.UNAVAILABLE
+                || resultCode == ResultCode.TIMEOUT || resultCode == ResultCode.SERVER_DOWN
+                || resultCode == ResultCode.CONNECT_ERROR;
+    }
+
+    private void registerMeters() {
+        if (meterRegistry == null) {
+            return;
+        }
+        meters.add(Gauge.builder("ldap.backend.limit", this, ConcurrencyLimiter::getLimit)
+                .description("Adaptive limit on operations in progress on the server set")
+                .tag("set", name)
+                .register(meterRegistry));
+        meters.add(Gauge.builder("ldap.backend.inflight", this, ConcurrencyLimiter::getInFlight)
+                .description("Operations in progress on the server set")
+                .tag("set", name)
+                .register(meterRegistry));
+        meters.add(Gauge.builder("ldap.backend.queued", this, ConcurrencyLimiter::getQueued)
+                .description("Operations waiting for the server set's concurrency limit")
+                .tag("set", name)
+                .register(meterRegistry));
+        meters.add(FunctionCounter.builder("ldap.backend.limit.rejected", this, ConcurrencyLimiter::getRejected)
+                .description("Operations rejected with busy by the concurrency limit")
+                .tag("set", name)
+                .register(meterRegistry));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Current limit on operations in progress
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Operations in progress on the backend
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Operations waiting to be admitted
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return priorityQueue.size() + queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Operations rejected with {@code busy}
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (meterRegistry != null) {
+            meters.forEach(meterRegistry::remove);
+        }
+        meters.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter(" + name + ", limit=" + getLimit() + ", inFlight=" + getInFlight()
+                + ", queued=" + getQueued() + ", rejected=" + getRejected() + ")";
+    }
+}
@@ -0,0 +1,62 @@
+package com.marklogic.handlers;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of fixed-size direct byte buffers.
+ *
+ * <p>Direct buffers are expensive to allocate and are only reclaimed by the
+ * garbage collector, so {@link PassthroughConnection}s borrow them for the
+ * lifetime of a client connection and return them on close. At most
+ * {@code maxIdle} released buffers are kept; the rest are left to the GC.
+ */
+final class DirectBufferPool {
+
+    private final int bufferBytes;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * @param bufferBytes Capacity of every buffer
+     * @param maxIdle     Released buffers kept for reuse
+     */
+    DirectBufferPool(int bufferBytes, int maxIdle) {
+        this.bufferBytes = bufferBytes;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return A cleared buffer, reused when one is idle
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferBytes);
+        }
+        idleCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferBytes) {
+            return;
+        }
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(buffer);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    int getBufferBytes() {
+        return bufferBytes;
+    }
+
+    int getIdleCount() {
+        return idleCount.get();
+    }
+}
@@ -0,0 +1,136 @@
+package com.marklogic.handlers;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Decides when a read-only operation on a listener's backend is hedged, that
+ * is sent a second time to another server of the server set because the first
+ * one is slow to answer.
+ *
+ * <p>The delay before hedging is the configured percentile of the latency to
+ * first response of recent operations, and never less than the minimum delay.
+ * Nothing is hedged until enough operations have been measured. Each measured
+ * operation earns a fraction of a hedge (the budget percentage), so hedges add
+ * at most that share of extra load to the backend, with a small allowance for
+ * bursts.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class HedgePolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgePolicy.class);
+
+    // Recent latencies kept for the percentile, and how often it is recomputed
+    private static final int WINDOW = 512;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    // Hedges that can be saved up while the backend is fast
+    private static final double MAX_TOKENS = 10;
+
+    private final String name;
+    private final double percentile;
+    private final double budget;
+    private final long minDelayNanos;
+
+    private final long[] samples = new long[WINDOW];
+    private int next;
+    private long recorded;
+    private double tokens;
+
+    // Delay before hedging, or -1 until enough operations have been measured
+    private volatile long delayNanos = -1;
+
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong won = new AtomicLong();
+
+    /**
+     * @param name        Listener name, used in logs
+     * @param listenerCfg Listener configuration providing the percentile, budget and minimum delay
+     */
+    public HedgePolicy(String name, LdapListenerProperties listenerCfg) {
+        this.name = name;
+        this.percentile = Math.min(Math.max(listenerCfg.getHedgePercentile(), 0), 100);
+        this.budget = Math.max(listenerCfg.getHedgeBudgetPercent(), 0) / 100;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(listenerCfg.getHedgeMinDelayMillis());
+        logger.info("Request hedging '{}' enabled (percentile={}, budget={}%, minDelay={}ms)",
+                name, percentile, listenerCfg.getHedgeBudgetPercent(), listenerCfg.getHedgeMinDelayMillis());
+    }
+
+    /**
+     * @return Nanoseconds to wait for a first response before hedging, or
+     *         {@code -1} if operations are not hedged yet
+     */
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Records the latency to first response of an operation and earns its
+     * share of the hedge budget.
+     */
+    public synchronized void recordLatency(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % WINDOW;
+        recorded++;
+        tokens = Math.min(tokens + budget, MAX_TOKENS);
+        if (recorded % RECOMPUTE_EVERY == 0) {
+            long[] sorted = Arrays.copyOf(samples, (int) Math.min(recorded, WINDOW));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            delayNanos = Math.max(sorted[Math.max(index, 0)], minDelayNanos);
+        }
+    }
+
+    /**
+     * Takes a hedge from the budget.
+     *
+     * @return {@code true} if the caller may send the operation to a second server
+     */
+    public synchronized boolean tryHedge() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        fired.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Notes that a hedge answered before the operation it duplicated.
+     */
+    public void hedgeWon() {
+        won.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Operations sent to a second server
+     */
+    public long getFired() {
+        return fired.get();
+    }
+
+    /**
+     * @return Hedges whose server answered first
+     */
+    public long getWon() {
+        return won.get();
+    }
+
+    @Override
+    public String toString() {
+        return "HedgePolicy(" + name + ", delayNanos=" + delayNanos + ", fired=" + getFired()
+                + ", won=" + getWon() + ")";
+    }
+}
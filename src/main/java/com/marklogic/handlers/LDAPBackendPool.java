@@ -0,0 +1,380 @@
+package com.marklogic.handlers;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.ServerSet;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Shared pool of backend LDAP connections for a single proxy listener.
+ *
+ * <p>Client connections no longer own a dedicated backend socket; each
+ * {@link LDAPBackendSession} borrows a pooled connection for the duration of
+ * one operation. Because a pooled connection may have been used by a different
+ * client, the pool remembers which DN every connection is currently bound as and
+ * re-authenticates it before handing it to a session with a different identity.
+ * A user bind therefore never leaks onto a connection later used for another
+ * client's searches.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class LDAPBackendPool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LDAPBackendPool.class);
+
+    /** Bound DN used for connections that are authenticated anonymously. */
+    static final String ANONYMOUS = "";
+
+    // Pooled connections looked at when borrowing one to a different server for a hedge
+    private static final int ALTERNATE_BORROW_ATTEMPTS = 3;
+
+    private final String name;
+    private final LDAPConnectionPool connectionPool;
+    private final SearchResultCache searchCache;
+    private final SearchCoalescer searchCoalescer;
+    private final BindResultCache bindCache;
+    private final SearchLimits searchLimits;
+    private final HedgePolicy hedgePolicy;
+    private final int maxConnections;
+
+    // Latency-aware server set fed with operation results, or null for other modes
+    private final AdaptiveServerSet adaptiveServerSet;
+
+    // Backend circuit breakers fed with operation results, or null if not health checked
+    private final BackendHealthMonitor healthMonitor;
+
+    // Adaptive limit on operations in progress on the server set, or null if unlimited
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    // Connections currently borrowed by sessions
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    // Bound DN per pooled connection. Weak keys so connections closed by the
+    // pool (expired, defunct) drop out without explicit bookkeeping.
+    private final Map<LDAPConnection, String> boundIdentities =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Creates a backend pool for the named listener.
+     *
+     * @param name        Listener name, used as the pool name in logs and statistics
+     * @param serverSet   Server set used to establish new backend connections
+     * @param listenerCfg Listener configuration providing the pool sizing
+     * @throws LDAPException if the pool cannot be created
+     */
+    public LDAPBackendPool(String name, ServerSet serverSet, LdapListenerProperties listenerCfg)
+            throws LDAPException {
+        this(name, serverSet, listenerCfg, null);
+    }
+
+    /**
+     * Creates a backend pool whose connections respect backend circuit breakers.
+     *
+     * @param name          Listener name, used as the pool name in logs and statistics
+     * @param serverSet     Server set used to establish new backend connections
+     * @param listenerCfg   Listener configuration providing the pool sizing
+     * @param healthMonitor Monitor holding the backend circuit breakers, or {@code null}
+     * @throws LDAPException if the pool cannot be created
+     */
+    public LDAPBackendPool(String name, ServerSet serverSet, LdapListenerProperties listenerCfg,
+                           BackendHealthMonitor healthMonitor) throws LDAPException {
+        this(name, serverSet, listenerCfg, healthMonitor, null);
+    }
+
+    /**
+     * Creates a backend pool whose operations are admitted by a concurrency limiter.
+     *
+     * @param name               Listener name, used as the pool name in logs and statistics
+     * @param serverSet          Server set used to establish new backend connections
+     * @param listenerCfg        Listener configuration providing the pool sizing
+     * @param healthMonitor      Monitor holding the backend circuit breakers, or {@code null}
+     * @param concurrencyLimiter Limiter of the server set, or {@code null}
+     * @throws LDAPException if the pool cannot be created
+     */
+    public LDAPBackendPool(String name, ServerSet serverSet, LdapListenerProperties listenerCfg,
+                           BackendHealthMonitor healthMonitor, ConcurrencyLimiter concurrencyLimiter)
+            throws LDAPException {
+        this.name = name;
+        this.healthMonitor = healthMonitor;
+        this.concurrencyLimiter = concurrencyLimiter;
+
+        // Do not fail listener startup if the backend is unreachable; the pool
+        // creates connections on demand once it comes back.
+        this.connectionPool = new LDAPConnectionPool(serverSet, null,
+                listenerCfg.getPoolInitialConnections(), listenerCfg.getPoolMaxConnections(),
+                null, false);
+        connectionPool.setConnectionPoolName(name);
+        connectionPool.setCreateIfNecessary(true);
+        connectionPool.setMaxWaitTimeMillis(listenerCfg.getPoolMaxWaitMillis());
+        if (listenerCfg.getPoolMaxConnectionAgeMillis() > 0) {
+            connectionPool.setMaxConnectionAgeMillis(listenerCfg.getPoolMaxConnectionAgeMillis());
+        }
+        if (healthMonitor != null) {
+            // Server sets skip servers rejected by the health check; checkout
+            // discards pooled connections to servers whose breaker has opened.
+            connectionPool.setHealthCheck(new CircuitBreakerHealthCheck(healthMonitor));
+            connectionPool.setCheckConnectionHealthOnCheckout(true);
+        }
+
+        this.searchCache = listenerCfg.isSearchCacheEnabled() ? new SearchResultCache(name, listenerCfg) : null;
+        this.searchCoalescer = listenerCfg.isSearchCoalesceEnabled() ? new SearchCoalescer(name, listenerCfg) : null;
+        this.bindCache = listenerCfg.isBindCacheEnabled() ? new BindResultCache(name, listenerCfg) : null;
+        this.searchLimits = new SearchLimits(listenerCfg);
+        this.hedgePolicy = listenerCfg.isHedgeEnabled() ? new HedgePolicy(name, listenerCfg) : null;
+        this.maxConnections = listenerCfg.getPoolMaxConnections();
+        this.adaptiveServerSet = serverSet instanceof AdaptiveServerSet adaptive ? adaptive : null;
+
+        logger.info("Backend connection pool '{}' created (initial={}, max={})",
+                name, listenerCfg.getPoolInitialConnections(), listenerCfg.getPoolMaxConnections());
+    }
+
+    /**
+     * Borrows a connection authenticated as the given identity.
+     *
+     * @param identity Simple bind request for the client identity, or {@code null} for anonymous
+     * @return A pooled connection bound as the requested identity
+     * @throws LDAPException if no connection is available or re-authentication fails
+     */
+    LDAPConnection borrow(SimpleBindRequest identity) throws LDAPException {
+        LDAPConnection connection = connectionPool.getConnection();
+        activeConnections.incrementAndGet();
+
+        String wanted = identity == null ? ANONYMOUS : identity.getBindDN();
+        String current = boundIdentities.getOrDefault(connection, ANONYMOUS);
+        if (wanted.equals(current)) {
+            return connection;
+        }
+
+        logger.debug("Re-authenticating pooled connection from '{}' to '{}'", current, wanted);
+        try {
+            connection.bind(identity == null ? new SimpleBindRequest() : identity);
+            boundIdentities.put(connection, wanted);
+            return connection;
+        } catch (LDAPException e) {
+            // A failed bind leaves the connection unauthenticated (RFC 4511 4.2.1)
+            boundIdentities.put(connection, ANONYMOUS);
+            release(connection, e);
+            if (bindCache != null && identity != null && identity.getPassword() != null
+                    && ResultCode.isConnectionUsable(e.getResultCode())) {
+                // The server rejected credentials it accepted before, e.g. after a password change
+                bindCache.put(identity.getBindDN(), identity.getPassword().getValue(), e.getResultCode());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a connection for a new bind. The caller is about to replace the
+     * authentication state, so no re-authentication is performed.
+     */
+    LDAPConnection borrowForBind() throws LDAPException {
+        LDAPConnection connection = connectionPool.getConnection();
+        activeConnections.incrementAndGet();
+        return connection;
+    }
+
+    /**
+     * Borrows a connection to another server than the one given, for a hedged
+     * operation. Never waits for the pool to grow: a pool with every connection
+     * in use is loaded enough without hedges.
+     *
+     * @param identity Simple bind request for the client identity, or {@code null} for anonymous
+     * @param hostPort Server of the connection already used by the operation
+     * @param forBind  {@code true} to skip re-authentication because the caller is about to bind
+     * @return A connection to a different server, or {@code null} if none is available
+     */
+    LDAPConnection borrowAlternate(SimpleBindRequest identity, String hostPort, boolean forBind) {
+        if (concurrencyLimiter != null && concurrencyLimiter.getQueued() > 0) {
+            return null;
+        }
+        List<LDAPConnection> sameServer = new ArrayList<>();
+        try {
+            for (int i = 0; i < ALTERNATE_BORROW_ATTEMPTS && activeConnections.get() < maxConnections; i++) {
+                LDAPConnection connection = forBind ? borrowForBind() : borrow(identity);
+                if (!connection.getHostPort().equals(hostPort)) {
+                    return connection;
+                }
+                sameServer.add(connection);
+            }
+        } catch (LDAPException e) {
+            logger.debug("No backend connection available for a hedged operation: {}", e.getMessage());
+        } finally {
+            sameServer.forEach(this::release);
+        }
+        return null;
+    }
+
+    /**
+     * Waits until the server set's concurrency limit admits an operation.
+     * Every successful call must be paired with {@link #leave()}.
+     *
+     * @param priority {@code true} for binds
+     * @throws LDAPException with {@link ResultCode#BUSY} if the operation was not admitted in time
+     */
+    void admit(boolean priority) throws LDAPException {
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.acquire(priority);
+        }
+    }
+
+    /**
+     * Ends an operation admitted by {@link #admit(boolean)}.
+     */
+    void leave() {
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.release();
+        }
+    }
+
+    /**
+     * Records the DN the connection is now bound as, after a bind issued by a session.
+     */
+    void recordIdentity(LDAPConnection connection, String bindDN) {
+        boundIdentities.put(connection, bindDN == null ? ANONYMOUS : bindDN);
+    }
+
+    /**
+     * Returns a connection to the pool.
+     */
+    void release(LDAPConnection connection) {
+        if (adaptiveServerSet != null && adaptiveServerSet.shouldRetire(connection.getHostPort())) {
+            logger.debug("Retiring pooled connection to degraded server {}", connection.getHostPort());
+            releaseDefunct(connection);
+            return;
+        }
+        activeConnections.decrementAndGet();
+        connectionPool.releaseConnection(connection);
+    }
+
+    /**
+     * Reports the latency and outcome of an operation to the concurrency
+     * limiter, a latency-aware server set and the backend circuit breakers.
+     */
+    void recordResult(LDAPConnection connection, long nanos, ResultCode resultCode) {
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.recordResult(nanos, resultCode);
+        }
+        if (adaptiveServerSet == null && healthMonitor == null) {
+            return;
+        }
+        boolean serverError = AdaptiveServerSet.isServerError(resultCode);
+        if (adaptiveServerSet != null) {
+            adaptiveServerSet.recordResult(connection.getHostPort(), nanos, serverError);
+        }
+        if (healthMonitor != null) {
+            healthMonitor.recordOperation(connection.getHostPort(), serverError, resultCode.toString());
+        }
+    }
+
+    /**
+     * Returns a connection to the pool after an operation failed, discarding it
+     * if the failure left the connection unusable.
+     */
+    void release(LDAPConnection connection, LDAPException failure) {
+        if (ResultCode.isConnectionUsable(failure.getResultCode())) {
+            release(connection);
+        } else {
+            releaseDefunct(connection);
+        }
+    }
+
+    /**
+     * Closes a connection that must not be reused and lets the pool replace it.
+     */
+    void releaseDefunct(LDAPConnection connection) {
+        activeConnections.decrementAndGet();
+        boundIdentities.remove(connection);
+        connectionPool.releaseDefunctConnection(connection);
+    }
+
+    /**
+     * @return Listener name this pool belongs to
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The listener's search result cache, or {@code null} if caching is disabled
+     */
+    public SearchResultCache getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * @return The listener's search coalescer, or {@code null} if coalescing is disabled
+     */
+    public SearchCoalescer getSearchCoalescer() {
+        return searchCoalescer;
+    }
+
+    /**
+     * @return The listener's bind result cache, or {@code null} if caching is disabled
+     */
+    public BindResultCache getBindCache() {
+        return bindCache;
+    }
+
+    /**
+     * @return Streaming settings for searches proxied through this pool
+     */
+    public SearchLimits getSearchLimits() {
+        return searchLimits;
+    }
+
+    /**
+     * @return The listener's hedging policy, or {@code null} if hedging is disabled
+     */
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * @return The server set's concurrency limiter, or {@code null} if operations are not limited
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * @return Number of connections currently borrowed by client sessions
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return The underlying UnboundID connection pool
+     */
+    public LDAPConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    @Override
+    public void close() {
+        logger.info("Closing backend connection pool '{}'", name);
+        connectionPool.close();
+        boundIdentities.clear();
+        if (searchCache != null) {
+            searchCache.clear();
+        }
+        if (bindCache != null) {
+            bindCache.clear();
+        }
+    }
+}
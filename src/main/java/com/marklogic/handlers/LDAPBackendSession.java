@@ -0,0 +1,1099 @@
+package com.marklogic.handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.BindRequest;
+import com.unboundid.ldap.sdk.BindResult;
+import com.unboundid.ldap.sdk.GenericSASLBindRequest;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.util.StaticUtils;
+
+/**
+ * Backend view of a single LDAP client connection.
+ *
+ * <p>Tracks the identity the client has bound as and borrows connections from
+ * the listener's {@link LDAPBackendPool} per operation, authenticated as that
+ * identity. Simple binds are replayable, so the session only stores the bind
+ * request. SASL binds are multi-stage and cannot be replayed on another
+ * connection, so a successful SASL bind pins the connection it was performed on
+ * to this session until the client rebinds or disconnects.
+ *
+ * <p>Simple paged results cookies are only valid on the backend connection
+ * that issued them, so while a client pages through a search the session holds
+ * on to that connection and uses it for the request carrying the cookie. A
+ * client may interleave a few paged searches; each holds its own connection
+ * until its last page, or until the client has not asked for the next page
+ * within the idle time of the {@link SearchLimits}.
+ *
+ * <p>Operations started asynchronously on a backend connection are registered
+ * under the client's message ID with {@link #track(int, Runnable)}. A client
+ * abandon request, or the client disconnecting, abandons them on the backend
+ * instead of letting the server finish work nobody will read.
+ *
+ * <p>When the listener has a {@link BindResultCache}, repeated simple binds with
+ * the same credentials are answered without contacting the backend.
+ *
+ * <p>When the listener routes by suffix, {@link #route(String)} and
+ * {@link #routeSearch(String, SearchScope)} return a session for the backend
+ * holding the target DN. Sessions for other backends than the listener's own
+ * pool are created on first use and share the client's simple bind identity;
+ * a bind is sent to the backend holding the bind DN.
+ *
+ * <p>When the listener has a {@link HedgePolicy}, searches and compares run
+ * through {@link #executeHedged(HedgedOperation)} and simple binds are hedged
+ * too: an operation without a response once the policy's delay has passed is
+ * sent again on a connection to another server, the first server to respond
+ * completes it and the other request is abandoned.
+ *
+ * <p>Sessions created without a pool (internal mode) have no backend and
+ * {@link #acquire()} fails with {@link ResultCode#UNAVAILABLE}.
+ */
+public final class LDAPBackendSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(LDAPBackendSession.class);
+
+    /**
+     * A unit of work executed against a borrowed backend connection.
+     *
+     * @param <T> Result type
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+        T process(LDAPConnection connection) throws LDAPException;
+    }
+
+    /**
+     * An operation that can be hedged: started on one or two connections, then
+     * completed on the connection whose server responds first.
+     *
+     * @param <T> Result type
+     */
+    public interface HedgedOperation<T> {
+        /**
+         * Sends the request on a connection.
+         *
+         * @return Completes when the server first responds, or the operation is abandoned
+         */
+        CompletableFuture<?> start(LDAPConnection connection) throws LDAPException;
+
+        /**
+         * Completes the operation on the connection that responded first.
+         */
+        T finish(LDAPConnection connection) throws LDAPException;
+
+        /**
+         * Abandons the request sent on the connection that lost.
+         */
+        void cancel(LDAPConnection connection);
+    }
+
+    // Runs hedged binds, which the SDK only offers synchronously; each bind
+    // blocks on the backend, so it gets a virtual thread
+    private static final ExecutorService HEDGE_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ldap-hedge-", 0).factory());
+
+    // Releases the connections of paged searches the client stopped paging through
+    private static final ScheduledExecutorService PAGED_EXPIRY = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ldap-paged-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Longest wait for a hedged bind when the connection has no response timeout
+    private static final long DEFAULT_BIND_TIMEOUT_MILLIS = 30_000;
+
+    private final LDAPBackendPool pool;
+
+    // Suffix routing of the listener, or null when every operation uses the pool above
+    private final SuffixRouter<LDAPBackendPool> router;
+
+    // Sessions for the other backends of the router, by pool; created on first use
+    private final Map<LDAPBackendPool, LDAPBackendSession> routes = new LinkedHashMap<>();
+
+    // Identity for operations on pooled connections; null means anonymous.
+    private SimpleBindRequest identity;
+
+    // Connection holding a non-replayable (SASL) bind, if any. Set under the
+    // session lock; volatile so pooled connections are released without it.
+    private volatile LDAPConnection pinned;
+
+    // True while a multi-stage SASL bind is waiting for the client's next stage.
+    private boolean saslInProgress;
+
+    // Connections of the client's unfinished paged searches, by the cookie each
+    // returned last, oldest first.
+    private final Map<ByteBuffer, PagedSearch> pagedSearches = new LinkedHashMap<>();
+
+    // Abandon actions of operations in progress on the backend, by client message ID.
+    private final Map<Integer, Runnable> inFlight = new ConcurrentHashMap<>();
+
+    // Backend server ("host:port", or a LDAPMetrics tag) used by the current operation.
+    // Per thread, since a pipelined client can have several operations in progress.
+    // Shared with routed sessions, so it reflects whichever backend was used.
+    private final ThreadLocal<String> lastServer;
+
+    // DN reported by the client's last successful bind.
+    private String boundDN = LDAPBackendPool.ANONYMOUS;
+
+    // Incremented whenever a bind or disconnect resets the session, so a bind
+    // completing afterwards does not record its outcome.
+    private long bindGeneration;
+
+    /**
+     * A backend connection waiting for the client to ask for the next page.
+     *
+     * @param idleSince {@link System#nanoTime()} when the last page was returned
+     */
+    private record PagedSearch(LDAPConnection connection, long idleSince) {
+    }
+
+    /**
+     * @param pool Listener backend pool, or {@code null} if the listener has no backend
+     */
+    public LDAPBackendSession(LDAPBackendPool pool) {
+        this(pool, null, new ThreadLocal<>());
+    }
+
+    /**
+     * @param pool   Listener backend pool, or {@code null} if the listener has no backend
+     * @param router Suffix routing of the listener, or {@code null} if it does not route
+     */
+    public LDAPBackendSession(LDAPBackendPool pool, SuffixRouter<LDAPBackendPool> router) {
+        this(pool, router, new ThreadLocal<>());
+    }
+
+    private LDAPBackendSession(LDAPBackendPool pool, SuffixRouter<LDAPBackendPool> router,
+                               ThreadLocal<String> lastServer) {
+        this.pool = pool;
+        this.router = router;
+        this.lastServer = lastServer;
+    }
+
+    /**
+     * @param dn DN of the entry an operation targets
+     * @return Session for the backend holding the entry
+     */
+    public LDAPBackendSession route(String dn) {
+        return router == null ? this : sessionFor(router.route(dn));
+    }
+
+    /**
+     * @param baseDN Search base DN
+     * @param scope  Search scope
+     * @return Sessions for every backend holding entries the search can reach
+     */
+    public List<LDAPBackendSession> routeSearch(String baseDN, SearchScope scope) {
+        if (router == null) {
+            return List.of(this);
+        }
+        List<LDAPBackendSession> sessions = new ArrayList<>();
+        for (LDAPBackendPool target : router.routeSearch(baseDN, scope)) {
+            sessions.add(sessionFor(target));
+        }
+        return sessions;
+    }
+
+    private synchronized LDAPBackendSession sessionFor(LDAPBackendPool target) {
+        if (target == null || target == pool) {
+            return this;
+        }
+        return routes.computeIfAbsent(target, p -> {
+            LDAPBackendSession session = new LDAPBackendSession(p, null, lastServer);
+            session.adopt(identity, boundDN);
+            return session;
+        });
+    }
+
+    /**
+     * Takes over the simple bind identity of the session that performed the
+     * client's bind on another backend.
+     */
+    private synchronized void adopt(SimpleBindRequest identity, String boundDN) {
+        releasePaged();
+        unpin();
+        saslInProgress = false;
+        this.identity = identity;
+        this.boundDN = boundDN;
+    }
+
+    private synchronized List<LDAPBackendSession> routedSessions() {
+        return new ArrayList<>(routes.values());
+    }
+
+    /**
+     * @return {@code true} if this session can reach a backend server
+     */
+    public boolean hasBackend() {
+        return pool != null;
+    }
+
+    /**
+     * @return DN the client is currently bound as, or an empty string for anonymous
+     */
+    public synchronized String getBoundDN() {
+        return boundDN;
+    }
+
+    /**
+     * @return {@code true} while the session holds a non-replayable (SASL) bind
+     *         on a dedicated connection
+     */
+    public synchronized boolean isPinned() {
+        return pinned != null;
+    }
+
+    /**
+     * @return The listener's search result cache, or {@code null} if caching is disabled
+     */
+    public SearchResultCache getSearchCache() {
+        return pool == null ? null : pool.getSearchCache();
+    }
+
+    /**
+     * @return The listener's search coalescer, or {@code null} if coalescing is disabled
+     */
+    public SearchCoalescer getSearchCoalescer() {
+        return pool == null ? null : pool.getSearchCoalescer();
+    }
+
+    /**
+     * Returns and clears the backend server used since the last call, for metrics.
+     *
+     * @return {@code host:port} of the backend server, {@link LDAPMetrics#BACKEND_CACHE}
+     *         if the operation was answered from a cache, {@link LDAPMetrics#BACKEND_COALESCED}
+     *         if it shared another client's search, {@link LDAPMetrics#BACKEND_FANOUT}
+     *         if it ran on several routed backends, or {@code null} if no
+     *         backend was used
+     */
+    public String takeLastServer() {
+        String server = lastServer.get();
+        lastServer.remove();
+        return server;
+    }
+
+    /**
+     * Notes that the current operation was answered from a result cache.
+     */
+    public void servedFromCache() {
+        lastServer.set(LDAPMetrics.BACKEND_CACHE);
+    }
+
+    /**
+     * Notes that the current search was answered from another client's identical search.
+     */
+    public void servedFromCoalescedSearch() {
+        lastServer.set(LDAPMetrics.BACKEND_COALESCED);
+    }
+
+    /**
+     * Notes that the current search ran on the backends of several routed suffixes.
+     * Its branches run on other threads, so their backend servers are not recorded.
+     */
+    public void servedByFanOut() {
+        lastServer.set(LDAPMetrics.BACKEND_FANOUT);
+    }
+
+    /**
+     * @return Streaming settings for searches proxied for this session
+     */
+    public SearchLimits getSearchLimits() {
+        return pool == null ? SearchLimits.DEFAULT : pool.getSearchLimits();
+    }
+
+    /**
+     * Registers an operation in progress on the backend so that the client can abandon it.
+     *
+     * @param messageID Client message ID of the operation
+     * @param abandon   Abandons the operation on the backend and wakes the thread waiting for it
+     */
+    public void track(int messageID, Runnable abandon) {
+        inFlight.put(messageID, abandon);
+    }
+
+    /**
+     * Removes an operation registered with {@link #track(int, Runnable)} once it has completed.
+     */
+    public void untrack(int messageID) {
+        inFlight.remove(messageID);
+    }
+
+    /**
+     * Abandons a client operation in progress on the backend.
+     *
+     * @param messageID Client message ID of the operation to abandon
+     * @return {@code true} if the operation was in progress
+     */
+    public boolean abandon(int messageID) {
+        boolean found = false;
+        for (LDAPBackendSession routed : routedSessions()) {
+            found |= routed.abandon(messageID);
+        }
+        Runnable abandon = inFlight.remove(messageID);
+        if (abandon == null) {
+            return found;
+        }
+        logger.debug("Abandoning backend operation for client message {}", messageID);
+        runQuietly(abandon);
+        return true;
+    }
+
+    private void abandonAll() {
+        List<Runnable> pending = new ArrayList<>(inFlight.values());
+        inFlight.clear();
+        if (!pending.isEmpty()) {
+            logger.debug("Client disconnected; abandoning {} backend operation(s)", pending.size());
+        }
+        pending.forEach(LDAPBackendSession::runQuietly);
+    }
+
+    private static void runQuietly(Runnable abandon) {
+        try {
+            abandon.run();
+        } catch (RuntimeException e) {
+            logger.debug("Error abandoning backend operation: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Borrows a backend connection authenticated as the client's identity.
+     * Every successful call must be paired with {@link #release(LDAPConnection)}
+     * or {@link #release(LDAPConnection, LDAPException)}.
+     *
+     * <p>The session lock is only held to read the identity: waiting for a pooled
+     * connection and re-authenticating it must not stop the client's other
+     * operations from starting or returning their connections.
+     */
+    public LDAPConnection acquire() throws LDAPException {
+        if (pool == null) {
+            throw new LDAPException(ResultCode.UNAVAILABLE, "No backend server configured for this listener");
+        }
+        LDAPConnection held;
+        SimpleBindRequest as;
+        synchronized (this) {
+            held = pinned;
+            as = identity;
+        }
+        LDAPConnection connection = held != null ? held : pool.borrow(as);
+        lastServer.set(connection.getHostPort());
+        return connection;
+    }
+
+    /**
+     * Returns a connection obtained from {@link #acquire()}.
+     */
+    public void release(LDAPConnection connection) {
+        if (connection != null && connection != pinned) {
+            pool.release(connection);
+        }
+    }
+
+    /**
+     * Returns a connection obtained from {@link #acquire()} after the operation
+     * failed, discarding it if the failure left it unusable.
+     */
+    public void release(LDAPConnection connection, LDAPException failure) {
+        if (connection == null) {
+            return;
+        }
+        if (connection != pinned) {
+            pool.release(connection, failure);
+            return;
+        }
+        synchronized (this) {
+            if (connection == pinned && !ResultCode.isConnectionUsable(failure.getResultCode())) {
+                logger.warn("Pinned backend connection lost; session reverts to anonymous");
+                pool.releaseDefunct(pinned);
+                pinned = null;
+                identity = null;
+                boundDN = LDAPBackendPool.ANONYMOUS;
+            }
+        }
+    }
+
+    /**
+     * Waits for the server set's concurrency limit to admit an operation.
+     * Every successful call must be paired with {@link LDAPBackendPool#leave()}.
+     */
+    private void admit(boolean priority) throws LDAPException {
+        if (pool == null) {
+            throw new LDAPException(ResultCode.UNAVAILABLE, "No backend server configured for this listener");
+        }
+        pool.admit(priority);
+    }
+
+    /**
+     * Borrows a connection, runs the operation and returns the connection to the pool.
+     */
+    public <T> T execute(Operation<T> operation) throws LDAPException {
+        return execute(operation, null);
+    }
+
+    /**
+     * Borrows a connection, runs the operation and returns the connection to the
+     * pool. The backend's latency is measured up to its first response, so time
+     * spent delivering streamed results to the client is not counted.
+     *
+     * @param operation Operation to run on the connection
+     * @param responded {@link System#nanoTime()} of the backend's first response, or 0 if none yet
+     */
+    public <T> T execute(Operation<T> operation, LongSupplier responded) throws LDAPException {
+        admit(false);
+        try {
+            return run(operation, responded);
+        } finally {
+            pool.leave();
+        }
+    }
+
+    private <T> T run(Operation<T> operation, LongSupplier responded) throws LDAPException {
+        LDAPConnection connection = acquire();
+        long start = System.nanoTime();
+        try {
+            T result = operation.process(connection);
+            pool.recordResult(connection, latency(start, responded), ResultCode.SUCCESS);
+            release(connection);
+            return result;
+        } catch (LDAPException e) {
+            pool.recordResult(connection, latency(start, responded), e.getResultCode());
+            release(connection, e);
+            throw e;
+        } catch (RuntimeException e) {
+            release(connection, new LDAPException(ResultCode.LOCAL_ERROR, e));
+            throw e;
+        }
+    }
+
+    /**
+     * @return {@code true} if operations of this session are hedged
+     */
+    public synchronized boolean isHedged() {
+        return pool != null && pool.getHedgePolicy() != null && pinned == null;
+    }
+
+    /**
+     * Runs an operation, sending it to a second server if the first has not
+     * responded within the hedge delay and the hedge budget allows it.
+     */
+    public <T> T executeHedged(HedgedOperation<T> operation) throws LDAPException {
+        admit(false);
+        try {
+            return runHedged(operation);
+        } finally {
+            pool.leave();
+        }
+    }
+
+    private <T> T runHedged(HedgedOperation<T> operation) throws LDAPException {
+        HedgePolicy hedge = pool.getHedgePolicy();
+        if (hedge == null || isPinned()) {
+            CompletableFuture<Long> responded = new CompletableFuture<>();
+            return run(connection -> {
+                operation.start(connection).whenComplete((r, e) -> responded.complete(System.nanoTime()));
+                return operation.finish(connection);
+            }, () -> responded.getNow(0L));
+        }
+
+        LDAPConnection connection = acquire();
+        long start = System.nanoTime();
+        CompletableFuture<Long> firstResponse = new CompletableFuture<>();
+        firstResponse.thenAccept(at -> hedge.recordLatency(at - start));
+        LongSupplier responded = () -> firstResponse.getNow(0L);
+        try {
+            CompletableFuture<?> primaryResponded = operation.start(connection);
+            primaryResponded.whenComplete((r, e) -> firstResponse.complete(System.nanoTime()));
+            long delay = hedge.getDelayNanos();
+            if (delay >= 0 && !awaitResponse(primaryResponded, delay) && hedge.tryHedge()) {
+                connection = race(operation, hedge, connection, primaryResponded, firstResponse);
+            }
+        } catch (LDAPException e) {
+            release(connection, e);
+            throw e;
+        }
+
+        try {
+            T result = operation.finish(connection);
+            pool.recordResult(connection, latency(start, responded), ResultCode.SUCCESS);
+            release(connection);
+            return result;
+        } catch (LDAPException e) {
+            pool.recordResult(connection, latency(start, responded), e.getResultCode());
+            release(connection, e);
+            throw e;
+        } catch (RuntimeException e) {
+            release(connection, new LDAPException(ResultCode.LOCAL_ERROR, e));
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a hedge of an operation to another server and waits for either
+     * server to respond.
+     *
+     * @return The connection whose server responded first; the other one has been released
+     */
+    private <T> LDAPConnection race(HedgedOperation<T> operation, HedgePolicy hedge, LDAPConnection primary,
+                                    CompletableFuture<?> primaryResponded,
+                                    CompletableFuture<Long> firstResponse) throws LDAPException {
+        SimpleBindRequest wanted;
+        synchronized (this) {
+            wanted = identity;
+        }
+        LDAPConnection alternate = pool.borrowAlternate(wanted, primary.getHostPort(), false);
+        if (alternate == null) {
+            return primary;
+        }
+        try {
+            operation.start(alternate).whenComplete((r, e) -> firstResponse.complete(System.nanoTime()));
+        } catch (LDAPException e) {
+            pool.release(alternate, e);
+            return primary;
+        }
+        logger.debug("Hedging operation on {}; no response yet from {}", alternate.getHostPort(), primary.getHostPort());
+
+        if (!awaitResponse(firstResponse, Long.MAX_VALUE)) {
+            // Interrupted: give up on both
+            operation.cancel(primary);
+            operation.cancel(alternate);
+            pool.release(alternate);
+            throw new LDAPException(ResultCode.CANCELED, "Interrupted while waiting for the backend");
+        }
+        if (primaryResponded.isDone()) {
+            operation.cancel(alternate);
+            pool.release(alternate);
+            return primary;
+        }
+        hedge.hedgeWon();
+        operation.cancel(primary);
+        release(primary);
+        lastServer.set(alternate.getHostPort());
+        return alternate;
+    }
+
+    /**
+     * @return Nanoseconds from the start of an operation to the backend's first
+     *         response, or to now if the backend's response time is not known
+     */
+    private static long latency(long start, LongSupplier responded) {
+        long at = responded == null ? 0 : responded.getAsLong();
+        return (at != 0 ? at : System.nanoTime()) - start;
+    }
+
+    /**
+     * Waits for a response for at most the given time.
+     *
+     * @return {@code false} if no response arrived in time or the wait was interrupted
+     */
+    private static boolean awaitResponse(CompletableFuture<?> response, long nanos) {
+        try {
+            response.get(nanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Runs one page of a client-driven simple paged results search.
+     *
+     * <p>The connection that returned the previous page is used if the request
+     * presents that page's cookie; otherwise a new one is borrowed. If the
+     * backend indicates more pages follow, the connection is held for the next
+     * request instead of returning to the pool.
+     *
+     * @param cookie    Cookie from the client's paged results control
+     * @param operation Search to run on the connection
+     */
+    public SearchResult executePage(ASN1OctetString cookie, Operation<SearchResult> operation)
+            throws LDAPException {
+        return executePage(cookie, operation, null);
+    }
+
+    /**
+     * Runs one page of a client-driven simple paged results search, measuring
+     * the backend's latency up to its first response.
+     *
+     * @param cookie    Cookie from the client's paged results control
+     * @param operation Search to run on the connection
+     * @param responded {@link System#nanoTime()} of the backend's first response, or 0 if none yet
+     */
+    public SearchResult executePage(ASN1OctetString cookie, Operation<SearchResult> operation,
+                                    LongSupplier responded) throws LDAPException {
+        admit(false);
+        try {
+            return runPage(cookie, operation, responded);
+        } finally {
+            pool.leave();
+        }
+    }
+
+    private SearchResult runPage(ASN1OctetString cookie, Operation<SearchResult> operation,
+                                 LongSupplier responded) throws LDAPException {
+        PagedSearch held = null;
+        if (cookie != null && cookie.getValueLength() > 0) {
+            synchronized (this) {
+                held = pagedSearches.remove(ByteBuffer.wrap(cookie.getValue()));
+            }
+        }
+        LDAPConnection connection;
+        if (held != null) {
+            connection = held.connection();
+            lastServer.set(connection.getHostPort());
+        } else {
+            connection = acquire();
+        }
+
+        long start = System.nanoTime();
+        try {
+            SearchResult result = operation.process(connection);
+            pool.recordResult(connection, latency(start, responded), result.getResultCode());
+            SimplePagedResultsControl response = SimplePagedResultsControl.get(result);
+            if (response != null && response.moreResultsToReturn()) {
+                holdPaged(connection, response.getCookie());
+            } else {
+                release(connection);
+            }
+            return result;
+        } catch (LDAPException e) {
+            pool.recordResult(connection, latency(start, responded), e.getResultCode());
+            release(connection, e);
+            throw e;
+        } catch (RuntimeException e) {
+            release(connection, new LDAPException(ResultCode.LOCAL_ERROR, e));
+            throw e;
+        }
+    }
+
+    /**
+     * Authenticates the client against the backend and records the resulting
+     * identity for subsequent operations.
+     *
+     * @param bindRequest Bind request received from the client
+     * @return Bind result from the backend
+     * @throws LDAPException if the bind fails; the session is then anonymous
+     */
+    public BindResult bind(BindRequest bindRequest) throws LDAPException {
+        if (router == null) {
+            return bindLocal(bindRequest);
+        }
+        String bindDN = bindRequest instanceof SimpleBindRequest simple ? simple.getBindDN()
+                : bindRequest instanceof GenericSASLBindRequest sasl ? sasl.getBindDN() : null;
+        LDAPBackendSession target = bindDN == null || bindDN.isEmpty() ? this : route(bindDN);
+        try {
+            return target == this ? bindLocal(bindRequest) : target.bindLocal(bindRequest);
+        } finally {
+            // The other backends take over the outcome; a SASL bind cannot be shared
+            SimpleBindRequest shared;
+            String sharedDN;
+            synchronized (target) {
+                shared = target.identity;
+                sharedDN = shared == null ? LDAPBackendPool.ANONYMOUS : target.boundDN;
+            }
+            if (target != this) {
+                adopt(shared, sharedDN);
+            }
+            for (LDAPBackendSession routed : routedSessions()) {
+                if (routed != target) {
+                    routed.adopt(shared, sharedDN);
+                }
+            }
+        }
+    }
+
+    private BindResult bindLocal(BindRequest bindRequest) throws LDAPException {
+        if (pool == null) {
+            throw new LDAPException(ResultCode.UNAVAILABLE, "No backend server configured for this listener");
+        }
+
+        // Repeated simple binds with the same credentials are answered from the cache
+        BindResultCache bindCache = bindRequest instanceof SimpleBindRequest simple && isCacheable(simple)
+                ? pool.getBindCache() : null;
+        if (bindCache != null) {
+            BindResult cached = bindFromCache((SimpleBindRequest) bindRequest, bindCache);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // Binds are admitted ahead of other operations waiting for the backend. The
+        // wait happens outside the session lock so it does not hold up the session.
+        admit(true);
+        try {
+            return bindBackend(bindRequest, bindCache);
+        } finally {
+            pool.leave();
+        }
+    }
+
+    /**
+     * @return The cached outcome of a simple bind, or {@code null} if it is not cached
+     * @throws LDAPException with {@link ResultCode#INVALID_CREDENTIALS} if the
+     *         credentials were rejected before
+     */
+    private synchronized BindResult bindFromCache(SimpleBindRequest simple, BindResultCache bindCache)
+            throws LDAPException {
+        ResultCode cached = bindCache.get(simple.getBindDN(), simple.getPassword().getValue());
+        if (cached == null) {
+            return null;
+        }
+        // Paged searches started under the previous identity cannot continue
+        releasePaged();
+        unpin();
+        saslInProgress = false;
+        bindGeneration++;
+        servedFromCache();
+        if (cached == ResultCode.SUCCESS) {
+            identity = simple;
+            boundDN = simple.getBindDN();
+            return new BindResult(-1, ResultCode.SUCCESS, null, null,
+                    StaticUtils.NO_STRINGS, StaticUtils.NO_CONTROLS);
+        }
+        identity = null;
+        boundDN = LDAPBackendPool.ANONYMOUS;
+        throw new LDAPException(ResultCode.INVALID_CREDENTIALS);
+    }
+
+    /**
+     * Sends the bind to the backend. The session state is reset and the
+     * connection chosen under the session lock, but the bind itself runs outside
+     * it, so the client's other operations and its disconnect are not held up by
+     * a slow backend. The outcome is only recorded if no other bind or disconnect
+     * has reset the session in the meantime.
+     */
+    private BindResult bindBackend(BindRequest bindRequest, BindResultCache bindCache)
+            throws LDAPException {
+        boolean simpleBind = bindRequest instanceof SimpleBindRequest;
+        LDAPConnection connection = null;
+        long generation;
+        synchronized (this) {
+            // Paged searches started under the previous identity cannot continue
+            releasePaged();
+            if (saslInProgress && pinned != null && !simpleBind) {
+                // Next stage of a multi-stage SASL exchange must use the same connection
+                connection = pinned;
+                pinned = null;
+            } else {
+                // A new bind replaces any previous authentication state
+                unpin();
+            }
+            saslInProgress = false;
+            identity = null;
+            boundDN = LDAPBackendPool.ANONYMOUS;
+            generation = ++bindGeneration;
+        }
+        boolean nextStage = connection != null;
+        if (!nextStage) {
+            connection = pool.borrowForBind();
+        }
+        lastServer.set(connection.getHostPort());
+
+        long start = System.nanoTime();
+        CompletableFuture<BindResult> hedged = null;
+        if (simpleBind && pool.getHedgePolicy() != null) {
+            BindAttempt winner = hedgedBind(pool.getHedgePolicy(), connection, (SimpleBindRequest) bindRequest);
+            connection = winner.connection();
+            hedged = winner.result();
+            lastServer.set(connection.getHostPort());
+        }
+        try {
+            BindResult result = hedged != null ? bindResult(hedged) : connection.bind(bindRequest);
+            pool.recordResult(connection, System.nanoTime() - start, ResultCode.SUCCESS);
+            if (simpleBind) {
+                SimpleBindRequest simple = (SimpleBindRequest) bindRequest;
+                pool.recordIdentity(connection, simple.getBindDN());
+                pool.release(connection);
+                if (bindCache != null && result.getResponseControls().length == 0) {
+                    bindCache.put(simple.getBindDN(), simple.getPassword().getValue(), ResultCode.SUCCESS);
+                }
+                synchronized (this) {
+                    if (generation == bindGeneration) {
+                        identity = isAnonymous(simple) ? null : simple;
+                        boundDN = identity == null ? LDAPBackendPool.ANONYMOUS : simple.getBindDN();
+                    }
+                }
+            } else if (!pin(connection, generation, false)) {
+                pool.releaseDefunct(connection);
+            } else {
+                logger.debug("Pinned backend connection for {} bind", bindRequest.getBindType());
+                if (bindRequest instanceof GenericSASLBindRequest sasl && sasl.getBindDN() != null) {
+                    synchronized (this) {
+                        if (generation == bindGeneration) {
+                            boundDN = sasl.getBindDN();
+                        }
+                    }
+                }
+            }
+            return result;
+        } catch (LDAPException e) {
+            pool.recordResult(connection, System.nanoTime() - start, e.getResultCode());
+            if (bindCache != null) {
+                SimpleBindRequest simple = (SimpleBindRequest) bindRequest;
+                bindCache.put(simple.getBindDN(), simple.getPassword().getValue(), e.getResultCode());
+            }
+            if (!simpleBind && e.getResultCode() == ResultCode.SASL_BIND_IN_PROGRESS) {
+                if (!pin(connection, generation, true)) {
+                    pool.releaseDefunct(connection);
+                }
+            } else if (nextStage) {
+                pool.releaseDefunct(connection);
+            } else {
+                pool.recordIdentity(connection, LDAPBackendPool.ANONYMOUS);
+                pool.release(connection, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Pins the connection of a SASL bind to the session, unless another bind or
+     * the client's disconnect reset the session while the bind was in progress.
+     *
+     * @return {@code false} if the connection was not pinned and must be discarded
+     */
+    private synchronized boolean pin(LDAPConnection connection, long generation, boolean inProgress) {
+        if (generation != bindGeneration) {
+            return false;
+        }
+        pinned = connection;
+        saslInProgress = inProgress;
+        return true;
+    }
+
+    private record BindAttempt(LDAPConnection connection, CompletableFuture<BindResult> result) {
+    }
+
+    /**
+     * Runs a simple bind on a pooled connection, sending it to a second server
+     * as well if the first has not responded within the hedge delay. Binds
+     * cannot be abandoned, so the losing bind is left to finish and its
+     * connection is then returned to the pool.
+     *
+     * @return The completed bind that responded first
+     * @throws LDAPException with {@link ResultCode#TIMEOUT} if no server responded
+     *         within the connection's response timeout for binds
+     */
+    private BindAttempt hedgedBind(HedgePolicy hedge, LDAPConnection connection, SimpleBindRequest bindRequest)
+            throws LDAPException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(bindTimeoutMillis(connection));
+        BindAttempt winner = new BindAttempt(connection, bindAsync(connection, bindRequest));
+        long delay = hedge.getDelayNanos();
+        if (delay >= 0 && !awaitResponse(winner.result(), delay) && hedge.tryHedge()) {
+            LDAPConnection alternate = pool.borrowAlternate(null, connection.getHostPort(), true);
+            if (alternate != null) {
+                logger.debug("Hedging bind on {}; no response yet from {}",
+                        alternate.getHostPort(), connection.getHostPort());
+                BindAttempt second = new BindAttempt(alternate, bindAsync(alternate, bindRequest.duplicate()));
+                awaitResponse(CompletableFuture.anyOf(winner.result(), second.result()), deadline - System.nanoTime());
+                BindAttempt loser = second;
+                if (!winner.result().isDone() && second.result().isDone()) {
+                    hedge.hedgeWon();
+                    loser = winner;
+                    winner = second;
+                }
+                releaseWhenBound(loser, bindRequest.getBindDN());
+            }
+        }
+        if (!awaitResponse(winner.result(), deadline - System.nanoTime())) {
+            // The bind may still complete, so its connection is discarded once it does
+            BindAttempt unanswered = winner;
+            pool.recordResult(unanswered.connection(), System.nanoTime() - start, ResultCode.TIMEOUT);
+            unanswered.result().whenComplete((result, failure) -> pool.releaseDefunct(unanswered.connection()));
+            if (Thread.currentThread().isInterrupted()) {
+                throw new LDAPException(ResultCode.CANCELED, "Interrupted while waiting for the backend");
+            }
+            throw new LDAPException(ResultCode.TIMEOUT,
+                    "No response to the bind from " + unanswered.connection().getHostPort());
+        }
+        hedge.recordLatency(System.nanoTime() - start);
+        return winner;
+    }
+
+    private static long bindTimeoutMillis(LDAPConnection connection) {
+        long timeout = connection.getConnectionOptions().getResponseTimeoutMillis(OperationType.BIND);
+        return timeout > 0 ? timeout : DEFAULT_BIND_TIMEOUT_MILLIS;
+    }
+
+    private static CompletableFuture<BindResult> bindAsync(LDAPConnection connection, SimpleBindRequest bindRequest) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return connection.bind(bindRequest);
+            } catch (LDAPException e) {
+                throw new CompletionException(e);
+            }
+        }, HEDGE_EXECUTOR);
+    }
+
+    /**
+     * @return The result of a bind that {@link #hedgedBind} has seen complete
+     */
+    private static BindResult bindResult(CompletableFuture<BindResult> bind) throws LDAPException {
+        try {
+            return bind.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof LDAPException le) {
+                throw le;
+            }
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Backend bind failed", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the connection of a losing hedged bind to the pool once the bind has completed.
+     */
+    private void releaseWhenBound(BindAttempt loser, String bindDN) {
+        loser.result().whenComplete((result, failure) -> {
+            if (failure == null) {
+                pool.recordIdentity(loser.connection(), bindDN);
+                pool.release(loser.connection());
+            } else if (failure.getCause() instanceof LDAPException le) {
+                pool.recordIdentity(loser.connection(), LDAPBackendPool.ANONYMOUS);
+                pool.release(loser.connection(), le);
+            } else {
+                pool.releaseDefunct(loser.connection());
+            }
+        });
+    }
+
+    /**
+     * Abandons the client's operations still running on the backend and releases
+     * any backend state held by the session. Called when the client disconnects.
+     */
+    public void close() {
+        // Not under the session lock: a waiting operation must be able to unwind
+        for (LDAPBackendSession routed : routedSessions()) {
+            routed.close();
+        }
+        abandonAll();
+        synchronized (this) {
+            releasePaged();
+            unpin();
+            saslInProgress = false;
+            identity = null;
+            boundDN = LDAPBackendPool.ANONYMOUS;
+            bindGeneration++;
+        }
+    }
+
+    /**
+     * Keeps the connection of a paged search for the client's next page request.
+     * The search that has waited longest gives up its connection if the client
+     * has too many open, and the connection is released if the client does not
+     * ask for the next page in time.
+     */
+    private void holdPaged(LDAPConnection connection, ASN1OctetString cookie) {
+        SearchLimits limits = getSearchLimits();
+        List<LDAPConnection> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (connection == pinned) {
+                // The pinned connection is used for every operation anyway
+                return;
+            }
+            PagedSearch previous = pagedSearches.put(ByteBuffer.wrap(cookie.getValue()),
+                    new PagedSearch(connection, System.nanoTime()));
+            if (previous != null) {
+                // Another search's connection returned the same cookie; only one can continue
+                evicted.add(previous.connection());
+            }
+            Iterator<PagedSearch> oldest = pagedSearches.values().iterator();
+            while (pagedSearches.size() > limits.getPagedMaxOpen()) {
+                evicted.add(oldest.next().connection());
+                oldest.remove();
+            }
+        }
+        if (!evicted.isEmpty()) {
+            logger.debug("Client has too many paged searches open; releasing {} backend connection(s)",
+                    evicted.size());
+            evicted.forEach(this::release);
+        }
+        PAGED_EXPIRY.schedule(this::expirePaged, limits.getPagedIdleMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Releases the connections of paged searches whose next page was not requested in time.
+     */
+    private void expirePaged() {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(getSearchLimits().getPagedIdleMillis());
+        long now = System.nanoTime();
+        List<LDAPConnection> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<PagedSearch> searches = pagedSearches.values().iterator();
+            while (searches.hasNext()) {
+                PagedSearch search = searches.next();
+                if (now - search.idleSince() >= idleNanos) {
+                    expired.add(search.connection());
+                    searches.remove();
+                }
+            }
+        }
+        if (!expired.isEmpty()) {
+            logger.debug("Releasing {} backend connection(s) of paged searches left idle", expired.size());
+            expired.forEach(this::release);
+        }
+    }
+
+    /**
+     * @return Number of client-paged searches holding a backend connection
+     */
+    synchronized int getOpenPagedSearches() {
+        return pagedSearches.size();
+    }
+
+    private void releasePaged() {
+        for (PagedSearch search : pagedSearches.values()) {
+            release(search.connection());
+        }
+        pagedSearches.clear();
+    }
+
+    private void unpin() {
+        if (pinned != null) {
+            // The SASL-authenticated state cannot be reverted cheaply, so discard it.
+            pool.releaseDefunct(pinned);
+            pinned = null;
+        }
+    }
+
+    /**
+     * Only authenticated simple binds without request controls are cached;
+     * anonymous and unauthenticated (empty password) binds always reach the backend.
+     */
+    private static boolean isCacheable(SimpleBindRequest request) {
+        return !isAnonymous(request) && request.getControls().length == 0
+                && request.getPassword() != null && request.getPassword().getValueLength() > 0;
+    }
+
+    private static boolean isAnonymous(SimpleBindRequest request) {
+        return request.getBindDN() == null || request.getBindDN().isEmpty();
+    }
+}
@@ -0,0 +1,115 @@
+package com.marklogic.handlers;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Structural limits for search filters received from clients.
+ *
+ * <p>Filters arrive already decoded into a {@link Filter} tree, and the proxy
+ * re-encodes that tree when forwarding it, so string-level injection is not
+ * possible at this point. What remains worth guarding against is filters that are
+ * expensive for the backend to evaluate. The validator walks the component tree
+ * once and rejects filters that nest too deeply, contain too many components or
+ * carry oversized assertion values. It reads lengths from the encoded values and
+ * allocates nothing.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class LDAPFilterValidator {
+
+    /**
+     * Reason a filter was rejected.
+     */
+    public enum Violation {
+        /** AND/OR/NOT nesting exceeds the maximum depth. */
+        TOO_DEEP,
+        /** The filter contains more components than allowed. */
+        TOO_MANY_COMPONENTS,
+        /** An assertion or substring value is longer than allowed. */
+        ASSERTION_TOO_LONG
+    }
+
+    private static final Violation[] VIOLATIONS = Violation.values();
+
+    private final int maxDepth;
+    private final int maxComponents;
+    private final int maxAssertionLength;
+
+    /**
+     * @param maxDepth           Maximum nesting depth; a simple filter has depth 1
+     * @param maxComponents      Maximum number of filter components, including AND/OR/NOT
+     * @param maxAssertionLength Maximum length in bytes of any assertion or substring value
+     */
+    public LDAPFilterValidator(int maxDepth, int maxComponents, int maxAssertionLength) {
+        this.maxDepth = maxDepth;
+        this.maxComponents = maxComponents;
+        this.maxAssertionLength = maxAssertionLength;
+    }
+
+    /**
+     * @param filter Parsed search filter
+     * @return {@code null} if the filter is acceptable, otherwise the first limit it exceeds
+     */
+    public Violation validate(Filter filter) {
+        int remaining = walk(filter, 1, maxComponents);
+        return remaining >= 0 ? null : VIOLATIONS[-remaining - 1];
+    }
+
+    /**
+     * Checks a filter subtree.
+     *
+     * @return Components still allowed after this subtree, or
+     *         {@code -(violation ordinal + 1)} if a limit was exceeded
+     */
+    private int walk(Filter filter, int depth, int remaining) {
+        if (depth > maxDepth) {
+            return fail(Violation.TOO_DEEP);
+        }
+        if (--remaining < 0) {
+            return fail(Violation.TOO_MANY_COMPONENTS);
+        }
+
+        switch (filter.getFilterType()) {
+            case Filter.FILTER_TYPE_AND:
+            case Filter.FILTER_TYPE_OR:
+                for (Filter component : filter.getComponents()) {
+                    remaining = walk(component, depth + 1, remaining);
+                    if (remaining < 0) {
+                        return remaining;
+                    }
+                }
+                return remaining;
+
+            case Filter.FILTER_TYPE_NOT:
+                return walk(filter.getNOTComponent(), depth + 1, remaining);
+
+            case Filter.FILTER_TYPE_SUBSTRING:
+                if (tooLong(filter.getRawSubInitialValue()) || tooLong(filter.getRawSubFinalValue())) {
+                    return fail(Violation.ASSERTION_TOO_LONG);
+                }
+                for (ASN1OctetString any : filter.getRawSubAnyValues()) {
+                    if (tooLong(any)) {
+                        return fail(Violation.ASSERTION_TOO_LONG);
+                    }
+                }
+                return remaining;
+
+            case Filter.FILTER_TYPE_PRESENCE:
+                return remaining;
+
+            default:
+                // Equality, ordering, approximate and extensible match
+                return tooLong(filter.getRawAssertionValue()) ? fail(Violation.ASSERTION_TOO_LONG) : remaining;
+        }
+    }
+
+    private boolean tooLong(ASN1OctetString value) {
+        return value != null && value.getValueLength() > maxAssertionLength;
+    }
+
+    private static int fail(Violation violation) {
+        return -violation.ordinal() - 1;
+    }
+}
@@ -0,0 +1,78 @@
+package com.marklogic.handlers;
+
+/**
+ * Per-listener state shared by every client connection of one proxy listener.
+ *
+ * <p>Created by {@code LDAPListenerService} when the listener starts and passed
+ * to the request handler, which hands it on to each per-client instance.
+ */
+public final class LDAPListenerContext {
+
+    private final String name;
+    private final LDAPBackendPool backendPool;
+    private final ClientRateLimiter rateLimiter;
+    private final LDAPMetrics metrics;
+    private final SuffixRouter<LDAPBackendPool> router;
+
+    /**
+     * @param name        Listener name
+     * @param backendPool Shared backend connection pool, or {@code null} in internal mode
+     * @param rateLimiter Per-client rate limiter, or {@code null} if rate limiting is disabled
+     * @param metrics     Listener metrics, or {@code null} if no meter registry is available
+     */
+    public LDAPListenerContext(String name, LDAPBackendPool backendPool, ClientRateLimiter rateLimiter,
+                               LDAPMetrics metrics) {
+        this(name, backendPool, rateLimiter, metrics, null);
+    }
+
+    /**
+     * @param name        Listener name
+     * @param backendPool Shared backend connection pool, or {@code null} in internal mode
+     * @param rateLimiter Per-client rate limiter, or {@code null} if rate limiting is disabled
+     * @param metrics     Listener metrics, or {@code null} if no meter registry is available
+     * @param router      Suffix routing to further backend pools, or {@code null} if the listener does not route
+     */
+    public LDAPListenerContext(String name, LDAPBackendPool backendPool, ClientRateLimiter rateLimiter,
+                               LDAPMetrics metrics, SuffixRouter<LDAPBackendPool> router) {
+        this.name = name;
+        this.backendPool = backendPool;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+        this.router = router;
+    }
+
+    /**
+     * @return Listener name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Shared backend connection pool, or {@code null} if the listener has no backend
+     */
+    public LDAPBackendPool getBackendPool() {
+        return backendPool;
+    }
+
+    /**
+     * @return Per-client rate limiter, or {@code null} if rate limiting is disabled
+     */
+    public ClientRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return Listener metrics, or {@code null} if metrics are not collected
+     */
+    public LDAPMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Suffix routing of the listener, or {@code null} if it does not route
+     */
+    public SuffixRouter<LDAPBackendPool> getRouter() {
+        return router;
+    }
+}
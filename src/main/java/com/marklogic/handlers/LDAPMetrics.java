@@ -0,0 +1,198 @@
+package com.marklogic.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer instrumentation for a single proxy listener.
+ *
+ * <p>Every operation is timed in {@code ldap.requests}, tagged with the
+ * listener, operation, request processor, result code and the backend server
+ * that answered it ({@code cache} when served from a result cache,
+ * {@code coalesced} when sharing another client's search, {@code fanout} when
+ * a search ran on several routed backends, {@code none} when no backend was
+ * involved). Timers publish histogram buckets so
+ * percentiles can be computed from {@code /actuator/prometheus}. Gauges report
+ * open client connections, backend pool connections and the cache and rate
+ * limiter counters of the listener.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class LDAPMetrics {
+
+    /** Backend tag for operations answered from a cache. */
+    public static final String BACKEND_CACHE = "cache";
+
+    /** Backend tag for searches answered from another client's identical search. */
+    public static final String BACKEND_COALESCED = "coalesced";
+
+    /** Backend tag for searches that ran on the backends of several routed suffixes. */
+    public static final String BACKEND_FANOUT = "fanout";
+
+    /** Backend tag for operations that did not reach a backend server. */
+    public static final String BACKEND_NONE = "none";
+
+    private record TimerKey(String operation, String processor, int resultCode, String backend) {
+    }
+
+    private final MeterRegistry registry;
+    private final String listenerName;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final ConcurrentHashMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+    private final List<Meter> meters = new ArrayList<>();
+
+    /**
+     * @param registry     Registry the meters are registered with
+     * @param listenerName Listener name, used as the {@code listener} tag
+     */
+    public LDAPMetrics(MeterRegistry registry, String listenerName) {
+        this.registry = registry;
+        this.listenerName = listenerName;
+        meters.add(Gauge.builder("ldap.client.connections", openConnections, AtomicInteger::get)
+                .description("Open client connections")
+                .tag("listener", listenerName)
+                .register(registry));
+    }
+
+    /**
+     * Registers gauges for a backend pool of the listener and its result caches.
+     * A listener routing by suffix has a pool per routed server set; the meters
+     * are told apart by the {@code pool} tag.
+     */
+    public synchronized void bindBackendPool(LDAPBackendPool pool) {
+        String poolName = pool.getName();
+        meters.add(Gauge.builder("ldap.backend.connections", pool, LDAPBackendPool::getActiveConnections)
+                .description("Backend pool connections by state")
+                .tags("listener", listenerName, "pool", poolName, "state", "active")
+                .register(registry));
+        meters.add(Gauge.builder("ldap.backend.connections", pool,
+                        p -> p.getConnectionPool().getCurrentAvailableConnections())
+                .description("Backend pool connections by state")
+                .tags("listener", listenerName, "pool", poolName, "state", "idle")
+                .register(registry));
+
+        SearchResultCache searchCache = pool.getSearchCache();
+        if (searchCache != null) {
+            registerCache(poolName, "search", searchCache, SearchResultCache::getHits, SearchResultCache::getMisses);
+            meters.add(Gauge.builder("ldap.cache.size", searchCache, SearchResultCache::getSizeBytes)
+                    .description("Estimated memory held by the search result cache")
+                    .baseUnit("bytes")
+                    .tags("listener", listenerName, "pool", poolName, "cache", "search")
+                    .register(registry));
+        }
+        SearchCoalescer searchCoalescer = pool.getSearchCoalescer();
+        if (searchCoalescer != null) {
+            meters.add(FunctionCounter.builder("ldap.search.coalesced", searchCoalescer, SearchCoalescer::getLed)
+                    .description("Searches by role in single-flight coalescing")
+                    .tags("listener", listenerName, "pool", poolName, "role", "leader")
+                    .register(registry));
+            meters.add(FunctionCounter.builder("ldap.search.coalesced", searchCoalescer, SearchCoalescer::getCoalesced)
+                    .description("Searches by role in single-flight coalescing")
+                    .tags("listener", listenerName, "pool", poolName, "role", "follower")
+                    .register(registry));
+            meters.add(FunctionCounter.builder("ldap.search.coalesced", searchCoalescer, SearchCoalescer::getFallbacks)
+                    .description("Searches by role in single-flight coalescing")
+                    .tags("listener", listenerName, "pool", poolName, "role", "fallback")
+                    .register(registry));
+        }
+        HedgePolicy hedgePolicy = pool.getHedgePolicy();
+        if (hedgePolicy != null) {
+            meters.add(FunctionCounter.builder("ldap.hedges", hedgePolicy, HedgePolicy::getFired)
+                    .description("Operations sent to a second backend server, and hedges answered first")
+                    .tags("listener", listenerName, "pool", poolName, "outcome", "fired")
+                    .register(registry));
+            meters.add(FunctionCounter.builder("ldap.hedges", hedgePolicy, HedgePolicy::getWon)
+                    .description("Operations sent to a second backend server, and hedges answered first")
+                    .tags("listener", listenerName, "pool", poolName, "outcome", "won")
+                    .register(registry));
+        }
+        BindResultCache bindCache = pool.getBindCache();
+        if (bindCache != null) {
+            registerCache(poolName, "bind", bindCache, BindResultCache::getHits, BindResultCache::getMisses);
+        }
+    }
+
+    /**
+     * Registers counters for the listener's rate limiter.
+     */
+    public synchronized void bindRateLimiter(ClientRateLimiter rateLimiter) {
+        meters.add(FunctionCounter.builder("ldap.ratelimit.rejected", rateLimiter, ClientRateLimiter::getRejectedCount)
+                .description("Requests rejected with busy by the per-client rate limiter")
+                .tag("listener", listenerName)
+                .register(registry));
+        meters.add(Gauge.builder("ldap.ratelimit.clients", rateLimiter, ClientRateLimiter::getTrackedClients)
+                .description("Clients with a partially drained rate limit bucket")
+                .tag("listener", listenerName)
+                .register(registry));
+    }
+
+    private <T> void registerCache(String poolName, String cache, T source,
+                                   ToDoubleFunction<T> hits, ToDoubleFunction<T> misses) {
+        meters.add(FunctionCounter.builder("ldap.cache.requests", source, hits)
+                .tags("listener", listenerName, "pool", poolName, "cache", cache, "result", "hit")
+                .register(registry));
+        meters.add(FunctionCounter.builder("ldap.cache.requests", source, misses)
+                .tags("listener", listenerName, "pool", poolName, "cache", cache, "result", "miss")
+                .register(registry));
+    }
+
+    public void clientConnected() {
+        openConnections.incrementAndGet();
+    }
+
+    public void clientDisconnected() {
+        openConnections.decrementAndGet();
+    }
+
+    /**
+     * Records one completed operation.
+     *
+     * @param operation     Operation name, e.g. {@code bind} or {@code search}
+     * @param processor     Request processor that handled it
+     * @param resultCode    LDAP result code returned to the client
+     * @param backend       Backend server ({@code host:port}), {@link #BACKEND_CACHE},
+     *                      {@link #BACKEND_COALESCED}, {@link #BACKEND_FANOUT} or {@link #BACKEND_NONE}
+     * @param durationNanos Time taken, in nanoseconds
+     */
+    public void recordOperation(String operation, String processor, int resultCode, String backend,
+                                long durationNanos) {
+        Timer timer = timers.computeIfAbsent(new TimerKey(operation, processor, resultCode, backend),
+                key -> Timer.builder("ldap.requests")
+                        .description("LDAP operations handled by the proxy")
+                        .tags("listener", listenerName,
+                              "operation", key.operation(),
+                              "processor", key.processor(),
+                              "result", ResultCode.valueOf(key.resultCode()).getName(),
+                              "backend", key.backend())
+                        .publishPercentileHistogram()
+                        .register(registry));
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Removes every meter of this listener from the registry.
+     */
+    public synchronized void close() {
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+        for (Timer timer : timers.values()) {
+            registry.remove(timer);
+        }
+        timers.clear();
+    }
+}
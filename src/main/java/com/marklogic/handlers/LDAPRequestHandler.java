@@ -9,23 +9,33 @@ import org.slf4j.LoggerFactory;
 import com.marklogic.configuration.properties.MleaProxyProperties;
 import com.marklogic.configuration.properties.RequestProcessorProperties;
 import com.marklogic.processors.IRequestProcessor;
+import com.marklogic.processors.RequestProcessorRegistry;
 import com.unboundid.ldap.listener.LDAPListenerClientConnection;
 import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.AbandonRequestProtocolOp;
 import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.AddResponseProtocolOp;
 import com.unboundid.ldap.protocol.BindRequestProtocolOp;
 import com.unboundid.ldap.protocol.BindResponseProtocolOp;
 import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareResponseProtocolOp;
 import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteResponseProtocolOp;
 import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedResponseProtocolOp;
 import com.unboundid.ldap.protocol.IntermediateResponseProtocolOp;
 import com.unboundid.ldap.protocol.LDAPMessage;
 import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyDNResponseProtocolOp;
 import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyResponseProtocolOp;
+import com.unboundid.ldap.protocol.ProtocolOp;
 import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchResultDoneProtocolOp;
 import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.IntermediateResponse;
 import com.unboundid.ldap.sdk.IntermediateResponseListener;
-import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.ServerSet;
@@ -61,17 +71,18 @@ public final class LDAPRequestHandler
     // Security constants
     private static final int MAX_REQUEST_SIZE = 1024 * 1024; // 1MB max request size
     private static final int MAX_DN_LENGTH = 1024; // Max DN length
-    private static final int MAX_FILTER_LENGTH = 2048; // Max filter length
+    private static final int MAX_FILTER_DEPTH = 16; // Max AND/OR/NOT nesting
+    private static final int MAX_FILTER_COMPONENTS = 256; // Max filter components
+    private static final int MAX_ASSERTION_LENGTH = 1024; // Max assertion value length
+
+    private static final LDAPFilterValidator filterValidator =
+        new LDAPFilterValidator(MAX_FILTER_DEPTH, MAX_FILTER_COMPONENTS, MAX_ASSERTION_LENGTH);
     
-    // Rate limiting (thread-safe implementation)
-    private static final java.util.concurrent.atomic.AtomicLong lastRequestTime =
-        new java.util.concurrent.atomic.AtomicLong(0);
-    private static final java.util.concurrent.atomic.AtomicInteger requestCount =
-        new java.util.concurrent.atomic.AtomicInteger(0);
-    private static final int MAX_REQUESTS_PER_SECOND = 100;
+    // Per-listener state: backend pool, rate limiter (null if not used).
+    private final LDAPListenerContext listenerContext;
 
-    // The connection to the LDAP server to which requests will be forwarded.
-    private final LDAPConnection ldapConnection;
+    // Backend state for the client connection (bind identity, borrowed connections).
+    private final LDAPBackendSession backendSession;
 
     // The client connection that has been established.
     private final LDAPListenerClientConnection listenerConnection;
@@ -84,31 +95,32 @@ public final class LDAPRequestHandler
     // Cached processor instance (initialized once, reused for performance)
     private IRequestProcessor cachedProcessor;
 
+    // Rate limiter bucket key for this client (address, plus bind DN if configured)
+    private volatile String rateLimitKey;
+
     /**
      * Validates and sanitizes LDAP request parameters for security
      */
-    private boolean isValidRequest(String dn, String filter) {
+    static boolean isValidRequest(String dn, Filter filter) {
         // Check DN length
         if (dn != null && dn.length() > MAX_DN_LENGTH) {
             logger.warn("DN exceeds maximum allowed length: {}", dn.length());
             return false;
         }
         
-        // Check filter length
-        if (filter != null && filter.length() > MAX_FILTER_LENGTH) {
-            logger.warn("Filter exceeds maximum allowed length: {}", filter.length());
-            return false;
-        }
-        
         // Basic LDAP injection prevention
         if (dn != null && containsLDAPInjection(dn)) {
             logger.warn("Potential LDAP injection detected in DN: {}", sanitizeForLogging(dn));
             return false;
         }
         
-        if (filter != null && containsLDAPInjection(filter)) {
-            logger.warn("Potential LDAP injection detected in filter: {}", sanitizeForLogging(filter));
-            return false;
+        // Structural limits on the parsed filter
+        if (filter != null) {
+            LDAPFilterValidator.Violation violation = filterValidator.validate(filter);
+            if (violation != null) {
+                logger.warn("Search filter rejected ({}): {}", violation, sanitizeForLogging(filter.toString()));
+                return false;
+            }
         }
         
         return true;
@@ -120,7 +132,7 @@ public final class LDAPRequestHandler
      * Legitimate filters like (objectClass=*) are allowed.
      * Blocks filter-breaking sequences that indicate injection attempts.
      */
-    private boolean containsLDAPInjection(String input) {
+    private static boolean containsLDAPInjection(String input) {
         if (input == null) return false;
         
         // Check for dangerous LDAP injection patterns
@@ -155,7 +167,7 @@ public final class LDAPRequestHandler
     /**
      * Sanitizes strings for safe logging (removes sensitive information)
      */
-    private String sanitizeForLogging(String input) {
+    private static String sanitizeForLogging(String input) {
         if (input == null) return "null";
         
         // Truncate long strings and remove potential sensitive data
@@ -171,47 +183,41 @@ public final class LDAPRequestHandler
     }
     
     /**
-     * Thread-safe rate limiting check using atomic operations.
-     * Limits requests to MAX_REQUESTS_PER_SECOND per second globally across all instances.
+     * Takes a token from this client's bucket in the listener's rate limiter.
+     *
+     * @return {@code true} if the request must be rejected with {@code busy}
      */
     private boolean isRateLimited() {
-        long currentTime = System.currentTimeMillis();
-        long lastTime = lastRequestTime.get();
-
-        // Reset counter every second (atomic compare-and-set to prevent race conditions)
-        if (currentTime - lastTime > 1000) {
-            // Only one thread will successfully set the new time
-            if (lastRequestTime.compareAndSet(lastTime, currentTime)) {
-                requestCount.set(0);
-            }
+        ClientRateLimiter rateLimiter = listenerContext == null ? null : listenerContext.getRateLimiter();
+        if (rateLimiter == null || rateLimitKey == null) {
+            return false;
         }
-
-        // Atomically increment and get the new count
-        int currentCount = requestCount.incrementAndGet();
-
-        if (currentCount > MAX_REQUESTS_PER_SECOND) {
-            logger.warn("Rate limit exceeded: {} requests in the last second", currentCount);
-            return true;
+        if (rateLimiter.tryAcquire(rateLimitKey)) {
+            return false;
         }
-
-        return false;
+        logger.warn("Rate limit exceeded for client {}", rateLimitKey);
+        return true;
     }
 
     /**
      * Creates a new instance of this proxy request handler that will use the
      * provided {@link ServerSet} to connect to an LDAP server.
+     *
+     * @param serverSet       The server set used by the listener. It must not be {@code null}.
+     * @param auth            Name of the request processor to use.
+     * @param listenerContext Per-listener state (backend pool, rate limiter).
      */
-    public LDAPRequestHandler(ServerSet serverSet, String auth) throws Exception {
+    public LDAPRequestHandler(ServerSet serverSet, String auth, LDAPListenerContext listenerContext) throws Exception {
 
         Validator.ensureNotNull(serverSet);
         this.serverSet = serverSet;
         this.requestProcessor = auth;
-        ldapConnection = null;
+        this.listenerContext = listenerContext;
+        backendSession = null;
         listenerConnection = null;
         logger.debug("LDAPRequestHandler constructor called.");
-        logger.debug("serverSet" + serverSet);
-        logger.debug("ldapConnection" + ldapConnection);
-        logger.debug("listenerConnection" + listenerConnection);
+        logger.debug("serverSet: {}", serverSet);
+        logger.debug("listener: {}", listenerContext == null ? null : listenerContext.getName());
     }
 
 
@@ -222,27 +228,38 @@ public final class LDAPRequestHandler
      * @param serverSet          The server that will be used to create LDAP
      *                           connections to forward any requests received.
      *                           It must not be {@code null}.
-     * @param ldapConnection     The connection to the LDAP server to which
-     *                           requests will be forwarded.
+     * @param listenerContext    Per-listener state (backend pool, rate limiter).
      * @param listenerConnection The client connection with which this request
      *                           handler is associated.
      */
     private LDAPRequestHandler(final String requestProcessor, final ServerSet serverSet,
-                               final LDAPConnection ldapConnection,
+                               final LDAPListenerContext listenerContext,
                                final LDAPListenerClientConnection listenerConnection) {
         this.serverSet = serverSet;
-        this.ldapConnection = ldapConnection;
+        this.listenerContext = listenerContext;
+        this.backendSession = listenerContext == null ? new LDAPBackendSession(null)
+                : new LDAPBackendSession(listenerContext.getBackendPool(), listenerContext.getRouter());
         this.listenerConnection = listenerConnection;
         this.requestProcessor = requestProcessor;
+        if (listenerContext != null && listenerContext.getMetrics() != null) {
+            listenerContext.getMetrics().clientConnected();
+        }
+        ClientRateLimiter rateLimiter = listenerContext == null ? null : listenerContext.getRateLimiter();
+        if (rateLimiter != null && listenerConnection.getSocket() != null) {
+            this.rateLimitKey = rateLimiter.clientKey(
+                    listenerConnection.getSocket().getInetAddress().getHostAddress(), null);
+        }
         logger.debug("LDAPRequestHandler constructor called.");
         logger.debug("serverSet: {}", serverSet);
-        logger.debug("ldapConnection: {}", ldapConnection);
         logger.debug("listenerConnection: {}", listenerConnection);
     }
 
 
     /**
      * {@inheritDoc}
+     *
+     * <p>No backend connection is opened here; operations borrow one from the
+     * listener's shared pool as they arrive.
      */
     @Override()
     public LDAPRequestHandler newInstance(
@@ -250,29 +267,48 @@ public final class LDAPRequestHandler
             throws LDAPException {
         logger.debug("LDAPRequestHandler newInstance called.");
         logger.debug("serverSet: {}", serverSet);
-        logger.debug("ldapConnection: {}", ldapConnection);
-        logger.debug("listenerConnection: {}", listenerConnection);
-        return new LDAPRequestHandler(requestProcessor, serverSet, serverSet.getConnection(),
-                connection);
+        logger.debug("listenerConnection: {}", connection);
+        return new LDAPRequestHandler(requestProcessor, serverSet, listenerContext, connection);
     }
 
 
     /**
      * {@inheritDoc}
+     *
+     * <p>Operations the client still has in progress on the backend are abandoned.
      */
     @Override()
     public void closeInstance() {
         logger.debug("closeInstance called.");
-        if (ldapConnection != null) {
+        if (listenerConnection != null && listenerContext != null && listenerContext.getMetrics() != null) {
+            listenerContext.getMetrics().clientDisconnected();
+        }
+        if (backendSession != null) {
             try {
-                ldapConnection.close();
+                backendSession.close();
             } catch (Exception e) {
-                logger.error("Error closing LDAP connection: {}", e.getMessage(), e);
+                logger.error("Error releasing backend session: {}", e.getMessage(), e);
             }
         }
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Abandons the operation on the backend if it is still in progress there.
+     */
+    @Override()
+    public void processAbandonRequest(final int messageID,
+                                      final AbandonRequestProtocolOp request,
+                                      final List<Control> controls) {
+        logger.debug("processAbandonRequest called for message ID {}", request.getIDToAbandon());
+        if (backendSession != null && !backendSession.abandon(request.getIDToAbandon())) {
+            logger.debug("Message ID {} is not in progress on the backend", request.getIDToAbandon());
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -283,14 +319,18 @@ public final class LDAPRequestHandler
 
         // Call Configures processor
         logger.debug("processAddRequest called.");
+        if (isRateLimited()) {
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST, ResultCode.BUSY, "Rate limit exceeded");
+        }
         IRequestProcessor processor = getProcessor();
         if (processor == null) {
             logger.error("No processor available for add request");
-            return createErrorResponse(messageID, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
         }
-        LDAPMessage message = processor.processAddRequest(messageID, request, controls, this.ldapConnection, this.listenerConnection);
+        long start = System.nanoTime();
+        LDAPMessage message = processor.processAddRequest(messageID, request, controls, this.backendSession, this.listenerConnection);
         logger.debug("LDAP Message : {}", message);
-        return message;
+        return recordOperation("add", processor, message, start);
     }
 
 
@@ -304,6 +344,9 @@ public final class LDAPRequestHandler
 
         // Call Configures processor
         logger.debug("processBindRequest called.");
+        if (isRateLimited()) {
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST, ResultCode.BUSY, "Rate limit exceeded");
+        }
         IRequestProcessor processor = getProcessor();
         if (processor == null) {
             logger.error("No processor available for bind request");
@@ -312,15 +355,17 @@ public final class LDAPRequestHandler
             return new LDAPMessage(messageID, errorResponse, Collections.emptyList());
         }
         
+        long start = System.nanoTime();
         try {
-            LDAPMessage message = processor.processBindRequest(messageID, request, controls, this.ldapConnection, this.listenerConnection);
+            LDAPMessage message = processor.processBindRequest(messageID, request, controls, this.backendSession, this.listenerConnection);
             logger.debug("LDAP Message : {}", message);
-            return message;
+            updateRateLimitKey(request, message);
+            return recordOperation("bind", processor, message, start);
         } catch (Exception e) {
             logger.error("Error processing bind request: {}", e.getMessage(), e);
             BindResponseProtocolOp errorResponse = new BindResponseProtocolOp(
                 ResultCode.OTHER.intValue(), null, "Internal server error", null, null);
-            return new LDAPMessage(messageID, errorResponse, Collections.emptyList());
+            return recordOperation("bind", processor, new LDAPMessage(messageID, errorResponse, Collections.emptyList()), start);
         }
     }
 
@@ -335,14 +380,18 @@ public final class LDAPRequestHandler
 
         // Call Configures processor
         logger.debug("processCompareRequest called.");
+        if (isRateLimited()) {
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST, ResultCode.BUSY, "Rate limit exceeded");
+        }
         IRequestProcessor processor = getProcessor();
         if (processor == null) {
             logger.error("No processor available for compare request");
-            return createErrorResponse(messageID, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
         }
-        LDAPMessage message = processor.processCompareRequest(messageID, request, controls, this.ldapConnection, this.listenerConnection);
+        long start = System.nanoTime();
+        LDAPMessage message = processor.processCompareRequest(messageID, request, controls, this.backendSession, this.listenerConnection);
         logger.debug("LDAP Message : {}", message);
-        return message;
+        return recordOperation("compare", processor, message, start);
     }
 
 
@@ -356,14 +405,18 @@ public final class LDAPRequestHandler
 
         // Call Configures processor
         logger.debug("processDeleteRequest called.");
+        if (isRateLimited()) {
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST, ResultCode.BUSY, "Rate limit exceeded");
+        }
         IRequestProcessor processor = getProcessor();
         if (processor == null) {
             logger.error("No processor available for delete request");
-            return createErrorResponse(messageID, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
         }
-        LDAPMessage message = processor.processDeleteRequest(messageID, request, controls, this.ldapConnection, this.listenerConnection);
+        long start = System.nanoTime();
+        LDAPMessage message = processor.processDeleteRequest(messageID, request, controls, this.backendSession, this.listenerConnection);
         logger.debug("LDAP Message : {}", message);
-        return message;
+        return recordOperation("delete", processor, message, start);
     }
 
 
@@ -377,14 +430,18 @@ public final class LDAPRequestHandler
 
         // Call Configures processor
         logger.debug("processExtendedRequest called.");
+        if (isRateLimited()) {
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST, ResultCode.BUSY, "Rate limit exceeded");
+        }
         IRequestProcessor processor = getProcessor();
         if (processor == null) {
             logger.error("No processor available for extended request");
-            return createErrorResponse(messageID, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
         }
-        LDAPMessage message = processor.processExtendedRequest(messageID, request, controls, this.ldapConnection, this.listenerConnection);
+        long start = System.nanoTime();
+        LDAPMessage message = processor.processExtendedRequest(messageID, request, controls, this.backendSession, this.listenerConnection);
         logger.debug("LDAP Message : {}", message);
-        return message;
+        return recordOperation("extended", processor, message, start);
 
     }
 
@@ -399,14 +456,18 @@ public final class LDAPRequestHandler
 
         // Call Configures processor
         logger.debug("processModifyRequest called.");
+        if (isRateLimited()) {
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST, ResultCode.BUSY, "Rate limit exceeded");
+        }
         IRequestProcessor processor = getProcessor();
         if (processor == null) {
             logger.error("No processor available for modify request");
-            return createErrorResponse(messageID, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
         }
-        LDAPMessage message = processor.processModifyRequest(messageID, request, controls, this.ldapConnection, this.listenerConnection);
+        long start = System.nanoTime();
+        LDAPMessage message = processor.processModifyRequest(messageID, request, controls, this.backendSession, this.listenerConnection);
         logger.debug("LDAP Message : {}", message);
-        return message;
+        return recordOperation("modify", processor, message, start);
     }
 
 
@@ -420,14 +481,18 @@ public final class LDAPRequestHandler
 
         // Call Configures processor
         logger.debug("processModifyDNRequest called.");
+        if (isRateLimited()) {
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST, ResultCode.BUSY, "Rate limit exceeded");
+        }
         IRequestProcessor processor = getProcessor();
         if (processor == null) {
             logger.error("No processor available for modify DN request");
-            return createErrorResponse(messageID, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
         }
-        LDAPMessage message = processor.processModifyDNRequest(messageID, request, controls, this.ldapConnection, this.listenerConnection);
+        long start = System.nanoTime();
+        LDAPMessage message = processor.processModifyDNRequest(messageID, request, controls, this.backendSession, this.listenerConnection);
         logger.debug("LDAP Message : {}", message);
-        return message;
+        return recordOperation("modifyDN", processor, message, start);
     }
 
 
@@ -441,51 +506,115 @@ public final class LDAPRequestHandler
 
         // Call Search
         logger.debug("processSearchRequest called.");
-        
-        // Rate limiting check
         if (isRateLimited()) {
-            logger.warn("Search request rate limited for message ID: {}", messageID);
-            return createErrorResponse(messageID, ResultCode.BUSY, "Rate limit exceeded");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST, ResultCode.BUSY, "Rate limit exceeded");
         }
         
         // Security validation
-        if (!isValidRequest(request.getBaseDN(), request.getFilter().toString())) {
+        if (!isValidRequest(request.getBaseDN(), request.getFilter())) {
             logger.warn("Invalid search request blocked for security reasons");
-            return createErrorResponse(messageID, ResultCode.INAPPROPRIATE_MATCHING, "Invalid request parameters");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST, ResultCode.INAPPROPRIATE_MATCHING, "Invalid request parameters");
         }
         
         IRequestProcessor processor = getProcessor();
         if (processor == null) {
             logger.error("No processor available for search request");
-            return createErrorResponse(messageID, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
+            return createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST, ResultCode.UNAVAILABLE, "Service temporarily unavailable");
         }
         
+        long start = System.nanoTime();
         try {
-            LDAPMessage searchResult = processor.processSearchRequest(messageID, request, controls, this.ldapConnection, this.listenerConnection);
+            LDAPMessage searchResult = processor.processSearchRequest(messageID, request, controls, this.backendSession, this.listenerConnection);
             logger.debug("Search Result processed successfully for message ID: {}", messageID);
-            return searchResult;
+            return recordOperation("search", processor, searchResult, start);
         } catch (Exception e) {
             logger.error("Error processing search request: {}", e.getMessage(), e);
-            return createErrorResponse(messageID, ResultCode.OTHER, "Internal server error");
+            return recordOperation("search", processor,
+                    createErrorResponse(messageID, LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST, ResultCode.OTHER, "Internal server error"), start);
         }
     }
     
     /**
-     * Helper method to create standardized error responses for search operations
+     * Records a completed operation in the listener's metrics.
+     *
+     * @return {@code response}, for chaining
+     */
+    private LDAPMessage recordOperation(String operation, IRequestProcessor processor, LDAPMessage response,
+                                        long startNanos) {
+        String server = backendSession.takeLastServer();
+        LDAPMetrics metrics = listenerContext == null ? null : listenerContext.getMetrics();
+        if (metrics != null) {
+            metrics.recordOperation(operation, processor.getClass().getSimpleName(), resultCodeOf(response),
+                    server == null ? LDAPMetrics.BACKEND_NONE : server, System.nanoTime() - startNanos);
+        }
+        return response;
+    }
+
+    /**
+     * Extracts the result code from a response message.
      */
-    private LDAPMessage createErrorResponse(int messageID, ResultCode resultCode, String message) {
+    private static int resultCodeOf(LDAPMessage response) {
+        if (response == null) {
+            return ResultCode.OTHER_INT_VALUE;
+        }
+        switch (response.getProtocolOpType()) {
+            case LDAPMessage.PROTOCOL_OP_TYPE_ADD_RESPONSE:
+                return response.getAddResponseProtocolOp().getResultCode();
+            case LDAPMessage.PROTOCOL_OP_TYPE_BIND_RESPONSE:
+                return response.getBindResponseProtocolOp().getResultCode();
+            case LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_RESPONSE:
+                return response.getCompareResponseProtocolOp().getResultCode();
+            case LDAPMessage.PROTOCOL_OP_TYPE_DELETE_RESPONSE:
+                return response.getDeleteResponseProtocolOp().getResultCode();
+            case LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_RESPONSE:
+                return response.getExtendedResponseProtocolOp().getResultCode();
+            case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_RESPONSE:
+                return response.getModifyResponseProtocolOp().getResultCode();
+            case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_RESPONSE:
+                return response.getModifyDNResponseProtocolOp().getResultCode();
+            case LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_RESULT_DONE:
+                return response.getSearchResultDoneProtocolOp().getResultCode();
+            default:
+                return ResultCode.OTHER_INT_VALUE;
+        }
+    }
+
+    /**
+     * Helper method to create standardized error responses matching the request type
+     */
+    static LDAPMessage createErrorResponse(int messageID, byte requestType, ResultCode resultCode, String message) {
         logger.debug("Creating error response: {} - {}", resultCode, message);
-        
-        // Create a SearchResultDone response for search operations
-        com.unboundid.ldap.protocol.SearchResultDoneProtocolOp searchDone = 
-            new com.unboundid.ldap.protocol.SearchResultDoneProtocolOp(
-                resultCode.intValue(), 
-                null, // matchedDN
-                message, // diagnosticMessage
-                null  // referralURLs
-            );
-        
-        return new LDAPMessage(messageID, searchDone, Collections.emptyList());
+
+        final int code = resultCode.intValue();
+        final ProtocolOp response;
+        switch (requestType) {
+            case LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST:
+                response = new AddResponseProtocolOp(code, null, message, null);
+                break;
+            case LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST:
+                response = new BindResponseProtocolOp(code, null, message, null, null);
+                break;
+            case LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST:
+                response = new CompareResponseProtocolOp(code, null, message, null);
+                break;
+            case LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST:
+                response = new DeleteResponseProtocolOp(code, null, message, null);
+                break;
+            case LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST:
+                response = new ExtendedResponseProtocolOp(code, null, message, null, null, null);
+                break;
+            case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST:
+                response = new ModifyResponseProtocolOp(code, null, message, null);
+                break;
+            case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST:
+                response = new ModifyDNResponseProtocolOp(code, null, message, null);
+                break;
+            default:
+                response = new SearchResultDoneProtocolOp(code, null, message, null);
+                break;
+        }
+
+        return new LDAPMessage(messageID, response, Collections.emptyList());
     }
 
 
@@ -501,75 +630,58 @@ public final class LDAPRequestHandler
 
     }
 
+    /**
+     * Re-keys the client's rate limit bucket after a bind when the limiter
+     * tracks bind DNs separately.
+     */
+    private void updateRateLimitKey(BindRequestProtocolOp request, LDAPMessage response) {
+        ClientRateLimiter rateLimiter = listenerContext == null ? null : listenerContext.getRateLimiter();
+        if (rateLimiter == null || rateLimitKey == null
+                || response.getProtocolOpType() != LDAPMessage.PROTOCOL_OP_TYPE_BIND_RESPONSE) {
+            return;
+        }
+        boolean success = response.getBindResponseProtocolOp().getResultCode() == ResultCode.SUCCESS_INT_VALUE;
+        rateLimitKey = rateLimiter.clientKey(
+                listenerConnection.getSocket().getInetAddress().getHostAddress(),
+                success ? request.getBindDN() : null);
+    }
+
     private IRequestProcessor getProcessor() {
-        // Return cached processor if already initialized
+        // Return cached processor if already resolved
         if (cachedProcessor != null) {
             return cachedProcessor;
         }
 
-        logger.debug("Initializing processor for serverSet: {}", serverSet);
+        logger.debug("Resolving processor for serverSet: {}", serverSet);
 
         if (requestProcessor == null || requestProcessor.trim().isEmpty()) {
             logger.error("Request processor name is null or empty");
             return null;
         }
 
-        if (staticConfig == null) {
-            throw new IllegalStateException("MleaProxyProperties not initialized. Call LDAPRequestHandler.setStaticConfig() first.");
-        }
-
-        // Get Processor Class and Config Class names
-        logger.debug("Processor Config: {}", requestProcessor);
-        RequestProcessorProperties processorCfg = staticConfig.getRequestProcessors().get(requestProcessor);
-        if (processorCfg == null) {
-            throw new IllegalArgumentException("Request processor not found: " + requestProcessor);
-        }
-
-        // Create and initialize Processor
-        String processorClassName = processorCfg.getAuthClass();
-        logger.debug("Processor Class: {}", processorClassName);
-
-        try {
-            if (processorClassName == null || processorClassName.trim().isEmpty()) {
-                logger.error("Processor class name is null or empty");
-                return null;
+        // Processors are normally registered when the listener starts
+        IRequestProcessor processor = RequestProcessorRegistry.get(requestProcessor);
+        if (processor == null) {
+            if (staticConfig == null) {
+                throw new IllegalStateException("MleaProxyProperties not initialized. Call LDAPRequestHandler.setStaticConfig() first.");
             }
 
-            // Load the class
-            Class<?> clazz = Class.forName(processorClassName);
+            logger.debug("Processor Config: {}", requestProcessor);
+            RequestProcessorProperties processorCfg = staticConfig.getRequestProcessors().get(requestProcessor);
+            if (processorCfg == null) {
+                throw new IllegalArgumentException("Request processor not found: " + requestProcessor);
+            }
 
-            // Validate that it implements IRequestProcessor interface
-            if (!IRequestProcessor.class.isAssignableFrom(clazz)) {
-                logger.error("Class {} does not implement IRequestProcessor interface", processorClassName);
+            try {
+                processor = RequestProcessorRegistry.getOrInitialize(requestProcessor, processorCfg);
+            } catch (Exception e) {
+                logger.error("Error creating processor {}: {}", requestProcessor, e.getMessage(), e);
                 return null;
             }
-
-            // Safe cast now that we've validated the type
-            Class<? extends IRequestProcessor> processorClass = clazz.asSubclass(IRequestProcessor.class);
-
-            // Create instance and initialize
-            IRequestProcessor processor = processorClass.getDeclaredConstructor().newInstance();
-            processor.initialize(processorCfg);
-
-            // Cache for future use
-            cachedProcessor = processor;
-            logger.info("Processor {} successfully initialized and cached", processorClassName);
-
-            return processor;
-
-        } catch (ClassNotFoundException e) {
-            logger.error("Processor class not found: {}", processorClassName, e);
-        } catch (NoSuchMethodException e) {
-            logger.error("Processor class {} does not have a no-argument constructor", processorClassName, e);
-        } catch (InstantiationException e) {
-            logger.error("Cannot instantiate processor class {} (is it abstract?)", processorClassName, e);
-        } catch (IllegalAccessException e) {
-            logger.error("Cannot access constructor of processor class {}", processorClassName, e);
-        } catch (Exception e) {
-            logger.error("Error creating processor {}: {}", processorClassName, e.getMessage(), e);
         }
 
-        return null;
+        cachedProcessor = processor;
+        return processor;
     }
 
 }
@@ -0,0 +1,121 @@
+package com.marklogic.handlers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Output stream that forwards only complete BER elements (LDAP messages) to the
+ * underlying stream, each written atomically while holding a shared lock.
+ *
+ * <p>Used by {@link PipelinedClientConnection}: request processors send search
+ * entries through the SDK's client connection while other threads send final
+ * responses for concurrent operations on the same socket. Buffering partial
+ * writes until a message is complete guarantees the two never interleave
+ * inside a message, however the SDK chunks its writes.
+ *
+ * <p>Locks are used rather than monitors so that a virtual thread blocked
+ * writing to a slow client releases its carrier thread.
+ */
+final class MessageFramingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Lock writeLock;
+    private final ReentrantLock bufferLock = new ReentrantLock();
+
+    private byte[] buffer = new byte[8192];
+    private int count;
+
+    /**
+     * @param out       Stream to write complete messages to
+     * @param writeLock Lock held by every writer of {@code out}
+     */
+    MessageFramingOutputStream(OutputStream out, Lock writeLock) {
+        this.out = out;
+        this.writeLock = writeLock;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        bufferLock.lock();
+        try {
+            if (count + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + len));
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+
+            int start = 0;
+            int length;
+            while ((length = elementLength(buffer, start, count - start)) > 0) {
+                writeLock.lock();
+                try {
+                    out.write(buffer, start, length);
+                    out.flush();
+                } finally {
+                    writeLock.unlock();
+                }
+                start += length;
+            }
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, count - start);
+                count -= start;
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Complete messages are flushed as they are written
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            out.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return Total length of the BER element starting at {@code offset}, or
+     *         {@code 0} if it is not yet complete
+     */
+    static int elementLength(byte[] data, int offset, int available) throws IOException {
+        if (available < 2) {
+            return 0;
+        }
+        int first = data[offset + 1] & 0xFF;
+        if ((first & 0x80) == 0) {
+            int total = 2 + first;
+            return available >= total ? total : 0;
+        }
+        int lengthBytes = first & 0x7F;
+        if (lengthBytes == 0 || lengthBytes > 4) {
+            throw new IOException("Unsupported BER length encoding in outgoing message");
+        }
+        if (available < 2 + lengthBytes) {
+            return 0;
+        }
+        long valueLength = 0;
+        for (int i = 0; i < lengthBytes; i++) {
+            valueLength = (valueLength << 8) | (data[offset + 2 + i] & 0xFF);
+        }
+        long total = 2 + lengthBytes + valueLength;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Outgoing message too large: " + total + " bytes");
+        }
+        return available >= total ? (int) total : 0;
+    }
+}
@@ -0,0 +1,359 @@
+package com.marklogic.handlers;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.asn1.ASN1Buffer;
+import com.unboundid.asn1.ASN1StreamReader;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * One client connection of a {@link PassthroughLDAPListener}, paired with a
+ * dedicated backend connection.
+ *
+ * <p>Messages are framed from their BER headers and copied between the two
+ * sockets as raw bytes through pooled direct buffers. Responses are never
+ * decoded; requests are decoded only as far as the proxy's checks need: the
+ * message ID and operation type of every request for rate limiting, and the
+ * full search request for the base DN and filter validation done by
+ * {@link LDAPRequestHandler}. A rejected request is answered by the proxy and
+ * never reaches the backend. The client keeps its own message IDs because the
+ * backend connection is not shared, which also keeps bind state per client.
+ */
+final class PassthroughConnection implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PassthroughConnection.class);
+
+    // Largest request accepted from a client, as for the SDK listener
+    private static final int MAX_REQUEST_BYTES = 20 * 1024 * 1024;
+
+    // Enough of a request to read its message ID and operation type
+    private static final int ENVELOPE_BYTES = 16;
+
+    private final PassthroughLDAPListener listener;
+    private final SocketChannel client;
+    private final DirectBufferPool buffers;
+    private final ClientRateLimiter rateLimiter;
+    private final String rateLimitKey;
+    private final LDAPMetrics metrics;
+    private final Object clientWriteLock = new Object();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile SocketChannel backend;
+
+    PassthroughConnection(PassthroughLDAPListener listener, SocketChannel client, DirectBufferPool buffers,
+                          ClientRateLimiter rateLimiter, LDAPMetrics metrics) throws IOException {
+        this.listener = listener;
+        this.client = client;
+        this.buffers = buffers;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+        this.rateLimitKey = rateLimiter == null ? null : rateLimiter.clientKey(
+                ((InetSocketAddress) client.getRemoteAddress()).getAddress().getHostAddress(), null);
+        if (metrics != null) {
+            metrics.clientConnected();
+        }
+    }
+
+    /**
+     * Connects to a backend, starts relaying responses on a second thread and
+     * relays requests on the calling thread until either side disconnects.
+     */
+    @Override
+    public void run() {
+        backend = listener.connectBackend();
+        if (backend == null || closed.get()) {
+            closeQuietly(backend);
+            close();
+            return;
+        }
+        // Same kind of thread as the request relay
+        Thread.Builder responses = Thread.currentThread().isVirtual()
+                ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+        responses.name(Thread.currentThread().getName() + "-responses").start(this::relayResponses);
+        relayRequests();
+    }
+
+    private void relayRequests() {
+        ByteBuffer buffer = buffers.acquire();
+        buffer.flip();
+        try {
+            int length;
+            while ((length = nextMessage(client, buffer, ENVELOPE_BYTES)) > 0) {
+                if (length > MAX_REQUEST_BYTES) {
+                    throw new IOException("Request of " + length + " bytes exceeds the maximum message size");
+                }
+                if (admit(buffer, length)) {
+                    transfer(client, buffer, length, backend);
+                } else {
+                    transfer(client, buffer, length, null);
+                }
+            }
+        } catch (IOException | LDAPException | RuntimeException e) {
+            if (!closed.get()) {
+                logger.debug("Passthrough client connection ended: {}", e.getMessage());
+            }
+        } finally {
+            close();
+            buffers.release(buffer);
+        }
+    }
+
+    private void relayResponses() {
+        ByteBuffer buffer = buffers.acquire();
+        buffer.flip();
+        try {
+            int length;
+            while ((length = nextMessage(backend, buffer, 0)) > 0) {
+                synchronized (clientWriteLock) {
+                    // Send every complete response already read in one write;
+                    // a response larger than what is buffered is streamed through
+                    int complete = completeMessages(buffer);
+                    transfer(backend, buffer, complete > 0 ? complete : length, client);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed.get()) {
+                logger.debug("Passthrough backend connection ended: {}", e.getMessage());
+            }
+        } finally {
+            close();
+            buffers.release(buffer);
+        }
+    }
+
+    /**
+     * Applies the rate limit and search checks to the request at the buffer's
+     * position, answering the client itself if the request is rejected.
+     *
+     * @return Whether the request should be forwarded to the backend
+     */
+    private boolean admit(ByteBuffer buffer, int length) throws IOException, LDAPException {
+        byte opType = protocolOpType(buffer);
+        if (opType == LDAPMessage.PROTOCOL_OP_TYPE_ABANDON_REQUEST
+                || opType == LDAPMessage.PROTOCOL_OP_TYPE_UNBIND_REQUEST) {
+            return true;
+        }
+        int messageID = messageId(buffer);
+        if (rateLimiter != null && !rateLimiter.tryAcquire(rateLimitKey)) {
+            reject(messageID, opType, ResultCode.BUSY, "Rate limit exceeded");
+            return false;
+        }
+        if (opType == LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST) {
+            if (length > buffer.capacity()) {
+                logger.warn("Passthrough search request of {} bytes exceeds the buffer size", length);
+                reject(messageID, opType, ResultCode.INAPPROPRIATE_MATCHING, "Invalid request parameters");
+                return false;
+            }
+            while (buffer.remaining() < length) {
+                if (!fill(client, buffer)) {
+                    throw new EOFException("Connection closed in the middle of a request");
+                }
+            }
+            byte[] encoded = new byte[length];
+            buffer.get(buffer.position(), encoded);
+            SearchRequestProtocolOp search = LDAPMessage.readFrom(
+                    new ASN1StreamReader(new ByteArrayInputStream(encoded)), false).getSearchRequestProtocolOp();
+            if (!LDAPRequestHandler.isValidRequest(search.getBaseDN(), search.getFilter())) {
+                reject(messageID, opType, ResultCode.INAPPROPRIATE_MATCHING, "Invalid request parameters");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reject(int messageID, byte opType, ResultCode resultCode, String message) throws IOException {
+        ASN1Buffer encoded = new ASN1Buffer();
+        LDAPRequestHandler.createErrorResponse(messageID, opType, resultCode, message).writeTo(encoded);
+        synchronized (clientWriteLock) {
+            writeFully(client, ByteBuffer.wrap(encoded.toByteArray()));
+        }
+    }
+
+    /**
+     * Reads until the header of the next message and at least {@code peek}
+     * bytes of it (or all of it, if shorter) are buffered.
+     *
+     * @return Total length of the message, or {@code -1} at end of stream
+     */
+    private static int nextMessage(SocketChannel source, ByteBuffer buffer, int peek) throws IOException {
+        while (true) {
+            int length = messageLength(buffer);
+            if (length > 0 && buffer.remaining() >= Math.min(length, peek)) {
+                return length;
+            }
+            if (!fill(source, buffer)) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Appends whatever the source has to the buffered data.
+     *
+     * @return {@code false} at end of stream
+     */
+    private static boolean fill(SocketChannel source, ByteBuffer buffer) throws IOException {
+        buffer.compact();
+        try {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Buffer full while reading a message header");
+            }
+            return source.read(buffer) >= 0;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Copies (or, with a {@code null} target, discards) the next {@code length}
+     * bytes of the source, starting with those already buffered.
+     */
+    private static void transfer(SocketChannel source, ByteBuffer buffer, int length, SocketChannel target)
+            throws IOException {
+        int remaining = length;
+        while (true) {
+            int chunk = Math.min(remaining, buffer.remaining());
+            if (target != null && chunk > 0) {
+                writeFully(target, buffer.slice(buffer.position(), chunk));
+            }
+            buffer.position(buffer.position() + chunk);
+            remaining -= chunk;
+            if (remaining == 0) {
+                return;
+            }
+            buffer.clear();
+            int read = source.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                throw new EOFException("Connection closed in the middle of a message");
+            }
+        }
+    }
+
+    private static void writeFully(SocketChannel target, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            target.write(data);
+        }
+    }
+
+    /**
+     * @return Total length of the LDAP message at the buffer's position, or
+     *         {@code 0} if its header is not yet complete
+     */
+    static int messageLength(ByteBuffer buffer) throws IOException {
+        int offset = buffer.position();
+        int available = buffer.remaining();
+        if (available < 2) {
+            return 0;
+        }
+        if (buffer.get(offset) != 0x30) {
+            throw new IOException("Expected an LDAP message sequence");
+        }
+        int first = buffer.get(offset + 1) & 0xFF;
+        if ((first & 0x80) == 0) {
+            return 2 + first;
+        }
+        int lengthBytes = first & 0x7F;
+        if (lengthBytes == 0 || lengthBytes > 4) {
+            throw new IOException("Unsupported BER length encoding");
+        }
+        if (available < 2 + lengthBytes) {
+            return 0;
+        }
+        long valueLength = 0;
+        for (int i = 0; i < lengthBytes; i++) {
+            valueLength = (valueLength << 8) | (buffer.get(offset + 2 + i) & 0xFF);
+        }
+        long total = 2 + lengthBytes + valueLength;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Message too large: " + total + " bytes");
+        }
+        return (int) total;
+    }
+
+    /**
+     * @return Combined length of the complete messages buffered from the
+     *         buffer's position onwards
+     */
+    static int completeMessages(ByteBuffer buffer) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        int total = 0;
+        int length;
+        while ((length = messageLength(view)) > 0 && length <= view.remaining()) {
+            view.position(view.position() + length);
+            total += length;
+        }
+        return total;
+    }
+
+    /**
+     * @return Message ID of the message at the buffer's position
+     */
+    static int messageId(ByteBuffer buffer) throws IOException {
+        int offset = buffer.position() + envelopeHeaderLength(buffer);
+        if (buffer.get(offset) != 0x02) {
+            throw new IOException("Expected a message ID");
+        }
+        int length = buffer.get(offset + 1);
+        if (length < 1 || length > 4) {
+            throw new IOException("Invalid message ID length: " + length);
+        }
+        int id = buffer.get(offset + 2);
+        for (int i = 1; i < length; i++) {
+            id = (id << 8) | (buffer.get(offset + 2 + i) & 0xFF);
+        }
+        return id;
+    }
+
+    /**
+     * @return BER type of the protocol op of the message at the buffer's
+     *         position, i.e. one of the {@code LDAPMessage.PROTOCOL_OP_TYPE_*} values
+     */
+    static byte protocolOpType(ByteBuffer buffer) {
+        int offset = buffer.position() + envelopeHeaderLength(buffer);
+        return buffer.get(offset + 2 + buffer.get(offset + 1));
+    }
+
+    private static int envelopeHeaderLength(ByteBuffer buffer) {
+        int first = buffer.get(buffer.position() + 1) & 0xFF;
+        return (first & 0x80) == 0 ? 2 : 2 + (first & 0x7F);
+    }
+
+    /**
+     * Closes both sockets; safe to call more than once.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        closeQuietly(client);
+        closeQuietly(backend);
+        if (metrics != null) {
+            metrics.clientDisconnected();
+        }
+        listener.connectionClosed(this);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing passthrough socket: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.marklogic.handlers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * LDAP listener that relays raw LDAP messages between each client and a
+ * dedicated backend connection.
+ *
+ * <p>When a listener needs no request processor, fully decoding every request
+ * and re-encoding every search entry is wasted work. This listener frames
+ * messages from their BER headers and copies the bytes through pooled direct
+ * buffers, decoding only what the proxy's security checks need; see
+ * {@link PassthroughConnection}. Clients may pipeline requests freely, since
+ * responses are relayed as soon as the backend sends them. Backends are chosen
+ * round robin, skipping servers whose circuit breaker is open. Only plain TCP
+ * is supported on either side.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class PassthroughLDAPListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PassthroughLDAPListener.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private final String name;
+    private final int port;
+    private final List<InetSocketAddress> backends;
+    private final DirectBufferPool buffers;
+    private final ClientRateLimiter rateLimiter;
+    private final LDAPMetrics metrics;
+    private final BackendHealthMonitor healthMonitor;
+    private final boolean virtualThreads;
+    private final AtomicInteger nextBackend = new AtomicInteger();
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final Set<PassthroughConnection> connections = ConcurrentHashMap.newKeySet();
+
+    private volatile ServerSocketChannel serverChannel;
+    private volatile boolean stopped;
+
+    /**
+     * @param name           Listener name, used for thread names
+     * @param port           Port to listen on
+     * @param backends       Backend servers, used round robin; resolved when connecting
+     * @param bufferBytes    Size of the direct buffers used per connection and direction
+     * @param rateLimiter    Per-client rate limiter, or {@code null}
+     * @param metrics        Listener metrics, or {@code null}
+     * @param healthMonitor  Backend circuit breakers, or {@code null}
+     * @param virtualThreads Whether each connection relays on virtual threads
+     */
+    public PassthroughLDAPListener(String name, int port, List<InetSocketAddress> backends, int bufferBytes,
+                                   ClientRateLimiter rateLimiter, LDAPMetrics metrics,
+                                   BackendHealthMonitor healthMonitor, boolean virtualThreads) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("Passthrough listener '" + name + "' has no backend servers");
+        }
+        this.name = name;
+        this.port = port;
+        this.backends = List.copyOf(backends);
+        this.buffers = new DirectBufferPool(Math.max(4096, bufferBytes), 256);
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+        this.healthMonitor = healthMonitor;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Opens the listening socket and starts accepting client connections.
+     *
+     * @throws IOException if the socket cannot be opened
+     */
+    public void startListening() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port));
+        Thread acceptor = new Thread(this::acceptConnections, "ldap-" + name + "-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.debug("Passthrough listener '{}' accepting on port {} for {}", name, getListenPort(), backends);
+    }
+
+    private void acceptConnections() {
+        while (!stopped) {
+            SocketChannel client;
+            try {
+                client = serverChannel.accept();
+            } catch (IOException e) {
+                if (!stopped) {
+                    logger.error("Listener '{}' stopped accepting connections: {}", name, e.getMessage());
+                }
+                return;
+            }
+            try {
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                client.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                PassthroughConnection connection =
+                        new PassthroughConnection(this, client, buffers, rateLimiter, metrics);
+                connections.add(connection);
+                String relayName = "ldap-" + name + "-client-" + threadCount.incrementAndGet();
+                if (virtualThreads) {
+                    Thread.ofVirtual().name(relayName).start(connection);
+                } else {
+                    Thread relay = new Thread(connection, relayName);
+                    relay.setDaemon(true);
+                    relay.start();
+                }
+            } catch (IOException e) {
+                logger.warn("Unable to set up passthrough connection: {}", e.getMessage());
+                try {
+                    client.close();
+                } catch (IOException ce) {
+                    logger.debug("Error closing client socket: {}", ce.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a connection to the next available backend server.
+     *
+     * @return The connection, or {@code null} if no backend could be reached
+     */
+    SocketChannel connectBackend() {
+        int start = Math.floorMod(nextBackend.getAndIncrement(), backends.size());
+        for (int i = 0; i < backends.size(); i++) {
+            InetSocketAddress address = backends.get((start + i) % backends.size());
+            String hostPort = address.getHostString() + ':' + address.getPort();
+            if (healthMonitor != null && !healthMonitor.isAvailable(hostPort)) {
+                continue;
+            }
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                // Resolve on every connect so DNS changes are picked up
+                channel.socket().connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                        CONNECT_TIMEOUT_MILLIS);
+                return channel;
+            } catch (IOException | UnresolvedAddressException e) {
+                logger.warn("Passthrough listener '{}' unable to connect to {}: {}", name, hostPort, e.getMessage());
+                if (healthMonitor != null) {
+                    healthMonitor.recordOperation(hostPort, true, e.getMessage());
+                }
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ce) {
+                        logger.debug("Error closing backend socket: {}", ce.getMessage());
+                    }
+                }
+            }
+        }
+        logger.error("Passthrough listener '{}' has no reachable backend server", name);
+        return null;
+    }
+
+    void connectionClosed(PassthroughConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * @return Port the listener is bound to, or {@code -1} if it is not listening
+     */
+    public int getListenPort() {
+        ServerSocketChannel channel = serverChannel;
+        return channel == null ? -1 : channel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections.
+     *
+     * @param closeExisting Whether to also close the connections already established
+     */
+    public void shutDown(boolean closeExisting) {
+        stopped = true;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Error closing listening socket: {}", e.getMessage());
+        }
+        if (closeExisting) {
+            for (PassthroughConnection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * @return Number of open client connections
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+}
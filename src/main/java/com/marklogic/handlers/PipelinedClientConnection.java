@@ -0,0 +1,404 @@
+package com.marklogic.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.asn1.ASN1Buffer;
+import com.unboundid.asn1.ASN1StreamReader;
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.AbandonRequestProtocolOp;
+import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+
+/**
+ * One client connection of a {@link PipelinedLDAPListener}.
+ *
+ * <p>A reader thread decodes requests and hands each one to the listener's
+ * worker pool, so a client may have up to {@code maxOutstanding} operations in
+ * progress at once; the reader stops reading while the limit is reached.
+ * Responses are sent as operations complete, tagged with their message IDs.
+ * Binds and extended operations change connection state, so they wait for
+ * the operations before them and run alone. Abandon requests are processed
+ * immediately on the reader thread.
+ *
+ * <p>Request handlers and processors keep using the SDK's
+ * {@link LDAPListenerClientConnection} to send search entries, references and
+ * intermediate responses. That connection is never started; it only writes,
+ * through a {@link MessageFramingOutputStream} that serializes its messages
+ * with the final responses sent from here.
+ */
+final class PipelinedClientConnection implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelinedClientConnection.class);
+
+    // Largest request accepted from a client, as for the SDK listener
+    private static final int MAX_MESSAGE_SIZE_BYTES = 20 * 1024 * 1024;
+
+    private final PipelinedLDAPListener listener;
+    private final Socket socket;
+    private final OutputStream out;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final LDAPListenerRequestHandler handler;
+    private final Executor workers;
+    private final int maxOutstanding;
+    private final Semaphore outstanding;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param listener       Listener that accepted the connection
+     * @param socket         Accepted client socket
+     * @param factory        Request handler whose {@code newInstance} creates this client's handler
+     * @param workers        Pool running the client's operations
+     * @param maxOutstanding Operations the client may have in progress at once
+     */
+    PipelinedClientConnection(PipelinedLDAPListener listener, Socket socket, LDAPListenerRequestHandler factory,
+                              Executor workers, int maxOutstanding) throws IOException, LDAPException {
+        this.listener = listener;
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+        this.workers = workers;
+        this.maxOutstanding = maxOutstanding;
+        this.outstanding = new Semaphore(maxOutstanding);
+
+        // The SDK connection calls newInstance on the handler it is given; capture the result
+        HandlerCapture capture = new HandlerCapture(factory);
+        new LDAPListenerClientConnection(null,
+                new ClientSocket(socket, new MessageFramingOutputStream(out, writeLock)), capture, null);
+        this.handler = capture.instance;
+    }
+
+    @Override
+    public void run() {
+        try {
+            ASN1StreamReader reader = new ASN1StreamReader(socket.getInputStream(), MAX_MESSAGE_SIZE_BYTES);
+            LDAPMessage request;
+            while (!closed.get() && (request = LDAPMessage.readFrom(reader, true)) != null) {
+                switch (request.getProtocolOpType()) {
+                    case LDAPMessage.PROTOCOL_OP_TYPE_UNBIND_REQUEST:
+                        return;
+                    case LDAPMessage.PROTOCOL_OP_TYPE_ABANDON_REQUEST:
+                        handler.processAbandonRequest(request.getMessageID(),
+                                request.getAbandonRequestProtocolOp(), request.getControls());
+                        break;
+                    case LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST:
+                    case LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST:
+                        // Runs once every earlier operation has completed, and alone
+                        outstanding.acquire(maxOutstanding);
+                        try {
+                            respond(process(request));
+                        } finally {
+                            outstanding.release(maxOutstanding);
+                        }
+                        break;
+                    default:
+                        outstanding.acquire();
+                        dispatch(request);
+                        break;
+                }
+            }
+        } catch (LDAPException | IOException e) {
+            if (!closed.get()) {
+                logger.debug("Client connection {} closed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    private void dispatch(LDAPMessage request) {
+        try {
+            workers.execute(() -> {
+                try {
+                    respond(process(request));
+                } finally {
+                    outstanding.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Listener is shutting down
+            outstanding.release();
+            close();
+        }
+    }
+
+    private LDAPMessage process(LDAPMessage request) {
+        int messageID = request.getMessageID();
+        List<Control> controls = request.getControls();
+        try {
+            switch (request.getProtocolOpType()) {
+                case LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST:
+                    return handler.processAddRequest(messageID, request.getAddRequestProtocolOp(), controls);
+                case LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST:
+                    return handler.processBindRequest(messageID, request.getBindRequestProtocolOp(), controls);
+                case LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST:
+                    return handler.processCompareRequest(messageID, request.getCompareRequestProtocolOp(), controls);
+                case LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST:
+                    return handler.processDeleteRequest(messageID, request.getDeleteRequestProtocolOp(), controls);
+                case LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST:
+                    return handler.processExtendedRequest(messageID, request.getExtendedRequestProtocolOp(), controls);
+                case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST:
+                    return handler.processModifyRequest(messageID, request.getModifyRequestProtocolOp(), controls);
+                case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST:
+                    return handler.processModifyDNRequest(messageID, request.getModifyDNRequestProtocolOp(), controls);
+                case LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST:
+                    return handler.processSearchRequest(messageID, request.getSearchRequestProtocolOp(), controls);
+                default:
+                    logger.warn("Closing client connection {} after unexpected request type {}",
+                            socket.getRemoteSocketAddress(), request.getProtocolOpType());
+                    close();
+                    return null;
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error processing message {} from {}", messageID, socket.getRemoteSocketAddress(), e);
+            close();
+            return null;
+        }
+    }
+
+    /**
+     * Sends an operation's final response.
+     */
+    private void respond(LDAPMessage response) {
+        if (response == null || closed.get()) {
+            return;
+        }
+        ASN1Buffer buffer = new ASN1Buffer();
+        response.writeTo(buffer);
+        writeLock.lock();
+        try {
+            buffer.writeTo(out);
+            out.flush();
+            return;
+        } catch (IOException e) {
+            logger.debug("Unable to send response to {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+        close();
+    }
+
+    /**
+     * Closes the connection, abandoning the client's operations still in progress.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            handler.closeInstance();
+        } catch (RuntimeException e) {
+            logger.error("Error closing request handler: {}", e.getMessage(), e);
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Error closing client socket: {}", e.getMessage());
+        }
+        listener.connectionClosed(this);
+    }
+
+    /**
+     * Request handler passed to the SDK client connection only to obtain the
+     * per-client instance it creates.
+     */
+    private static final class HandlerCapture extends LDAPListenerRequestHandler {
+        private final LDAPListenerRequestHandler factory;
+        private LDAPListenerRequestHandler instance;
+
+        private HandlerCapture(LDAPListenerRequestHandler factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public LDAPListenerRequestHandler newInstance(LDAPListenerClientConnection connection) throws LDAPException {
+            instance = factory.newInstance(connection);
+            return instance;
+        }
+
+        @Override
+        public void processAbandonRequest(int messageID, AbandonRequestProtocolOp request, List<Control> controls) {
+            instance.processAbandonRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls) {
+            return instance.processAddRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls) {
+            return instance.processBindRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request,
+                                                 List<Control> controls) {
+            return instance.processCompareRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request,
+                                                List<Control> controls) {
+            return instance.processDeleteRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request,
+                                                  List<Control> controls) {
+            return instance.processExtendedRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request,
+                                                List<Control> controls) {
+            return instance.processModifyRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request,
+                                                  List<Control> controls) {
+            return instance.processModifyDNRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request,
+                                                List<Control> controls) {
+            return instance.processSearchRequest(messageID, request, controls);
+        }
+    }
+
+    /**
+     * View of the client socket given to the SDK client connection: reads and
+     * socket details go to the real socket, writes go through the framing stream.
+     */
+    private static final class ClientSocket extends Socket {
+        private final Socket socket;
+        private final OutputStream framedOut;
+
+        private ClientSocket(Socket socket, OutputStream framedOut) {
+            this.socket = socket;
+            this.framedOut = framedOut;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return framedOut;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return socket.getInetAddress();
+        }
+
+        @Override
+        public int getPort() {
+            return socket.getPort();
+        }
+
+        @Override
+        public InetAddress getLocalAddress() {
+            return socket.getLocalAddress();
+        }
+
+        @Override
+        public int getLocalPort() {
+            return socket.getLocalPort();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            return socket.getRemoteSocketAddress();
+        }
+
+        @Override
+        public SocketAddress getLocalSocketAddress() {
+            return socket.getLocalSocketAddress();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return socket.isConnected();
+        }
+
+        @Override
+        public boolean isBound() {
+            return socket.isBound();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return socket.isClosed();
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) throws SocketException {
+            socket.setSoTimeout(timeout);
+        }
+
+        @Override
+        public void setKeepAlive(boolean on) throws SocketException {
+            socket.setKeepAlive(on);
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) throws SocketException {
+            socket.setTcpNoDelay(on);
+        }
+
+        @Override
+        public void setSoLinger(boolean on, int linger) throws SocketException {
+            socket.setSoLinger(on, linger);
+        }
+
+        @Override
+        public void setReceiveBufferSize(int size) throws SocketException {
+            socket.setReceiveBufferSize(size);
+        }
+
+        @Override
+        public void setSendBufferSize(int size) throws SocketException {
+            socket.setSendBufferSize(size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        @Override
+        public String toString() {
+            return socket.toString();
+        }
+    }
+}
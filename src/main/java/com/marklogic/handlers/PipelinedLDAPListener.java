@@ -0,0 +1,193 @@
+package com.marklogic.handlers;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ServerSocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * LDAP listener that processes several operations from the same client
+ * connection concurrently.
+ *
+ * <p>The SDK's {@code LDAPListener} reads the next request from a client only
+ * after the previous one has been answered, so a client that pipelines
+ * requests over a high-latency link to the backend waits one round trip per
+ * operation. This listener accepts connections itself and runs each client's
+ * operations on a shared worker pool, up to {@code maxOutstanding} per
+ * connection; see {@link PipelinedClientConnection}. The request handler is
+ * used exactly as by the SDK listener.
+ *
+ * <p>With virtual threads, each client's reader and every operation run on a
+ * virtual thread instead of a platform thread. An idle client then costs a
+ * parked virtual thread of a few hundred bytes rather than a platform thread
+ * with its own stack, so one listener can hold tens of thousands of mostly
+ * idle connections.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class PipelinedLDAPListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelinedLDAPListener.class);
+
+    private final String name;
+    private final int port;
+    private final ServerSocketFactory serverSocketFactory;
+    private final LDAPListenerRequestHandler requestHandler;
+    private final int maxOutstanding;
+    private final boolean virtualThreads;
+    private final ExecutorService workers;
+    private final Set<PipelinedClientConnection> connections = ConcurrentHashMap.newKeySet();
+
+    private volatile ServerSocket serverSocket;
+    private volatile boolean stopped;
+
+    /**
+     * @param name                Listener name, used for thread names
+     * @param port                Port to listen on
+     * @param serverSocketFactory Factory for the listening socket, or {@code null} for plain sockets
+     * @param requestHandler      Request handler; {@code newInstance} is called for every client
+     * @param maxOutstanding      Operations a client connection may have in progress at once
+     */
+    public PipelinedLDAPListener(String name, int port, ServerSocketFactory serverSocketFactory,
+                                 LDAPListenerRequestHandler requestHandler, int maxOutstanding) {
+        this(name, port, serverSocketFactory, requestHandler, maxOutstanding, false);
+    }
+
+    /**
+     * @param name                Listener name, used for thread names
+     * @param port                Port to listen on
+     * @param serverSocketFactory Factory for the listening socket, or {@code null} for plain sockets
+     * @param requestHandler      Request handler; {@code newInstance} is called for every client
+     * @param maxOutstanding      Operations a client connection may have in progress at once
+     * @param virtualThreads      Whether client readers and operations run on virtual threads
+     */
+    public PipelinedLDAPListener(String name, int port, ServerSocketFactory serverSocketFactory,
+                                 LDAPListenerRequestHandler requestHandler, int maxOutstanding,
+                                 boolean virtualThreads) {
+        this.name = name;
+        this.port = port;
+        this.serverSocketFactory = serverSocketFactory == null ? ServerSocketFactory.getDefault() : serverSocketFactory;
+        this.requestHandler = requestHandler;
+        this.maxOutstanding = Math.max(1, maxOutstanding);
+        this.virtualThreads = virtualThreads;
+        if (virtualThreads) {
+            this.workers = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("ldap-" + name + "-worker-", 1).factory());
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.workers = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "ldap-" + name + "-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Opens the listening socket and starts accepting client connections.
+     *
+     * @throws IOException if the socket cannot be opened
+     */
+    public void startListening() throws IOException {
+        serverSocket = serverSocketFactory.createServerSocket(port);
+        Thread acceptor = new Thread(this::acceptConnections, "ldap-" + name + "-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.debug("Pipelined listener '{}' accepting on port {} (max {} outstanding per client, {} threads)",
+                name, getListenPort(), maxOutstanding, virtualThreads ? "virtual" : "platform");
+    }
+
+    private void acceptConnections() {
+        while (!stopped) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!stopped) {
+                    logger.error("Listener '{}' stopped accepting connections: {}", name, e.getMessage());
+                }
+                return;
+            }
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                PipelinedClientConnection connection =
+                        new PipelinedClientConnection(this, socket, requestHandler, workers, maxOutstanding);
+                connections.add(connection);
+                String readerName = "ldap-" + name + "-client-" + socket.getRemoteSocketAddress();
+                if (virtualThreads) {
+                    Thread.ofVirtual().name(readerName).start(connection);
+                } else {
+                    Thread reader = new Thread(connection, readerName);
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+            } catch (IOException | LDAPException e) {
+                logger.warn("Unable to set up client connection from {}: {}",
+                        socket.getRemoteSocketAddress(), e.getMessage());
+                try {
+                    socket.close();
+                } catch (IOException ce) {
+                    logger.debug("Error closing client socket: {}", ce.getMessage());
+                }
+            }
+        }
+    }
+
+    void connectionClosed(PipelinedClientConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * @return Port the listener is bound to, or {@code -1} if it is not listening
+     */
+    public int getListenPort() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? -1 : socket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections.
+     *
+     * @param closeExisting Whether to also close the connections already established
+     */
+    public void shutDown(boolean closeExisting) {
+        stopped = true;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Error closing listening socket: {}", e.getMessage());
+        }
+        if (closeExisting) {
+            for (PipelinedClientConnection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            workers.shutdownNow();
+        } else {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * @return Number of open client connections
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+}
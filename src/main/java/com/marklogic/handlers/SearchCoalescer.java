@@ -0,0 +1,253 @@
+package com.marklogic.handlers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Single-flight coalescing of identical concurrent searches for a single proxy
+ * listener.
+ *
+ * <p>Searches are keyed like {@link SearchResultCache} (bound DN plus the
+ * normalized search parameters). The first client to issue a search becomes
+ * the leader of a {@link Flight} and sends it to the backend; clients issuing
+ * the same search while it runs join the flight as followers and are answered
+ * from the leader's result instead of sending their own. A flight accepts at
+ * most {@code maxFanOut} followers. Followers give up after
+ * {@code maxWaitMillis}, and whenever the leader cannot share its result (a
+ * failed search or one too large to collect), and then search on their own.
+ *
+ * <p>Nothing is kept once a flight lands, so this complements the search
+ * result cache rather than replacing it. Any write through the listener
+ * detaches the flights in progress so later searches do not join them.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class SearchCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchCoalescer.class);
+
+    /**
+     * Result of a completed search, shared with the followers of its flight.
+     */
+    public static final class SharedResult {
+        private final LDAPResult result;
+        private final List<SearchResultEntry> entries;
+        private final List<SearchResultReference> references;
+
+        private SharedResult(LDAPResult result, List<SearchResultEntry> entries,
+                             List<SearchResultReference> references) {
+            this.result = result;
+            this.entries = entries;
+            this.references = references;
+        }
+
+        public LDAPResult getResult() {
+            return result;
+        }
+
+        public List<SearchResultEntry> getEntries() {
+            return entries;
+        }
+
+        public List<SearchResultReference> getReferences() {
+            return references;
+        }
+    }
+
+    /**
+     * A client's part in one search in progress on the backend.
+     */
+    public final class Flight {
+        private final String key;
+        private final FlightState state;
+        private final boolean leader;
+
+        private Flight(String key, FlightState state, boolean leader) {
+            this.key = key;
+            this.state = state;
+            this.leader = leader;
+        }
+
+        /**
+         * @return {@code true} if the caller must run the search and then call
+         *         {@link #complete} or {@link #fail}
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Shares the leader's result with every follower.
+         */
+        public void complete(LDAPResult result, List<SearchResultEntry> entries,
+                             List<SearchResultReference> references) {
+            flights.remove(key, state);
+            state.outcome.complete(new SharedResult(result,
+                    Collections.unmodifiableList(new ArrayList<>(entries)),
+                    Collections.unmodifiableList(new ArrayList<>(references))));
+        }
+
+        /**
+         * Releases the followers without a result, so they search on their own.
+         * Does nothing once the flight has completed.
+         */
+        public void fail() {
+            flights.remove(key, state);
+            state.outcome.complete(null);
+        }
+
+        /**
+         * Waits for the leader's result as a follower.
+         *
+         * @param abandonHook Receives an action that stops the wait, for when the client abandons it
+         * @return The shared result, or {@code null} if the caller should search on its own
+         * @throws CancellationException if the wait was stopped through {@code abandonHook}
+         */
+        public SharedResult await(Consumer<Runnable> abandonHook) {
+            CompletableFuture<SharedResult> mine = state.outcome.thenApply(result -> result);
+            abandonHook.accept(() -> mine.cancel(false));
+            try {
+                SharedResult result = mine.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    coalesced.incrementAndGet();
+                } else {
+                    fallbacks.incrementAndGet();
+                }
+                return result;
+            } catch (TimeoutException e) {
+                logger.debug("Search coalescer '{}' stopped waiting after {}ms", name, maxWaitMillis);
+                fallbacks.incrementAndGet();
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a coalesced search");
+            } catch (ExecutionException e) {
+                fallbacks.incrementAndGet();
+                return null;
+            }
+        }
+    }
+
+    private static final class FlightState {
+        private final CompletableFuture<SharedResult> outcome = new CompletableFuture<>();
+        private int followers;
+    }
+
+    private final String name;
+    private final long maxWaitMillis;
+    private final int maxFanOut;
+    private final long maxBytes;
+    private final ConcurrentHashMap<String, FlightState> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong led = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * @param name        Listener name, used in logs
+     * @param listenerCfg Listener configuration providing the wait and fan-out limits
+     */
+    public SearchCoalescer(String name, LdapListenerProperties listenerCfg) {
+        this.name = name;
+        this.maxWaitMillis = listenerCfg.getSearchCoalesceMaxWaitMillis();
+        this.maxFanOut = listenerCfg.getSearchCoalesceMaxFanOut();
+        this.maxBytes = listenerCfg.getSearchCoalesceMaxBytes();
+        logger.info("Search coalescing '{}' enabled (maxWait={}ms, maxFanOut={}, maxBytes={})",
+                name, maxWaitMillis, maxFanOut, maxBytes);
+    }
+
+    /**
+     * Joins the flight for a search, starting one if none is in progress.
+     *
+     * @param key Key from {@link SearchResultCache#key}
+     * @return The caller's part in the flight, or {@code null} if the flight
+     *         already has {@code maxFanOut} followers and the caller should
+     *         search on its own
+     */
+    public Flight join(String key) {
+        FlightState state = new FlightState();
+        FlightState existing = flights.putIfAbsent(key, state);
+        if (existing == null) {
+            led.incrementAndGet();
+            return new Flight(key, state, true);
+        }
+        synchronized (existing) {
+            if (existing.followers >= maxFanOut) {
+                return null;
+            }
+            existing.followers++;
+        }
+        return new Flight(key, existing, false);
+    }
+
+    /**
+     * Detaches every flight in progress; their followers still receive the
+     * result, but new searches start new flights.
+     */
+    public void invalidate() {
+        flights.clear();
+    }
+
+    /**
+     * @return Largest result, in estimated bytes, a leader collects for its followers
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Searches sent to the backend as the leader of a flight
+     */
+    public long getLed() {
+        return led.get();
+    }
+
+    /**
+     * @return Searches answered from another client's backend search
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return Followers that searched on their own after all
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * @return Number of flights in progress
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCoalescer(" + name + ", inFlight=" + size() + ", led=" + getLed()
+                + ", coalesced=" + getCoalesced() + ", fallbacks=" + getFallbacks() + ")";
+    }
+}
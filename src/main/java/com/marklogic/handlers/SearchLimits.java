@@ -0,0 +1,94 @@
+package com.marklogic.handlers;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+
+/**
+ * Streaming settings for searches proxied by one listener.
+ *
+ * <p>Entries travel from the backend reader thread to the client through a
+ * queue bounded by {@link #getQueueEntries()} and {@link #getQueueBytes()}; a
+ * slow client stalls the backend search rather than letting results pile up in
+ * memory. Searches that return more than {@link #getMaxEntries()} entries or
+ * {@link #getMaxBytes()} bytes are abandoned and end with
+ * {@code sizeLimitExceeded}. A non-zero {@link #getPageSize()} makes the proxy
+ * page through the backend results on behalf of clients that do not page.
+ * Clients that page themselves may keep {@link #getPagedMaxOpen()} paged
+ * searches open at once, each holding its backend connection for at most
+ * {@link #getPagedIdleMillis()} between pages.
+ */
+public final class SearchLimits {
+
+    /** Settings for listeners that do not configure any. */
+    public static final SearchLimits DEFAULT = new SearchLimits(new LdapListenerProperties());
+
+    private final int pageSize;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final int queueEntries;
+    private final long queueBytes;
+    private final int pagedMaxOpen;
+    private final long pagedIdleMillis;
+
+    /**
+     * @param listenerCfg Listener configuration providing the limits
+     */
+    public SearchLimits(LdapListenerProperties listenerCfg) {
+        this.pageSize = Math.max(0, listenerCfg.getSearchPageSize());
+        this.maxEntries = Math.max(0, listenerCfg.getSearchMaxEntries());
+        this.maxBytes = Math.max(0, listenerCfg.getSearchMaxBytes());
+        this.queueEntries = Math.max(1, listenerCfg.getSearchQueueEntries());
+        this.queueBytes = Math.max(1, listenerCfg.getSearchQueueBytes());
+        this.pagedMaxOpen = Math.max(1, listenerCfg.getSearchPagedMaxOpen());
+        this.pagedIdleMillis = Math.max(1, listenerCfg.getSearchPagedIdleMillis());
+    }
+
+    /**
+     * @return Backend page size used for clients that do not page, or 0 to disable
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return Maximum entries returned by one search, or 0 for no limit
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return Maximum estimated bytes returned by one search, or 0 for no limit
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return Maximum entries buffered between the backend and the client
+     */
+    public int getQueueEntries() {
+        return queueEntries;
+    }
+
+    /**
+     * @return Maximum estimated bytes buffered between the backend and the client
+     */
+    public long getQueueBytes() {
+        return queueBytes;
+    }
+
+    /**
+     * @return Client-paged searches one client may have waiting for their next page
+     */
+    public int getPagedMaxOpen() {
+        return pagedMaxOpen;
+    }
+
+    /**
+     * @return How long a client-paged search keeps its backend connection while
+     *         waiting for the client's next page request
+     */
+    public long getPagedIdleMillis() {
+        return pagedIdleMillis;
+    }
+}
@@ -0,0 +1,304 @@
+package com.marklogic.handlers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.DereferencePolicy;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.util.StaticUtils;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Size-bounded search result cache for a single proxy listener.
+ *
+ * <p>Results are keyed by the client's bound DN, the normalized base DN, scope,
+ * the normalized filter, the requested attributes and the remaining search
+ * parameters, so a cached result is only ever replayed to a client with the
+ * same identity issuing an equivalent search. Entries expire after a fixed TTL
+ * and are evicted least-recently-used first when either the number of cached
+ * searches or the estimated memory footprint exceeds its limit.
+ *
+ * <p>Any add, delete, modify or modify DN passed through the listener clears the
+ * cache, since the proxy cannot tell which cached searches it affected.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class SearchResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchResultCache.class);
+
+    // Rough fixed cost of the key, map node and result holder
+    private static final long RESULT_OVERHEAD_BYTES = 256;
+
+    // Rough fixed cost of an entry or attribute object
+    private static final long OBJECT_OVERHEAD_BYTES = 48;
+
+    /**
+     * Entries and references returned by one backend search.
+     */
+    public static final class CachedResult {
+        private final List<SearchResultEntry> entries;
+        private final List<SearchResultReference> references;
+        private final long sizeBytes;
+        private final long expiresAt;
+
+        private CachedResult(List<SearchResultEntry> entries, List<SearchResultReference> references,
+                             long sizeBytes, long expiresAt) {
+            this.entries = entries;
+            this.references = references;
+            this.sizeBytes = sizeBytes;
+            this.expiresAt = expiresAt;
+        }
+
+        public List<SearchResultEntry> getEntries() {
+            return entries;
+        }
+
+        public List<SearchResultReference> getReferences() {
+            return references;
+        }
+
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+    }
+
+    private final String name;
+    private final long ttlMillis;
+    private final int maxResults;
+    private final long maxBytes;
+
+    // Access-ordered, so iteration starts at the least recently used result
+    private final LinkedHashMap<String, CachedResult> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    // Incremented by clear(), so results of searches that overlapped a write are not stored
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param name        Listener name, used in logs
+     * @param listenerCfg Listener configuration providing the cache limits
+     */
+    public SearchResultCache(String name, LdapListenerProperties listenerCfg) {
+        this.name = name;
+        this.ttlMillis = listenerCfg.getSearchCacheTtlMillis();
+        this.maxResults = listenerCfg.getSearchCacheMaxResults();
+        this.maxBytes = listenerCfg.getSearchCacheMaxBytes();
+        logger.info("Search result cache '{}' enabled (ttl={}ms, maxResults={}, maxBytes={})",
+                name, ttlMillis, maxResults, maxBytes);
+    }
+
+    /**
+     * Builds the cache key for a search.
+     *
+     * @param boundDN    DN the client is bound as, empty for anonymous
+     * @param baseDN     Search base DN
+     * @param scope      Search scope
+     * @param deref      Alias dereferencing policy
+     * @param sizeLimit  Requested size limit
+     * @param typesOnly  Whether only attribute types were requested
+     * @param filter     Search filter
+     * @param attributes Attributes requested from the backend
+     * @return The key, or {@code null} if a DN cannot be normalized and the search should not be cached
+     */
+    public static String key(String boundDN, String baseDN, SearchScope scope, DereferencePolicy deref,
+                             int sizeLimit, boolean typesOnly, Filter filter, String[] attributes) {
+        try {
+            String[] attrs = new String[attributes.length];
+            for (int i = 0; i < attributes.length; i++) {
+                attrs[i] = StaticUtils.toLowerCase(attributes[i]);
+            }
+            Arrays.sort(attrs);
+
+            return new StringBuilder()
+                    .append(new DN(boundDN).toNormalizedString()).append('\0')
+                    .append(new DN(baseDN).toNormalizedString()).append('\0')
+                    .append(scope.intValue()).append('\0')
+                    .append(deref.intValue()).append('\0')
+                    .append(sizeLimit).append('\0')
+                    .append(typesOnly).append('\0')
+                    .append(filter.toNormalizedString()).append('\0')
+                    .append(String.join(",", attrs))
+                    .toString();
+        } catch (LDAPException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param key Key from {@link #key}
+     * @return The cached result, or {@code null} on a miss or if the result has expired
+     */
+    public CachedResult get(String key) {
+        synchronized (results) {
+            CachedResult result = results.get(key);
+            if (result != null && result.expiresAt <= System.currentTimeMillis()) {
+                results.remove(key);
+                totalBytes -= result.sizeBytes;
+                expirations.incrementAndGet();
+                result = null;
+            }
+            if (result == null) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return Current generation, to be passed to {@link #put} for a search started now
+     */
+    public long getGeneration() {
+        synchronized (results) {
+            return generation;
+        }
+    }
+
+    /**
+     * Caches a complete, successful search result. Results larger than the whole
+     * cache, or from a search that started before the last {@link #clear()}, are
+     * not stored.
+     *
+     * @param generation Value of {@link #getGeneration()} taken before the search was sent
+     */
+    public void put(String key, long generation, List<SearchResultEntry> entries,
+                    List<SearchResultReference> references) {
+        long size = RESULT_OVERHEAD_BYTES + key.length() * 2L;
+        for (SearchResultEntry entry : entries) {
+            size += estimateSize(entry);
+        }
+        for (SearchResultReference reference : references) {
+            size += OBJECT_OVERHEAD_BYTES;
+            for (String url : reference.getReferralURLs()) {
+                size += url.length() * 2L;
+            }
+        }
+        if (size > maxBytes) {
+            logger.debug("Search result for cache '{}' too large to cache ({} bytes)", name, size);
+            return;
+        }
+
+        CachedResult result = new CachedResult(
+                Collections.unmodifiableList(new ArrayList<>(entries)),
+                Collections.unmodifiableList(new ArrayList<>(references)),
+                size, System.currentTimeMillis() + ttlMillis);
+
+        synchronized (results) {
+            if (generation != this.generation) {
+                return;
+            }
+            CachedResult previous = results.put(key, result);
+            if (previous != null) {
+                totalBytes -= previous.sizeBytes;
+            }
+            totalBytes += size;
+
+            Iterator<CachedResult> eldest = results.values().iterator();
+            while ((results.size() > maxResults || totalBytes > maxBytes) && eldest.hasNext()) {
+                CachedResult evicted = eldest.next();
+                eldest.remove();
+                totalBytes -= evicted.sizeBytes;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes every cached result.
+     */
+    public void clear() {
+        synchronized (results) {
+            results.clear();
+            totalBytes = 0;
+            generation++;
+        }
+    }
+
+    /**
+     * Estimates the heap held by an entry: DN, attribute names and values plus a
+     * fixed overhead per object.
+     */
+    public static long estimateSize(SearchResultEntry entry) {
+        long size = OBJECT_OVERHEAD_BYTES + entry.getDN().length() * 2L;
+        for (Attribute attribute : entry.getAttributes()) {
+            size += OBJECT_OVERHEAD_BYTES + attribute.getName().length() * 2L;
+            for (byte[] value : attribute.getValueByteArrays()) {
+                size += OBJECT_OVERHEAD_BYTES + value.length;
+            }
+        }
+        return size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return Number of cached search results
+     */
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    /**
+     * @return Estimated heap used by cached results, in bytes
+     */
+    public long getSizeBytes() {
+        synchronized (results) {
+            return totalBytes;
+        }
+    }
+
+    /**
+     * @return Largest result, in estimated bytes, worth collecting for the cache
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResultCache(" + name + ", results=" + size() + ", bytes=" + getSizeBytes()
+                + ", hits=" + getHits() + ", misses=" + getMisses() + ")";
+    }
+}
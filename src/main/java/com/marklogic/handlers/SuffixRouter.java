@@ -0,0 +1,125 @@
+package com.marklogic.handlers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Routes operations to backends by the naming context their DN falls under.
+ *
+ * <p>Each route maps a base DN suffix, such as {@code dc=emea,dc=example,dc=com},
+ * to the backend holding that subtree. An operation on an entry goes to the
+ * route with the longest suffix containing the entry's DN, or to the default
+ * backend if there is none. A search whose base lies above several suffixes
+ * goes to every route it reaches, plus the default backend when that is a
+ * separate directory, so the caller can run it against all of them in parallel.
+ *
+ * @param <T> Backend type, normally {@link LDAPBackendPool}
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class SuffixRouter<T> {
+
+    private record Route<T>(DN suffix, T backend) {
+    }
+
+    // Deepest suffix first, so the first match is the longest
+    private final List<Route<T>> routes = new ArrayList<>();
+    private final T defaultBackend;
+    private final boolean defaultIsRoute;
+
+    /**
+     * @param suffixes       Backend for each suffix
+     * @param defaultBackend Backend for DNs outside every suffix
+     * @throws LDAPException if a suffix is not a valid DN
+     */
+    public SuffixRouter(Map<String, T> suffixes, T defaultBackend) throws LDAPException {
+        for (Map.Entry<String, T> entry : suffixes.entrySet()) {
+            routes.add(new Route<>(new DN(entry.getKey()), entry.getValue()));
+        }
+        routes.sort(Comparator.comparingInt((Route<T> route) -> route.suffix().getRDNs().length).reversed());
+        this.defaultBackend = defaultBackend;
+        this.defaultIsRoute = suffixes.containsValue(defaultBackend);
+    }
+
+    /**
+     * @param dn DN of the entry an operation targets
+     * @return Backend holding the entry
+     */
+    public T route(String dn) {
+        DN parsed = parse(dn);
+        if (parsed != null) {
+            for (Route<T> route : routes) {
+                if (parsed.isDescendantOf(route.suffix(), true)) {
+                    return route.backend();
+                }
+            }
+        }
+        return defaultBackend;
+    }
+
+    /**
+     * @param baseDN Search base DN
+     * @param scope  Search scope
+     * @return Backends holding entries the search can reach, in route order
+     */
+    public List<T> routeSearch(String baseDN, SearchScope scope) {
+        DN base = parse(baseDN);
+        if (base == null) {
+            return List.of(defaultBackend);
+        }
+        for (Route<T> route : routes) {
+            if (base.isDescendantOf(route.suffix(), true)) {
+                return List.of(route.backend());
+            }
+        }
+        if (scope == SearchScope.BASE) {
+            return List.of(defaultBackend);
+        }
+
+        Set<T> reached = new LinkedHashSet<>();
+        for (Route<T> route : routes) {
+            DN suffix = route.suffix();
+            boolean inScope = scope == SearchScope.ONE
+                    ? base.equals(suffix.getParent())
+                    : suffix.isDescendantOf(base, false);
+            if (inScope) {
+                reached.add(route.backend());
+            }
+        }
+        if (reached.isEmpty() || !defaultIsRoute) {
+            reached.add(defaultBackend);
+        }
+        return new ArrayList<>(reached);
+    }
+
+    /**
+     * @return Every backend of the router, routed ones first, each once
+     */
+    public List<T> getBackends() {
+        Set<T> backends = new LinkedHashSet<>();
+        for (Route<T> route : routes) {
+            backends.add(route.backend());
+        }
+        if (defaultBackend != null) {
+            backends.add(defaultBackend);
+        }
+        return new ArrayList<>(backends);
+    }
+
+    private static DN parse(String dn) {
+        try {
+            return new DN(dn == null ? "" : dn);
+        } catch (LDAPException e) {
+            return null;
+        }
+    }
+}
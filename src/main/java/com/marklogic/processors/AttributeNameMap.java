@@ -0,0 +1,92 @@
+package com.marklogic.processors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Case-insensitive attribute rename table used by {@link ProxyRequestProcessor}.
+ *
+ * <p>Built once from the {@code fromAttribute:toAttribute,...} mapping string.
+ * LDAP attribute names are case-insensitive, so lookups compare names ignoring
+ * case, and attribute options are carried across ({@code member;range=0-1499}
+ * maps to {@code uniqueMember;range=0-1499}). Mapping tables are a handful of
+ * entries, so a linear scan with {@link String#regionMatches(boolean, int, String, int, int)}
+ * is both the fastest lookup and allocation-free for names that are not mapped.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class AttributeNameMap {
+
+    static final AttributeNameMap EMPTY = new AttributeNameMap(new String[0], new String[0]);
+
+    private final String[] from;
+    private final String[] to;
+
+    private AttributeNameMap(String[] from, String[] to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Parses a mapping string of the form {@code fromAttribute:toAttribute,...}.
+     *
+     * @param mapString Mapping string; {@code null} or empty gives {@link #EMPTY}
+     * @param reverse   {@code true} to map {@code toAttribute} back to {@code fromAttribute}
+     * @throws IllegalArgumentException if a pair is not of the form {@code from:to}
+     */
+    static AttributeNameMap parse(String mapString, boolean reverse) {
+        if (mapString == null || mapString.isBlank()) {
+            return EMPTY;
+        }
+        List<String> fromNames = new ArrayList<>();
+        List<String> toNames = new ArrayList<>();
+        for (String pair : mapString.split(",")) {
+            String[] keyValue = pair.split(":");
+            if (keyValue.length != 2 || keyValue[0].isBlank() || keyValue[1].isBlank()) {
+                throw new IllegalArgumentException("Invalid attribute mapping '" + pair
+                        + "', expected fromAttribute:toAttribute");
+            }
+            fromNames.add(keyValue[reverse ? 1 : 0].trim());
+            toNames.add(keyValue[reverse ? 0 : 1].trim());
+        }
+        return new AttributeNameMap(fromNames.toArray(new String[0]), toNames.toArray(new String[0]));
+    }
+
+    boolean isEmpty() {
+        return from.length == 0;
+    }
+
+    /**
+     * @param name Attribute name, possibly with options
+     * @return The mapped name, or {@code name} itself if it is not mapped
+     */
+    String map(String name) {
+        int i = indexOf(name);
+        if (i < 0) {
+            return name;
+        }
+        int baseLength = from[i].length();
+        return baseLength == name.length() ? to[i] : to[i] + name.substring(baseLength);
+    }
+
+    /**
+     * @return {@code true} if {@link #map(String)} would rename {@code name}
+     */
+    boolean isMapped(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < from.length; i++) {
+            String f = from[i];
+            int len = f.length();
+            if (name.length() >= len && name.regionMatches(true, 0, f, 0, len)
+                    && (name.length() == len || name.charAt(len) == ';')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.UUID;
 
 import com.marklogic.configuration.properties.RequestProcessorProperties;
+import com.marklogic.handlers.LDAPBackendSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,7 +24,6 @@ import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
 import com.unboundid.ldap.protocol.DeleteResponseProtocolOp;
 import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
 import com.unboundid.ldap.protocol.ExtendedResponseProtocolOp;
-import com.unboundid.ldap.protocol.IntermediateResponseProtocolOp;
 import com.unboundid.ldap.protocol.LDAPMessage;
 import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
 import com.unboundid.ldap.protocol.ModifyDNResponseProtocolOp;
@@ -35,16 +35,12 @@ import com.unboundid.ldap.protocol.SearchResultEntryProtocolOp;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Control;
 import com.unboundid.ldap.sdk.Entry;
-import com.unboundid.ldap.sdk.IntermediateResponse;
-import com.unboundid.ldap.sdk.IntermediateResponseListener;
-import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
-import com.unboundid.util.Debug;
 import com.unboundid.util.StaticUtils;
 
 import ch.qos.logback.classic.Level;
@@ -53,7 +49,7 @@ import ch.qos.logback.classic.LoggerContext;
 /**
  * Created by mwarnes on 05/02/2017.
  */
-public class BindSearchCustomResultProcessor implements IRequestProcessor, IntermediateResponseListener {
+public class BindSearchCustomResultProcessor implements IRequestProcessor {
 
     // Spring Logger
     private static final Logger logger = LoggerFactory.getLogger(BindSearchCustomResultProcessor.class);
@@ -70,7 +66,6 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     private static final String[] SENSITIVE_ATTRIBUTES = {"password", "pwd", "userPassword", "secret", "token"};
 
     private RequestProcessorProperties cfg;
-    private LDAPListenerClientConnection listenerConnection;
 
     @Override
     public void initialize(RequestProcessorProperties cfg) throws Exception {
@@ -117,7 +112,7 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     }
     
     @Override
-    public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.info("BindSearchCustomResultProcessor.authenticate called.");
         
         // Validate request parameters
@@ -153,7 +148,7 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     }
 
     @Override
-    public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.info("BindSearchCustomResultProcessor.search called.");
         logger.info(request.toString());
 
@@ -181,7 +176,6 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
 
         } else {
             // Build Attribute list to return
-            this.listenerConnection = listenerConnection;
             SearchResultListener searchListener = new SearchResultListener(listenerConnection, messageID);
             SearchRequest searchRequest = new SearchRequest(searchListener, request.getBaseDN(), request.getScope(), request.getDerefPolicy(), request.getSizeLimit(), request.getTimeLimit(), request.typesOnly(), request.getFilter(), attrs);
             List<String> attributeList = searchRequest.getAttributeList();
@@ -254,7 +248,7 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     }
 
     @Override
-    public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP ADD request not accepted by BindSearchCustomResultProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -268,7 +262,7 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     }
 
     @Override
-    public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP COMPARE request not accepted by BindSearchCustomResultProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -284,7 +278,7 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     }
 
     @Override
-    public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP DELETE request not accepted by BindSearchCustomResultProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -299,7 +293,7 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     }
 
     @Override
-    public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP EXTENDED request not accepted by BindSearchCustomResultProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -314,7 +308,7 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     }
 
     @Override
-    public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP MODIFY request not accepted by BindSearchCustomResultProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -329,7 +323,7 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
     }
 
     @Override
-    public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP MODIFYDN request not accepted by BindSearchCustomResultProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -345,15 +339,6 @@ public class BindSearchCustomResultProcessor implements IRequestProcessor, Inter
                 controls);
     }
 
-    @Override
-    public void intermediateResponseReturned(IntermediateResponse intermediateResponse) {
-        try {
-            this.listenerConnection.sendIntermediateResponse(intermediateResponse.getMessageID(), new IntermediateResponseProtocolOp(intermediateResponse.getOID(), intermediateResponse.getValue()), intermediateResponse.getControls());
-        } catch (LDAPException var3) {
-            Debug.debugException(var3);
-        }
-    }
-
     public static byte[] getBytesFromUUID(UUID uuid) {
         ByteBuffer bb = ByteBuffer.wrap(new byte[16]);
         bb.putLong(uuid.getMostSignificantBits());
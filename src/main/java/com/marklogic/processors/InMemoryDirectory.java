@@ -0,0 +1,452 @@
+package com.marklogic.processors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.CaseIgnoreStringMatchingRule;
+import com.unboundid.ldap.matchingrules.MatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.util.StaticUtils;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+/**
+ * Read-only, indexed set of LDAP entries used by the standalone request processors.
+ *
+ * <p>All indexes are built once in the constructor:
+ * <ul>
+ *   <li>a DN index (normalized DN to entry) used for binds and base-scope searches,</li>
+ *   <li>children and subtree indexes used for one-level and subtree scopes,</li>
+ *   <li>equality, presence and trigram substring indexes on the configured attributes.</li>
+ * </ul>
+ *
+ * <p>A search turns the {@link Filter} into a candidate list using the indexes and
+ * then verifies every candidate against the scope and the full filter, so the cost
+ * is proportional to the number of candidates rather than the directory size.
+ * Filter components that cannot be answered from an index (NOT, ordering,
+ * approximate, extensible match or unindexed attributes) fall back to the entries
+ * in scope. Posting lists are sorted {@code int[]} arrays of entry ids.
+ */
+@ThreadSafety(level = ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class InMemoryDirectory {
+
+    private static final MatchingRule MATCHING_RULE = CaseIgnoreStringMatchingRule.getInstance();
+
+    private static final int GRAM = 3;
+
+    private static final int[] NONE = new int[0];
+
+    private final Entry[] entries;
+    private final Map<String, Integer> dnIndex;
+    private final Map<String, int[]> childrenIndex;
+    private final Map<String, int[]> subtreeIndex;
+    private final Set<String> indexedAttributes;
+    private final Map<String, Map<String, int[]>> equalityIndex;
+    private final Map<String, int[]> presenceIndex;
+    private final Map<String, Map<String, int[]>> substringIndex;
+
+    /**
+     * Builds the directory and all of its indexes.
+     *
+     * @param entries            Entries to load; later entries with a duplicate DN are rejected
+     * @param indexedAttributes  Attribute names to build equality, presence and substring indexes for
+     * @throws LDAPException if an entry DN is malformed or duplicated
+     */
+    public InMemoryDirectory(List<Entry> entries, Collection<String> indexedAttributes) throws LDAPException {
+        this.entries = entries.toArray(new Entry[0]);
+
+        Set<String> indexed = new HashSet<>();
+        for (String name : indexedAttributes) {
+            indexed.add(StaticUtils.toLowerCase(name));
+        }
+        this.indexedAttributes = Collections.unmodifiableSet(indexed);
+
+        Map<String, Integer> dns = new HashMap<>(this.entries.length * 2);
+        Map<String, IntList> children = new HashMap<>();
+        Map<String, IntList> subtree = new HashMap<>();
+        Map<String, Map<String, IntList>> equality = new HashMap<>();
+        Map<String, IntList> presence = new HashMap<>();
+        Map<String, Map<String, IntList>> substring = new HashMap<>();
+
+        for (int id = 0; id < this.entries.length; id++) {
+            Entry entry = this.entries[id];
+            DN dn = entry.getParsedDN();
+            String normalizedDN = dn.toNormalizedString();
+            if (dns.putIfAbsent(normalizedDN, id) != null) {
+                throw new LDAPException(ResultCode.ENTRY_ALREADY_EXISTS, "Duplicate entry DN: " + entry.getDN());
+            }
+
+            DN parent = dn.getParent();
+            children.computeIfAbsent(parent == null ? "" : parent.toNormalizedString(), k -> new IntList()).add(id);
+            for (DN ancestor = parent; ancestor != null; ancestor = ancestor.getParent()) {
+                subtree.computeIfAbsent(ancestor.toNormalizedString(), k -> new IntList()).addIfAbsent(id);
+            }
+            if (!dn.isNullDN()) {
+                // Every entry is below the root DSE
+                subtree.computeIfAbsent("", k -> new IntList()).addIfAbsent(id);
+            }
+
+            for (Attribute attribute : entry.getAttributes()) {
+                String name = StaticUtils.toLowerCase(attribute.getBaseName());
+                if (attribute.hasOptions() || !indexed.contains(name)) {
+                    continue;
+                }
+                presence.computeIfAbsent(name, k -> new IntList()).addIfAbsent(id);
+
+                Map<String, IntList> values = equality.computeIfAbsent(name, k -> new HashMap<>());
+                Map<String, IntList> grams = substring.computeIfAbsent(name, k -> new HashMap<>());
+                for (String value : attribute.getValues()) {
+                    String key = normalize(value);
+                    values.computeIfAbsent(key, k -> new IntList()).addIfAbsent(id);
+                    for (int i = 0; i + GRAM <= key.length(); i++) {
+                        grams.computeIfAbsent(key.substring(i, i + GRAM), k -> new IntList()).addIfAbsent(id);
+                    }
+                }
+            }
+        }
+
+        this.dnIndex = dns;
+        this.childrenIndex = toArrays(children);
+        this.subtreeIndex = toArrays(subtree);
+        this.presenceIndex = toArrays(presence);
+        this.equalityIndex = new HashMap<>();
+        equality.forEach((name, values) -> equalityIndex.put(name, toArrays(values)));
+        this.substringIndex = new HashMap<>();
+        substring.forEach((name, grams) -> substringIndex.put(name, toArrays(grams)));
+    }
+
+    /**
+     * @return Number of entries in the directory
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return Names of the indexed attributes, in lower case
+     */
+    public Set<String> getIndexedAttributes() {
+        return indexedAttributes;
+    }
+
+    /**
+     * Looks up an entry id by DN.
+     *
+     * @param dn Entry DN, in any case or spacing
+     * @return The entry id, or {@code -1} if there is no such entry or the DN is malformed
+     */
+    public int getEntryId(String dn) {
+        try {
+            Integer id = dnIndex.get(new DN(dn).toNormalizedString());
+            return id == null ? -1 : id;
+        } catch (LDAPException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param id Entry id from {@link #getEntryId(String)} or {@link #search}
+     * @return The entry with that id
+     */
+    public Entry getEntry(int id) {
+        return entries[id];
+    }
+
+    /**
+     * @param dn Entry DN
+     * @return The entry, or {@code null} if there is no such entry
+     */
+    public Entry getEntry(String dn) {
+        int id = getEntryId(dn);
+        return id < 0 ? null : entries[id];
+    }
+
+    /**
+     * Returns the ids of all entries within the scope that match the filter, in load order.
+     *
+     * <p>The base must be an entry, an ancestor of one (users files hold no
+     * entries for their base DNs) or the root DSE.
+     *
+     * @param baseDN Search base DN
+     * @param scope  Search scope
+     * @param filter Search filter
+     * @return Ids of the matching entries
+     * @throws LDAPException with {@link ResultCode#NO_SUCH_OBJECT} if the base
+     *         does not exist, or if the base DN is malformed or the filter cannot be evaluated
+     */
+    public int[] search(String baseDN, SearchScope scope, Filter filter) throws LDAPException {
+        DN base = new DN(baseDN);
+        String normalizedBase = base.toNormalizedString();
+        if (!base.isNullDN() && !dnIndex.containsKey(normalizedBase) && !subtreeIndex.containsKey(normalizedBase)) {
+            throw new LDAPException(ResultCode.NO_SUCH_OBJECT, "No such entry: " + baseDN);
+        }
+        int[] candidates = candidates(filter);
+
+        IntList matches = new IntList();
+        if (candidates == null) {
+            for (int id : scopeCandidates(base, scope)) {
+                if (filter.matchesEntry(entries[id])) {
+                    matches.add(id);
+                }
+            }
+        } else {
+            for (int id : candidates) {
+                if (inScope(entries[id].getParsedDN(), base, scope) && filter.matchesEntry(entries[id])) {
+                    matches.add(id);
+                }
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Applies the requested attribute list: none or "*" returns all user attributes,
+     * "1.1" returns none, otherwise only the named attributes are returned.
+     */
+    public static SearchResultEntry selectAttributes(Entry entry, List<String> requested) {
+        if (requested.isEmpty() || requested.contains("*")) {
+            return new SearchResultEntry(entry.getDN(), entry.getAttributes());
+        }
+
+        List<Attribute> attributes = new ArrayList<>();
+        for (Attribute attribute : entry.getAttributes()) {
+            for (String name : requested) {
+                if (attribute.getBaseName().equalsIgnoreCase(name)) {
+                    attributes.add(attribute);
+                    break;
+                }
+            }
+        }
+        return new SearchResultEntry(entry.getDN(), attributes);
+    }
+
+    private static boolean inScope(DN dn, DN base, SearchScope scope) {
+        switch (scope.intValue()) {
+            case SearchScope.BASE_INT_VALUE:
+                return dn.equals(base);
+            case SearchScope.ONE_INT_VALUE:
+                DN parent = dn.getParent();
+                return parent == null ? base.isNullDN() && !dn.isNullDN() : parent.equals(base);
+            case SearchScope.SUBORDINATE_SUBTREE_INT_VALUE:
+                return dn.isDescendantOf(base, false);
+            default:
+                return dn.isDescendantOf(base, true);
+        }
+    }
+
+    private int[] scopeCandidates(DN base, SearchScope scope) {
+        String key = base.toNormalizedString();
+        Integer baseId = dnIndex.get(key);
+        int[] self = baseId == null ? NONE : new int[] { baseId };
+
+        switch (scope.intValue()) {
+            case SearchScope.BASE_INT_VALUE:
+                return self;
+            case SearchScope.ONE_INT_VALUE:
+                return childrenIndex.getOrDefault(key, NONE);
+            case SearchScope.SUBORDINATE_SUBTREE_INT_VALUE:
+                return subtreeIndex.getOrDefault(key, NONE);
+            default:
+                return union(self, subtreeIndex.getOrDefault(key, NONE));
+        }
+    }
+
+    /**
+     * Computes a superset of the entries matching the filter from the indexes.
+     *
+     * @return Sorted candidate ids, or {@code null} if the filter cannot be narrowed by an index
+     */
+    private int[] candidates(Filter filter) {
+        switch (filter.getFilterType()) {
+            case Filter.FILTER_TYPE_AND: {
+                int[] result = null;
+                for (Filter component : filter.getComponents()) {
+                    int[] ids = candidates(component);
+                    if (ids != null) {
+                        result = result == null ? ids : intersect(result, ids);
+                        if (result.length == 0) {
+                            return result;
+                        }
+                    }
+                }
+                return result;
+            }
+            case Filter.FILTER_TYPE_OR: {
+                int[] result = NONE;
+                for (Filter component : filter.getComponents()) {
+                    int[] ids = candidates(component);
+                    if (ids == null) {
+                        return null;
+                    }
+                    result = union(result, ids);
+                }
+                return result;
+            }
+            case Filter.FILTER_TYPE_EQUALITY: {
+                String name = indexedName(filter);
+                if (name == null) {
+                    return null;
+                }
+                Map<String, int[]> values = equalityIndex.getOrDefault(name, Collections.emptyMap());
+                return values.getOrDefault(normalize(filter.getAssertionValue()), NONE);
+            }
+            case Filter.FILTER_TYPE_PRESENCE: {
+                String name = indexedName(filter);
+                return name == null ? null : presenceIndex.getOrDefault(name, NONE);
+            }
+            case Filter.FILTER_TYPE_SUBSTRING:
+                return substringCandidates(filter);
+            default:
+                return null;
+        }
+    }
+
+    private int[] substringCandidates(Filter filter) {
+        String name = indexedName(filter);
+        if (name == null) {
+            return null;
+        }
+        Map<String, int[]> grams = substringIndex.getOrDefault(name, Collections.emptyMap());
+
+        List<String> parts = new ArrayList<>();
+        try {
+            if (filter.getRawSubInitialValue() != null) {
+                parts.add(normalizeSubstring(filter.getRawSubInitialValue(), MatchingRule.SUBSTRING_TYPE_SUBINITIAL));
+            }
+            for (ASN1OctetString any : filter.getRawSubAnyValues()) {
+                parts.add(normalizeSubstring(any, MatchingRule.SUBSTRING_TYPE_SUBANY));
+            }
+            if (filter.getRawSubFinalValue() != null) {
+                parts.add(normalizeSubstring(filter.getRawSubFinalValue(), MatchingRule.SUBSTRING_TYPE_SUBFINAL));
+            }
+        } catch (LDAPException e) {
+            return null;
+        }
+
+        int[] result = null;
+        for (String part : parts) {
+            for (int i = 0; i + GRAM <= part.length(); i++) {
+                int[] ids = grams.getOrDefault(part.substring(i, i + GRAM), NONE);
+                result = result == null ? ids : intersect(result, ids);
+                if (result.length == 0) {
+                    return result;
+                }
+            }
+        }
+
+        // Components too short for a trigram still require the attribute to be present
+        return result == null ? presenceIndex.getOrDefault(name, NONE) : result;
+    }
+
+    /**
+     * @return The lower-case attribute name if the filter targets an indexed attribute
+     *         without options, otherwise {@code null}
+     */
+    private String indexedName(Filter filter) {
+        String type = filter.getAttributeName();
+        if (type.indexOf(';') >= 0) {
+            return null;
+        }
+        String name = StaticUtils.toLowerCase(type);
+        return indexedAttributes.contains(name) ? name : null;
+    }
+
+    private static String normalize(String value) {
+        try {
+            return MATCHING_RULE.normalize(new ASN1OctetString(value)).stringValue();
+        } catch (LDAPException e) {
+            return StaticUtils.toLowerCase(value);
+        }
+    }
+
+    private static String normalizeSubstring(ASN1OctetString value, byte type) throws LDAPException {
+        return MATCHING_RULE.normalizeSubstring(value, type).stringValue();
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, IntList> lists) {
+        Map<String, int[]> arrays = new HashMap<>(lists.size() * 2);
+        lists.forEach((key, list) -> arrays.put(key, list.toArray()));
+        return arrays;
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                out[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Growable list of ascending entry ids.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        // Ids are added in ascending order, so a duplicate can only be the last value
+        void addIfAbsent(int value) {
+            if (size == 0 || values[size - 1] != value) {
+                add(value);
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.marklogic.processors;
+
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.protocol.IntermediateResponseProtocolOp;
+import com.unboundid.ldap.sdk.IntermediateResponse;
+import com.unboundid.ldap.sdk.IntermediateResponseListener;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.util.Debug;
+
+/**
+ * Relays intermediate responses received from the backend to the client
+ * connection that issued the request.
+ *
+ * <p>Processors are shared between client connections, so the target
+ * connection is bound per request rather than stored on the processor.
+ */
+final class IntermediateResponseForwarder implements IntermediateResponseListener {
+
+    /**
+     * The serial version UID for this serializable class.
+     */
+    private static final long serialVersionUID = 4312065911795042317L;
+
+    // The client connection that will receive the intermediate responses.
+    private final transient LDAPListenerClientConnection clientConnection;
+
+    IntermediateResponseForwarder(final LDAPListenerClientConnection clientConnection) {
+        this.clientConnection = clientConnection;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void intermediateResponseReturned(final IntermediateResponse intermediateResponse) {
+        try {
+            clientConnection.sendIntermediateResponse(
+                    intermediateResponse.getMessageID(),
+                    new IntermediateResponseProtocolOp(intermediateResponse.getOID(),
+                            intermediateResponse.getValue()),
+                    intermediateResponse.getControls());
+        } catch (final LDAPException le) {
+            Debug.debugException(le);
+        }
+    }
+}
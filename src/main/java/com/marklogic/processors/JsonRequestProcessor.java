@@ -1,6 +1,8 @@
 package com.marklogic.processors;
 
 import com.marklogic.configuration.properties.RequestProcessorProperties;
+import com.marklogic.handlers.LDAPBackendSession;
+import com.marklogic.repository.UserFileWatcher;
 import com.unboundid.ldap.listener.LDAPListenerClientConnection;
 import com.unboundid.ldap.protocol.*;
 import com.unboundid.ldap.sdk.*;
@@ -9,6 +11,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.Metrics;
+
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -22,14 +27,22 @@ import java.util.List;
  * JSON-based LDAP Request Processor
  * Handles LDAP authentication and search operations using a JSON user repository
  */
-public class JsonRequestProcessor implements IRequestProcessor {
+public class JsonRequestProcessor implements IRequestProcessor, Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(JsonRequestProcessor.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    
-    private JsonNode usersData;
+
+    /**
+     * Attributes with equality, presence and substring indexes.
+     */
+    private static final List<String> INDEXED_ATTRIBUTES = List.of("uid", "cn", "memberOf", "userPrincipalName");
+
     private RequestProcessorProperties cfg;
 
+    // Replaced as a whole when the users file changes, so requests need no lock
+    private volatile UserDirectory users;
+    private UserFileWatcher watcher;
+
     @Override
     public void initialize(RequestProcessorProperties cfg) throws Exception {
         logger.info("Initializing JsonRequestProcessor");
@@ -40,12 +53,16 @@ public class JsonRequestProcessor implements IRequestProcessor {
         if (userDataPath == null || userDataPath.isEmpty()) {
             logger.info("JSON file path missing using default JSON configuration instead.");
             // Load from classpath
-            loadJsonUserDataFromClasspath();
+            users = loadJsonUserDataFromClasspath();
         } else {
             File f = new File(userDataPath);
             if (f.exists() && !f.isDirectory()) {
                 logger.info("Using custom JSON configuration from: {}", userDataPath);
-                loadJsonUserDataFromFile(userDataPath);
+                users = loadJsonUserDataFromFile(userDataPath);
+                if (cfg.isReloadOnChange()) {
+                    watcher = new UserFileWatcher("JSON users", Path.of(userDataPath),
+                        () -> users = loadJsonUserDataFromFile(userDataPath), Metrics.globalRegistry);
+                }
             } else {
                 logger.error("Custom JSON configuration file not found: {}", userDataPath);
                 throw new Exception(userDataPath + " missing or invalid.");
@@ -55,36 +72,57 @@ public class JsonRequestProcessor implements IRequestProcessor {
         logger.info("JsonRequestProcessor initialized successfully");
     }
 
-    private void loadJsonUserDataFromFile(String userDataPath) throws IOException {
+    private UserDirectory loadJsonUserDataFromFile(String userDataPath) throws IOException {
         Path path = Paths.get(userDataPath);
         if (!Files.exists(path)) {
             throw new IOException("JSON user data file not found: " + userDataPath);
         }
         
         String jsonContent = Files.readString(path);
-        this.usersData = objectMapper.readTree(jsonContent);
-        
-        JsonNode users = usersData.get("users");
-        logger.info("Loaded {} users from JSON file", users.size());
+        UserDirectory loaded = buildDirectory(objectMapper.readTree(jsonContent));
+        logger.info("Loaded {} users from JSON file", loaded.directory().size());
+        return loaded;
     }
 
-    private void loadJsonUserDataFromClasspath() throws IOException {
+    private UserDirectory loadJsonUserDataFromClasspath() throws IOException {
         try {
             String jsonContent = new String(
                 getClass().getClassLoader().getResourceAsStream("users.json").readAllBytes()
             );
-            this.usersData = objectMapper.readTree(jsonContent);
-            
-            JsonNode users = usersData.get("users");
-            logger.info("Loaded {} users from JSON classpath", users.size());
+            UserDirectory loaded = buildDirectory(objectMapper.readTree(jsonContent));
+            logger.info("Loaded {} users from JSON classpath", loaded.directory().size());
+            return loaded;
         } catch (Exception e) {
             throw new IOException("Failed to load users.json from classpath", e);
         }
     }
 
+    private UserDirectory buildDirectory(JsonNode usersData) throws IOException {
+        JsonNode users = usersData.get("users");
+        if (users == null || !users.isArray()) {
+            throw new IOException("JSON user data has no 'users' array");
+        }
+
+        List<Entry> entries = new ArrayList<>(users.size());
+        String[] userPasswords = new String[users.size()];
+        for (int i = 0; i < users.size(); i++) {
+            JsonNode user = users.get(i);
+            entries.add(createEntry(user));
+            // A user without a password cannot bind, not even with an empty one
+            JsonNode password = user.get("password");
+            userPasswords[i] = password == null || password.isNull() ? null : password.asText();
+        }
+
+        try {
+            return new UserDirectory(new InMemoryDirectory(entries, INDEXED_ATTRIBUTES), userPasswords);
+        } catch (LDAPException e) {
+            throw new IOException("Invalid JSON user data: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, 
-            List<Control> controls, LDAPConnection ldapConnection, 
+            List<Control> controls, LDAPBackendSession backend, 
             LDAPListenerClientConnection listenerConnection) {
         
         logger.debug("Processing bind request for DN: {}", request.getBindDN());
@@ -94,8 +132,10 @@ public class JsonRequestProcessor implements IRequestProcessor {
             String password = request.getSimplePassword().stringValue();
             
             // Find user by DN
-            JsonNode user = findUserByDN(bindDN);
-            if (user == null) {
+            UserDirectory snapshot = users;
+            InMemoryDirectory directory = snapshot.directory();
+            int userId = directory.getEntryId(bindDN);
+            if (userId < 0) {
                 logger.warn("User not found for DN: {}", bindDN);
                 LDAPResult bindResult = new LDAPResult(messageID, ResultCode.INVALID_CREDENTIALS);
                 BindResponseProtocolOp bindResponseProtocolOp = new BindResponseProtocolOp(
@@ -109,9 +149,9 @@ public class JsonRequestProcessor implements IRequestProcessor {
             }
             
             // Verify password
-            String expectedPassword = user.get("password").asText();
-            if (!password.equals(expectedPassword)) {
-                logger.warn("Invalid password for user: {}", user.get("username").asText());
+            String username = directory.getEntry(userId).getAttributeValue("uid");
+            if (!password.equals(snapshot.passwords()[userId])) {
+                logger.warn("Invalid password for user: {}", username);
                 LDAPResult bindResult = new LDAPResult(messageID, ResultCode.INVALID_CREDENTIALS);
                 BindResponseProtocolOp bindResponseProtocolOp = new BindResponseProtocolOp(
                     bindResult.getResultCode().intValue(),
@@ -123,7 +163,7 @@ public class JsonRequestProcessor implements IRequestProcessor {
                     Arrays.asList(bindResult.getResponseControls()));
             }
             
-            logger.info("Successful bind for user: {}", user.get("username").asText());
+            logger.info("Successful bind for user: {}", username);
             LDAPResult bindResult = new LDAPResult(messageID, ResultCode.SUCCESS);
             BindResponseProtocolOp bindResponseProtocolOp = new BindResponseProtocolOp(
                 bindResult.getResultCode().intValue(),
@@ -150,45 +190,43 @@ public class JsonRequestProcessor implements IRequestProcessor {
 
     @Override
     public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, 
-            List<Control> controls, LDAPConnection ldapConnection, 
+            List<Control> controls, LDAPBackendSession backend, 
             LDAPListenerClientConnection listenerConnection) {
         
         logger.debug("Processing search request - Base DN: {}, Scope: {}, Filter: {}", 
             request.getBaseDN(), request.getScope(), request.getFilter());
         
         try {
-            List<SearchResultEntry> entries = new ArrayList<>();
-            
-            JsonNode users = usersData.get("users");
-            
-            // Process each user and check if it matches the search criteria
-            for (int i = 0; i < users.size(); i++) {
-                JsonNode user = users.get(i);
-                SearchResultEntry entry = createSearchResultEntry(user, request);
-                if (entry != null) {
-                    entries.add(entry);
-                }
-            }
-            
+            InMemoryDirectory directory = users.directory();
+            int[] matches = directory.search(request.getBaseDN(), request.getScope(), request.getFilter());
+
             // Send all matching entries
-            for (SearchResultEntry entry : entries) {
-                SearchResultEntryProtocolOp searchResultEntryProtocolOp = 
-                    new SearchResultEntryProtocolOp(entry);
+            for (int id : matches) {
+                SearchResultEntryProtocolOp searchResultEntryProtocolOp =
+                    new SearchResultEntryProtocolOp(InMemoryDirectory.selectAttributes(directory.getEntry(id), request.getAttributes()));
                 try {
                     listenerConnection.sendSearchResultEntry(messageID, searchResultEntryProtocolOp, new Control[0]);
                 } catch (Exception e) {
                     logger.error("Error sending search result entry", e);
                 }
             }
-            
+
             // Send search result done
-            logger.debug("Search completed, returned {} entries", entries.size());
+            logger.debug("Search completed, returned {} entries", matches.length);
             LDAPResult searchResult = new LDAPResult(messageID, ResultCode.SUCCESS);
             return new LDAPMessage(messageID, 
                 new SearchResultDoneProtocolOp(searchResult.getResultCode().intValue(), 
                     searchResult.getMatchedDN(), searchResult.getDiagnosticMessage(), 
                     Arrays.asList(searchResult.getReferralURLs())));
                     
+        } catch (LDAPException e) {
+            logger.error("Error processing search request: {}", e.getMessage());
+            LDAPResult searchResult = new LDAPResult(messageID, e.getResultCode(), e.getDiagnosticMessage(),
+                null, null, null);
+            return new LDAPMessage(messageID, 
+                new SearchResultDoneProtocolOp(searchResult.getResultCode().intValue(), 
+                    searchResult.getMatchedDN(), searchResult.getDiagnosticMessage(), 
+                    Arrays.asList(searchResult.getReferralURLs())));
         } catch (Exception e) {
             logger.error("Error processing search request", e);
             LDAPResult searchResult = new LDAPResult(messageID, ResultCode.OTHER);
@@ -199,60 +237,31 @@ public class JsonRequestProcessor implements IRequestProcessor {
         }
     }
 
-    private JsonNode findUserByDN(String dn) {
-        try {
-            JsonNode users = usersData.get("users");
-            for (int i = 0; i < users.size(); i++) {
-                JsonNode user = users.get(i);
-                if (dn.equals(user.get("dn").asText())) {
-                    return user;
-                }
-            }
-        } catch (Exception e) {
-            logger.error("Error finding user by DN: {}", dn, e);
-        }
-        return null;
-    }
+    private static Entry createEntry(JsonNode user) {
+        String username = user.path("username").asText();
+        Entry entry = new Entry(user.path("dn").asText());
 
-    private SearchResultEntry createSearchResultEntry(JsonNode user, SearchRequestProtocolOp request) {
-        try {
-            String userDN = user.get("dn").asText();
-            String username = user.get("username").asText();
-            
-            // Basic DN matching - for simplicity, we'll return all users for now
-            // In a full implementation, you'd want to properly parse and match the search base and filter
-            
-            List<Attribute> attributes = new ArrayList<>();
-            
-            // Add common LDAP attributes
-            attributes.add(new Attribute("cn", username));
-            attributes.add(new Attribute("uid", username));
-            attributes.add(new Attribute("userPrincipalName", username));
-            attributes.add(new Attribute("objectClass", "person", "organizationalPerson", "inetOrgPerson"));
-            
-            // Add roles if present
-            if (user.has("roles")) {
-                JsonNode roles = user.get("roles");
-                List<String> roleStrings = new ArrayList<>();
-                for (int i = 0; i < roles.size(); i++) {
-                    roleStrings.add(roles.get(i).asText());
-                }
-                if (!roleStrings.isEmpty()) {
-                    attributes.add(new Attribute("memberOf", roleStrings.toArray(new String[0])));
-                }
+        // Add common LDAP attributes
+        entry.addAttribute("cn", username);
+        entry.addAttribute("uid", username);
+        entry.addAttribute("userPrincipalName", username);
+        entry.addAttribute("objectClass", "person", "organizationalPerson", "inetOrgPerson");
+
+        // Add roles if present
+        JsonNode roles = user.get("roles");
+        if (roles != null && roles.size() > 0) {
+            String[] roleStrings = new String[roles.size()];
+            for (int i = 0; i < roles.size(); i++) {
+                roleStrings[i] = roles.get(i).asText();
             }
-            
-            return new SearchResultEntry(userDN, attributes);
-            
-        } catch (Exception e) {
-            logger.error("Error creating search result entry for user", e);
-            return null;
+            entry.addAttribute("memberOf", roleStrings);
         }
+        return entry;
     }
 
     @Override
     public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, 
-            List<Control> controls, LDAPConnection ldapConnection, 
+            List<Control> controls, LDAPBackendSession backend, 
             LDAPListenerClientConnection listenerConnection) {
         
         logger.debug("Add request not supported in JSON processor");
@@ -265,7 +274,7 @@ public class JsonRequestProcessor implements IRequestProcessor {
 
     @Override
     public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, 
-            List<Control> controls, LDAPConnection ldapConnection, 
+            List<Control> controls, LDAPBackendSession backend, 
             LDAPListenerClientConnection listenerConnection) {
         
         logger.debug("Compare request not supported in JSON processor");
@@ -278,7 +287,7 @@ public class JsonRequestProcessor implements IRequestProcessor {
 
     @Override
     public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, 
-            List<Control> controls, LDAPConnection ldapConnection, 
+            List<Control> controls, LDAPBackendSession backend, 
             LDAPListenerClientConnection listenerConnection) {
         
         logger.debug("Delete request not supported in JSON processor");
@@ -291,7 +300,7 @@ public class JsonRequestProcessor implements IRequestProcessor {
 
     @Override
     public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, 
-            List<Control> controls, LDAPConnection ldapConnection, 
+            List<Control> controls, LDAPBackendSession backend, 
             LDAPListenerClientConnection listenerConnection) {
         
         logger.debug("Extended request not supported in JSON processor");
@@ -303,7 +312,7 @@ public class JsonRequestProcessor implements IRequestProcessor {
 
     @Override
     public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, 
-            List<Control> controls, LDAPConnection ldapConnection, 
+            List<Control> controls, LDAPBackendSession backend, 
             LDAPListenerClientConnection listenerConnection) {
         
         logger.debug("Modify request not supported in JSON processor");
@@ -316,7 +325,7 @@ public class JsonRequestProcessor implements IRequestProcessor {
 
     @Override
     public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, 
-            List<Control> controls, LDAPConnection ldapConnection, 
+            List<Control> controls, LDAPBackendSession backend, 
             LDAPListenerClientConnection listenerConnection) {
         
         logger.debug("ModifyDN request not supported in JSON processor");
@@ -326,4 +335,11 @@ public class JsonRequestProcessor implements IRequestProcessor {
                 result.getMatchedDN(), result.getDiagnosticMessage(), 
                 Arrays.asList(result.getReferralURLs())));
     }
-}
\ No newline at end of file
+
+    @Override
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+}
@@ -3,29 +3,52 @@ package com.marklogic.processors;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
 import com.marklogic.configuration.properties.RequestProcessorProperties;
+import com.marklogic.handlers.LDAPBackendSession;
+import com.marklogic.handlers.SearchCoalescer;
+import com.marklogic.handlers.SearchLimits;
+import com.marklogic.handlers.SearchResultCache;
 import com.unboundid.ldap.listener.LDAPListenerClientConnection;
 import com.unboundid.ldap.protocol.*;
 import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
 import com.unboundid.util.Debug;
 import com.unboundid.util.StaticUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by mwarnes on 05/02/2017.
  */
-public class ProxyRequestProcessor implements IRequestProcessor, IntermediateResponseListener {
+public class ProxyRequestProcessor implements IRequestProcessor {
 
     // Spring Logger
     private static final Logger logger = LoggerFactory.getLogger(ProxyRequestProcessor.class);
 
+    // Allowance on top of a client's search time limit before the proxy stops
+    // waiting; the backend normally enforces the limit itself.
+    private static final long TIME_LIMIT_GRACE_MILLIS = 1000;
+
+    // Runs the branches of searches fanned out across routed backends. The branches
+    // spend their time blocked on the backend or the client, so each gets a virtual thread.
+    private static final ExecutorService FAN_OUT_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ldap-fan-out-", 0).factory());
+
     private RequestProcessorProperties appCfg;
-    private LDAPListenerClientConnection listenerConnection;
-    private Map<String, String> requestMap = new HashMap<String, String>();
-    private Map<String, String> responseMap = new HashMap<String, String>();
+    private AttributeNameMap requestMap = AttributeNameMap.EMPTY;
+    private AttributeNameMap responseMap = AttributeNameMap.EMPTY;
 
     @Override
     public void initialize(RequestProcessorProperties cfg) throws Exception {
@@ -35,19 +58,12 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
         context.getLogger(SearchResultListener.class).setLevel(Level.valueOf(cfg.getDebugLevel()));
         // Parm1 should contain path to substitution string of the form fromAttribute:toAttribute,fromAttribute:toAttribute....
         String mapString = cfg.getParm1();
-        if (!mapString.isEmpty()) {
-            String[] pairs = mapString.split(",");
-            for (int i = 0; i < pairs.length; i++) {
-                String pair = pairs[i];
-                String[] keyValue = pair.split(":");
-                requestMap.put(keyValue[0], keyValue[1]);
-                responseMap.put(keyValue[1], keyValue[0]);
-            }
-        }
+        requestMap = AttributeNameMap.parse(mapString, false);
+        responseMap = AttributeNameMap.parse(mapString, true);
     }
 
     @Override
-    public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.debug(messageID + "-+-" + request + "-+-" + controls);
         final Control[] controlArray;
         if ((controls == null) || (controls.isEmpty())) {
@@ -67,11 +83,11 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
                     controlArray);
         }
 
-        bindRequest.setIntermediateResponseListener(this);
+        bindRequest.setIntermediateResponseListener(new IntermediateResponseForwarder(listenerConnection));
 
         LDAPResult bindResult;
         try {
-            bindResult = ldapConnection.bind(bindRequest);
+            bindResult = backend.bind(bindRequest);
         } catch (final LDAPException le) {
             Debug.debugException(le);
             bindResult = le.toLDAPResult();
@@ -88,47 +104,110 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
     }
 
     @Override
-    public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, List<Control> controls, LDAPBackendSession session, LDAPListenerClientConnection listenerConnection) {
         logger.debug(messageID + "-+-" + request + "-+-" + controls);
 
         final String[] attrs;
-        final List<String> mappedList = new ArrayList<>();
         final List<String> attrList = request.getAttributes();
         if (attrList.isEmpty()) {
             attrs = StaticUtils.NO_STRINGS;
         } else {
-            for (String a : attrList) {
-                if (requestMap.containsKey(a)) {
-                    mappedList.add(requestMap.get(a));
-                } else {
-                    mappedList.add(a);
-                }
+            attrs = new String[attrList.size()];
+            for (int i = 0; i < attrs.length; i++) {
+                attrs[i] = requestMap.map(attrList.get(i));
             }
-            attrs = new String[mappedList.size()];
-            mappedList.toArray(attrs);
         }
 
+        // A search above several routed suffixes runs on each of their backends
+        final List<LDAPBackendSession> targets = session.routeSearch(request.getBaseDN(), request.getScope());
+        if (targets.size() > 1) {
+            return fanOutSearch(messageID, request, controls, attrs, session, targets, listenerConnection);
+        }
+        final LDAPBackendSession backend = targets.get(0);
+
         final SearchResultListener searchListener =
                 new SearchResultListener(listenerConnection, messageID, responseMap);
 
-        final SearchRequest searchRequest = new SearchRequest(searchListener,
-                request.getBaseDN(), request.getScope(), request.getDerefPolicy(),
-                request.getSizeLimit(), request.getTimeLimit(), request.typesOnly(),
-                request.getFilter(), attrs);
+        // Searches with controls (paging, sorting, ...) and SASL-pinned sessions bypass the
+        // cache and are never coalesced
+        final SearchResultCache searchCache = backend.getSearchCache();
+        final SearchCoalescer searchCoalescer = backend.getSearchCoalescer();
+        String searchKey = null;
+        long cacheGeneration = 0;
+        if ((searchCache != null || searchCoalescer != null) && controls.isEmpty() && !backend.isPinned()) {
+            searchKey = SearchResultCache.key(backend.getBoundDN(), request.getBaseDN(), request.getScope(),
+                    request.getDerefPolicy(), request.getSizeLimit(), request.typesOnly(), request.getFilter(), attrs);
+        }
+        final boolean cacheable = searchCache != null && searchKey != null;
+        if (cacheable) {
+            final SearchResultCache.CachedResult cached = searchCache.get(searchKey);
+            if (cached != null) {
+                logger.debug(messageID + "-+- search result cache hit (" + cached.getEntries().size() + " entries)");
+                backend.servedFromCache();
+                for (SearchResultEntry entry : cached.getEntries()) {
+                    searchListener.searchEntryReturned(entry);
+                }
+                for (SearchResultReference reference : cached.getReferences()) {
+                    searchListener.searchReferenceReturned(reference);
+                }
+                return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(ResultCode.SUCCESS_INT_VALUE,
+                        null, null, Collections.<String>emptyList()));
+            }
+            cacheGeneration = searchCache.getGeneration();
+        }
 
-        if (!controls.isEmpty()) {
-            searchRequest.setControls(controls);
+        // The same search already running for the same identity is joined rather than repeated
+        SearchCoalescer.Flight flight = searchCoalescer != null && searchKey != null
+                ? searchCoalescer.join(searchKey) : null;
+        if (flight != null && !flight.isLeader()) {
+            SearchCoalescer.SharedResult shared;
+            try {
+                shared = flight.await(abandon -> backend.track(messageID, abandon));
+            } catch (final CancellationException e) {
+                return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(ResultCode.CANCELED_INT_VALUE,
+                        null, "Search abandoned by the client", Collections.<String>emptyList()));
+            } finally {
+                backend.untrack(messageID);
+            }
+            if (shared != null) {
+                logger.debug(messageID + "-+- joined identical search (" + shared.getEntries().size() + " entries)");
+                backend.servedFromCoalescedSearch();
+                for (SearchResultEntry entry : shared.getEntries()) {
+                    searchListener.searchEntryReturned(entry);
+                }
+                for (SearchResultReference reference : shared.getReferences()) {
+                    searchListener.searchReferenceReturned(reference);
+                }
+                final LDAPResult result = shared.getResult();
+                return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(result.getResultCode().intValue(),
+                        result.getMatchedDN(), result.getDiagnosticMessage(), Arrays.asList(result.getReferralURLs())));
+            }
+            flight = null;
+        }
+        if (cacheable || flight != null) {
+            searchListener.captureResults(Math.max(cacheable ? searchCache.getMaxBytes() : 0,
+                    flight != null ? searchCoalescer.getMaxBytes() : 0));
         }
-        searchRequest.setIntermediateResponseListener(this);
 
         LDAPResult searchResult;
         try {
-            searchResult = ldapConnection.search(searchRequest);
-        } catch (final LDAPException le) {
-            Debug.debugException(le);
-            searchResult = le.toLDAPResult();
+            searchResult = executeSearch(backend, messageID, request, controls, attrs, searchListener, listenerConnection);
+            logger.debug(messageID + "-+-" + searchResult + "-+-");
+
+            final boolean shareable = searchResult.getResultCode() == ResultCode.SUCCESS
+                    && searchResult.getResponseControls().length == 0 && searchListener.isCaptureComplete();
+            if (cacheable && shareable) {
+                searchCache.put(searchKey, cacheGeneration, searchListener.getCapturedEntries(), searchListener.getCapturedReferences());
+            }
+            if (flight != null && shareable) {
+                flight.complete(searchResult, searchListener.getCapturedEntries(), searchListener.getCapturedReferences());
+            }
+        } finally {
+            // Followers of a search that cannot be shared search on their own
+            if (flight != null) {
+                flight.fail();
+            }
         }
-        logger.debug(messageID + "-+-" + searchResult + "-+-");
 
         final SearchResultDoneProtocolOp searchResultDoneProtocolOp =
                 new SearchResultDoneProtocolOp(searchResult.getResultCode().intValue(),
@@ -140,23 +219,451 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
                 Arrays.asList(searchResult.getResponseControls()));
     }
 
+    /**
+     * Runs a search on several backends in parallel. Results are streamed to the
+     * client as each backend returns them; the search succeeds if every backend
+     * succeeded or did not hold the base entry, and otherwise ends with the
+     * first other error. The client's size limit applies to the entries of all
+     * backends together.
+     */
+    private LDAPMessage fanOutSearch(int messageID, SearchRequestProtocolOp request, List<Control> controls,
+                                     String[] attrs, LDAPBackendSession session, List<LDAPBackendSession> targets,
+                                     LDAPListenerClientConnection listenerConnection) {
+        if (getPagedResultsControl(controls) != null) {
+            return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(ResultCode.UNWILLING_TO_PERFORM_INT_VALUE,
+                    null, "Paged searches cannot span several directories", Collections.<String>emptyList()));
+        }
+        logger.debug(messageID + "-+- fanning out search to " + targets.size() + " backends");
+        session.servedByFanOut();
+
+        final AtomicInteger sentEntries = new AtomicInteger();
+        final List<Future<LDAPResult>> branches = new ArrayList<>();
+        for (LDAPBackendSession target : targets) {
+            final SearchResultListener branchListener =
+                    new SearchResultListener(listenerConnection, messageID, responseMap);
+            if (request.getSizeLimit() > 0) {
+                branchListener.shareSizeLimit(sentEntries, request.getSizeLimit());
+            }
+            branches.add(FAN_OUT_EXECUTOR.submit(() -> executeSearch(target, messageID, request, controls, attrs,
+                    branchListener, listenerConnection)));
+        }
+
+        LDAPResult merged = null;
+        for (Future<LDAPResult> branch : branches) {
+            LDAPResult result;
+            try {
+                result = branch.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                targets.forEach(target -> target.abandon(messageID));
+                branches.forEach(b -> b.cancel(true));
+                return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(ResultCode.CANCELED_INT_VALUE,
+                        null, "Interrupted while waiting for the backends", Collections.<String>emptyList()));
+            } catch (final ExecutionException e) {
+                Debug.debugException(e);
+                result = new LDAPResult(messageID, ResultCode.OTHER, String.valueOf(e.getCause()),
+                        null, StaticUtils.NO_STRINGS, StaticUtils.NO_CONTROLS);
+            }
+            logger.debug(messageID + "-+-" + result + "-+-");
+            merged = mergeResults(merged, result);
+        }
+
+        return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(merged.getResultCode().intValue(),
+                merged.getMatchedDN(), merged.getDiagnosticMessage(), Arrays.asList(merged.getReferralURLs())));
+    }
+
+    /**
+     * Combines the results of the branches of a fanned-out search: any error
+     * other than {@code noSuchObject} wins, then success.
+     */
+    private static LDAPResult mergeResults(LDAPResult merged, LDAPResult result) {
+        if (merged == null || isFanOutError(result) && !isFanOutError(merged)) {
+            return result;
+        }
+        if (!isFanOutError(merged) && merged.getResultCode() != ResultCode.SUCCESS
+                && result.getResultCode() == ResultCode.SUCCESS) {
+            return result;
+        }
+        return merged;
+    }
+
+    private static boolean isFanOutError(LDAPResult result) {
+        return result.getResultCode() != ResultCode.SUCCESS && result.getResultCode() != ResultCode.NO_SUCH_OBJECT;
+    }
+
+    /**
+     * Sends a search to the backend, streaming its results to the client.
+     */
+    private static LDAPResult executeSearch(LDAPBackendSession backend, int messageID, SearchRequestProtocolOp request,
+                                            List<Control> controls, String[] attrs, SearchResultListener searchListener,
+                                            LDAPListenerClientConnection listenerConnection) {
+        // Results are streamed through a bounded queue from here on
+        final SearchLimits limits = backend.getSearchLimits();
+        searchListener.streamResults(limits);
+
+        if (request.getTimeLimit() > 0) {
+            searchListener.setTimeLimit(TimeUnit.SECONDS.toMillis(request.getTimeLimit()) + TIME_LIMIT_GRACE_MILLIS);
+        }
+
+        final SimplePagedResultsControl clientPaging = getPagedResultsControl(controls);
+        try {
+            if (clientPaging == null && backend.isHedged()) {
+                // Each copy of a hedged search builds its own request
+                final int pageSize = controls.isEmpty() ? limits.getPageSize() : 0;
+                try {
+                    return backend.executeHedged(new HedgedSearch(backend, messageID, request, controls, attrs,
+                            searchListener, listenerConnection, pageSize));
+                } finally {
+                    backend.untrack(messageID);
+                }
+            }
+
+            final SearchRequest searchRequest =
+                    newSearchRequest(searchListener, request, controls, attrs, listenerConnection);
+            if (clientPaging != null) {
+                return backend.executePage(clientPaging.getCookie(),
+                        connection -> streamSearch(backend, messageID, connection, searchRequest, searchListener),
+                        searchListener::getFirstResponseNanos);
+            } else if (limits.getPageSize() > 0 && controls.isEmpty()) {
+                return backend.execute(connection -> streamPagedSearch(backend, messageID, connection,
+                        searchRequest, searchListener, limits.getPageSize()), searchListener::getFirstResponseNanos);
+            } else {
+                return backend.execute(
+                        connection -> streamSearch(backend, messageID, connection, searchRequest, searchListener),
+                        searchListener::getFirstResponseNanos);
+            }
+        } catch (final LDAPException le) {
+            Debug.debugException(le);
+            return le.toLDAPResult();
+        }
+    }
+
+    private static SearchRequest newSearchRequest(AsyncSearchResultListener listener, SearchRequestProtocolOp request,
+                                                  List<Control> controls, String[] attrs,
+                                                  LDAPListenerClientConnection listenerConnection) {
+        final SearchRequest searchRequest = new SearchRequest(listener,
+                request.getBaseDN(), request.getScope(), request.getDerefPolicy(),
+                request.getSizeLimit(), request.getTimeLimit(), request.typesOnly(),
+                request.getFilter(), attrs);
+
+        if (!controls.isEmpty()) {
+            searchRequest.setControls(controls);
+        }
+        searchRequest.setIntermediateResponseListener(new IntermediateResponseForwarder(listenerConnection));
+        return searchRequest;
+    }
+
+    /**
+     * Runs an asynchronous search and forwards its results from this thread.
+     */
+    private static SearchResult streamSearch(LDAPBackendSession backend, int messageID, LDAPConnection connection,
+                                             SearchRequest searchRequest, SearchResultListener searchListener)
+            throws LDAPException {
+        return forwardSearch(backend, messageID, connection, connection.asyncSearch(searchRequest), searchListener);
+    }
+
+    /**
+     * Forwards the results of a search started on the backend from this thread.
+     * The backend search is abandoned if the client abandons it or disconnects,
+     * if forwarding stops early, or if no result arrives in time.
+     */
+    private static SearchResult forwardSearch(LDAPBackendSession backend, int messageID, LDAPConnection connection,
+                                              AsyncRequestID requestID, SearchResultListener searchListener)
+            throws LDAPException {
+        backend.track(messageID, searchListener::abandon);
+        try {
+            final SearchResult result = searchListener.forwardResults();
+            if (result.getResultCode() == ResultCode.TIMEOUT) {
+                // Response timeout of the backend connection; the server may still be searching
+                abandonQuietly(connection, requestID);
+            }
+            return result;
+        } catch (final LDAPException le) {
+            abandonQuietly(connection, requestID);
+            throw le;
+        } finally {
+            backend.untrack(messageID);
+        }
+    }
+
+    /**
+     * Waits for an operation started asynchronously on the backend, which the
+     * client can abandon while it runs.
+     *
+     * @return The operation result, if the backend returned one of the success codes
+     * @throws LDAPException with the backend's result otherwise, or with
+     *         {@link ResultCode#CANCELED} if the client abandoned the operation
+     */
+    private static LDAPResult awaitResult(LDAPBackendSession backend, int messageID, AsyncRequestID requestID)
+            throws LDAPException {
+        // Cancelling the request abandons it on the backend and completes the wait
+        backend.track(messageID, () -> requestID.cancel(true));
+        try {
+            final LDAPResult result = requestID.get();
+            final ResultCode resultCode = result.getResultCode();
+            if (resultCode != ResultCode.SUCCESS && resultCode != ResultCode.COMPARE_TRUE
+                    && resultCode != ResultCode.COMPARE_FALSE) {
+                throw new LDAPException(result);
+            }
+            return result;
+        } catch (final CancellationException e) {
+            throw new LDAPException(ResultCode.CANCELED, "Operation abandoned by the client");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            requestID.cancel(true);
+            throw new LDAPException(ResultCode.CANCELED, "Interrupted while waiting for the backend", e);
+        } catch (final ExecutionException e) {
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Backend operation failed", e.getCause());
+        } finally {
+            backend.untrack(messageID);
+        }
+    }
+
+    private static void abandonQuietly(LDAPConnection connection, AsyncRequestID requestID) {
+        try {
+            connection.abandon(requestID);
+        } catch (final LDAPException ae) {
+            Debug.debugException(ae);
+        }
+    }
+
+    /**
+     * A search that may be sent to two servers. Each copy has its own backend
+     * listener; the first to deliver anything claims the client's listener, and
+     * results of the other copy are dropped until it is abandoned. Searches
+     * paged by the proxy continue on the connection that won.
+     */
+    private static final class HedgedSearch implements LDAPBackendSession.HedgedOperation<SearchResult> {
+
+        private final LDAPBackendSession backend;
+        private final int messageID;
+        private final SearchRequestProtocolOp request;
+        private final List<Control> controls;
+        private final String[] attrs;
+        private final SearchResultListener searchListener;
+        private final LDAPListenerClientConnection listenerConnection;
+        private final int pageSize;
+        private final Map<LDAPConnection, Branch> branches = new ConcurrentHashMap<>();
+        private final AtomicReference<Branch> owner = new AtomicReference<>();
+
+        private final class Branch implements AsyncSearchResultListener {
+            private static final long serialVersionUID = 1L;
+
+            private final transient CompletableFuture<Void> responded = new CompletableFuture<>();
+            private transient SearchRequest searchRequest;
+            private transient AsyncRequestID requestID;
+
+            // Only the copy that claims the client's listener reports a response,
+            // so the session always completes the search on the copy delivering it
+            private boolean claim() {
+                if (owner.compareAndSet(null, this) || owner.get() == this) {
+                    responded.complete(null);
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void searchEntryReturned(final SearchResultEntry searchEntry) {
+                if (claim()) {
+                    searchListener.searchEntryReturned(searchEntry);
+                }
+            }
+
+            @Override
+            public void searchReferenceReturned(final SearchResultReference searchReference) {
+                if (claim()) {
+                    searchListener.searchReferenceReturned(searchReference);
+                }
+            }
+
+            @Override
+            public void searchResultReceived(final AsyncRequestID requestID, final SearchResult searchResult) {
+                if (claim()) {
+                    searchListener.searchResultReceived(requestID, searchResult);
+                }
+            }
+        }
+
+        private HedgedSearch(LDAPBackendSession backend, int messageID, SearchRequestProtocolOp request,
+                             List<Control> controls, String[] attrs, SearchResultListener searchListener,
+                             LDAPListenerClientConnection listenerConnection, int pageSize) {
+            this.backend = backend;
+            this.messageID = messageID;
+            this.request = request;
+            this.controls = controls;
+            this.attrs = attrs;
+            this.searchListener = searchListener;
+            this.listenerConnection = listenerConnection;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public CompletableFuture<?> start(LDAPConnection connection) throws LDAPException {
+            final Branch branch = new Branch();
+            branch.searchRequest = newSearchRequest(branch, request, controls, attrs, listenerConnection);
+            if (pageSize > 0) {
+                branch.searchRequest.setControls(new SimplePagedResultsControl(pageSize, null, false));
+            }
+            branches.put(connection, branch);
+            branch.requestID = connection.asyncSearch(branch.searchRequest);
+            backend.track(messageID, this::abandon);
+            return branch.responded;
+        }
+
+        @Override
+        public SearchResult finish(LDAPConnection connection) throws LDAPException {
+            final Branch branch = branches.get(connection);
+            owner.compareAndSet(null, branch);
+            final SearchResult first = forwardSearch(backend, messageID, connection, branch.requestID, searchListener);
+            return pageSize > 0
+                    ? continuePagedSearch(backend, messageID, connection, branch.searchRequest, searchListener,
+                            pageSize, first)
+                    : first;
+        }
+
+        @Override
+        public void cancel(LDAPConnection connection) {
+            final Branch branch = branches.remove(connection);
+            if (branch != null) {
+                abandonQuietly(connection, branch.requestID);
+            }
+        }
+
+        /**
+         * Called when the client abandons the search before a server has responded.
+         */
+        private void abandon() {
+            searchListener.abandon();
+            branches.forEach((connection, branch) -> {
+                abandonQuietly(connection, branch.requestID);
+                branch.responded.complete(null);
+            });
+        }
+    }
+
+    /**
+     * A compare that may be sent to two servers; the first result wins.
+     */
+    private static final class HedgedCompare implements LDAPBackendSession.HedgedOperation<LDAPResult> {
+
+        private final LDAPBackendSession backend;
+        private final int messageID;
+        private final CompareRequest compareRequest;
+        private final Map<LDAPConnection, AsyncRequestID> requests = new ConcurrentHashMap<>();
+        private final List<CompletableFuture<Void>> responses = new CopyOnWriteArrayList<>();
+
+        private HedgedCompare(LDAPBackendSession backend, int messageID, CompareRequest compareRequest) {
+            this.backend = backend;
+            this.messageID = messageID;
+            this.compareRequest = compareRequest;
+        }
+
+        @Override
+        public CompletableFuture<?> start(LDAPConnection connection) throws LDAPException {
+            final CompletableFuture<Void> responded = new CompletableFuture<>();
+            responses.add(responded);
+            requests.put(connection, connection.asyncCompare(compareRequest.duplicate(),
+                    (requestID, compareResult) -> responded.complete(null)));
+            backend.track(messageID, this::abandon);
+            return responded;
+        }
+
+        @Override
+        public LDAPResult finish(LDAPConnection connection) throws LDAPException {
+            return awaitResult(backend, messageID, requests.get(connection));
+        }
+
+        @Override
+        public void cancel(LDAPConnection connection) {
+            final AsyncRequestID requestID = requests.remove(connection);
+            if (requestID != null) {
+                requestID.cancel(true);
+            }
+        }
+
+        /**
+         * Called when the client abandons the compare before a server has responded.
+         */
+        private void abandon() {
+            requests.values().forEach(requestID -> requestID.cancel(true));
+            responses.forEach(responded -> responded.complete(null));
+        }
+    }
+
+    /**
+     * Pages through the backend results on one connection for a client that did
+     * not request paging, and returns the final page's result without the
+     * paged results control.
+     */
+    private static SearchResult streamPagedSearch(LDAPBackendSession backend, int messageID, LDAPConnection connection,
+                                                  SearchRequest searchRequest, SearchResultListener searchListener,
+                                                  int pageSize) throws LDAPException {
+        searchRequest.setControls(new SimplePagedResultsControl(pageSize, null, false));
+        return continuePagedSearch(backend, messageID, connection, searchRequest, searchListener, pageSize,
+                streamSearch(backend, messageID, connection, searchRequest, searchListener));
+    }
+
+    /**
+     * Fetches the remaining pages of a search paged by the proxy, given the first page.
+     */
+    private static SearchResult continuePagedSearch(LDAPBackendSession backend, int messageID,
+                                                    LDAPConnection connection, SearchRequest searchRequest,
+                                                    SearchResultListener searchListener, int pageSize,
+                                                    SearchResult firstPage) throws LDAPException {
+        SearchResult page = firstPage;
+        while (true) {
+            final SimplePagedResultsControl response = page.getResultCode() == ResultCode.SUCCESS
+                    ? SimplePagedResultsControl.get(page) : null;
+            if (response == null || !response.moreResultsToReturn()) {
+                final List<Control> responseControls = new ArrayList<>(Arrays.asList(page.getResponseControls()));
+                responseControls.removeIf(c -> SimplePagedResultsControl.PAGED_RESULTS_OID.equals(c.getOID()));
+                return new SearchResult(page.getMessageID(), page.getResultCode(), page.getDiagnosticMessage(),
+                        page.getMatchedDN(), page.getReferralURLs(), page.getEntryCount(), page.getReferenceCount(),
+                        responseControls.toArray(StaticUtils.NO_CONTROLS));
+            }
+            searchRequest.setControls(new SimplePagedResultsControl(pageSize, response.getCookie(), false));
+            page = streamSearch(backend, messageID, connection, searchRequest, searchListener);
+        }
+    }
+
+    /**
+     * @return The client's simple paged results control, or {@code null} if it
+     *         sent none or it cannot be decoded (the backend then rejects it)
+     */
+    private static SimplePagedResultsControl getPagedResultsControl(List<Control> controls) {
+        for (Control control : controls) {
+            if (SimplePagedResultsControl.PAGED_RESULTS_OID.equals(control.getOID())) {
+                try {
+                    return new SimplePagedResultsControl(control.getOID(), control.isCritical(), control.getValue());
+                } catch (final LDAPException le) {
+                    Debug.debugException(le);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
     @Override
-    public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls, LDAPBackendSession session, LDAPListenerClientConnection listenerConnection) {
         logger.debug(messageID + "-+-" + request + "-+-" + controls);
+        final LDAPBackendSession backend = session.route(request.getDN());
         final AddRequest addRequest = new AddRequest(request.getDN(),
                 request.getAttributes());
         if (!controls.isEmpty()) {
             addRequest.setControls(controls);
         }
-        addRequest.setIntermediateResponseListener(this);
+        addRequest.setIntermediateResponseListener(new IntermediateResponseForwarder(listenerConnection));
 
         LDAPResult addResult;
         try {
-            addResult = ldapConnection.add(addRequest);
+            addResult = backend.execute(connection -> awaitResult(backend, messageID, connection.asyncAdd(addRequest, null)));
         } catch (final LDAPException le) {
             Debug.debugException(le);
             addResult = le.toLDAPResult();
         }
+        invalidateSearchCache(backend);
 
         final AddResponseProtocolOp addResponseProtocolOp =
                 new AddResponseProtocolOp(addResult.getResultCode().intValue(),
@@ -169,18 +676,27 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
     }
 
     @Override
-    public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, List<Control> controls, LDAPBackendSession session, LDAPListenerClientConnection listenerConnection) {
         logger.debug(messageID + "-+-" + request + "-+-" + controls);
+        final LDAPBackendSession backend = session.route(request.getDN());
         final CompareRequest compareRequest = new CompareRequest(request.getDN(),
                 request.getAttributeName(), request.getAssertionValue().getValue());
         if (!controls.isEmpty()) {
             compareRequest.setControls(controls);
         }
-        compareRequest.setIntermediateResponseListener(this);
+        compareRequest.setIntermediateResponseListener(new IntermediateResponseForwarder(listenerConnection));
 
         LDAPResult compareResult;
         try {
-            compareResult = ldapConnection.compare(compareRequest);
+            if (backend.isHedged()) {
+                try {
+                    compareResult = backend.executeHedged(new HedgedCompare(backend, messageID, compareRequest));
+                } finally {
+                    backend.untrack(messageID);
+                }
+            } else {
+                compareResult = backend.execute(connection -> awaitResult(backend, messageID, connection.asyncCompare(compareRequest, null)));
+            }
         } catch (final LDAPException le) {
             Debug.debugException(le);
             compareResult = le.toLDAPResult();
@@ -198,21 +714,23 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
     }
 
     @Override
-    public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, List<Control> controls, LDAPBackendSession session, LDAPListenerClientConnection listenerConnection) {
         logger.debug(messageID + "-+-" + request + "-+-" + controls);
+        final LDAPBackendSession backend = session.route(request.getDN());
         final DeleteRequest deleteRequest = new DeleteRequest(request.getDN());
         if (!controls.isEmpty()) {
             deleteRequest.setControls(controls);
         }
-        deleteRequest.setIntermediateResponseListener(this);
+        deleteRequest.setIntermediateResponseListener(new IntermediateResponseForwarder(listenerConnection));
 
         LDAPResult deleteResult;
         try {
-            deleteResult = ldapConnection.delete(deleteRequest);
+            deleteResult = backend.execute(connection -> awaitResult(backend, messageID, connection.asyncDelete(deleteRequest, null)));
         } catch (final LDAPException le) {
             Debug.debugException(le);
             deleteResult = le.toLDAPResult();
         }
+        invalidateSearchCache(backend);
 
         final DeleteResponseProtocolOp deleteResponseProtocolOp =
                 new DeleteResponseProtocolOp(deleteResult.getResultCode().intValue(),
@@ -225,7 +743,7 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
     }
 
     @Override
-    public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.debug(messageID + "-+-" + request + "-+-" + controls);
         final ExtendedRequest extendedRequest;
         if (controls.isEmpty()) {
@@ -237,11 +755,11 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
             extendedRequest = new ExtendedRequest(request.getOID(),
                     request.getValue(), controlArray);
         }
-        extendedRequest.setIntermediateResponseListener(this);
+        extendedRequest.setIntermediateResponseListener(new IntermediateResponseForwarder(listenerConnection));
 
         try {
-            final ExtendedResult extendedResult =
-                    ldapConnection.processExtendedOperation(extendedRequest);
+            final ExtendedResult extendedResult = backend.execute(
+                    connection -> connection.processExtendedOperation(extendedRequest));
 
             final ExtendedResponseProtocolOp extendedResponseProtocolOp =
                     new ExtendedResponseProtocolOp(
@@ -267,22 +785,24 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
     }
 
     @Override
-    public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, List<Control> controls, LDAPBackendSession session, LDAPListenerClientConnection listenerConnection) {
         logger.debug(messageID + "-+-" + request + "-+-" + controls);
+        final LDAPBackendSession backend = session.route(request.getDN());
         final ModifyRequest modifyRequest = new ModifyRequest(request.getDN(),
                 request.getModifications());
         if (!controls.isEmpty()) {
             modifyRequest.setControls(controls);
         }
-        modifyRequest.setIntermediateResponseListener(this);
+        modifyRequest.setIntermediateResponseListener(new IntermediateResponseForwarder(listenerConnection));
 
         LDAPResult modifyResult;
         try {
-            modifyResult = ldapConnection.modify(modifyRequest);
+            modifyResult = backend.execute(connection -> awaitResult(backend, messageID, connection.asyncModify(modifyRequest, null)));
         } catch (final LDAPException le) {
             Debug.debugException(le);
             modifyResult = le.toLDAPResult();
         }
+        invalidateSearchCache(backend);
 
         final ModifyResponseProtocolOp modifyResponseProtocolOp =
                 new ModifyResponseProtocolOp(modifyResult.getResultCode().intValue(),
@@ -295,23 +815,25 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
     }
 
     @Override
-    public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, List<Control> controls, LDAPBackendSession session, LDAPListenerClientConnection listenerConnection) {
         logger.debug(messageID + "-+-" + request + "-+-" + controls);
+        final LDAPBackendSession backend = session.route(request.getDN());
         final ModifyDNRequest modifyDNRequest = new ModifyDNRequest(request.getDN(),
                 request.getNewRDN(), request.deleteOldRDN(),
                 request.getNewSuperiorDN());
         if (!controls.isEmpty()) {
             modifyDNRequest.setControls(controls);
         }
-        modifyDNRequest.setIntermediateResponseListener(this);
+        modifyDNRequest.setIntermediateResponseListener(new IntermediateResponseForwarder(listenerConnection));
 
         LDAPResult modifyDNResult;
         try {
-            modifyDNResult = ldapConnection.modifyDN(modifyDNRequest);
+            modifyDNResult = backend.execute(connection -> awaitResult(backend, messageID, connection.asyncModifyDN(modifyDNRequest, null)));
         } catch (final LDAPException le) {
             Debug.debugException(le);
             modifyDNResult = le.toLDAPResult();
         }
+        invalidateSearchCache(backend);
 
         final ModifyDNResponseProtocolOp modifyDNResponseProtocolOp =
                 new ModifyDNResponseProtocolOp(
@@ -325,17 +847,18 @@ public class ProxyRequestProcessor implements IRequestProcessor, IntermediateRes
                 Arrays.asList(modifyDNResult.getResponseControls()));
     }
 
-    @Override
-    public void intermediateResponseReturned(IntermediateResponse intermediateResponse) {
-        try {
-            logger.debug(intermediateResponse.getMessageID() + "-+-" + intermediateResponse + "-+-" + intermediateResponse.getControls());
-            listenerConnection.sendIntermediateResponse(
-                    intermediateResponse.getMessageID(),
-                    new IntermediateResponseProtocolOp(intermediateResponse.getOID(),
-                            intermediateResponse.getValue()),
-                    intermediateResponse.getControls());
-        } catch (final LDAPException le) {
-            Debug.debugException(le);
+    /**
+     * Drops cached search results after a write through this listener, since any
+     * of them may now be stale, and stops new searches joining ones in progress.
+     */
+    private static void invalidateSearchCache(LDAPBackendSession backend) {
+        final SearchResultCache searchCache = backend.getSearchCache();
+        if (searchCache != null) {
+            searchCache.clear();
+        }
+        final SearchCoalescer searchCoalescer = backend.getSearchCoalescer();
+        if (searchCoalescer != null) {
+            searchCoalescer.invalidate();
         }
     }
 }
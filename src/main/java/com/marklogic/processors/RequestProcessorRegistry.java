@@ -0,0 +1,117 @@
+package com.marklogic.processors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.marklogic.configuration.properties.RequestProcessorProperties;
+
+/**
+ * Process-wide registry of initialized request processors, keyed by the
+ * request processor name from {@code mleaproxy.request-processors.{name}}.
+ *
+ * <p>Each processor is created and initialized exactly once (normally when
+ * {@code LDAPListenerService} starts the listeners) and the same instance is
+ * then shared by every client connection of every listener that references it.
+ * Processors registered here must therefore be thread-safe.
+ */
+public final class RequestProcessorRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestProcessorRegistry.class);
+
+    private static final Map<String, IRequestProcessor> processors = new ConcurrentHashMap<>();
+
+    private RequestProcessorRegistry() {
+    }
+
+    /**
+     * Returns the processor registered under the given name, creating and
+     * initializing it on first use.
+     *
+     * @param name Request processor name
+     * @param cfg  Request processor configuration
+     * @return The shared, initialized processor
+     * @throws Exception if the processor class cannot be loaded or fails to initialize
+     */
+    public static IRequestProcessor getOrInitialize(String name, RequestProcessorProperties cfg) throws Exception {
+        IRequestProcessor processor = processors.get(name);
+        if (processor != null) {
+            return processor;
+        }
+
+        synchronized (processors) {
+            processor = processors.get(name);
+            if (processor == null) {
+                processor = createProcessor(name, cfg);
+                processors.put(name, processor);
+            }
+            return processor;
+        }
+    }
+
+    /**
+     * @param name Request processor name
+     * @return The registered processor, or {@code null} if it has not been initialized
+     */
+    public static IRequestProcessor get(String name) {
+        return processors.get(name);
+    }
+
+    /**
+     * Removes all registered processors, closing those that hold resources
+     * such as a users file watcher. Used on shutdown and by tests.
+     */
+    public static void clear() {
+        for (IRequestProcessor processor : processors.values()) {
+            if (processor instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing request processor: {}", e.getMessage());
+                }
+            }
+        }
+        processors.clear();
+    }
+
+    private static IRequestProcessor createProcessor(String name, RequestProcessorProperties cfg) throws Exception {
+        if (cfg == null) {
+            throw new IllegalArgumentException("Request processor not found: " + name);
+        }
+
+        String processorClassName = cfg.getAuthClass();
+        if (processorClassName == null || processorClassName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Processor class name is null or empty for request processor: " + name);
+        }
+        logger.debug("Processor Class: {}", processorClassName);
+
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(processorClassName);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Processor class not found: " + processorClassName, e);
+        }
+
+        // Validate that it implements IRequestProcessor interface
+        if (!IRequestProcessor.class.isAssignableFrom(clazz)) {
+            throw new IllegalArgumentException(
+                String.format("Class %s does not implement IRequestProcessor interface", processorClassName));
+        }
+
+        IRequestProcessor processor;
+        try {
+            processor = clazz.asSubclass(IRequestProcessor.class).getDeclaredConstructor().newInstance();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(
+                "Processor class " + processorClassName + " does not have a no-argument constructor", e);
+        }
+
+        processor.initialize(cfg);
+        logger.info("Processor '{}' ({}) initialized and registered", name, processorClassName);
+        return processor;
+    }
+}
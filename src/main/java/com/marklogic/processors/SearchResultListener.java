@@ -1,34 +1,56 @@
 package com.marklogic.processors;
 
 import com.marklogic.handlers.LDAPRequestHandler;
+import com.marklogic.handlers.SearchLimits;
+import com.marklogic.handlers.SearchResultCache;
 import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.protocol.SearchResultEntryProtocolOp;
 import com.unboundid.ldap.protocol.SearchResultReferenceProtocolOp;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
 import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.SearchResultReference;
 import com.unboundid.util.Debug;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  * This class provides an implementation of a search result listener that will
  * be used by the {@link LDAPRequestHandler} class in the course of returning
  * entries to the client.
+ *
+ * <p>By default entries are forwarded to the client as they are returned. Once
+ * {@link #streamResults(SearchLimits)} has been called the listener is used with
+ * asynchronous backend searches: the backend reader thread only places results
+ * in a bounded queue, blocking while it is full, and the request thread sends
+ * them to the client from {@link #forwardResults()}.
  */
 final class SearchResultListener
-        implements com.unboundid.ldap.sdk.SearchResultListener
+        implements AsyncSearchResultListener
 {
     /**
      * The serial version UID for this serializable class.
      */
     private static final long serialVersionUID = -1581507251328572490L;
 
+    // Estimated size of a queued search reference.
+    private static final int REFERENCE_SIZE_BYTES = 256;
+
 
 
     // The message ID for the associated search request.
@@ -37,21 +59,68 @@ final class SearchResultListener
     // The client connection that will be used to return the results.
     private final LDAPListenerClientConnection clientConnection;
 
-    // Map of Attributes to replace in Search response
-    private final Map<String, String> responseMap;
+    // Attribute renames to apply to returned entries
+    private final AttributeNameMap responseMap;
 
     // Spring Logger
     private static final Logger logger = LoggerFactory.getLogger(SearchResultListener.class);
 
+    // Backend results collected for the search result cache, or null when not capturing.
+    private transient List<SearchResultEntry> capturedEntries;
+    private transient List<SearchResultReference> capturedReferences;
+    private long capturedBytes;
+    private long captureLimit;
+
+    // Bounded hand-off from the backend reader thread, or null when not streaming.
+    private transient ArrayDeque<Queued> queue;
+    private transient ReentrantLock lock;
+    private transient Condition resultsAvailable;
+    private transient Condition spaceAvailable;
+    private transient SearchResult backendResult;
+    private long queuedBytes;
+    private boolean cancelled;
+    private boolean abandoned;
+    private SearchLimits limits;
+
+    // System.nanoTime() by which the backend must have answered, or 0 for no limit.
+    private long deadlineNanos;
+
+    // System.nanoTime() of the backend's first response, or 0 before it.
+    private volatile long firstResponseNanos;
+
+    // Totals sent to the client, checked against the per-search limits.
+    private int sentEntries;
+    private long sentBytes;
+
+    // Entries sent by all branches of a fanned-out search, or null when the
+    // client's size limit is left to the backend.
+    private transient AtomicInteger sharedEntries;
+    private int sharedSizeLimit;
+
+    /**
+     * A result waiting in the queue, with its estimated size.
+     */
+    private static final class Queued
+    {
+        private final Object result;
+        private final long size;
+
+        private Queued(final Object result, final long size)
+        {
+            this.result = result;
+            this.size   = size;
+        }
+    }
+
     /**
      * Creates a new search result listener with the provided information.
      *  @param  clientConnection  The client connection to which the results will
      *                           be sent.
      * @param  messageID         The message ID that will be used for any response
-     * @param responseMap
+     * @param  responseMap       Attribute renames to apply to returned entries
      */
     SearchResultListener(final LDAPListenerClientConnection clientConnection,
-                         final int messageID, final Map<String, String> responseMap)
+                         final int messageID, final AttributeNameMap responseMap)
     {
         this.clientConnection = clientConnection;
         this.messageID        = messageID;
@@ -63,40 +132,280 @@ final class SearchResultListener
     {
         this.clientConnection = clientConnection;
         this.messageID        = messageID;
-        this.responseMap      = new HashMap<String, String>();
+        this.responseMap      = AttributeNameMap.EMPTY;
     }
 
     /**
-     * {@inheritDoc}
+     * Starts collecting the unmapped backend results so they can be cached and
+     * replayed later. Collection stops once the estimated size exceeds the limit.
+     *
+     * @param maxBytes Largest result worth caching, in estimated bytes
      */
-    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    void captureResults(final long maxBytes)
     {
-        try
+        this.capturedEntries    = new ArrayList<>();
+        this.capturedReferences = new ArrayList<>();
+        this.captureLimit       = maxBytes;
+    }
+
+    /**
+     * @return {@code true} if every returned entry and reference was collected
+     */
+    boolean isCaptureComplete()
+    {
+        return capturedEntries != null;
+    }
+
+    List<SearchResultEntry> getCapturedEntries()
+    {
+        return capturedEntries;
+    }
+
+    List<SearchResultReference> getCapturedReferences()
+    {
+        return capturedReferences;
+    }
+
+    /**
+     * Switches the listener to queued delivery for asynchronous searches. From
+     * now on results are only sent to the client by {@link #forwardResults()}.
+     *
+     * @param limits Queue bounds and per-search limits
+     */
+    void streamResults(final SearchLimits limits)
+    {
+        this.limits           = limits;
+        this.queue            = new ArrayDeque<>();
+        this.lock             = new ReentrantLock();
+        this.resultsAvailable = lock.newCondition();
+        this.spaceAvailable   = lock.newCondition();
+    }
+
+    /**
+     * Stops waiting for the backend once the client's search time limit has
+     * passed. Applies to every page of a search paged by the proxy.
+     *
+     * @param millis Time limit requested by the client, plus any allowance
+     */
+    void setTimeLimit(final long millis)
+    {
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the backend first delivered a result
+     *         to this listener, or 0 if it has not yet
+     */
+    long getFirstResponseNanos()
+    {
+        return firstResponseNanos;
+    }
+
+    private void responded()
+    {
+        if (firstResponseNanos == 0)
         {
-            logger.debug(searchEntry.getAttributes().toString());
-            if (!responseMap.isEmpty()) {
-                // Loop through Attributes return and prcoess any response mappings.
-                ArrayList retAttr = new ArrayList();
-                for (Attribute a : searchEntry.getAttributes()) {
-                    logger.debug("Attribute: " + a);
-                    Attribute newAttribute = null;
-                    if (responseMap.containsKey(a.getName())) {
-                        logger.debug("Mapping: " + a.getName() + " to " + responseMap.get(a.getName()));
-                        newAttribute = new Attribute(responseMap.get(a.getName()), a.getValues());
-                        retAttr.add(newAttribute);
-                        logger.debug("Mapped Attribute: " + newAttribute);
-                    } else {
-                        retAttr.add(a);
+            firstResponseNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Counts sent entries against a size limit shared with the listeners of the
+     * other branches of a search fanned out across several backends.
+     *
+     * @param entries   Entries sent by all branches so far
+     * @param sizeLimit Size limit requested by the client
+     */
+    void shareSizeLimit(final AtomicInteger entries, final int sizeLimit)
+    {
+        this.sharedEntries   = entries;
+        this.sharedSizeLimit = sizeLimit;
+    }
+
+    /**
+     * Sends queued results to the client until the backend reports the end of
+     * the search (or of the current page).
+     *
+     * @return The backend's search result
+     * @throws LDAPException with {@link ResultCode#SIZE_LIMIT_EXCEEDED} if a
+     *         per-search limit was reached, {@link ResultCode#TIME_LIMIT_EXCEEDED}
+     *         if the backend did not finish within the time limit, or
+     *         {@link ResultCode#CANCELED} if the client abandoned the search or the
+     *         results could not be delivered; the caller must abandon the backend search
+     */
+    SearchResult forwardResults() throws LDAPException
+    {
+        while (true)
+        {
+            final Queued next;
+            lock.lock();
+            try
+            {
+                while (queue.isEmpty() && backendResult == null && !abandoned)
+                {
+                    if (deadlineNanos == 0)
+                    {
+                        resultsAvailable.await();
+                        continue;
+                    }
+                    final long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        cancel();
+                        throw new LDAPException(ResultCode.TIME_LIMIT_EXCEEDED,
+                                "Backend did not complete the search within the time limit");
                     }
+                    resultsAvailable.awaitNanos(remaining);
                 }
-                SearchResultEntry sre = new SearchResultEntry(messageID, searchEntry.getDN(), retAttr);
-                clientConnection.sendSearchResultEntry(messageID, sre,
-                        searchEntry.getControls());
-            } else {
-                clientConnection.sendSearchResultEntry(messageID, searchEntry,
-                        searchEntry.getControls());
+                if (abandoned)
+                {
+                    throw new LDAPException(ResultCode.CANCELED, "Search abandoned by the client");
+                }
+                if (queue.isEmpty())
+                {
+                    final SearchResult result = backendResult;
+                    backendResult = null;
+                    return result;
+                }
+                next = queue.poll();
+                queuedBytes -= next.size;
+                spaceAvailable.signal();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new LDAPException(ResultCode.CANCELED, "Interrupted while streaming search results", e);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            if (next.result instanceof SearchResultEntry entry)
+            {
+                if ((limits.getMaxEntries() > 0 && sentEntries >= limits.getMaxEntries())
+                        || (limits.getMaxBytes() > 0 && sentBytes + next.size > limits.getMaxBytes()))
+                {
+                    cancel();
+                    logger.debug("Search result limit reached after {} entries ({} bytes)", sentEntries, sentBytes);
+                    throw new LDAPException(ResultCode.SIZE_LIMIT_EXCEEDED,
+                            "Search returned more than the proxy allows (" + sentEntries + " entries)");
+                }
+                if (sharedEntries != null && sharedEntries.incrementAndGet() > sharedSizeLimit)
+                {
+                    cancel();
+                    throw new LDAPException(ResultCode.SIZE_LIMIT_EXCEEDED,
+                            "Search returned more than the size limit (" + sharedSizeLimit + " entries)");
+                }
+                try
+                {
+                    deliverEntry(entry, next.size);
+                }
+                catch (final LDAPException e)
+                {
+                    cancel();
+                    throw new LDAPException(ResultCode.CANCELED, "Unable to return search results to the client", e);
+                }
+                sentEntries++;
+                sentBytes += next.size;
+            }
+            else
+            {
+                deliverReference((SearchResultReference) next.result);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting results and releases a backend reader blocked on a full queue.
+     */
+    private void cancel()
+    {
+        lock.lock();
+        try
+        {
+            cancelled = true;
+            queue.clear();
+            queuedBytes = 0;
+            spaceAvailable.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called when the client abandons the search or disconnects: discards
+     * queued results and makes {@link #forwardResults()} return at once.
+     */
+    void abandon()
+    {
+        lock.lock();
+        try
+        {
+            abandoned = true;
+            cancelled = true;
+            queue.clear();
+            queuedBytes = 0;
+            spaceAvailable.signalAll();
+            resultsAvailable.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a result for the request thread, waiting while the queue is full.
+     */
+    private void enqueue(final Object result, final long size)
+    {
+        lock.lock();
+        try
+        {
+            while (!cancelled && !queue.isEmpty()
+                    && (queue.size() >= limits.getQueueEntries()
+                        || queuedBytes + size > limits.getQueueBytes()))
+            {
+                spaceAvailable.await();
+            }
+            if (!cancelled)
+            {
+                queue.add(new Queued(result, size));
+                queuedBytes += size;
+                resultsAvailable.signal();
             }
         }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    {
+        responded();
+        final long size = SearchResultCache.estimateSize(searchEntry);
+        if (queue != null)
+        {
+            enqueue(searchEntry, size);
+            return;
+        }
+
+        try
+        {
+            deliverEntry(searchEntry, size);
+        }
         catch (final Exception e)
         {
             logger.error(e.getMessage());
@@ -104,6 +413,77 @@ final class SearchResultListener
         }
     }
 
+    /**
+     * Sends an entry to the client, applying the response mappings, and adds it
+     * to the captured results.
+     */
+    private void deliverEntry(final SearchResultEntry searchEntry, final long size)
+            throws LDAPException
+    {
+        if (capturedEntries != null) {
+            capturedBytes += size;
+            if (capturedBytes > captureLimit) {
+                logger.debug("Search result exceeds cache limit, not caching");
+                capturedEntries = null;
+                capturedReferences = null;
+            } else {
+                capturedEntries.add(searchEntry);
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Entry: {} {}", searchEntry.getDN(), searchEntry.getAttributes());
+        }
+        final List<Attribute> mapped = mapAttributes(searchEntry.getAttributes());
+        if (mapped != null) {
+            clientConnection.sendSearchResultEntry(messageID,
+                    new SearchResultEntryProtocolOp(searchEntry.getDN(), mapped),
+                    searchEntry.getControls());
+        } else {
+            clientConnection.sendSearchResultEntry(messageID, searchEntry,
+                    searchEntry.getControls());
+        }
+    }
+
+
+
+    /**
+     * Applies the response mappings to an entry's attributes.
+     *
+     * @return The renamed attribute list, or {@code null} if no attribute is mapped
+     *         and the entry can be sent unchanged
+     */
+    private List<Attribute> mapAttributes(final Collection<Attribute> attributes)
+    {
+        if (responseMap.isEmpty()) {
+            return null;
+        }
+
+        boolean anyMapped = false;
+        for (Attribute a : attributes) {
+            if (responseMap.isMapped(a.getName())) {
+                anyMapped = true;
+                break;
+            }
+        }
+        if (!anyMapped) {
+            return null;
+        }
+
+        final List<Attribute> mapped = new ArrayList<>(attributes.size());
+        for (Attribute a : attributes) {
+            final String name = a.getName();
+            final String newName = responseMap.map(name);
+            if (newName == name) {
+                mapped.add(a);
+            } else {
+                logger.debug("Mapping: {} to {}", name, newName);
+                mapped.add(new Attribute(newName, a.getMatchingRule(), a.getRawValues()));
+            }
+        }
+        return mapped;
+    }
+
 
 
     /**
@@ -112,6 +492,21 @@ final class SearchResultListener
     public void searchReferenceReturned(
             final SearchResultReference searchReference)
     {
+        responded();
+        if (queue != null)
+        {
+            enqueue(searchReference, REFERENCE_SIZE_BYTES);
+            return;
+        }
+        deliverReference(searchReference);
+    }
+
+    private void deliverReference(final SearchResultReference searchReference)
+    {
+        if (capturedReferences != null) {
+            capturedReferences.add(searchReference);
+        }
+
         try
         {
             final SearchResultReferenceProtocolOp searchResultReferenceProtocolOp =
@@ -126,4 +521,25 @@ final class SearchResultListener
             Debug.debugException(e);
         }
     }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchResultReceived(final AsyncRequestID requestID,
+                                     final SearchResult searchResult)
+    {
+        responded();
+        lock.lock();
+        try
+        {
+            backendResult = searchResult;
+            resultsAvailable.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
 }
@@ -0,0 +1,15 @@
+package com.marklogic.processors;
+
+/**
+ * Users compiled into an indexed directory by the standalone request
+ * processors. Passwords are kept by entry id so they are never returned as an
+ * attribute or matched by a filter.
+ *
+ * <p>Both parts are replaced together when the users file is reloaded, so a
+ * request that reads the snapshot once sees a consistent set of users.
+ *
+ * @param directory Users, indexed for binds and searches
+ * @param passwords Password of each entry, by entry id; {@code null} if the user has none
+ */
+record UserDirectory(InMemoryDirectory directory, String[] passwords) {
+}
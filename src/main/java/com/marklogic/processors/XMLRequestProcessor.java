@@ -1,23 +1,25 @@
 package com.marklogic.processors;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.marklogic.configuration.properties.RequestProcessorProperties;
+import com.marklogic.handlers.LDAPBackendSession;
+import com.marklogic.repository.UserFileWatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 
 import com.unboundid.ldap.listener.LDAPListenerClientConnection;
@@ -31,7 +33,6 @@ import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
 import com.unboundid.ldap.protocol.DeleteResponseProtocolOp;
 import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
 import com.unboundid.ldap.protocol.ExtendedResponseProtocolOp;
-import com.unboundid.ldap.protocol.IntermediateResponseProtocolOp;
 import com.unboundid.ldap.protocol.LDAPMessage;
 import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
 import com.unboundid.ldap.protocol.ModifyDNResponseProtocolOp;
@@ -40,28 +41,21 @@ import com.unboundid.ldap.protocol.ModifyResponseProtocolOp;
 import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
 import com.unboundid.ldap.protocol.SearchResultDoneProtocolOp;
 import com.unboundid.ldap.protocol.SearchResultEntryProtocolOp;
-import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Control;
-import com.unboundid.ldap.sdk.DN;
-import com.unboundid.ldap.sdk.IntermediateResponse;
-import com.unboundid.ldap.sdk.IntermediateResponseListener;
-import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.RDN;
 import com.unboundid.ldap.sdk.ResultCode;
-import com.unboundid.ldap.sdk.SearchRequest;
-import com.unboundid.ldap.sdk.SearchResult;
-import com.unboundid.ldap.sdk.SearchResultEntry;
-import com.unboundid.util.Debug;
-import com.unboundid.util.StaticUtils;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
+import io.micrometer.core.instrument.Metrics;
 
 /**
  * Created by mwarnes on 05/02/2017.
  */
-public class XMLRequestProcessor implements IRequestProcessor, IntermediateResponseListener {
+public class XMLRequestProcessor implements IRequestProcessor, Closeable {
 
     // Spring Logger
     private static final Logger logger = LoggerFactory.getLogger(XMLRequestProcessor.class);
@@ -72,10 +66,16 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
      */
     private static final int LDAP_RESULT_UNWILLING_TO_PERFORM = 53;
 
+    /**
+     * Attributes with equality, presence and substring indexes.
+     */
+    private static final List<String> INDEXED_ATTRIBUTES = List.of("sAMAccountName", "cn", "memberOf");
+
     private RequestProcessorProperties cfg;
-    private XPathFactory xpathFactory;
-    private Document document;
-    private LDAPListenerClientConnection listenerConnection;
+
+    // Replaced as a whole when the users file changes, so requests need no lock
+    private volatile UserDirectory users;
+    private UserFileWatcher watcher;
 
     @Override
     public void initialize(RequestProcessorProperties cfg) throws Exception {
@@ -88,30 +88,106 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
         logger.debug("XML file path: {}", cfg.getParm1());
 
         // Parse XML Users file
-        DocumentBuilderFactory domFactory =
-                DocumentBuilderFactory.newInstance();
-        domFactory.setNamespaceAware(true);
-        DocumentBuilder builder = domFactory.newDocumentBuilder();
         if (cfg.getParm1().isEmpty()) {
             logger.info("user.xml path missing using default LDAP configuration instead.");
-            document = builder.parse(ClassLoader.class.getResourceAsStream("/users.xml"));
+            try (InputStream in = XMLRequestProcessor.class.getResourceAsStream("/users.xml")) {
+                users = loadUsers(in);
+            }
         } else {
             File f = new File(cfg.getParm1());
             if(f.exists() && !f.isDirectory()) {
                 logger.info("Using custom LDAP configuration from: {}", cfg.getParm1());
-                document = builder.parse(cfg.getParm1());
+                users = loadUsers(f);
+                if (cfg.isReloadOnChange()) {
+                    watcher = new UserFileWatcher("XML users", f.toPath(), () -> users = loadUsers(f),
+                            Metrics.globalRegistry);
+                }
             } else {
                 logger.error("Custom LDAP configuration file not found.");
                 throw new Exception(cfg.getParm1() + " missing or invalid.");
             }
 
         }
-        xpathFactory = XPathFactory.newInstance();
+        logger.info("Loaded {} users from XML", users.directory().size());
 
     }
 
+    private static UserDirectory loadUsers(File f) throws IOException, XMLStreamException, LDAPException {
+        try (InputStream in = new FileInputStream(f)) {
+            return loadUsers(in);
+        }
+    }
+
+    /**
+     * Reads a users file in a single streaming pass. Each {@code user} element
+     * becomes an entry named by its {@code dn} under the enclosing
+     * {@code users basedn}, with an attribute per child element; repeated
+     * elements such as {@code memberOf} become one multi-valued attribute.
+     *
+     * @param in Users file content
+     * @return The compiled users
+     * @throws XMLStreamException if the file is not well formed or a user is outside {@code users}
+     * @throws LDAPException      if a DN is malformed or duplicated
+     */
+    static UserDirectory loadUsers(InputStream in) throws XMLStreamException, LDAPException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Security: no DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        List<Entry> entries = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            String basedn = null;
+            Entry entry = null;
+            String password = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (entry != null) {
+                        String value = reader.getElementText();
+                        if ("userPassword".equals(name)) {
+                            password = value;
+                        } else {
+                            entry.addAttribute(name, value);
+                        }
+                    } else if ("users".equals(name)) {
+                        basedn = reader.getAttributeValue(null, "basedn");
+                    } else if ("user".equals(name)) {
+                        String userdn = reader.getAttributeValue(null, "dn");
+                        if (basedn == null || userdn == null) {
+                            throw new XMLStreamException("user element needs a dn and an enclosing users basedn",
+                                    reader.getLocation());
+                        }
+                        entry = new Entry(userdn + "," + basedn);
+                        entry.addAttribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson");
+                        // Naming attributes are part of the entry, as in a directory server
+                        RDN rdn = new RDN(userdn);
+                        for (int i = 0; i < rdn.getAttributeNames().length; i++) {
+                            entry.addAttribute(rdn.getAttributeNames()[i], rdn.getAttributeValues()[i]);
+                        }
+                        password = null;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (entry != null && "user".equals(reader.getLocalName())) {
+                        entries.add(entry);
+                        passwords.add(password);
+                        entry = null;
+                    } else if ("users".equals(reader.getLocalName())) {
+                        basedn = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new UserDirectory(new InMemoryDirectory(entries, INDEXED_ATTRIBUTES), passwords.toArray(new String[0]));
+    }
+
     @Override
-    public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.info("XML Authenticator.authenticate called.");
         logger.info(request.toString());
 
@@ -120,40 +196,18 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
         if (request.getCredentialsType() == BindRequestProtocolOp.CRED_TYPE_SIMPLE) {
             String binddn = request.getBindDN();
             String passwd = request.getSimplePassword().stringValue();
-            String userdn = null;
-            String basedn = null;
+            logger.debug("BindDN " + binddn);
 
-            try {
-                // Extract Bind details
-                DN dn = new DN(request.getBindDN());
-                userdn = dn.getRDNStrings()[0];
-                basedn = request.getBindDN().substring(userdn.length()+1);
-
-                logger.debug("BindDN " + binddn);
-                logger.debug("UserDN " + userdn);
-                logger.debug("Passwd " + passwd);
-                logger.debug("BaseDN " + basedn);
-
-                // Look for userPassword based on Bind details
-                XPath xpath = xpathFactory.newXPath();
-                StringBuilder sb = new StringBuilder();
-                sb.append("/ldap/users[@basedn=").append("\"").append(basedn).append("\"").append("]/user[@dn=").append("\"").append(userdn).append("\"").append("]/userPassword");
-                logger.debug("xpath query " + sb.toString());
-                XPathExpression expr = xpath.compile(sb.toString());
-                String userPassword = (String) expr.evaluate(document, XPathConstants.STRING);
-                logger.debug("LDAP userPassword " + userPassword);
-
-                // Check password and build LDAPResult
-                if (passwd.equals(userPassword)) {
-                    bindResult = new LDAPResult(1, ResultCode.SUCCESS);
-                } else {
-                    bindResult = new LDAPResult(1, ResultCode.INVALID_CREDENTIALS);
-                }
+            // Look for userPassword based on Bind details
+            UserDirectory snapshot = users;
+            int userId = snapshot.directory().getEntryId(binddn);
+            String userPassword = userId < 0 ? null : snapshot.passwords()[userId];
 
-            } catch (Exception e) {
-                // Catch and log any exceptions
-                logger.error("Error processing bind request: {}", e.getMessage(), e);
-                bindResult = new LDAPResult(1, ResultCode.OPERATIONS_ERROR);
+            // Check password and build LDAPResult
+            if (passwd.equals(userPassword)) {
+                bindResult = new LDAPResult(1, ResultCode.SUCCESS);
+            } else {
+                bindResult = new LDAPResult(1, ResultCode.INVALID_CREDENTIALS);
             }
 
         } else {
@@ -173,119 +227,48 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
     }
 
     @Override
-    public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.info("XML Authenticator.search called.");
         logger.info(request.toString());
 
-        logger.debug("BaseDN: " + request.getBaseDN().toString());
+        logger.debug("BaseDN: " + request.getBaseDN());
         logger.debug("Filter: " + request.getFilter().toString());
 
-        final String[] attrs;
-        final List<String> attrList = request.getAttributes();
-        if (attrList.isEmpty()) {
-            attrs = StaticUtils.NO_STRINGS;
-        } else {
-            attrs = new String[attrList.size()];
-            attrList.toArray(attrs);
-        }
-
-        // Create listener to handle any intermediate responses
-        this.listenerConnection = listenerConnection;
-        SearchResultListener searchListener = new SearchResultListener(listenerConnection, messageID);
-
-        //Create SearchRequest
-        SearchRequest searchRequest = new SearchRequest(searchListener, request.getBaseDN(), request.getScope(), request.getDerefPolicy(), request.getSizeLimit(), request.getTimeLimit(), request.typesOnly(), request.getFilter(), attrs);
-        if(!controls.isEmpty()) {
-            searchRequest.setControls(controls);
-        }
-        searchRequest.setIntermediateResponseListener(this);
-
-        // Search for User based on LDAP Filter
-        SearchResult searchResult=null;
-        List attributeList = searchRequest.getAttributeList();
-        logger.debug("Attributes: " + attributeList);
-        XPath xpath = xpathFactory.newXPath();
-        StringBuilder sb = new StringBuilder();
-        sb.append("/ldap/users[@basedn=").append("\"").append(request.getBaseDN().toString()).append("\"").append("]/user[" + request.getFilter().getAttributeName() + "=\"" + request.getFilter().getAssertionValue()).append("\"]/@dn");
-
-        logger.debug(sb.toString());
+        // Search for Users based on LDAP Filter
+        LDAPResult searchResult;
         try {
-            XPathExpression expr = xpath.compile(sb.toString());
-            String entry = (String) expr.evaluate(document, XPathConstants.STRING);
-
-            // If User not found return
-            if (entry.isEmpty()) {
-                logger.error("Not found ( " + request.getFilter() +" ) " );
-                searchResult = new SearchResult(messageID,ResultCode.SUCCESS,null,null,null, null, null, 0,0,null);
-                SearchResultDoneProtocolOp searchResultDoneProtocolOp = new SearchResultDoneProtocolOp(((LDAPResult)searchResult).getResultCode().intValue(), ((LDAPResult)searchResult).getMatchedDN(), ((LDAPResult)searchResult).getDiagnosticMessage(), Arrays.asList(((LDAPResult)searchResult).getReferralURLs()));
-                logger.info(searchResultDoneProtocolOp.toString());
-                return new LDAPMessage(messageID, searchResultDoneProtocolOp, Arrays.asList(((LDAPResult)searchResult).getResponseControls()));
+            InMemoryDirectory directory = users.directory();
+            int[] matches = directory.search(request.getBaseDN(), request.getScope(), request.getFilter());
+
+            // Send a Search Result Entry to the client for each user found
+            for (int id : matches) {
+                SearchResultEntryProtocolOp searchResultEntryProtocolOp = new SearchResultEntryProtocolOp(
+                        InMemoryDirectory.selectAttributes(directory.getEntry(id), request.getAttributes()));
+                logger.info(searchResultEntryProtocolOp.toString());
+                listenerConnection.sendSearchResultEntry(messageID, searchResultEntryProtocolOp, new Control[0]);
             }
-
-            // Build Attribute list to return
-            String userdn = entry + "," + request.getBaseDN().toString();
-            logger.debug("UserDN " + userdn);
-
-            ArrayList retAttr = new ArrayList();
-            if (attributeList.contains("objectClass")) {
-                // Standard Object class
-                Attribute objClass = new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson");
-                retAttr.add(objClass);
-            }
-
-            // Add Attributes for ech XML Element in user entry including any memberOf attributes required for Group roles
-            sb = new StringBuilder();
-            sb.append("/ldap/users[@basedn=").append("\"").append(request.getBaseDN().toString()).append("\"").append("]/user[" + request.getFilter().getAttributeName() + "=\"" + request.getFilter().getAssertionValue()).append("\"]");
-            expr = xpath.compile(sb.toString());
-            Node node = (Node) expr.evaluate(document, XPathConstants.NODE);
-            if(null != node) {
-                NodeList nodeList = node.getChildNodes();
-                for (int i = 0;null!=nodeList && i < nodeList.getLength(); i++) {
-                    Node nod = nodeList.item(i);
-                    if(nod.getNodeType() == Node.ELEMENT_NODE) {
-                        if (attributeList.isEmpty()) {
-                            // If no specific attributes requested then return everything
-                            Attribute attr = new Attribute(nodeList.item(i).getNodeName(), nod.getFirstChild().getNodeValue());
-                            retAttr.add(attr);
-                            logger.debug(nodeList.item(i).getNodeName() + " : " + nod.getFirstChild().getNodeValue());
-                        } else {
-                            // Else return only requested attributes
-                            if (attributeList.contains(nodeList.item(i).getNodeName())) {
-                                Attribute attr = new Attribute(nodeList.item(i).getNodeName(), nod.getFirstChild().getNodeValue());
-                                retAttr.add(attr);
-                                logger.debug(nodeList.item(i).getNodeName() + " : " + nod.getFirstChild().getNodeValue());
-                            }
-                        }
-                    }
-                }
+            if (matches.length == 0) {
+                logger.error("Not found ( " + request.getFilter() +" ) " );
             }
+            searchResult = new LDAPResult(messageID, ResultCode.SUCCESS);
 
-            // Build and send new Search Result Entry to client
-            SearchResultEntry sre = new SearchResultEntry(messageID,userdn,retAttr);
-            ArrayList entries = new ArrayList();
-            entries.add(sre);
-            logger.debug("Response Attribute  " + entries);
-            SearchResultEntryProtocolOp searchResultEntryProtocolOp = new SearchResultEntryProtocolOp(userdn,retAttr);
-            logger.info(searchResultEntryProtocolOp.toString());
-            listenerConnection.sendSearchResultEntry(messageID, searchResultEntryProtocolOp, new Control[0]);
-
-            // Build new Search Result to close client session
-            searchResult = new SearchResult(messageID,ResultCode.SUCCESS,null,null,null, entries, null, entries.size(),-1,null);
-
+        } catch (LDAPException e) {
+            logger.error("Error processing search request: {}", e.getMessage());
+            searchResult = new LDAPResult(messageID, e.getResultCode(), e.getDiagnosticMessage(), null, null, null);
         } catch (Exception e) {
             // Catch and log any exceptions
             logger.error("Error processing search request: {}", e.getMessage(), e);
-            searchResult = new SearchResult(messageID, ResultCode.OPERATIONS_ERROR, e.getLocalizedMessage(), null, null, null, null, 0, 0, null);
+            searchResult = new LDAPResult(messageID, ResultCode.OPERATIONS_ERROR, e.getLocalizedMessage(), null, null, null);
         }
 
         // Return result
-        SearchResultDoneProtocolOp searchResultDoneProtocolOp = new SearchResultDoneProtocolOp(((LDAPResult)searchResult).getResultCode().intValue(), ((LDAPResult)searchResult).getMatchedDN(), ((LDAPResult)searchResult).getDiagnosticMessage(), Arrays.asList(((LDAPResult)searchResult).getReferralURLs()));
+        SearchResultDoneProtocolOp searchResultDoneProtocolOp = new SearchResultDoneProtocolOp(searchResult.getResultCode().intValue(), searchResult.getMatchedDN(), searchResult.getDiagnosticMessage(), Arrays.asList(searchResult.getReferralURLs()));
         logger.info(searchResultDoneProtocolOp.toString());
-        return new LDAPMessage(messageID, searchResultDoneProtocolOp, Arrays.asList(((LDAPResult)searchResult).getResponseControls()));
+        return new LDAPMessage(messageID, searchResultDoneProtocolOp, Arrays.asList(searchResult.getResponseControls()));
     }
 
     @Override
-    public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP ADD request not accepted by XMLRequestProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -299,7 +282,7 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
     }
 
     @Override
-    public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP COMPARE request not accepted by XMLRequestProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -315,7 +298,7 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
     }
 
     @Override
-    public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP DELETE request not accepted by XMLRequestProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -330,7 +313,7 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
     }
 
     @Override
-    public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP EXTENDED request not accepted by XMLRequestProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -345,7 +328,7 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
     }
 
     @Override
-    public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP MODIFY request not accepted by XMLRequestProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -360,7 +343,7 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
     }
 
     @Override
-    public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, List<Control> controls, LDAPConnection ldapConnection, LDAPListenerClientConnection listenerConnection) {
+    public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, List<Control> controls, LDAPBackendSession backend, LDAPListenerClientConnection listenerConnection) {
         logger.error("LDAP MODIFYDN request not accepted by XMLRequestProcessor.");
         logger.debug("LDAP Request: " + request);
 
@@ -377,11 +360,9 @@ public class XMLRequestProcessor implements IRequestProcessor, IntermediateRespo
     }
 
     @Override
-    public void intermediateResponseReturned(IntermediateResponse intermediateResponse) {
-        try {
-            this.listenerConnection.sendIntermediateResponse(intermediateResponse.getMessageID(), new IntermediateResponseProtocolOp(intermediateResponse.getOID(), intermediateResponse.getValue()), intermediateResponse.getControls());
-        } catch (LDAPException var3) {
-            Debug.debugException(var3);
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
         }
     }
 }
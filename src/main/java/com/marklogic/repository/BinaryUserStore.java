@@ -0,0 +1,219 @@
+package com.marklogic.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+
+import com.marklogic.repository.JsonUserRepository.UserInfo;
+
+/**
+ * Users read directly from a memory-mapped binary file written by
+ * {@link BinaryUserStoreConverter}.
+ *
+ * <p>Nothing is decoded when the file is opened except the role names, so
+ * opening is immediate and the heap used does not grow with the number of
+ * users: the operating system pages the file in as it is read. A lookup binary
+ * searches the sorted user records, comparing the UTF-8 bytes of the
+ * lower-case username in place, and builds a {@link UserInfo} only for the
+ * user found. Roles are stored as ids into the role table and read as a
+ * {@link RoleSet} over the shared names.
+ *
+ * <p>File layout (big-endian):
+ * <pre>
+ * header   int magic, int version, int userCount, int roleCount,
+ *          int roleTableOffset, int recordsOffset, int poolOffset, int poolLength
+ * roles    roleCount x int: pool offset of each role name
+ * records  userCount x 6 int, sorted by key bytes: pool offsets of the key
+ *          (lower-case username), username, password, dn, rfc6238code and role list
+ * pool     strings as an unsigned short length followed by UTF-8 bytes, and
+ *          role lists as an unsigned short count followed by unsigned short role ids
+ * </pre>
+ * An offset of {@code -1} marks an absent value. The whole file must be
+ * smaller than 2 GB.
+ *
+ * @since 2.0
+ */
+final class BinaryUserStore implements UserStore {
+
+    static final int MAGIC = 0x4D4C5553; // "MLUS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8 * Integer.BYTES;
+    static final int RECORD_INTS = 6;
+
+    private static final int KEY = 0;
+    private static final int USERNAME = 1;
+    private static final int PASSWORD = 2;
+    private static final int DN = 3;
+    private static final int RFC6238CODE = 4;
+    private static final int ROLES = 5;
+
+    // Read only with absolute gets, so one buffer is shared by all threads
+    private final ByteBuffer buffer;
+    private final int userCount;
+    private final int recordsOffset;
+    private final int poolOffset;
+    private final String[] roleNames;
+
+    private BinaryUserStore(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary user store");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary user store version " + buffer.getInt(4));
+        }
+        this.userCount = buffer.getInt(8);
+        int roleCount = buffer.getInt(12);
+        int roleTableOffset = buffer.getInt(16);
+        this.recordsOffset = buffer.getInt(20);
+        this.poolOffset = buffer.getInt(24);
+        int poolLength = buffer.getInt(28);
+        if (userCount < 0 || roleCount < 0
+                || roleTableOffset < HEADER_BYTES || (long) roleTableOffset + (long) roleCount * Integer.BYTES > recordsOffset
+                || (long) recordsOffset + (long) userCount * RECORD_INTS * Integer.BYTES > poolOffset
+                || (long) poolOffset + poolLength != buffer.capacity()) {
+            throw new IOException("Binary user store is truncated or corrupt");
+        }
+
+        this.roleNames = new String[roleCount];
+        for (int i = 0; i < roleCount; i++) {
+            roleNames[i] = string(buffer.getInt(roleTableOffset + i * Integer.BYTES));
+        }
+    }
+
+    /**
+     * Maps a binary user store file.
+     *
+     * @param file File written by {@link BinaryUserStoreConverter}
+     * @throws IOException if the file cannot be mapped or is not a valid store
+     */
+    static BinaryUserStore open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary user store larger than 2 GB: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return new BinaryUserStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return {@code true} if the file starts with the binary user store magic number
+     */
+    static boolean isBinaryUserStore(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Read the first four bytes
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    @Override
+    public UserInfo find(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : user(index);
+    }
+
+    @Override
+    public List<String> roles(String key) {
+        int index = indexOf(key);
+        return index < 0 ? List.of() : roles(index);
+    }
+
+    @Override
+    public int size() {
+        return userCount;
+    }
+
+    @Override
+    public Collection<UserInfo> all() {
+        return new AbstractList<>() {
+            @Override
+            public UserInfo get(int index) {
+                return user(index);
+            }
+
+            @Override
+            public int size() {
+                return userCount;
+            }
+        };
+    }
+
+    private int indexOf(String key) {
+        byte[] target = key.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = userCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(field(mid, KEY), target);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Compares the pool string at offset with target, bytewise unsigned as the converter sorts
+    private int compare(int offset, byte[] target) {
+        int position = poolOffset + offset;
+        int length = Short.toUnsignedInt(buffer.getShort(position));
+        position += Short.BYTES;
+        int common = Math.min(length, target.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(position + i), target[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, target.length);
+    }
+
+    private int field(int index, int field) {
+        return buffer.getInt(recordsOffset + (index * RECORD_INTS + field) * Integer.BYTES);
+    }
+
+    private UserInfo user(int index) {
+        UserInfo user = new UserInfo(string(field(index, USERNAME)), string(field(index, DN)));
+        user.setPassword(string(field(index, PASSWORD)));
+        user.setRfc6238code(string(field(index, RFC6238CODE)));
+        user.setRoles(roles(index));
+        return user;
+    }
+
+    private List<String> roles(int index) {
+        int offset = field(index, ROLES);
+        if (offset < 0) {
+            return List.of();
+        }
+        int position = poolOffset + offset;
+        int count = Short.toUnsignedInt(buffer.getShort(position));
+        short[] ids = new short[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = buffer.getShort(position + Short.BYTES * (i + 1));
+        }
+        return new RoleSet(roleNames, ids);
+    }
+
+    private String string(int offset) {
+        if (offset < 0) {
+            return null;
+        }
+        int position = poolOffset + offset;
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(position))];
+        buffer.get(position + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,249 @@
+package com.marklogic.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marklogic.repository.JsonUserRepository.UserInfo;
+
+/**
+ * Offline converter from users.json to the binary format read by
+ * {@link BinaryUserStore}.
+ *
+ * <p>Users are streamed from the JSON file one at a time, so the converter
+ * needs memory for the encoded output only. Users without a username are
+ * skipped and, as when loading JSON, a later user replaces an earlier one with
+ * the same username. Run it from the application jar:
+ * <pre>
+ * java -cp mleaproxy.jar -Dloader.main=com.marklogic.repository.BinaryUserStoreConverter \
+ *     org.springframework.boot.loader.launch.PropertiesLauncher users.json users.bin
+ * </pre>
+ *
+ * @since 2.0
+ */
+public final class BinaryUserStoreConverter {
+
+    private BinaryUserStoreConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryUserStoreConverter <users.json> <users.bin>");
+            System.exit(2);
+        }
+        int users = convert(Path.of(args[0]), Path.of(args[1]));
+        System.out.println("Wrote " + users + " users to " + args[1]);
+    }
+
+    /**
+     * Converts a users.json file.
+     *
+     * @param json   users.json file
+     * @param binary File to write
+     * @return Number of users written
+     * @throws IOException if the JSON cannot be read or the store exceeds the format's limits
+     */
+    public static int convert(Path json, Path binary) throws IOException {
+        Encoder encoder = new Encoder();
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (JsonParser parser = objectMapper.getFactory().createParser(json.toFile())) {
+            if (!moveToUsersArray(parser)) {
+                throw new IOException("JSON user data has no 'users' array: " + json);
+            }
+            parser.nextToken();
+            try (MappingIterator<UserInfo> iterator = objectMapper.readValues(parser, UserInfo.class)) {
+                while (iterator.hasNext()) {
+                    UserInfo user = iterator.next();
+                    if (user.getUsername() != null && !user.getUsername().trim().isEmpty()) {
+                        encoder.add(user);
+                    }
+                }
+            }
+        }
+
+        Path temp = binary.resolveSibling(binary.getFileName() + ".tmp");
+        int written;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            written = encoder.writeTo(out);
+        }
+        // Replace any existing store in one step, so a watching proxy never reads a partial file
+        Files.move(temp, binary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    // Positions the parser on the START_ARRAY of the top-level "users" field
+    private static boolean moveToUsersArray(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("users".equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static final class Encoder {
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> roleIds = new HashMap<>();
+        private final Map<String, Integer> stringOffsets = new HashMap<>();
+        private int[] roleOffsets = new int[16];
+        private int[] records = new int[1024 * BinaryUserStore.RECORD_INTS];
+        private int count;
+
+        void add(UserInfo user) throws IOException {
+            if ((count + 1) * BinaryUserStore.RECORD_INTS > records.length) {
+                records = Arrays.copyOf(records, records.length * 2);
+            }
+            int base = count * BinaryUserStore.RECORD_INTS;
+            records[base] = string(user.getUsername().toLowerCase(Locale.ROOT), false);
+            records[base + 1] = string(user.getUsername(), false);
+            records[base + 2] = string(user.getPassword(), false);
+            records[base + 3] = string(user.getDn(), false);
+            records[base + 4] = string(user.getRfc6238code(), false);
+            records[base + 5] = roles(user.getRoles());
+            count++;
+        }
+
+        // Appends a string to the pool; shared strings such as role names are written once
+        private int string(String value, boolean shared) throws IOException {
+            if (value == null) {
+                return -1;
+            }
+            if (shared) {
+                Integer offset = stringOffsets.get(value);
+                if (offset != null) {
+                    return offset;
+                }
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IOException("Value longer than 65535 bytes: " + value.substring(0, 32) + "...");
+            }
+            int offset = pool.size();
+            pool.writeShort(bytes.length);
+            pool.write(bytes);
+            if (shared) {
+                stringOffsets.put(value, offset);
+            }
+            return offset;
+        }
+
+        private int roles(List<String> roles) throws IOException {
+            if (roles == null || roles.isEmpty()) {
+                return -1;
+            }
+            if (roles.size() > 0xFFFF) {
+                throw new IOException("More than 65535 roles for one user");
+            }
+            int[] ids = new int[roles.size()];
+            for (int i = 0; i < ids.length; i++) {
+                String role = roles.get(i);
+                Integer id = roleIds.get(role);
+                if (id == null) {
+                    id = roleIds.size();
+                    if (id > 0xFFFF) {
+                        throw new IOException("More than 65536 distinct roles");
+                    }
+                    if (id == roleOffsets.length) {
+                        roleOffsets = Arrays.copyOf(roleOffsets, id * 2);
+                    }
+                    roleOffsets[id] = string(role, true);
+                    roleIds.put(role, id);
+                }
+                ids[i] = id;
+            }
+            int offset = pool.size();
+            pool.writeShort(ids.length);
+            for (int id : ids) {
+                pool.writeShort(id);
+            }
+            return offset;
+        }
+
+        /**
+         * @return Number of users written
+         */
+        int writeTo(OutputStream out) throws IOException {
+            pool.flush();
+            byte[] poolArray = poolBytes.toByteArray();
+            Integer[] order = sortedUsers(poolArray);
+
+            int roleCount = roleIds.size();
+            long roleTableOffset = BinaryUserStore.HEADER_BYTES;
+            long recordsOffset = roleTableOffset + (long) roleCount * Integer.BYTES;
+            long poolOffset = recordsOffset + (long) order.length * BinaryUserStore.RECORD_INTS * Integer.BYTES;
+            if (poolOffset + poolArray.length > Integer.MAX_VALUE) {
+                throw new IOException("Binary user store would exceed 2 GB");
+            }
+
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(BinaryUserStore.MAGIC);
+            data.writeInt(BinaryUserStore.VERSION);
+            data.writeInt(order.length);
+            data.writeInt(roleCount);
+            data.writeInt((int) roleTableOffset);
+            data.writeInt((int) recordsOffset);
+            data.writeInt((int) poolOffset);
+            data.writeInt(poolArray.length);
+            for (int i = 0; i < roleCount; i++) {
+                data.writeInt(roleOffsets[i]);
+            }
+            for (int user : order) {
+                for (int field = 0; field < BinaryUserStore.RECORD_INTS; field++) {
+                    data.writeInt(records[user * BinaryUserStore.RECORD_INTS + field]);
+                }
+            }
+            data.write(poolArray);
+            data.flush();
+            return order.length;
+        }
+
+        // Users sorted by key bytes; of users with the same key only the last one added is kept
+        private Integer[] sortedUsers(byte[] poolArray) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            // Stable, so users with the same key stay in the order they were added
+            Arrays.sort(order, (a, b) -> compareKeys(poolArray, a, b));
+            int kept = 0;
+            for (int i = 0; i < order.length; i++) {
+                if (i + 1 < order.length && compareKeys(poolArray, order[i], order[i + 1]) == 0) {
+                    continue;
+                }
+                order[kept++] = order[i];
+            }
+            return Arrays.copyOf(order, kept);
+        }
+
+        private int compareKeys(byte[] poolArray, int a, int b) {
+            int offsetA = records[a * BinaryUserStore.RECORD_INTS];
+            int offsetB = records[b * BinaryUserStore.RECORD_INTS];
+            int lengthA = ((poolArray[offsetA] & 0xFF) << 8) | (poolArray[offsetA + 1] & 0xFF);
+            int lengthB = ((poolArray[offsetB] & 0xFF) << 8) | (poolArray[offsetB + 1] & 0xFF);
+            return Arrays.compareUnsigned(poolArray, offsetA + 2, offsetA + 2 + lengthA,
+                    poolArray, offsetB + 2, offsetB + 2 + lengthB);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.marklogic.repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+
+/**
+ * Transitive closure of nested group membership.
+ *
+ * <p>Built once from the {@code memberOf} values of every entry in a
+ * directory or users file. For each group that some entry is a member of, the
+ * groups it belongs to directly or through other groups are resolved up front,
+ * so expanding a user's groups afterwards is a map lookup per direct group
+ * rather than a query per level of nesting. Membership cycles are tolerated.
+ * Instances are immutable.
+ *
+ * @since 2.0
+ */
+public final class GroupClosure {
+
+    /** A closure with no nested groups; {@link #expand} returns the groups it is given. */
+    public static final GroupClosure EMPTY = new GroupClosure(Map.of());
+
+    // Normalized group DN -> groups it belongs to, directly or transitively, excluding itself
+    private final Map<String, List<String>> ancestors;
+
+    /**
+     * @param memberOf Entry DN to the DNs of the groups it is a direct member of;
+     *                 entries that are not groups are ignored
+     */
+    public GroupClosure(Map<String, ? extends Collection<String>> memberOf) {
+        Map<String, Collection<String>> parents = new HashMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> entry : memberOf.entrySet()) {
+            parents.merge(normalize(entry.getKey()), new ArrayList<>(entry.getValue()), (a, b) -> {
+                a.addAll(b);
+                return a;
+            });
+        }
+
+        Map<String, List<String>> closure = new HashMap<>();
+        for (Collection<String> groups : parents.values()) {
+            for (String group : groups) {
+                String key = normalize(group);
+                if (!closure.containsKey(key)) {
+                    List<String> inherited = resolve(key, parents);
+                    closure.put(key, inherited.isEmpty() ? List.of() : List.copyOf(inherited));
+                }
+            }
+        }
+        // Keep only groups that are members of other groups
+        closure.values().removeIf(List::isEmpty);
+        this.ancestors = Map.copyOf(closure);
+    }
+
+    // Breadth first, so nearer groups come first; the visited set breaks cycles
+    private static List<String> resolve(String group, Map<String, Collection<String>> parents) {
+        List<String> inherited = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(group);
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(group);
+        while (!pending.isEmpty()) {
+            Collection<String> direct = parents.get(pending.poll());
+            if (direct == null) {
+                continue;
+            }
+            for (String parent : direct) {
+                String key = normalize(parent);
+                if (visited.add(key)) {
+                    inherited.add(parent);
+                    pending.add(key);
+                }
+            }
+        }
+        return inherited;
+    }
+
+    /**
+     * @param groups DNs of the groups an entry is a direct member of
+     * @return The same groups followed by every group they belong to, without
+     *         duplicates
+     */
+    public Set<String> expand(Collection<String> groups) {
+        Set<String> seen = new HashSet<>();
+        Set<String> expanded = new LinkedHashSet<>();
+        for (String group : groups) {
+            if (seen.add(normalize(group))) {
+                expanded.add(group);
+            }
+        }
+        for (String group : groups) {
+            for (String parent : ancestors.getOrDefault(normalize(group), List.of())) {
+                if (seen.add(normalize(parent))) {
+                    expanded.add(parent);
+                }
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * @return Number of groups that belong to at least one other group
+     */
+    public int size() {
+        return ancestors.size();
+    }
+
+    // DNs compare by their normalized form, so spacing and case do not matter
+    private static String normalize(String dn) {
+        try {
+            return new DN(dn).toNormalizedString();
+        } catch (LDAPException e) {
+            return dn.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+}
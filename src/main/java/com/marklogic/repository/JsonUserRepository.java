@@ -2,9 +2,13 @@ package com.marklogic.repository;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -15,6 +19,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
 /**
  * Repository for loading and querying users from a JSON file.
  * 
@@ -33,6 +40,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * }
  * }</pre>
  * 
+ * <p>The file may instead be a binary user store written from users.json by
+ * {@link BinaryUserStoreConverter}; it is recognized by its header and memory
+ * mapped rather than parsed, for fixtures with millions of users.
+ * 
+ * <p>Role names are interned as the file is loaded and each user's roles are
+ * held as a compact {@link RoleSet}, which is returned to callers without
+ * copying.
+ * 
+ * <p>The users are held in an immutable store that is replaced as a whole when
+ * the file is reloaded, so lookups take no lock and always see either the old
+ * or the new file, never a mix; see {@link #watch(MeterRegistry)}.
+ * 
  * @since 2.0
  */
 @Component
@@ -40,10 +59,11 @@ public class JsonUserRepository {
     
     private static final Logger logger = LoggerFactory.getLogger(JsonUserRepository.class);
     
-    private Map<String, UserInfo> users = new HashMap<>();
-    private boolean initialized = false;
+    private volatile UserStore users = MapUserStore.EMPTY;
+    private volatile boolean initialized = false;
     private String jsonFilePath;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private UserFileWatcher watcher;
     
     /**
      * Represents user information loaded from JSON.
@@ -99,6 +119,10 @@ public class JsonUserRepository {
         }
         
         public void addRole(String role) {
+            // Loaded users hold a shared, unmodifiable role set
+            if (!(roles instanceof ArrayList)) {
+                roles = new ArrayList<>(roles);
+            }
             this.roles.add(role);
         }
         
@@ -119,6 +143,35 @@ public class JsonUserRepository {
         }
     }
     
+    /**
+     * Users parsed from JSON, keyed by lower-case username.
+     */
+    private record MapUserStore(Map<String, UserInfo> users) implements UserStore {
+        
+        static final MapUserStore EMPTY = new MapUserStore(Map.of());
+        
+        @Override
+        public UserInfo find(String key) {
+            return users.get(key);
+        }
+        
+        @Override
+        public List<String> roles(String key) {
+            UserInfo user = users.get(key);
+            return user == null ? List.of() : user.getRoles();
+        }
+        
+        @Override
+        public int size() {
+            return users.size();
+        }
+        
+        @Override
+        public Collection<UserInfo> all() {
+            return users.values();
+        }
+    }
+    
     /**
      * Internal wrapper class for JSON deserialization.
      */
@@ -159,36 +212,16 @@ public class JsonUserRepository {
         logger.info("Loading users from JSON file: {}", filePath);
         
         try {
-            UsersWrapper wrapper = objectMapper.readValue(file, UsersWrapper.class);
-            
-            if (wrapper == null || wrapper.getUsers() == null) {
+            UserStore loaded = load(file);
+            if (loaded == null) {
                 logger.warn("No users found in JSON file");
                 return;
             }
             
-            int userCount = 0;
-            for (UserInfo userInfo : wrapper.getUsers()) {
-                if (userInfo.getUsername() == null || userInfo.getUsername().trim().isEmpty()) {
-                    logger.warn("User entry missing username, skipping");
-                    continue;
-                }
-                
-                // Ensure roles list is not null
-                if (userInfo.getRoles() == null) {
-                    userInfo.setRoles(new ArrayList<>());
-                }
-                
-                users.put(userInfo.getUsername().toLowerCase(), userInfo);
-                userCount++;
-                
-                logger.debug("Loaded user: {} with {} roles: {}", 
-                            userInfo.getUsername(), 
-                            userInfo.getRoles().size(), 
-                            String.join(",", userInfo.getRoles()));
-            }
-            
+            users = loaded;
             initialized = true;
-            logger.info("Successfully loaded {} users from JSON file", userCount);
+            logger.info("Successfully loaded {} users from {}", loaded.size(),
+                        loaded instanceof BinaryUserStore ? "binary user store" : "JSON file");
             
         } catch (IOException e) {
             logger.error("Failed to parse JSON user file: {}", filePath, e);
@@ -196,6 +229,92 @@ public class JsonUserRepository {
         }
     }
     
+    /**
+     * Maps a binary user store, or parses the JSON file into a new user map.
+     * 
+     * @return The loaded users, or null if a JSON file has no users array
+     * @throws IOException if the file cannot be read or parsed
+     */
+    private UserStore load(File file) throws IOException {
+        if (BinaryUserStore.isBinaryUserStore(file.toPath())) {
+            return BinaryUserStore.open(file.toPath());
+        }
+        
+        UsersWrapper wrapper = objectMapper.readValue(file, UsersWrapper.class);
+        
+        if (wrapper == null || wrapper.getUsers() == null) {
+            return null;
+        }
+        
+        Map<String, UserInfo> loaded = new HashMap<>();
+        RoleSet.Dictionary roles = new RoleSet.Dictionary();
+        for (UserInfo userInfo : wrapper.getUsers()) {
+            if (userInfo.getUsername() == null || userInfo.getUsername().trim().isEmpty()) {
+                logger.warn("User entry missing username, skipping");
+                continue;
+            }
+            
+            userInfo.setRoles(roles.roles(userInfo.getRoles()));
+            
+            loaded.put(key(userInfo.getUsername()), userInfo);
+            
+            logger.debug("Loaded user: {} with {} roles: {}", 
+                        userInfo.getUsername(), 
+                        userInfo.getRoles().size(), 
+                        String.join(",", userInfo.getRoles()));
+        }
+        logger.debug("Interned {} distinct roles", roles.size());
+        return new MapUserStore(Collections.unmodifiableMap(loaded));
+    }
+    
+    // Lookup key for a username; the binary store sorts by the same key. Keys are
+    // folded once at load, and toLowerCase returns an already lower-case username
+    // itself, so the usual lookup allocates nothing
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Parses the JSON file again and, if it is valid, replaces all users at once.
+     * Lookups already in progress finish with the users they started with.
+     * 
+     * @throws Exception if the file cannot be read or has no users; the current users are kept
+     */
+    public void reload() throws Exception {
+        if (jsonFilePath == null) {
+            throw new IllegalStateException("JSON user repository has not been initialized");
+        }
+        UserStore loaded = load(new File(jsonFilePath));
+        if (loaded == null) {
+            throw new IOException("No users found in JSON file");
+        }
+        users = loaded;
+        initialized = true;
+    }
+    
+    /**
+     * Reloads the JSON file whenever it changes on disk until {@link #stopWatching()}.
+     * 
+     * @param meterRegistry Registry for the reload metrics, or null
+     * @throws IOException if the file's directory cannot be watched
+     */
+    public synchronized void watch(MeterRegistry meterRegistry) throws IOException {
+        if (watcher == null && jsonFilePath != null) {
+            watcher = new UserFileWatcher("users.json", Path.of(jsonFilePath), this::reload, meterRegistry);
+        }
+    }
+    
+    /**
+     * Stops reloading the JSON file on changes.
+     */
+    @PreDestroy
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+    
     /**
      * Finds a user by their username.
      * 
@@ -206,7 +325,7 @@ public class JsonUserRepository {
         if (!initialized || username == null) {
             return null;
         }
-        return users.get(username.toLowerCase());
+        return users.find(key(username));
     }
     
     /**
@@ -228,14 +347,13 @@ public class JsonUserRepository {
      * Gets the roles for a user.
      * 
      * @param username The username to get roles for
-     * @return List of role names, or empty list if user not found
+     * @return Unmodifiable list of role names, or empty list if user not found
      */
     public List<String> getUserRoles(String username) {
-        UserInfo user = findByUsername(username);
-        if (user == null) {
-            return new ArrayList<>();
+        if (!initialized || username == null) {
+            return List.of();
         }
-        return new ArrayList<>(user.getRoles());
+        return users.roles(key(username));
     }
     
     /**
@@ -268,9 +386,10 @@ public class JsonUserRepository {
     /**
      * Gets all users in the repository.
      * 
-     * @return Collection of all UserInfo objects
+     * @return Collection of all UserInfo objects; for a binary user store, a view
+     *         that builds each user as it is read
      */
-    public java.util.Collection<UserInfo> getAllUsers() {
-        return users.values();
+    public Collection<UserInfo> getAllUsers() {
+        return users.all();
     }
 }
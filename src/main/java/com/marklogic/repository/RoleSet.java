@@ -0,0 +1,86 @@
+package com.marklogic.repository;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A user's roles, stored as ids into a table of role names shared by every
+ * user loaded from the same file.
+ *
+ * <p>Users files repeat a few dozen role names across thousands of users, so
+ * each name is held once and a user costs two bytes per role. The set is an
+ * unmodifiable list view; reading it allocates nothing, so repositories can
+ * hand it to callers without copying.
+ *
+ * @since 2.0
+ */
+final class RoleSet extends AbstractList<String> implements RandomAccess {
+
+    private final String[] names;
+    private final short[] ids;
+
+    RoleSet(String[] names, short[] ids) {
+        this.names = names;
+        this.ids = ids;
+    }
+
+    @Override
+    public String get(int index) {
+        return names[Short.toUnsignedInt(ids[index])];
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Interns the role names of the users in one file. Not thread-safe; used
+     * only while the file is loaded.
+     */
+    static final class Dictionary {
+
+        // Ids are stored as unsigned shorts
+        private static final int MAX_ROLES = 0x10000;
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] names = new String[16];
+
+        /**
+         * @param roles Role names of one user
+         * @return The same roles as a {@link RoleSet}, or an unmodifiable copy
+         *         if the file has more distinct roles than ids
+         */
+        List<String> roles(List<String> roles) {
+            if (roles == null || roles.isEmpty()) {
+                return List.of();
+            }
+            short[] roleIds = new short[roles.size()];
+            for (int i = 0; i < roleIds.length; i++) {
+                Integer id = ids.get(roles.get(i));
+                if (id == null) {
+                    id = ids.size();
+                    if (id == MAX_ROLES) {
+                        return List.copyOf(roles);
+                    }
+                    if (id == names.length) {
+                        // Sets already built keep the smaller table, which holds all their ids
+                        names = Arrays.copyOf(names, id * 2);
+                    }
+                    names[id] = roles.get(i);
+                    ids.put(roles.get(i), id);
+                }
+                roleIds[i] = (short) id.intValue();
+            }
+            return new RoleSet(names, roleIds);
+        }
+
+        int size() {
+            return ids.size();
+        }
+    }
+}
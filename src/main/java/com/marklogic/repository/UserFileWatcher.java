@@ -0,0 +1,200 @@
+package com.marklogic.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Reloads a users file when it changes on disk.
+ *
+ * <p>A daemon thread watches the file's directory with a {@link WatchService}.
+ * Editors often save by writing a new file and renaming it over the old one,
+ * so both creation and modification of the file count as a change, and a burst
+ * of events is collapsed by waiting until the directory has been quiet for a
+ * moment. The reloader parses and validates the file off the request path and
+ * publishes the new users with a single reference swap; if it fails, the
+ * current users stay in place and the error is logged.
+ *
+ * @since 2.0
+ */
+public final class UserFileWatcher implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserFileWatcher.class);
+
+    // Quiet period before a changed file is read
+    private static final long QUIET_MILLIS = 250;
+
+    /**
+     * Parses the users file and swaps in the result.
+     */
+    @FunctionalInterface
+    public interface Reloader {
+        /**
+         * @throws Exception if the file is invalid; the current users must then be kept
+         */
+        void reload() throws Exception;
+    }
+
+    private final String name;
+    private final Path file;
+    private final Reloader reloader;
+    private final WatchService watchService;
+
+    // Users loaded so far, counting the initial load
+    private final AtomicLong version = new AtomicLong(1);
+
+    private final MeterRegistry meterRegistry;
+    private final List<Meter> meters = new ArrayList<>();
+    private final Timer reloaded;
+    private final Timer failed;
+
+    /**
+     * Starts watching the file.
+     *
+     * @param name          Name used in logs and the watcher thread name
+     * @param file          Users file to watch
+     * @param reloader      Called after each change
+     * @param meterRegistry Registry for the reload metrics, or {@code null}
+     * @throws IOException if the file's directory cannot be watched
+     */
+    public UserFileWatcher(String name, Path file, Reloader reloader, MeterRegistry meterRegistry) throws IOException {
+        this.name = name;
+        this.file = file.toAbsolutePath().normalize();
+        this.reloader = reloader;
+        Path directory = this.file.getParent();
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            reloaded = register(Timer.builder("users.reload")
+                    .description("Time to parse, validate and swap in a changed users file")
+                    .tag("file", this.file.toString())
+                    .tag("outcome", "success")
+                    .register(meterRegistry));
+            failed = register(Timer.builder("users.reload")
+                    .description("Time to parse, validate and swap in a changed users file")
+                    .tag("file", this.file.toString())
+                    .tag("outcome", "failure")
+                    .register(meterRegistry));
+            register(Gauge.builder("users.reload.version", version, AtomicLong::get)
+                    .description("Users loaded from the file since startup, counting the initial load")
+                    .tag("file", this.file.toString())
+                    .register(meterRegistry));
+        } else {
+            reloaded = null;
+            failed = null;
+        }
+
+        Thread thread = new Thread(this::watch, "users-watch-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Watching {} for changes to {}", this.file, name);
+    }
+
+    private <M extends Meter> M register(M meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                boolean changed = isChange(watchService.take());
+                // Wait for the writer to finish before reading the file: each event for
+                // the file restarts the quiet period, events for other files are only drained
+                long quietUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS);
+                while (changed) {
+                    long remaining = quietUntil - System.nanoTime();
+                    WatchKey key = remaining > 0 ? watchService.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (key == null) {
+                        break;
+                    }
+                    if (isChange(key)) {
+                        quietUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS);
+                    }
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private boolean isChange(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Reloads the file now, keeping the current users if it is invalid.
+     *
+     * @return {@code true} if the new users were swapped in
+     */
+    boolean reload() {
+        long start = System.nanoTime();
+        try {
+            reloader.reload();
+            long nanos = System.nanoTime() - start;
+            if (reloaded != null) {
+                reloaded.record(nanos, TimeUnit.NANOSECONDS);
+            }
+            logger.info("Reloaded {} from {} (version {}, {} ms)", name, file, version.incrementAndGet(),
+                    TimeUnit.NANOSECONDS.toMillis(nanos));
+            return true;
+        } catch (Exception e) {
+            if (failed != null) {
+                failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            logger.error("Reload of {} from {} failed, keeping the current users: {}", name, file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return Users loaded from the file, counting the initial load
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.debug("Error closing watch service for {}: {}", file, e.getMessage());
+        }
+        if (meterRegistry != null) {
+            meters.forEach(meterRegistry::remove);
+        }
+        meters.clear();
+    }
+}
@@ -0,0 +1,34 @@
+package com.marklogic.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.marklogic.repository.JsonUserRepository.UserInfo;
+
+/**
+ * Read-only users loaded from one users file. {@link JsonUserRepository}
+ * replaces its store as a whole on reload, so implementations are immutable
+ * and safe for concurrent readers.
+ */
+interface UserStore {
+
+    /**
+     * @param key Username in lower case
+     * @return The user, or {@code null} if there is no such user
+     */
+    UserInfo find(String key);
+
+    /**
+     * @param key Username in lower case
+     * @return The user's roles, or an empty list if there is no such user
+     */
+    List<String> roles(String key);
+
+    int size();
+
+    /**
+     * @return All users; a store too large to hold as objects returns a view
+     *         that builds each user as it is read
+     */
+    Collection<UserInfo> all();
+}
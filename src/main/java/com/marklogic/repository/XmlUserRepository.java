@@ -1,10 +1,16 @@
 package com.marklogic.repository;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -16,6 +22,9 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
 /**
  * Repository for loading and querying users from an XML file.
  * 
@@ -34,6 +43,14 @@ import org.w3c.dom.NodeList;
  * </ldap>
  * }</pre>
  * 
+ * <p>Groups may be nested: a user element whose DN is another entry's memberOf
+ * value acts as a group, and its members inherit its own memberOf groups as
+ * roles. The closure is resolved once at load with {@link GroupClosure}.
+ * 
+ * <p>As in {@link JsonUserRepository}, role names are interned into compact
+ * {@link RoleSet}s, and the users are held in an unmodifiable map that is
+ * replaced as a whole on reload, so lookups take no lock.
+ * 
  * @since 1.0
  */
 @Component
@@ -41,9 +58,10 @@ public class XmlUserRepository {
     
     private static final Logger logger = LoggerFactory.getLogger(XmlUserRepository.class);
     
-    private Map<String, UserInfo> users = new HashMap<>();
-    private boolean initialized = false;
+    private volatile Map<String, UserInfo> users = Map.of();
+    private volatile boolean initialized = false;
     private String xmlFilePath;
+    private UserFileWatcher watcher;
     
     /**
      * Represents user information loaded from XML.
@@ -78,6 +96,10 @@ public class XmlUserRepository {
         }
         
         public void addRole(String role) {
+            // Loaded users hold a shared, unmodifiable role set
+            if (!(roles instanceof ArrayList)) {
+                roles = new ArrayList<>(roles);
+            }
             this.roles.add(role);
         }
         
@@ -116,6 +138,19 @@ public class XmlUserRepository {
         
         logger.info("Loading users from XML file: {}", filePath);
         
+        Map<String, UserInfo> loaded = load(file);
+        users = loaded;
+        initialized = true;
+        logger.info("Successfully loaded {} users from XML file", loaded.size());
+    }
+    
+    /**
+     * Parses the XML file into a new user map.
+     * 
+     * @return Unmodifiable map keyed by lower-case sAMAccountName
+     * @throws Exception if the file cannot be read or parsed
+     */
+    private Map<String, UserInfo> load(File file) throws Exception {
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         // Security: Disable external entities to prevent XXE attacks
         factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
@@ -130,7 +165,9 @@ public class XmlUserRepository {
         doc.getDocumentElement().normalize();
         
         NodeList userNodes = doc.getElementsByTagName("user");
-        int userCount = 0;
+        Map<String, UserInfo> loaded = new HashMap<>();
+        RoleSet.Dictionary roles = new RoleSet.Dictionary();
+        GroupClosure groups = groupClosure(userNodes);
         
         for (int i = 0; i < userNodes.getLength(); i++) {
             Element userElement = (Element) userNodes.item(i);
@@ -159,26 +196,103 @@ public class XmlUserRepository {
                 userInfo.setRfc6238code(totpNodes.item(0).getTextContent());
             }
             
-            // Get memberOf (roles/groups)
-            NodeList memberOfNodes = userElement.getElementsByTagName("memberOf");
-            for (int j = 0; j < memberOfNodes.getLength(); j++) {
-                String memberOfDn = memberOfNodes.item(j).getTextContent();
+            // Get memberOf (roles/groups), including groups inherited through nested groups
+            Set<String> groupNames = new LinkedHashSet<>();
+            for (String memberOfDn : groups.expand(memberOf(userElement))) {
                 // Extract group name from DN (e.g., "cn=admin,ou=groups,..." -> "admin")
                 String groupName = extractGroupName(memberOfDn);
                 if (groupName != null) {
-                    userInfo.addRole(groupName);
+                    groupNames.add(groupName);
                 }
             }
+            userInfo.roles = roles.roles(new ArrayList<>(groupNames));
             
-            users.put(username.toLowerCase(), userInfo);
-            userCount++;
+            loaded.put(key(username), userInfo);
             
             logger.debug("Loaded user: {} with {} roles: {}", username, userInfo.getRoles().size(), 
                         String.join(",", userInfo.getRoles()));
         }
-        
+        logger.debug("Interned {} distinct roles", roles.size());
+        return Collections.unmodifiableMap(loaded);
+    }
+    
+    /**
+     * Resolves nested groups: any user element whose full DN (its dn followed by
+     * the enclosing users basedn) is a memberOf value of another is a group, and
+     * its own memberOf values are inherited by that group's members.
+     */
+    private static GroupClosure groupClosure(NodeList userNodes) {
+        Map<String, List<String>> memberOf = new HashMap<>();
+        for (int i = 0; i < userNodes.getLength(); i++) {
+            Element userElement = (Element) userNodes.item(i);
+            String dn = userElement.getAttribute("dn");
+            if (dn.isEmpty()) {
+                continue;
+            }
+            if (userElement.getParentNode() instanceof Element parent && !parent.getAttribute("basedn").isEmpty()) {
+                dn = dn + "," + parent.getAttribute("basedn");
+            }
+            memberOf.put(dn, memberOf(userElement));
+        }
+        GroupClosure closure = new GroupClosure(memberOf);
+        logger.debug("Resolved {} nested groups", closure.size());
+        return closure;
+    }
+    
+    private static List<String> memberOf(Element userElement) {
+        NodeList memberOfNodes = userElement.getElementsByTagName("memberOf");
+        List<String> memberOf = new ArrayList<>(memberOfNodes.getLength());
+        for (int j = 0; j < memberOfNodes.getLength(); j++) {
+            memberOf.add(memberOfNodes.item(j).getTextContent());
+        }
+        return memberOf;
+    }
+    
+    // Keys are folded once at load, and toLowerCase returns an already
+    // lower-case username itself, so the usual lookup allocates nothing
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Parses the XML file again and, if it is valid, replaces all users at once.
+     * Lookups already in progress finish with the users they started with.
+     * 
+     * @throws Exception if the file cannot be read or parsed; the current users are kept
+     */
+    public void reload() throws Exception {
+        if (xmlFilePath == null) {
+            throw new IllegalStateException("XML user repository has not been initialized");
+        }
+        File file = new File(xmlFilePath);
+        if (!file.exists()) {
+            throw new IOException("XML user file not found: " + xmlFilePath);
+        }
+        users = load(file);
         initialized = true;
-        logger.info("Successfully loaded {} users from XML file", userCount);
+    }
+    
+    /**
+     * Reloads the XML file whenever it changes on disk until {@link #stopWatching()}.
+     * 
+     * @param meterRegistry Registry for the reload metrics, or null
+     * @throws IOException if the file's directory cannot be watched
+     */
+    public synchronized void watch(MeterRegistry meterRegistry) throws IOException {
+        if (watcher == null && xmlFilePath != null) {
+            watcher = new UserFileWatcher("users.xml", Path.of(xmlFilePath), this::reload, meterRegistry);
+        }
+    }
+    
+    /**
+     * Stops reloading the XML file on changes.
+     */
+    @PreDestroy
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
     }
     
     /**
@@ -214,7 +328,7 @@ public class XmlUserRepository {
         if (!initialized || username == null) {
             return null;
         }
-        return users.get(username.toLowerCase());
+        return users.get(key(username));
     }
     
     /**
@@ -236,14 +350,14 @@ public class XmlUserRepository {
      * Gets the roles for a user.
      * 
      * @param username The username to get roles for
-     * @return List of role names, or empty list if user not found
+     * @return Unmodifiable list of role names, or empty list if user not found
      */
     public List<String> getUserRoles(String username) {
         UserInfo user = findByUsername(username);
         if (user == null) {
-            return new ArrayList<>();
+            return List.of();
         }
-        return new ArrayList<>(user.getRoles());
+        return user.getRoles();
     }
     
     /**
@@ -3,10 +3,22 @@ package com.marklogic.service;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
 import com.marklogic.configuration.properties.*;
+import com.marklogic.handlers.AdaptiveServerSet;
+import com.marklogic.handlers.BackendHealthMonitor;
+import com.marklogic.handlers.ClientRateLimiter;
+import com.marklogic.handlers.ConcurrencyLimiter;
+import com.marklogic.handlers.LDAPBackendPool;
+import com.marklogic.handlers.LDAPListenerContext;
+import com.marklogic.handlers.LDAPMetrics;
 import com.marklogic.handlers.NullServerSet;
+import com.marklogic.handlers.PassthroughLDAPListener;
+import com.marklogic.handlers.PipelinedLDAPListener;
+import com.marklogic.handlers.SuffixRouter;
+import com.marklogic.processors.RequestProcessorRegistry;
 import com.unboundid.ldap.listener.*;
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.util.Validator;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +29,7 @@ import javax.net.SocketFactory;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.net.InetSocketAddress;
 import java.util.*;
 
 /**
@@ -38,8 +51,26 @@ public class LDAPListenerService {
     @Autowired
     private MleaProxyProperties mleaProxyProperties;
 
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     private final List<LDAPListener> runningListeners = new ArrayList<>();
 
+    private final List<PipelinedLDAPListener> pipelinedListeners = new ArrayList<>();
+
+    private final List<PassthroughLDAPListener> passthroughListeners = new ArrayList<>();
+
+    private final List<LDAPBackendPool> backendPools = new ArrayList<>();
+
+    private final List<LDAPMetrics> listenerMetrics = new ArrayList<>();
+
+    // Health checks and circuit breakers for backend servers, created when a set enables them.
+    // Volatile: read by the actuator health endpoint on HTTP threads.
+    private volatile BackendHealthMonitor healthMonitor;
+
+    // Concurrency limiters by server set name, shared by every listener using the set
+    private final Map<String, ConcurrencyLimiter> concurrencyLimiters = new HashMap<>();
+
     /**
      * Starts all configured LDAP proxy listeners.
      *
@@ -81,37 +112,130 @@ public class LDAPListenerService {
         logger.debug("Port: {}", listenerCfg.getPort());
         logger.debug("Request handler: {}", listenerCfg.getRequestHandler());
 
+        if (listenerCfg.isPassthrough()) {
+            startPassthroughListener(listenerName, listenerCfg);
+            generateMarkLogicConfig(listenerName, listenerCfg);
+            return;
+        }
+
+        // Sets declaring suffixes receive the operations under them; the others
+        // form the default backend
+        List<String> routedSets = new ArrayList<>();
+        List<String> defaultSets = new ArrayList<>();
+        for (String setName : listenerCfg.getLdapSets()) {
+            ServerSetProperties setsCfg = mleaProxyProperties.getLdapSets().get(setName);
+            if (setsCfg != null && !setsCfg.getSuffixes().isEmpty()
+                    && !"INTERNAL".equalsIgnoreCase(listenerCfg.getLdapMode())) {
+                routedSets.add(setName);
+            } else {
+                defaultSets.add(setName);
+            }
+        }
+        if (defaultSets.isEmpty() && !routedSets.isEmpty()) {
+            defaultSets.add(routedSets.get(0));
+        }
+
         // Build backend server set
-        ServerSet serverSet = buildServerSet(listenerCfg.getLdapSets().toArray(new String[0]), listenerCfg.getLdapMode());
+        ServerSet serverSet = buildServerSet(defaultSets.toArray(new String[0]), listenerCfg.getLdapMode());
         logger.debug("ServerSet: {}", serverSet);
 
+        // Shared backend connection pool (clients borrow per operation)
+        LDAPBackendPool backendPool = null;
+        if (!(serverSet instanceof NullServerSet)) {
+            backendPool = new LDAPBackendPool(listenerName, serverSet, listenerCfg, healthMonitor,
+                    defaultSets.isEmpty() ? null : concurrencyLimiter(defaultSets.get(0)));
+            backendPools.add(backendPool);
+        }
+
+        SuffixRouter<LDAPBackendPool> router = null;
+        if (!routedSets.isEmpty()) {
+            router = buildSuffixRouter(listenerName, listenerCfg, routedSets, defaultSets, backendPool);
+        }
+
+        // Initialize the request processor once; it is shared by every client connection
+        String processorName = listenerCfg.getRequestProcessor();
+        if (processorName != null && !processorName.trim().isEmpty()) {
+            RequestProcessorRegistry.getOrInitialize(processorName,
+                mleaProxyProperties.getRequestProcessors().get(processorName));
+        }
+
+        // Per-client rate limiting (disabled when the rate is not positive)
+        ClientRateLimiter rateLimiter = listenerCfg.getRateLimitRequestsPerSecond() > 0
+            ? new ClientRateLimiter(listenerName, listenerCfg)
+            : null;
+
+        // Per-listener metrics, published through the actuator endpoints
+        LDAPMetrics metrics = null;
+        if (meterRegistry != null) {
+            metrics = new LDAPMetrics(meterRegistry, listenerName);
+            if (backendPool != null) {
+                metrics.bindBackendPool(backendPool);
+            }
+            if (router != null) {
+                // Routed sets without their own pool share the listener's, bound above
+                for (LDAPBackendPool routedPool : router.getBackends()) {
+                    if (routedPool != backendPool) {
+                        metrics.bindBackendPool(routedPool);
+                    }
+                }
+            }
+            if (rateLimiter != null) {
+                metrics.bindRateLimiter(rateLimiter);
+            }
+            listenerMetrics.add(metrics);
+        }
+
         // Create request handler
         LDAPListenerRequestHandler handler = createRequestHandler(
             listenerCfg.getRequestHandler(),
             serverSet,
-            listenerCfg.getRequestProcessor()
+            listenerCfg.getRequestProcessor(),
+            new LDAPListenerContext(listenerName, backendPool, rateLimiter, metrics, router)
         );
 
-        // Create and start listener
-        LDAPListener listener;
-        if (listenerCfg.isSecure()) {
-            ServerSocketFactory ssf = createServerSocketFactory(listenerCfg);
-            LDAPListenerConfig listenerConfig = new LDAPListenerConfig(listenerCfg.getPort(), handler);
-            listenerConfig.setServerSocketFactory(ssf);
-            listener = new LDAPListener(listenerConfig);
+        // Listeners with pipelining process several operations per client connection at once;
+        // the virtual thread engine also uses the pipelined listener
+        boolean virtualThreads = isVirtualThreads(listenerName, listenerCfg);
+        if (listenerCfg.getPipelineMaxOutstanding() > 0 || virtualThreads) {
+            PipelinedLDAPListener listener = new PipelinedLDAPListener(listenerName, listenerCfg.getPort(),
+                listenerCfg.isSecure() ? createServerSocketFactory(listenerCfg) : null,
+                handler, Math.max(1, listenerCfg.getPipelineMaxOutstanding()), virtualThreads);
+            listener.startListening();
+            pipelinedListeners.add(listener);
         } else {
-            LDAPListenerConfig listenerConfig = new LDAPListenerConfig(listenerCfg.getPort(), handler);
-            listener = new LDAPListener(listenerConfig);
+            startStandardListener(listenerCfg, handler);
         }
 
-        listener.startListening();
-        runningListeners.add(listener);
-
         logger.info("LDAP listener '{}' started on {}:{} ({})",
                    listenerName, listenerCfg.getIpAddress(), listenerCfg.getPort(),
                    listenerCfg.getDescription());
 
-        // Generate MarkLogic configuration
+        generateMarkLogicConfig(listenerName, listenerCfg);
+    }
+
+    /**
+     * Reads the listener's connection engine.
+     *
+     * @return {@code true} for the virtual thread engine, {@code false} for the SDK listener threads
+     * @throws IllegalArgumentException if the engine is unknown
+     */
+    private boolean isVirtualThreads(String listenerName, LdapListenerProperties listenerCfg) {
+        String engine = listenerCfg.getListenerEngine();
+        if (engine == null || engine.isBlank() || "sdk".equalsIgnoreCase(engine)) {
+            return false;
+        }
+        if ("virtual-threads".equalsIgnoreCase(engine)) {
+            return true;
+        }
+        throw new IllegalArgumentException(
+            "Unknown listener engine for listener '" + listenerName + "': " + engine
+                + " (expected sdk or virtual-threads)");
+    }
+
+    /**
+     * Generates the MarkLogic external security configuration for a listener.
+     */
+    private void generateMarkLogicConfig(String listenerName, LdapListenerProperties listenerCfg) {
         try {
             markLogicConfigService.generateConfigForListener(listenerName, listenerCfg);
         } catch (IOException e) {
@@ -120,9 +244,117 @@ public class LDAPListenerService {
         }
     }
 
+    /**
+     * Starts a listener that relays raw LDAP messages to the servers of its sets.
+     * Request processors, caches and backend pooling do not apply; the rate limit
+     * and search request checks do.
+     */
+    private void startPassthroughListener(String listenerName, LdapListenerProperties listenerCfg)
+            throws Exception {
+        if (listenerCfg.isSecure()) {
+            throw new IllegalArgumentException(
+                "Passthrough listener '" + listenerName + "' does not support secure=true");
+        }
+
+        List<InetSocketAddress> backends = new ArrayList<>();
+        for (String setName : listenerCfg.getLdapSets()) {
+            ServerSetProperties setsCfg = mleaProxyProperties.getLdapSets().get(setName);
+            if (setsCfg == null) {
+                throw new IllegalArgumentException("Server set not found: " + setName);
+            }
+            if (setsCfg.isSecure()) {
+                throw new IllegalArgumentException(
+                    "Passthrough listener '" + listenerName + "' cannot use secure server set: " + setName);
+            }
+            List<String> hostAddresses = new ArrayList<>();
+            List<Integer> hostPorts = new ArrayList<>();
+            for (String serverName : setsCfg.getServers()) {
+                LdapServerProperties serverCfg = mleaProxyProperties.getLdapServers().get(serverName);
+                if (serverCfg == null) {
+                    throw new IllegalArgumentException("LDAP server not found: " + serverName);
+                }
+                backends.add(InetSocketAddress.createUnresolved(serverCfg.getHost(), serverCfg.getPort()));
+                hostAddresses.add(serverCfg.getHost());
+                hostPorts.add(serverCfg.getPort());
+            }
+            if (setsCfg.isHealthCheckEnabled() && !hostAddresses.isEmpty()) {
+                registerHealthChecks(hostAddresses.toArray(new String[0]),
+                    hostPorts.stream().mapToInt(Integer::intValue).toArray(), setsCfg);
+            }
+        }
+
+        ClientRateLimiter rateLimiter = listenerCfg.getRateLimitRequestsPerSecond() > 0
+            ? new ClientRateLimiter(listenerName, listenerCfg)
+            : null;
+
+        LDAPMetrics metrics = null;
+        if (meterRegistry != null) {
+            metrics = new LDAPMetrics(meterRegistry, listenerName);
+            if (rateLimiter != null) {
+                metrics.bindRateLimiter(rateLimiter);
+            }
+            listenerMetrics.add(metrics);
+        }
+
+        PassthroughLDAPListener listener = new PassthroughLDAPListener(listenerName, listenerCfg.getPort(),
+            backends, listenerCfg.getPassthroughBufferBytes(), rateLimiter, metrics, healthMonitor,
+            isVirtualThreads(listenerName, listenerCfg));
+        listener.startListening();
+        passthroughListeners.add(listener);
+
+        logger.info("LDAP passthrough listener '{}' started on {}:{} ({})",
+                   listenerName, listenerCfg.getIpAddress(), listenerCfg.getPort(),
+                   listenerCfg.getDescription());
+    }
+
+    /**
+     * Creates a backend pool for every set that declares suffixes and routes
+     * those suffixes to it. A set that also serves as the default backend
+     * shares the listener's pool.
+     */
+    private SuffixRouter<LDAPBackendPool> buildSuffixRouter(String listenerName, LdapListenerProperties listenerCfg,
+                                                            List<String> routedSets, List<String> defaultSets,
+                                                            LDAPBackendPool defaultPool) throws Exception {
+        Map<String, LDAPBackendPool> suffixes = new LinkedHashMap<>();
+        for (String setName : routedSets) {
+            LDAPBackendPool pool = defaultPool;
+            if (!defaultSets.contains(setName)) {
+                ServerSet setServers = buildServerSet(new String[] { setName }, listenerCfg.getLdapMode());
+                pool = new LDAPBackendPool(listenerName + "-" + setName, setServers, listenerCfg, healthMonitor,
+                        concurrencyLimiter(setName));
+                backendPools.add(pool);
+            }
+            for (String suffix : mleaProxyProperties.getLdapSets().get(setName).getSuffixes()) {
+                logger.info("Listener '{}' routes {} to server set '{}'", listenerName, suffix, setName);
+                suffixes.put(suffix, pool);
+            }
+        }
+        return new SuffixRouter<>(suffixes, defaultPool);
+    }
+
+    /**
+     * Starts an SDK listener, which processes one operation at a time per client connection.
+     */
+    private void startStandardListener(LdapListenerProperties listenerCfg, LDAPListenerRequestHandler handler)
+            throws Exception {
+        LDAPListener listener;
+        if (listenerCfg.isSecure()) {
+            ServerSocketFactory ssf = createServerSocketFactory(listenerCfg);
+            LDAPListenerConfig listenerConfig = new LDAPListenerConfig(listenerCfg.getPort(), handler);
+            listenerConfig.setServerSocketFactory(ssf);
+            listener = new LDAPListener(listenerConfig);
+        } else {
+            LDAPListenerConfig listenerConfig = new LDAPListenerConfig(listenerCfg.getPort(), handler);
+            listener = new LDAPListener(listenerConfig);
+        }
+
+        listener.startListening();
+        runningListeners.add(listener);
+    }
+
     /**
      * Builds a ServerSet for backend LDAP connections.
-     * Supports multiple topologies: INTERNAL, SINGLE, ROUNDROBIN, FAILOVER, FASTEST, FEWEST, ROUNDROBINDNS.
+     * Supports multiple topologies: INTERNAL, SINGLE, ROUNDROBIN, FAILOVER, FASTEST, FEWEST, ADAPTIVE, ROUNDROBINDNS.
      *
      * @param serverSetsList Array of server set names
      * @param mode Connection mode/topology
@@ -169,6 +401,10 @@ public class LDAPListenerService {
             // Create ServerSet based on mode
             ServerSet serverSet = createServerSetForMode(mode, addresses, ports, setsCfg);
             sets.add(serverSet);
+
+            if (setsCfg.isHealthCheckEnabled() && addresses.length > 0) {
+                registerHealthChecks(addresses, ports, setsCfg);
+            }
         }
 
         Validator.ensureNotNull(sets);
@@ -181,6 +417,42 @@ public class LDAPListenerService {
         }
     }
 
+    /**
+     * Returns the concurrency limiter of a server set, creating it on first use.
+     * A pool spanning several sets (failover) is limited by its first set.
+     *
+     * @return The set's limiter, or {@code null} if the set does not enable one
+     */
+    private ConcurrencyLimiter concurrencyLimiter(String setName) {
+        ServerSetProperties setsCfg = mleaProxyProperties.getLdapSets().get(setName);
+        if (setsCfg == null || !setsCfg.isConcurrencyLimitEnabled()) {
+            return null;
+        }
+        return concurrencyLimiters.computeIfAbsent(setName,
+                name -> new ConcurrencyLimiter(name, setsCfg, meterRegistry));
+    }
+
+    /**
+     * Starts background health checks and circuit breakers for the servers of a set.
+     */
+    private void registerHealthChecks(String[] addresses, int[] ports, ServerSetProperties setsCfg)
+            throws Exception {
+        if (healthMonitor == null) {
+            healthMonitor = new BackendHealthMonitor(meterRegistry);
+        }
+        SocketFactory socketFactory = setsCfg.isSecure() ? createSecureSocketFactory(setsCfg) : null;
+        for (int i = 0; i < addresses.length; i++) {
+            healthMonitor.register(addresses[i], ports[i], socketFactory, setsCfg);
+        }
+    }
+
+    /**
+     * @return Backend health monitor, or {@code null} if no server set enables health checks
+     */
+    public BackendHealthMonitor getHealthMonitor() {
+        return healthMonitor;
+    }
+
     /**
      * Creates a ServerSet instance for the specified mode.
      */
@@ -231,6 +503,9 @@ public class LDAPListenerService {
                     return new FewestConnectionsServerSet(addresses, ports);
                 }
 
+            case "ADAPTIVE":
+                return new AdaptiveServerSet(addresses, ports, sslSocketFactory);
+
             case "ROUNDROBINDNS":
                 RoundRobinDNSServerSet.AddressSelectionMode selectionMode =
                     RoundRobinDNSServerSet.AddressSelectionMode.ROUND_ROBIN;
@@ -305,16 +580,20 @@ public class LDAPListenerService {
 
     /**
      * Creates a request handler instance using reflection with type validation.
+     * Handlers that accept the listener context (backend pool, rate limiter) are
+     * given it; other handlers fall back to the (ServerSet, String) constructor.
      *
      * @param handlerClassName Fully qualified class name of the handler
      * @param serverSet Backend server set
      * @param processorName Name of the request processor
+     * @param listenerContext Per-listener state shared by all client connections
      * @return Instantiated request handler
      * @throws Exception if handler cannot be created
      */
     private LDAPListenerRequestHandler createRequestHandler(String handlerClassName,
                                                             ServerSet serverSet,
-                                                            String processorName) throws Exception {
+                                                            String processorName,
+                                                            LDAPListenerContext listenerContext) throws Exception {
         try {
             // Load the class
             Class<?> clazz = Class.forName(handlerClassName);
@@ -330,12 +609,17 @@ public class LDAPListenerService {
             Class<? extends LDAPListenerRequestHandler> handlerClass =
                 clazz.asSubclass(LDAPListenerRequestHandler.class);
 
-            // Get constructor with ServerSet and String parameters
-            Constructor<? extends LDAPListenerRequestHandler> constructor =
-                handlerClass.getDeclaredConstructor(ServerSet.class, String.class);
-
-            // Create and return the instance
-            LDAPListenerRequestHandler handler = constructor.newInstance(serverSet, processorName);
+            // Prefer the context-aware constructor, fall back to ServerSet and String parameters
+            LDAPListenerRequestHandler handler;
+            try {
+                Constructor<? extends LDAPListenerRequestHandler> constructor =
+                    handlerClass.getDeclaredConstructor(ServerSet.class, String.class, LDAPListenerContext.class);
+                handler = constructor.newInstance(serverSet, processorName, listenerContext);
+            } catch (NoSuchMethodException e) {
+                Constructor<? extends LDAPListenerRequestHandler> constructor =
+                    handlerClass.getDeclaredConstructor(ServerSet.class, String.class);
+                handler = constructor.newInstance(serverSet, processorName);
+            }
             logger.debug("Successfully created request handler: {}", handlerClassName);
 
             return handler;
@@ -358,7 +642,8 @@ public class LDAPListenerService {
      * Called during application shutdown.
      */
     public void shutdownAll() {
-        logger.info("Shutting down {} LDAP listener(s)", runningListeners.size());
+        logger.info("Shutting down {} LDAP listener(s)",
+                   runningListeners.size() + pipelinedListeners.size() + passthroughListeners.size());
         for (LDAPListener listener : runningListeners) {
             try {
                 listener.shutDown(true);
@@ -367,6 +652,31 @@ public class LDAPListenerService {
             }
         }
         runningListeners.clear();
+        for (PipelinedLDAPListener listener : pipelinedListeners) {
+            listener.shutDown(true);
+        }
+        pipelinedListeners.clear();
+        for (PassthroughLDAPListener listener : passthroughListeners) {
+            listener.shutDown(true);
+        }
+        passthroughListeners.clear();
+        for (LDAPBackendPool pool : backendPools) {
+            pool.close();
+        }
+        backendPools.clear();
+        for (LDAPMetrics metrics : listenerMetrics) {
+            metrics.close();
+        }
+        listenerMetrics.clear();
+        if (healthMonitor != null) {
+            healthMonitor.close();
+            healthMonitor = null;
+        }
+        for (ConcurrencyLimiter limiter : concurrencyLimiters.values()) {
+            limiter.close();
+        }
+        concurrencyLimiters.clear();
+        RequestProcessorRegistry.clear();
         logger.info("All LDAP listeners shut down");
     }
 }
@@ -1,6 +1,9 @@
 package com.marklogic.service;
 
+import com.marklogic.repository.GroupClosure;
+import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -8,6 +11,9 @@ import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for querying LDAP for user group memberships and roles.
@@ -21,6 +27,8 @@ import java.util.*;
  * - Configurable group-to-role mapping
  * - Connection pooling for performance
  * - Cache support for frequently queried users
+ * - Nested groups: the transitive closure of group membership is rebuilt in
+ *   the background, so a user's inherited groups need no further queries
  * 
  * Configuration:
  * - ldap.role.query.enabled: Enable LDAP role queries
@@ -29,6 +37,10 @@ import java.util.*;
  * - ldap.role.query.base-dn: Base DN for user searches
  * - ldap.role.query.bind-dn: Admin DN for binding
  * - ldap.role.query.bind-password: Admin password
+ * - ldap.role.query.group-refresh-seconds: Interval between nested group
+ *   refreshes; 0 uses direct group memberships only
+ * - ldap.role.query.group-object-classes: Object classes of the group entries
+ *   read by the nested group refresh
  * 
  * @since 2.0.0 (Phase 4)
  */
@@ -36,6 +48,9 @@ import java.util.*;
 public class LDAPRoleService {
     private static final Logger logger = LoggerFactory.getLogger(LDAPRoleService.class);
 
+    // Entries per page of the nested group refresh
+    private static final int GROUP_PAGE_SIZE = 500;
+
     @Value("${ldap.role.query.enabled:false}")
     private boolean enabled;
 
@@ -65,9 +80,19 @@ public class LDAPRoleService {
     @Value("${ldap.role.mapping:}")
     private String roleMappingConfig;
 
+    // Seconds between rebuilds of the nested group closure; 0 disables nested groups
+    @Value("${ldap.role.query.group-refresh-seconds:300}")
+    private long groupRefreshSeconds;
+
+    // Only entries of these classes can be nested groups
+    @Value("${ldap.role.query.group-object-classes:groupOfNames,groupOfUniqueNames,group,posixGroup}")
+    private String[] groupObjectClasses;
+
     private Map<String, String> groupToRoleMapping;
     private LDAPConnectionPool connectionPool;
     private volatile boolean initialized = false;
+    private volatile GroupClosure groupClosure = GroupClosure.EMPTY;
+    private ScheduledExecutorService groupRefresher;
 
     @PostConstruct
     public void init() {
@@ -98,6 +123,15 @@ public class LDAPRoleService {
             initialized = true;
             logger.info("LDAP role query service initialized successfully");
 
+            if (groupRefreshSeconds > 0) {
+                groupRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "ldap-group-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                groupRefresher.scheduleWithFixedDelay(this::refreshGroupClosure, 0, groupRefreshSeconds, TimeUnit.SECONDS);
+            }
+
         } catch (LDAPException e) {
             logger.error("Failed to initialize LDAP role query service", e);
             logger.warn("LDAP role queries will be disabled");
@@ -135,7 +169,73 @@ public class LDAPRoleService {
     }
 
     /**
-     * Query LDAP for user's roles based on group memberships.
+     * Reads the group memberships of every group under the base DN and replaces
+     * the nested group closure. On failure the current closure is kept.
+     *
+     * <p>The search is paged on one pooled connection, so directories with more
+     * groups than the server's size limit are read in full.
+     */
+    void refreshGroupClosure() {
+        LDAPConnection connection = null;
+        try {
+            SearchRequest searchRequest = new SearchRequest(
+                baseDN,
+                SearchScope.SUB,
+                groupFilter(),
+                groupAttribute
+            );
+
+            Map<String, List<String>> memberOf = new HashMap<>();
+            connection = connectionPool.getConnection();
+            ASN1OctetString cookie = null;
+            do {
+                searchRequest.setControls(new SimplePagedResultsControl(GROUP_PAGE_SIZE, cookie));
+                SearchResult page = connection.search(searchRequest);
+                for (SearchResultEntry entry : page.getSearchEntries()) {
+                    memberOf.put(entry.getDN(), Arrays.asList(entry.getAttributeValues(groupAttribute)));
+                }
+                // No response control: the server returned everything at once
+                SimplePagedResultsControl response = SimplePagedResultsControl.get(page);
+                cookie = response == null ? null : response.getCookie();
+            } while (cookie != null && cookie.getValueLength() > 0);
+            connectionPool.releaseConnection(connection);
+            connection = null;
+
+            groupClosure = new GroupClosure(memberOf);
+            logger.debug("Refreshed nested groups from {} entries, {} groups inherit others",
+                memberOf.size(), groupClosure.size());
+
+        } catch (LDAPException e) {
+            if (connection != null) {
+                connectionPool.releaseConnectionAfterException(connection, e);
+            }
+            logger.warn("Failed to refresh nested LDAP groups, keeping the current ones: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            if (connection != null) {
+                connectionPool.releaseDefunctConnection(connection);
+            }
+            // Keep the scheduled refresh running
+            logger.warn("Failed to refresh nested LDAP groups, keeping the current ones", e);
+        }
+    }
+
+    /**
+     * @return Filter for group entries that are members of other groups
+     */
+    private Filter groupFilter() {
+        Filter member = Filter.createPresenceFilter(groupAttribute);
+        List<Filter> classes = new ArrayList<>();
+        for (String objectClass : groupObjectClasses) {
+            if (!objectClass.isBlank()) {
+                classes.add(Filter.createEqualityFilter("objectClass", objectClass.trim()));
+            }
+        }
+        return classes.isEmpty() ? member : Filter.createANDFilter(member, Filter.createORFilter(classes));
+    }
+
+    /**
+     * Query LDAP for user's roles based on group memberships, including groups
+     * inherited through nested groups.
      * 
      * @param username Username to query
      * @return List of roles, or empty list if user not found or error occurs
@@ -179,11 +279,11 @@ public class LDAPRoleService {
 
             logger.debug("User {} is member of {} groups", username, groups.length);
 
-            // Map groups to roles
+            // Map direct and inherited groups to roles
             List<String> roles = new ArrayList<>();
-            for (String groupDN : groups) {
+            for (String groupDN : groupClosure.expand(Arrays.asList(groups))) {
                 String role = mapGroupToRole(groupDN);
-                if (role != null) {
+                if (role != null && !roles.contains(role)) {
                     roles.add(role);
                     logger.debug("  Group {} mapped to role: {}", groupDN, role);
                 }
@@ -293,6 +393,9 @@ public class LDAPRoleService {
      * Shutdown the connection pool.
      */
     public void shutdown() {
+        if (groupRefresher != null) {
+            groupRefresher.shutdownNow();
+        }
         if (connectionPool != null) {
             connectionPool.close();
             logger.info("LDAP connection pool closed");
@@ -0,0 +1,65 @@
+package com.marklogic.service;
+
+import com.marklogic.handlers.BackendHealthMonitor;
+import com.marklogic.handlers.CircuitBreaker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator health contributor ({@code /actuator/health/ldapBackend}) reporting
+ * the circuit breaker state of every health checked backend LDAP server and
+ * the most recent state transitions.
+ *
+ * Status is UP while at least one server accepts traffic, DOWN when every
+ * breaker is open, and UNKNOWN when no server set enables health checks.
+ * Backend error messages are only logged, not reported, as the endpoint is
+ * not authenticated.
+ */
+@Component
+public class LdapBackendHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    private LDAPListenerService ldapListenerService;
+
+    @Override
+    public Health health() {
+        BackendHealthMonitor monitor = ldapListenerService.getHealthMonitor();
+        if (monitor == null || monitor.getBreakers().isEmpty()) {
+            return Health.unknown().withDetail("reason", "No LDAP server set has health-check-enabled").build();
+        }
+
+        Map<String, Object> servers = new LinkedHashMap<>();
+        boolean anyAvailable = false;
+        for (CircuitBreaker breaker : monitor.getBreakers()) {
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("state", breaker.getState());
+            detail.put("since", Instant.ofEpochMilli(breaker.getLastTransitionMillis()).toString());
+            detail.put("consecutiveFailures", breaker.getConsecutiveFailures());
+            servers.put(breaker.getServer(), detail);
+            anyAvailable |= breaker.getState() != CircuitBreaker.State.OPEN;
+        }
+
+        List<Map<String, Object>> transitions = new ArrayList<>();
+        for (BackendHealthMonitor.Transition t : monitor.getRecentTransitions()) {
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("server", t.server());
+            detail.put("from", t.from());
+            detail.put("to", t.to());
+            detail.put("at", Instant.ofEpochMilli(t.timestampMillis()).toString());
+            transitions.add(detail);
+        }
+
+        return (anyAvailable ? Health.up() : Health.down())
+                .withDetail("servers", servers)
+                .withDetail("transitions", transitions)
+                .build();
+    }
+}
@@ -26,6 +26,9 @@ public class StartupDisplayService {
 
     private static final Logger logger = LoggerFactory.getLogger(StartupDisplayService.class);
 
+    // Users listed at startup and on the status page; binary user stores may hold millions
+    private static final int MAX_LISTED_USERS = 100;
+
     @Autowired(required = false)
     private Environment environment;
 
@@ -285,7 +288,8 @@ public class StartupDisplayService {
     /**
      * Returns configured users as structured data.
      * 
-     * @return List of user maps containing username, password, roles
+     * @return List of user maps containing username, password, roles, for at most
+     *         the first 100 users
      */
     public List<Map<String, Object>> getConfiguredUsers() {
         if (jsonUserRepository == null) {
@@ -293,6 +297,7 @@ public class StartupDisplayService {
         }
         
         return jsonUserRepository.getAllUsers().stream()
+            .limit(MAX_LISTED_USERS)
             .map(user -> Map.<String, Object>of(
                 "username", user.getUsername(),
                 "password", user.getPassword(),
@@ -472,7 +477,12 @@ public class StartupDisplayService {
             logger.info("--------------------------------------------------------------------------------");
 
             // Display each user
+            int listed = 0;
             for (var user : users) {
+                if (listed++ == MAX_LISTED_USERS) {
+                    logger.info("... {} more users not shown", users.size() - MAX_LISTED_USERS);
+                    break;
+                }
                 String rolesStr = user.getRoles().isEmpty() ? "(none)" : String.join(", ", user.getRoles());
                 logger.info(String.format("%-20s %-20s %-40s",
                     user.getUsername(),
@@ -0,0 +1,80 @@
+package com.marklogic.handlers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * Unit tests for AdaptiveServerSet.
+ */
+class AdaptiveServerSetTest {
+
+    private static AdaptiveServerSet serverSet() {
+        return new AdaptiveServerSet(new String[] { "dc1", "dc2", "dc3" }, new int[] { 389, 389, 389 }, null);
+    }
+
+    private static void record(AdaptiveServerSet set, String hostPort, long millis, boolean error) {
+        for (int i = 0; i < 20; i++) {
+            set.recordResult(hostPort, TimeUnit.MILLISECONDS.toNanos(millis), error);
+        }
+    }
+
+    @Test
+    void testSlowestServerIsNotChosen() {
+        AdaptiveServerSet set = serverSet();
+        record(set, "dc1:389", 10, false);
+        record(set, "dc2:389", 2000, false);
+        record(set, "dc3:389", 500, false);
+
+        Map<String, Integer> chosen = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            chosen.merge(set.chooseServer(), 1, Integer::sum);
+        }
+
+        assertNull(chosen.get("dc2:389"));
+        assertTrue(chosen.get("dc1:389") > 1500);
+    }
+
+    @Test
+    void testErrorsCountAgainstServer() {
+        AdaptiveServerSet set = serverSet();
+        record(set, "dc1:389", 200, true);
+        record(set, "dc2:389", 300, false);
+        record(set, "dc3:389", 300, false);
+
+        assertTrue(set.shouldRetire("dc1:389"));
+        assertFalse(set.shouldRetire("dc2:389"));
+    }
+
+    @Test
+    void testSimilarServersAreNotRetired() {
+        AdaptiveServerSet set = serverSet();
+        record(set, "dc1:389", 2, false);
+        record(set, "dc2:389", 20, false);
+        record(set, "dc3:389", 5, false);
+
+        assertFalse(set.shouldRetire("dc2:389"));
+    }
+
+    @Test
+    void testServerErrorClassification() {
+        assertTrue(AdaptiveServerSet.isServerError(ResultCode.SERVER_DOWN));
+        assertTrue(AdaptiveServerSet.isServerError(ResultCode.BUSY));
+        assertFalse(AdaptiveServerSet.isServerError(ResultCode.INVALID_CREDENTIALS));
+        assertFalse(AdaptiveServerSet.isServerError(ResultCode.NO_SUCH_OBJECT));
+    }
+
+    @Test
+    void testMismatchedAddressesAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveServerSet(new String[] { "dc1" }, new int[0], null));
+    }
+}
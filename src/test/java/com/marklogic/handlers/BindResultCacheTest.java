@@ -0,0 +1,86 @@
+package com.marklogic.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.util.StaticUtils;
+
+/**
+ * Unit tests for BindResultCache.
+ */
+class BindResultCacheTest {
+
+    private static final String DN = "cn=user1,ou=users,dc=example,dc=com";
+
+    private static BindResultCache cache(long ttlMillis, long negativeTtlMillis, int maxEntries) {
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setBindCacheTtlMillis(ttlMillis);
+        cfg.setBindCacheNegativeTtlMillis(negativeTtlMillis);
+        cfg.setBindCacheMaxEntries(maxEntries);
+        return new BindResultCache("test", cfg);
+    }
+
+    private static byte[] pw(String password) {
+        return StaticUtils.getBytes(password);
+    }
+
+    @Test
+    void testSuccessIsCachedForSameCredentials() {
+        BindResultCache cache = cache(60000, 5000, 100);
+        cache.put(DN, pw("secret"), ResultCode.SUCCESS);
+
+        assertEquals(ResultCode.SUCCESS, cache.get("CN=User1, OU=Users, DC=Example, DC=Com", pw("secret")));
+        assertNull(cache.get(DN, pw("other")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testFailedBindInvalidatesSuccess() {
+        BindResultCache cache = cache(60000, 5000, 100);
+        cache.put(DN, pw("old"), ResultCode.SUCCESS);
+        cache.put(DN, pw("old"), ResultCode.INVALID_CREDENTIALS);
+
+        assertEquals(ResultCode.INVALID_CREDENTIALS, cache.get(DN, pw("old")));
+    }
+
+    @Test
+    void testOtherFailuresAreNotCached() {
+        BindResultCache cache = cache(60000, 5000, 100);
+        cache.put(DN, pw("secret"), ResultCode.SUCCESS);
+        cache.put(DN, pw("secret"), ResultCode.UNAVAILABLE);
+
+        assertNull(cache.get(DN, pw("secret")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testNegativeCachingCanBeDisabled() {
+        BindResultCache cache = cache(60000, 0, 100);
+        cache.put(DN, pw("wrong"), ResultCode.INVALID_CREDENTIALS);
+
+        assertNull(cache.get(DN, pw("wrong")));
+    }
+
+    @Test
+    void testExpiredOutcomeIsNotServed() {
+        BindResultCache cache = cache(-1, 5000, 100);
+        cache.put(DN, pw("secret"), ResultCode.SUCCESS);
+
+        assertNull(cache.get(DN, pw("secret")));
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        BindResultCache cache = cache(60000, 5000, 2);
+        cache.put("cn=a", pw("x"), ResultCode.SUCCESS);
+        cache.put("cn=b", pw("x"), ResultCode.SUCCESS);
+        cache.put("cn=c", pw("x"), ResultCode.SUCCESS);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("cn=a", pw("x")));
+    }
+}
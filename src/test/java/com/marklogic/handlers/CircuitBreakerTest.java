@@ -0,0 +1,82 @@
+package com.marklogic.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for CircuitBreaker.
+ */
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<CircuitBreaker.State> transitions = new ArrayList<>();
+
+    private CircuitBreaker breaker() {
+        return new CircuitBreaker("dc1:389", 3, 1000, (b, from, to) -> transitions.add(to), clock::get);
+    }
+
+    private void advanceMillis(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = breaker();
+        breaker.recordFailure("busy");
+        breaker.recordFailure("busy");
+        breaker.recordSuccess();
+        breaker.recordFailure("busy");
+        breaker.recordFailure("busy");
+        assertTrue(breaker.isAvailable());
+
+        breaker.recordFailure("unavailable");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isAvailable());
+        assertEquals("unavailable", breaker.getLastError());
+        assertEquals(List.of(CircuitBreaker.State.OPEN), transitions);
+    }
+
+    @Test
+    void testHalfOpenAfterOpenPeriod() {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure("timeout");
+        }
+
+        advanceMillis(999);
+        assertFalse(breaker.isAvailable());
+        // Successes during the open period do not close the circuit early
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        advanceMillis(1);
+        assertTrue(breaker.isAvailable());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(List.of(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED),
+                transitions);
+    }
+
+    @Test
+    void testHalfOpenFailureReopens() {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure("timeout");
+        }
+        advanceMillis(1000);
+        assertTrue(breaker.isAvailable());
+
+        breaker.recordFailure("timeout");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isAvailable());
+    }
+}
@@ -0,0 +1,58 @@
+package com.marklogic.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for ClientRateLimiter.
+ */
+class ClientRateLimiterTest {
+
+    @Test
+    void testBurstThenReject() {
+        // One token per minute, so nothing refills during the test
+        ClientRateLimiter limiter = new ClientRateLimiter("test", 1.0 / 60, 3, false);
+
+        assertTrue(limiter.tryAcquire("10.0.0.1"));
+        assertTrue(limiter.tryAcquire("10.0.0.1"));
+        assertTrue(limiter.tryAcquire("10.0.0.1"));
+        assertFalse(limiter.tryAcquire("10.0.0.1"));
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    void testClientsHaveSeparateBuckets() {
+        ClientRateLimiter limiter = new ClientRateLimiter("test", 1.0 / 60, 1, false);
+
+        assertTrue(limiter.tryAcquire("10.0.0.1"));
+        assertFalse(limiter.tryAcquire("10.0.0.1"));
+        assertTrue(limiter.tryAcquire("10.0.0.2"));
+    }
+
+    @Test
+    void testTokensRefill() throws Exception {
+        ClientRateLimiter limiter = new ClientRateLimiter("test", 50, 1, false);
+
+        assertTrue(limiter.tryAcquire("10.0.0.1"));
+        Thread.sleep(100);
+        assertTrue(limiter.tryAcquire("10.0.0.1"));
+    }
+
+    @Test
+    void testClientKey() {
+        ClientRateLimiter perAddress = new ClientRateLimiter("test", 10, 10, false);
+        ClientRateLimiter perDN = new ClientRateLimiter("test", 10, 10, true);
+
+        assertEquals("10.0.0.1", perAddress.clientKey("10.0.0.1", "cn=user1"));
+        assertEquals("10.0.0.1", perDN.clientKey("10.0.0.1", null));
+        assertEquals("10.0.0.1 cn=user1", perDN.clientKey("10.0.0.1", "cn=user1"));
+    }
+
+    @Test
+    void testRateMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new ClientRateLimiter("test", 0, 10, false));
+    }
+}
@@ -0,0 +1,98 @@
+package com.marklogic.handlers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.ServerSetProperties;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * Unit tests for ConcurrencyLimiter.
+ */
+class ConcurrencyLimiterTest {
+
+    private static ConcurrencyLimiter limiter(int initial, int queueSize, long queueTimeoutMillis) {
+        ServerSetProperties cfg = new ServerSetProperties();
+        cfg.setConcurrencyLimitInitial(initial);
+        cfg.setConcurrencyLimitMin(1);
+        cfg.setConcurrencyLimitMax(10);
+        cfg.setConcurrencyLimitQueueSize(queueSize);
+        cfg.setConcurrencyLimitQueueTimeoutMillis(queueTimeoutMillis);
+        cfg.setConcurrencyLimitLatencyThresholdMillis(100);
+        return new ConcurrencyLimiter("test", cfg, null);
+    }
+
+    private static CompletableFuture<Void> acquireAsync(ConcurrencyLimiter limiter, boolean priority) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                limiter.acquire(priority);
+            } catch (LDAPException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void awaitQueued(ConcurrencyLimiter limiter, int queued) throws InterruptedException {
+        for (int i = 0; i < 500 && limiter.getQueued() < queued; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(queued, limiter.getQueued());
+    }
+
+    @Test
+    void testRejectsWithBusyAfterQueueTimeout() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 10, 50);
+        limiter.acquire(false);
+        LDAPException e = assertThrows(LDAPException.class, () -> limiter.acquire(false));
+        assertEquals(ResultCode.BUSY, e.getResultCode());
+        assertEquals(1, limiter.getRejected());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void testRejectsWhenQueueIsFull() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 0, 5000);
+        limiter.acquire(false);
+        LDAPException e = assertThrows(LDAPException.class, () -> limiter.acquire(true));
+        assertEquals(ResultCode.BUSY, e.getResultCode());
+    }
+
+    @Test
+    void testBindsAreAdmittedFirst() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 10, 5000);
+        limiter.acquire(false);
+        CompletableFuture<Void> search = acquireAsync(limiter, false);
+        awaitQueued(limiter, 1);
+        CompletableFuture<Void> bind = acquireAsync(limiter, true);
+        awaitQueued(limiter, 2);
+
+        limiter.release();
+        bind.get(5, TimeUnit.SECONDS);
+        assertFalse(search.isDone());
+
+        limiter.release();
+        search.get(5, TimeUnit.SECONDS);
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void testLimitGrowsWhileBusyAndBacksOffOnOverload() throws Exception {
+        ConcurrencyLimiter limiter = limiter(2, 10, 50);
+        limiter.acquire(false);
+        limiter.acquire(false);
+        for (int i = 0; i < 4; i++) {
+            limiter.recordResult(TimeUnit.MILLISECONDS.toNanos(5), ResultCode.SUCCESS);
+        }
+        assertEquals(3, limiter.getLimit());
+
+        limiter.recordResult(TimeUnit.MILLISECONDS.toNanos(5), ResultCode.BUSY);
+        limiter.recordResult(TimeUnit.MILLISECONDS.toNanos(500), ResultCode.SUCCESS);
+        assertEquals(2, limiter.getLimit());
+    }
+}
@@ -0,0 +1,78 @@
+package com.marklogic.handlers;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+
+/**
+ * Unit tests for HedgePolicy.
+ */
+class HedgePolicyTest {
+
+    private static HedgePolicy policy(double percentile, double budgetPercent, long minDelayMillis) {
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setHedgePercentile(percentile);
+        cfg.setHedgeBudgetPercent(budgetPercent);
+        cfg.setHedgeMinDelayMillis(minDelayMillis);
+        return new HedgePolicy("test", cfg);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    void testNoHedgingUntilMeasured() {
+        HedgePolicy policy = policy(95, 100, 0);
+        for (int i = 0; i < 63; i++) {
+            policy.recordLatency(millis(10));
+        }
+        assertEquals(-1, policy.getDelayNanos());
+        policy.recordLatency(millis(10));
+        assertEquals(millis(10), policy.getDelayNanos());
+    }
+
+    @Test
+    void testDelayIsPercentileOfRecentLatency() {
+        HedgePolicy policy = policy(90, 5, 0);
+        for (int i = 1; i <= 128; i++) {
+            policy.recordLatency(millis(i <= 117 ? 10 : 200));
+        }
+        assertEquals(millis(10), policy.getDelayNanos());
+
+        for (int i = 0; i < 64; i++) {
+            policy.recordLatency(millis(200));
+        }
+        assertEquals(millis(200), policy.getDelayNanos());
+    }
+
+    @Test
+    void testMinimumDelay() {
+        HedgePolicy policy = policy(95, 5, 5);
+        for (int i = 0; i < 64; i++) {
+            policy.recordLatency(millis(1));
+        }
+        assertEquals(millis(5), policy.getDelayNanos());
+    }
+
+    @Test
+    void testBudgetLimitsHedges() {
+        HedgePolicy policy = policy(95, 5, 0);
+        assertFalse(policy.tryHedge());
+        for (int i = 0; i < 41; i++) {
+            policy.recordLatency(millis(10));
+        }
+        assertTrue(policy.tryHedge());
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+        assertEquals(2, policy.getFired());
+
+        policy.hedgeWon();
+        assertEquals(1, policy.getWon());
+    }
+}
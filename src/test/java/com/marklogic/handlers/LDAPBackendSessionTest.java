@@ -0,0 +1,329 @@
+package com.marklogic.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.BindResult;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.PLAINBindRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.ldap.sdk.SingleServerSet;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldap.sdk.extensions.WhoAmIExtendedRequest;
+import com.unboundid.ldap.sdk.extensions.WhoAmIExtendedResult;
+
+/**
+ * Unit tests for LDAPBackendSession against an in-memory backend server.
+ */
+class LDAPBackendSessionTest {
+
+    private static final String BASE = "ou=users,dc=marklogic,dc=local";
+    private static final String USER1 = "cn=user1," + BASE;
+
+    private static InMemoryDirectoryServer server;
+
+    private LDAPBackendPool pool;
+
+    @BeforeAll
+    static void setUpServer() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=marklogic,dc=local");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("backend", 0));
+        server = new InMemoryDirectoryServer(config);
+        server.add("dn: dc=marklogic,dc=local", "objectClass: domain", "dc: marklogic");
+        server.add("dn: " + BASE, "objectClass: organizationalUnit", "ou: users");
+        for (int i = 1; i <= 5; i++) {
+            server.add("dn: cn=user" + i + "," + BASE, "objectClass: inetOrgPerson", "cn: user" + i,
+                    "sn: User", "uid: user" + i, "userPassword: password");
+        }
+        server.startListening();
+    }
+
+    @AfterAll
+    static void tearDownServer() {
+        server.shutDown(true);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // One connection, so every session shares it and identities must be switched
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolInitialConnections(1);
+        cfg.setPoolMaxConnections(1);
+        cfg.setPoolMaxWaitMillis(1000);
+        pool = new LDAPBackendPool("test", new SingleServerSet("localhost", server.getListenPort()), cfg);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    private static String whoAmI(LDAPBackendSession session) throws LDAPException {
+        return session.execute(connection ->
+                ((WhoAmIExtendedResult) connection.processExtendedOperation(new WhoAmIExtendedRequest()))
+                        .getAuthorizationID());
+    }
+
+    @Test
+    void testReauthenticatesBorrowedConnection() throws Exception {
+        LDAPBackendSession user = new LDAPBackendSession(pool);
+        LDAPBackendSession anonymous = new LDAPBackendSession(pool);
+
+        user.bind(new SimpleBindRequest(USER1, "password"));
+        assertEquals(USER1, user.getBoundDN());
+
+        assertEquals("dn:" + USER1, whoAmI(user));
+        assertEquals("", whoAmI(anonymous));
+        assertEquals("dn:" + USER1, whoAmI(user));
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void testSaslBindPinsConnectionUntilClose() throws Exception {
+        LDAPBackendSession session = new LDAPBackendSession(pool);
+
+        session.bind(new PLAINBindRequest("dn:" + USER1, "password"));
+
+        assertTrue(session.isPinned());
+        assertEquals(1, pool.getActiveConnections());
+        assertEquals("dn:" + USER1, whoAmI(session));
+        assertTrue(session.isPinned());
+
+        session.close();
+        assertFalse(session.isPinned());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void testHoldsConnectionAcrossPagedResultsCookies() throws Exception {
+        pool.close();
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolMaxConnections(2);
+        pool = new LDAPBackendPool("test", new SingleServerSet("localhost", server.getListenPort()), cfg);
+        LDAPBackendSession session = new LDAPBackendSession(pool);
+        List<LDAPConnection> used = new ArrayList<>();
+
+        SearchResult page = null;
+        int entries = 0;
+        do {
+            SimplePagedResultsControl previous = page == null ? null : SimplePagedResultsControl.get(page);
+            SearchRequest request = new SearchRequest(BASE, SearchScope.ONE, "(objectClass=inetOrgPerson)", "cn");
+            request.setControls(new SimplePagedResultsControl(2, previous == null ? null : previous.getCookie()));
+            page = session.executePage(previous == null ? null : previous.getCookie(), connection -> {
+                used.add(connection);
+                return connection.search(request);
+            });
+            entries += page.getEntryCount();
+            boolean more = SimplePagedResultsControl.get(page).moreResultsToReturn();
+            assertEquals(more ? 1 : 0, pool.getActiveConnections());
+        } while (SimplePagedResultsControl.get(page).moreResultsToReturn());
+
+        assertEquals(5, entries);
+        assertEquals(3, used.size());
+        assertSame(used.get(0), used.get(1));
+        assertSame(used.get(1), used.get(2));
+    }
+
+    private static SearchResult page(LDAPBackendSession session, SearchResult previous,
+                                     List<LDAPConnection> used) throws LDAPException {
+        SimplePagedResultsControl control = previous == null ? null : SimplePagedResultsControl.get(previous);
+        SearchRequest request = new SearchRequest(BASE, SearchScope.ONE, "(objectClass=inetOrgPerson)", "cn");
+        request.setControls(new SimplePagedResultsControl(2, control == null ? null : control.getCookie()));
+        return session.executePage(control == null ? null : control.getCookie(), connection -> {
+            used.add(connection);
+            return connection.search(request);
+        });
+    }
+
+    @Test
+    void testInterleavedPagedSearchesKeepTheirConnections() throws Exception {
+        pool.close();
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolMaxConnections(2);
+        pool = new LDAPBackendPool("test", new SingleServerSet("localhost", server.getListenPort()), cfg);
+        LDAPBackendSession session = new LDAPBackendSession(pool);
+        List<LDAPConnection> first = new ArrayList<>();
+        List<LDAPConnection> second = new ArrayList<>();
+
+        SearchResult firstPage = page(session, null, first);
+        SearchResult secondPage = page(session, null, second);
+        assertEquals(2, session.getOpenPagedSearches());
+        assertEquals(2, pool.getActiveConnections());
+
+        int firstEntries = firstPage.getEntryCount();
+        int secondEntries = secondPage.getEntryCount();
+        while (SimplePagedResultsControl.get(firstPage).moreResultsToReturn()) {
+            firstPage = page(session, firstPage, first);
+            firstEntries += firstPage.getEntryCount();
+            if (SimplePagedResultsControl.get(secondPage).moreResultsToReturn()) {
+                secondPage = page(session, secondPage, second);
+                secondEntries += secondPage.getEntryCount();
+            }
+        }
+
+        assertEquals(5, firstEntries);
+        assertEquals(5, secondEntries);
+        assertTrue(first.stream().allMatch(connection -> connection == first.get(0)));
+        assertTrue(second.stream().allMatch(connection -> connection == second.get(0)));
+        assertTrue(first.get(0) != second.get(0));
+        assertEquals(0, session.getOpenPagedSearches());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void testReleasesIdlePagedSearch() throws Exception {
+        pool.close();
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolMaxConnections(1);
+        cfg.setSearchPagedIdleMillis(50);
+        pool = new LDAPBackendPool("test", new SingleServerSet("localhost", server.getListenPort()), cfg);
+        LDAPBackendSession session = new LDAPBackendSession(pool);
+
+        page(session, null, new ArrayList<>());
+        assertEquals(1, pool.getActiveConnections());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getActiveConnections() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, session.getOpenPagedSearches());
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals("", whoAmI(session));
+    }
+
+    @Test
+    void testTooManyPagedSearchesReleaseTheOldest() throws Exception {
+        pool.close();
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolMaxConnections(3);
+        cfg.setSearchPagedMaxOpen(2);
+        pool = new LDAPBackendPool("test", new SingleServerSet("localhost", server.getListenPort()), cfg);
+        LDAPBackendSession session = new LDAPBackendSession(pool);
+
+        for (int i = 0; i < 3; i++) {
+            page(session, null, new ArrayList<>());
+        }
+
+        assertEquals(2, session.getOpenPagedSearches());
+        assertEquals(2, pool.getActiveConnections());
+        session.close();
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void testCloseReturnsHeldConnection() throws Exception {
+        LDAPBackendSession session = new LDAPBackendSession(pool);
+        SearchRequest request = new SearchRequest(BASE, SearchScope.ONE, "(objectClass=inetOrgPerson)", "cn");
+        request.setControls(new SimplePagedResultsControl(2, null));
+
+        session.executePage(null, connection -> connection.search(request));
+        assertEquals(1, pool.getActiveConnections());
+
+        session.close();
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals("", whoAmI(new LDAPBackendSession(pool)));
+    }
+
+    @Test
+    void testRejectedReauthenticationEvictsCachedBind() throws Exception {
+        pool.close();
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolInitialConnections(1);
+        cfg.setPoolMaxConnections(1);
+        cfg.setBindCacheEnabled(true);
+        pool = new LDAPBackendPool("test", new SingleServerSet("localhost", server.getListenPort()), cfg);
+        String user4 = "cn=user4," + BASE;
+
+        LDAPBackendSession session = new LDAPBackendSession(pool);
+        session.bind(new SimpleBindRequest(user4, "password"));
+        try {
+            server.modify(user4, new Modification(ModificationType.REPLACE, "userPassword", "changed"));
+
+            // The connection is re-authenticated as user4 after the anonymous operation
+            assertEquals("", whoAmI(new LDAPBackendSession(pool)));
+            LDAPException e = assertThrows(LDAPException.class, () -> whoAmI(session));
+            assertEquals(ResultCode.INVALID_CREDENTIALS, e.getResultCode());
+
+            // The old password is no longer accepted from the cache
+            LDAPException bind = assertThrows(LDAPException.class,
+                    () -> new LDAPBackendSession(pool).bind(new SimpleBindRequest(user4, "password")));
+            assertEquals(ResultCode.INVALID_CREDENTIALS, bind.getResultCode());
+        } finally {
+            server.modify(user4, new Modification(ModificationType.REPLACE, "userPassword", "password"));
+        }
+    }
+
+    @Test
+    void testSlowBindDoesNotHoldUpTheSession() throws Exception {
+        CountDownLatch bindArrived = new CountDownLatch(1);
+        CountDownLatch releaseBind = new CountDownLatch(1);
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=marklogic,dc=local");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("slow", 0));
+        config.addAdditionalBindCredentials(USER1, "password");
+        config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+            @Override
+            public void processSimpleBindRequest(InMemoryInterceptedSimpleBindRequest request) {
+                bindArrived.countDown();
+                try {
+                    releaseBind.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        InMemoryDirectoryServer slow = new InMemoryDirectoryServer(config);
+        slow.startListening();
+        LDAPBackendPool slowPool = new LDAPBackendPool("slow",
+                new SingleServerSet("localhost", slow.getListenPort()), new LdapListenerProperties());
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            LDAPBackendSession session = new LDAPBackendSession(slowPool);
+            Future<BindResult> bind = client.submit(() -> session.bind(new SimpleBindRequest(USER1, "password")));
+            assertTrue(bindArrived.await(5, TimeUnit.SECONDS));
+
+            // The session answers and closes while the backend has the bind
+            assertEquals("", session.getBoundDN());
+            session.close();
+
+            releaseBind.countDown();
+            assertEquals(ResultCode.SUCCESS, bind.get(5, TimeUnit.SECONDS).getResultCode());
+            // The client disconnected first, so the bind does not authenticate the session
+            assertEquals("", session.getBoundDN());
+            assertEquals(0, slowPool.getActiveConnections());
+        } finally {
+            releaseBind.countDown();
+            client.shutdownNow();
+            slowPool.close();
+            slow.shutDown(true);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.marklogic.handlers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+
+/**
+ * Compares the per-search cost of the previous string-based filter check with
+ * {@link LDAPFilterValidator}.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.marklogic.handlers.LDAPFilterValidatorBenchmark}, or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LDAPFilterValidatorBenchmark {
+
+    private static final String[] LEGACY_PATTERNS = {
+        ")(", "*)(", "*)))", "*)&", "*)|", "&(|", "|(|", "!(", "\\0", "\\00", "\\2a", "\\28", "\\29"
+    };
+
+    @Param({
+        "(uid=user1)",
+        "(&(objectClass=person)(|(uid=user1)(mail=user1@example.com)))",
+        "(&(objectClass=group)(|(cn=app-*)(cn=*-admins)(member=cn=user1,ou=users,dc=example,dc=com))(!(cn=disabled)))"
+    })
+    public String filterString;
+
+    private Filter filter;
+    private LDAPFilterValidator validator;
+
+    @Setup
+    public void setup() throws LDAPException {
+        filter = Filter.create(filterString);
+        validator = new LDAPFilterValidator(16, 256, 1024);
+    }
+
+    @Benchmark
+    public boolean legacyStringScan() {
+        String value = filter.toString();
+        if (value.length() > 2048) {
+            return false;
+        }
+        String lowerInput = value.toLowerCase();
+        for (String pattern : LEGACY_PATTERNS) {
+            if (lowerInput.contains(pattern.toLowerCase())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean filterTreeWalk() {
+        return validator.validate(filter) == null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LDAPFilterValidatorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
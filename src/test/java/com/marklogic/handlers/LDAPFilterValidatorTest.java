@@ -0,0 +1,43 @@
+package com.marklogic.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.ldap.sdk.Filter;
+
+/**
+ * Unit tests for LDAPFilterValidator.
+ */
+class LDAPFilterValidatorTest {
+
+    private final LDAPFilterValidator validator = new LDAPFilterValidator(3, 6, 16);
+
+    @Test
+    void testOrdinaryFiltersAreAccepted() throws Exception {
+        assertNull(validator.validate(Filter.create("(objectClass=*)")));
+        assertNull(validator.validate(Filter.create("(&(objectClass=person)(|(uid=user1)(cn=us*r1)))")));
+        assertNull(validator.validate(Filter.create("(!(uid=disabled))")));
+    }
+
+    @Test
+    void testDepthLimit() throws Exception {
+        assertEquals(LDAPFilterValidator.Violation.TOO_DEEP,
+                validator.validate(Filter.create("(&(|(!(uid=user1))))")));
+    }
+
+    @Test
+    void testComponentLimit() throws Exception {
+        assertEquals(LDAPFilterValidator.Violation.TOO_MANY_COMPONENTS,
+                validator.validate(Filter.create("(|(uid=a)(uid=b)(uid=c)(uid=d)(uid=e)(uid=f))")));
+    }
+
+    @Test
+    void testAssertionLengthLimit() throws Exception {
+        String longValue = "x".repeat(17);
+        assertEquals(LDAPFilterValidator.Violation.ASSERTION_TOO_LONG,
+                validator.validate(Filter.create("(uid=" + longValue + ")")));
+        assertEquals(LDAPFilterValidator.Violation.ASSERTION_TOO_LONG,
+                validator.validate(Filter.create("(cn=a*" + longValue + "*b)")));
+    }
+}
@@ -0,0 +1,70 @@
+package com.marklogic.handlers;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.ldap.sdk.ResultCode;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for LDAPMetrics.
+ */
+class LDAPMetricsTest {
+
+    @Test
+    void testOperationsAreTaggedByResultAndBackend() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LDAPMetrics metrics = new LDAPMetrics(registry, "proxy");
+
+        metrics.recordOperation("bind", "ProxyRequestProcessor", ResultCode.SUCCESS_INT_VALUE,
+                "dc1:389", TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordOperation("bind", "ProxyRequestProcessor", ResultCode.SUCCESS_INT_VALUE,
+                "dc1:389", TimeUnit.MILLISECONDS.toNanos(7));
+        metrics.recordOperation("bind", "ProxyRequestProcessor", ResultCode.INVALID_CREDENTIALS_INT_VALUE,
+                "dc2:389", TimeUnit.MILLISECONDS.toNanos(3));
+
+        Timer success = registry.find("ldap.requests")
+                .tags("listener", "proxy", "operation", "bind", "result", "success", "backend", "dc1:389")
+                .timer();
+        assertNotNull(success);
+        assertEquals(2, success.count());
+        assertEquals(12, success.totalTime(TimeUnit.MILLISECONDS), 0.001);
+
+        Timer failure = registry.find("ldap.requests")
+                .tags("result", "invalid credentials", "backend", "dc2:389")
+                .timer();
+        assertNotNull(failure);
+        assertEquals(1, failure.count());
+    }
+
+    @Test
+    void testClientConnectionGauge() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LDAPMetrics metrics = new LDAPMetrics(registry, "proxy");
+
+        metrics.clientConnected();
+        metrics.clientConnected();
+        metrics.clientDisconnected();
+
+        assertEquals(1, registry.get("ldap.client.connections").tag("listener", "proxy").gauge().value());
+    }
+
+    @Test
+    void testCloseRemovesMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LDAPMetrics metrics = new LDAPMetrics(registry, "proxy");
+        metrics.recordOperation("search", "JsonRequestProcessor", ResultCode.SUCCESS_INT_VALUE,
+                LDAPMetrics.BACKEND_NONE, 1000);
+
+        metrics.close();
+
+        assertNull(registry.find("ldap.requests").timer());
+        assertNull(registry.find("ldap.client.connections").gauge());
+    }
+}
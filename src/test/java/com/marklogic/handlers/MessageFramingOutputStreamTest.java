@@ -0,0 +1,79 @@
+package com.marklogic.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.asn1.ASN1Buffer;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.SearchResultEntryProtocolOp;
+import com.unboundid.ldap.sdk.Attribute;
+
+/**
+ * Unit tests for MessageFramingOutputStream.
+ */
+class MessageFramingOutputStreamTest {
+
+    private static byte[] encode(LDAPMessage message) {
+        ASN1Buffer buffer = new ASN1Buffer();
+        message.writeTo(buffer);
+        return buffer.toByteArray();
+    }
+
+    @Test
+    void testForwardsOnlyCompleteMessages() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageFramingOutputStream framing = new MessageFramingOutputStream(out, new ReentrantLock());
+
+        byte[] first = encode(new LDAPMessage(1, new SearchResultEntryProtocolOp("cn=a,dc=example,dc=com",
+                Arrays.asList(new Attribute("cn", "a")))));
+        char[] large = new char[1000];
+        Arrays.fill(large, 'x');
+        byte[] second = encode(new LDAPMessage(2, new SearchResultEntryProtocolOp("cn=b,dc=example,dc=com",
+                Arrays.asList(new Attribute("description", new String(large))))));
+
+        framing.write(first, 0, 3);
+        assertEquals(0, out.size());
+        framing.write(first, 3, first.length - 3);
+        assertEquals(first.length, out.size());
+
+        // Second message uses the long-form length; deliver it byte by byte
+        for (byte b : second) {
+            framing.write(b);
+        }
+        byte[] expected = new byte[first.length + second.length];
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    void testSplitsSeveralMessagesInOneWrite() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageFramingOutputStream framing = new MessageFramingOutputStream(out, new ReentrantLock());
+
+        byte[] one = encode(new LDAPMessage(1, new SearchResultEntryProtocolOp("cn=a", Arrays.asList())));
+        byte[] both = new byte[one.length * 2 - 1];
+        System.arraycopy(one, 0, both, 0, one.length);
+        System.arraycopy(one, 0, both, one.length, one.length - 1);
+
+        framing.write(both, 0, both.length);
+        assertEquals(one.length, out.size());
+        framing.write(one, one.length - 1, 1);
+        assertEquals(one.length * 2, out.size());
+    }
+
+    @Test
+    void testElementLength() throws IOException {
+        assertEquals(0, MessageFramingOutputStream.elementLength(new byte[] { 0x30 }, 0, 1));
+        assertEquals(4, MessageFramingOutputStream.elementLength(new byte[] { 0x30, 0x02, 0x01, 0x01 }, 0, 4));
+        assertEquals(0, MessageFramingOutputStream.elementLength(new byte[] { 0x30, (byte) 0x82, 0x01 }, 0, 3));
+        assertEquals(4 + 0x0100,
+                MessageFramingOutputStream.elementLength(new byte[] { 0x30, (byte) 0x82, 0x01, 0x00 }, 0, 4 + 0x0100));
+    }
+}
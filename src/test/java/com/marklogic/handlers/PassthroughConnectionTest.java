@@ -0,0 +1,95 @@
+package com.marklogic.handlers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.asn1.ASN1Buffer;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchResultEntryProtocolOp;
+import com.unboundid.ldap.protocol.UnbindRequestProtocolOp;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DereferencePolicy;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * Unit tests for the message framing used by PassthroughConnection.
+ */
+class PassthroughConnectionTest {
+
+    private static byte[] encode(LDAPMessage message) {
+        ASN1Buffer buffer = new ASN1Buffer();
+        message.writeTo(buffer);
+        return buffer.toByteArray();
+    }
+
+    private static LDAPMessage search(int messageID) {
+        return new LDAPMessage(messageID, new SearchRequestProtocolOp("dc=example,dc=com", SearchScope.SUB,
+                DereferencePolicy.NEVER, 0, 0, false, Filter.createEqualityFilter("uid", "jdoe"),
+                Arrays.asList("cn")));
+    }
+
+    @Test
+    void testReadsEnvelopeOfRequests() throws IOException {
+        byte[] request = encode(search(300));
+        ByteBuffer buffer = ByteBuffer.wrap(request);
+        assertEquals(request.length, PassthroughConnection.messageLength(buffer));
+        assertEquals(300, PassthroughConnection.messageId(buffer));
+        assertEquals(LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST, PassthroughConnection.protocolOpType(buffer));
+
+        ByteBuffer unbind = ByteBuffer.wrap(encode(new LDAPMessage(7, new UnbindRequestProtocolOp())));
+        assertEquals(7, PassthroughConnection.messageId(unbind));
+        assertEquals(LDAPMessage.PROTOCOL_OP_TYPE_UNBIND_REQUEST, PassthroughConnection.protocolOpType(unbind));
+    }
+
+    @Test
+    void testMessageLengthNeedsOnlyTheHeader() throws IOException {
+        char[] large = new char[1000];
+        Arrays.fill(large, 'x');
+        byte[] entry = encode(new LDAPMessage(2, new SearchResultEntryProtocolOp("cn=b,dc=example,dc=com",
+                Arrays.asList(new Attribute("description", new String(large))))));
+
+        assertEquals(0, PassthroughConnection.messageLength(ByteBuffer.wrap(entry, 0, 1)));
+        assertEquals(0, PassthroughConnection.messageLength(ByteBuffer.wrap(entry, 0, 3)));
+        assertEquals(entry.length, PassthroughConnection.messageLength(ByteBuffer.wrap(entry, 0, 4)));
+        assertThrows(IOException.class,
+                () -> PassthroughConnection.messageLength(ByteBuffer.wrap(new byte[] { 0x04, 0x00 })));
+    }
+
+    @Test
+    void testCompleteMessagesStopsAtPartialMessage() throws IOException {
+        byte[] one = encode(search(1));
+        byte[] two = encode(search(2));
+        ByteBuffer buffer = ByteBuffer.allocate(one.length + two.length);
+        buffer.put(one).put(two, 0, two.length - 1).flip();
+
+        assertEquals(one.length, PassthroughConnection.completeMessages(buffer));
+        assertEquals(0, buffer.position());
+
+        buffer.position(one.length);
+        assertEquals(0, PassthroughConnection.completeMessages(buffer));
+    }
+
+    @Test
+    void testBufferPoolReusesReleasedBuffers() {
+        DirectBufferPool pool = new DirectBufferPool(4096, 1);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.getIdleCount());
+
+        first.position(100);
+        ByteBuffer reused = pool.acquire();
+        assertSame(first, reused);
+        assertEquals(0, reused.position());
+        assertEquals(4096, reused.limit());
+    }
+}
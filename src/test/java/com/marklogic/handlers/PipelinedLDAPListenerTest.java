@@ -0,0 +1,290 @@
+package com.marklogic.handlers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.marklogic.configuration.properties.RequestProcessorProperties;
+import com.marklogic.processors.ProxyRequestProcessor;
+import com.marklogic.processors.RequestProcessorRegistry;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.AddResponseProtocolOp;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.BindResponseProtocolOp;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareResponseProtocolOp;
+import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteResponseProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedResponseProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyDNResponseProtocolOp;
+import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyResponseProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchResultDoneProtocolOp;
+import com.unboundid.ldap.protocol.SearchResultEntryProtocolOp;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.SingleServerSet;
+
+/**
+ * Unit tests for PipelinedLDAPListener running on virtual threads.
+ */
+class PipelinedLDAPListenerTest {
+
+    private static final int CLIENTS = 4;
+
+    // Searches only complete once CLIENTS of them are in progress at the same time
+    private final CyclicBarrier allSearching = new CyclicBarrier(CLIENTS);
+    private final List<Boolean> virtualWorkers = new CopyOnWriteArrayList<>();
+    private final List<LDAPConnection> clients = new ArrayList<>();
+
+    private PipelinedLDAPListener listener;
+    private ExecutorService requests;
+
+    /**
+     * Answers every search with one entry, after waiting for the other searches.
+     */
+    private final class BarrierHandler extends LDAPListenerRequestHandler {
+
+        private final LDAPListenerClientConnection connection;
+
+        private BarrierHandler(LDAPListenerClientConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public LDAPListenerRequestHandler newInstance(LDAPListenerClientConnection connection) {
+            return new BarrierHandler(connection);
+        }
+
+        @Override
+        public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request,
+                                                List<Control> controls) {
+            virtualWorkers.add(Thread.currentThread().isVirtual());
+            try {
+                allSearching.await(5, TimeUnit.SECONDS);
+                connection.sendSearchResultEntry(messageID, new SearchResultEntryProtocolOp(
+                        "cn=entry" + messageID + "," + request.getBaseDN(), List.of(new Attribute("cn", "entry"))));
+            } catch (Exception e) {
+                return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(ResultCode.OTHER_INT_VALUE,
+                        null, e.toString(), Collections.emptyList()));
+            }
+            return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(ResultCode.SUCCESS_INT_VALUE,
+                    null, null, Collections.emptyList()));
+        }
+
+        @Override
+        public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls) {
+            return new LDAPMessage(messageID, new BindResponseProtocolOp(ResultCode.SUCCESS_INT_VALUE,
+                    null, null, Collections.emptyList(), null));
+        }
+
+        @Override
+        public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls) {
+            return new LDAPMessage(messageID, new AddResponseProtocolOp(ResultCode.UNWILLING_TO_PERFORM_INT_VALUE,
+                    null, null, Collections.emptyList()));
+        }
+
+        @Override
+        public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request,
+                                                 List<Control> controls) {
+            return new LDAPMessage(messageID, new CompareResponseProtocolOp(
+                    ResultCode.UNWILLING_TO_PERFORM_INT_VALUE, null, null, Collections.emptyList()));
+        }
+
+        @Override
+        public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request,
+                                                List<Control> controls) {
+            return new LDAPMessage(messageID, new DeleteResponseProtocolOp(
+                    ResultCode.UNWILLING_TO_PERFORM_INT_VALUE, null, null, Collections.emptyList()));
+        }
+
+        @Override
+        public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request,
+                                                  List<Control> controls) {
+            return new LDAPMessage(messageID, new ExtendedResponseProtocolOp(
+                    ResultCode.UNWILLING_TO_PERFORM_INT_VALUE, null, null, Collections.emptyList(), null, null));
+        }
+
+        @Override
+        public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request,
+                                                List<Control> controls) {
+            return new LDAPMessage(messageID, new ModifyResponseProtocolOp(
+                    ResultCode.UNWILLING_TO_PERFORM_INT_VALUE, null, null, Collections.emptyList()));
+        }
+
+        @Override
+        public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request,
+                                                  List<Control> controls) {
+            return new LDAPMessage(messageID, new ModifyDNResponseProtocolOp(
+                    ResultCode.UNWILLING_TO_PERFORM_INT_VALUE, null, null, Collections.emptyList()));
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        listener = new PipelinedLDAPListener("test", 0, null, new BarrierHandler(null), CLIENTS, true);
+        listener.startListening();
+        requests = Executors.newFixedThreadPool(CLIENTS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.forEach(LDAPConnection::close);
+        requests.shutdownNow();
+        listener.shutDown(true);
+    }
+
+    private LDAPConnection connect() throws LDAPException {
+        LDAPConnection connection = new LDAPConnection("localhost", listener.getListenPort());
+        clients.add(connection);
+        return connection;
+    }
+
+    private static SearchResult search(LDAPConnection connection) throws LDAPException {
+        return connection.search("dc=marklogic,dc=local", SearchScope.SUB, "(objectClass=*)");
+    }
+
+    private void assertAllSucceed(List<Future<SearchResult>> results) throws Exception {
+        for (Future<SearchResult> result : results) {
+            SearchResult searchResult = result.get(10, TimeUnit.SECONDS);
+            assertEquals(ResultCode.SUCCESS, searchResult.getResultCode());
+            assertEquals(1, searchResult.getEntryCount());
+        }
+        assertEquals(List.of(true, true, true, true), virtualWorkers);
+    }
+
+    @Test
+    void testServesConcurrentClients() throws Exception {
+        List<Future<SearchResult>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            LDAPConnection connection = connect();
+            results.add(requests.submit(() -> search(connection)));
+        }
+
+        assertAllSucceed(results);
+        assertEquals(CLIENTS, listener.getConnectionCount());
+    }
+
+    @Test
+    void testPipelinesRequestsOfOneClient() throws Exception {
+        LDAPConnection connection = connect();
+        List<Future<SearchResult>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            results.add(requests.submit(() -> search(connection)));
+        }
+
+        assertAllSucceed(results);
+        assertEquals(1, listener.getConnectionCount());
+    }
+
+    @Test
+    void testShutDownClosesClients() throws Exception {
+        // Both connections are registered with the listener once they have been answered
+        LDAPConnection connection = connect();
+        for (LDAPConnection client : List.of(connection, connect())) {
+            assertEquals(ResultCode.SUCCESS, client.bind("cn=user1,dc=marklogic,dc=local", "password")
+                    .getResultCode());
+        }
+        int port = listener.getListenPort();
+
+        listener.shutDown(true);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (listener.getConnectionCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, listener.getConnectionCount());
+        assertThrows(LDAPException.class, () -> search(connection));
+        assertThrows(LDAPException.class, () -> new LDAPConnection("localhost", port).close());
+        assertTrue(virtualWorkers.isEmpty());
+    }
+
+    @Test
+    void testPipelinedClientWaitsForFewerPooledConnections() throws Exception {
+        // Every backend search takes a while, so the client's operations queue for the one connection
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=marklogic,dc=local");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("backend", 0));
+        config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+            @Override
+            public void processSearchRequest(InMemoryInterceptedSearchRequest request) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.add("dn: dc=marklogic,dc=local", "objectClass: domain", "dc: marklogic");
+        server.startListening();
+
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolInitialConnections(1);
+        cfg.setPoolMaxConnections(1);
+        cfg.setPoolMaxWaitMillis(5000);
+        SingleServerSet serverSet = new SingleServerSet("localhost", server.getListenPort());
+        LDAPBackendPool pool = new LDAPBackendPool("test", serverSet, cfg);
+        RequestProcessorProperties processorCfg = new RequestProcessorProperties();
+        processorCfg.setAuthClass(ProxyRequestProcessor.class.getName());
+        RequestProcessorRegistry.getOrInitialize("pipelined-proxy", processorCfg);
+        PipelinedLDAPListener proxy = new PipelinedLDAPListener("proxy", 0, null,
+                new LDAPRequestHandler(serverSet, "pipelined-proxy", new LDAPListenerContext("proxy", pool, null, null)),
+                CLIENTS, true);
+        try {
+            proxy.startListening();
+            LDAPConnection connection = new LDAPConnection("localhost", proxy.getListenPort());
+            clients.add(connection);
+
+            long start = System.nanoTime();
+            List<Future<SearchResult>> results = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                results.add(requests.submit(() -> connection.search("dc=marklogic,dc=local",
+                        SearchScope.BASE, "(objectClass=*)")));
+            }
+
+            // Each operation returns the connection to the next one, well within the pool wait
+            for (Future<SearchResult> result : results) {
+                SearchResult searchResult = result.get(10, TimeUnit.SECONDS);
+                assertEquals(ResultCode.SUCCESS, searchResult.getResultCode());
+                assertEquals(1, searchResult.getEntryCount());
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(cfg.getPoolMaxWaitMillis()));
+            assertEquals(0, pool.getActiveConnections());
+        } finally {
+            proxy.shutDown(true);
+            pool.close();
+            server.shutDown(true);
+            RequestProcessorRegistry.clear();
+        }
+    }
+}
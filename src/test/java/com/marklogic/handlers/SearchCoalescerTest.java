@@ -0,0 +1,118 @@
+package com.marklogic.handlers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * Unit tests for SearchCoalescer.
+ */
+class SearchCoalescerTest {
+
+    private static SearchCoalescer coalescer(long maxWaitMillis, int maxFanOut) {
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setSearchCoalesceMaxWaitMillis(maxWaitMillis);
+        cfg.setSearchCoalesceMaxFanOut(maxFanOut);
+        return new SearchCoalescer("test", cfg);
+    }
+
+    private static final List<SearchResultEntry> ENTRIES = List.of(new SearchResultEntry(
+            "cn=jdoe,dc=example,dc=com", new Attribute[] { new Attribute("memberOf", "cn=readers") }));
+
+    private static final LDAPResult SUCCESS = new LDAPResult(1, ResultCode.SUCCESS);
+
+    @Test
+    void testFollowersReceiveLeaderResult() throws Exception {
+        SearchCoalescer coalescer = coalescer(5000, 10);
+        SearchCoalescer.Flight leader = coalescer.join("key");
+        SearchCoalescer.Flight follower = coalescer.join("key");
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+
+        CompletableFuture<SearchCoalescer.SharedResult> waiting =
+                CompletableFuture.supplyAsync(() -> follower.await(abandon -> { }));
+        leader.complete(SUCCESS, ENTRIES, Collections.emptyList());
+
+        SearchCoalescer.SharedResult shared = waiting.get(5, TimeUnit.SECONDS);
+        assertNotNull(shared);
+        assertEquals(ENTRIES, shared.getEntries());
+        assertEquals(ResultCode.SUCCESS, shared.getResult().getResultCode());
+        assertEquals(1, coalescer.getLed());
+        assertEquals(1, coalescer.getCoalesced());
+        assertEquals(0, coalescer.size());
+
+        // The flight has landed, so the next search leads a new one
+        assertTrue(coalescer.join("key").isLeader());
+    }
+
+    @Test
+    void testFailedFlightReleasesFollowers() {
+        SearchCoalescer coalescer = coalescer(5000, 10);
+        SearchCoalescer.Flight leader = coalescer.join("key");
+        SearchCoalescer.Flight follower = coalescer.join("key");
+        leader.fail();
+
+        assertNull(follower.await(abandon -> { }));
+        assertEquals(1, coalescer.getFallbacks());
+    }
+
+    @Test
+    void testFollowerStopsWaitingAfterMaxWait() {
+        SearchCoalescer coalescer = coalescer(50, 10);
+        coalescer.join("key");
+        assertNull(coalescer.join("key").await(abandon -> { }));
+        assertEquals(1, coalescer.getFallbacks());
+    }
+
+    @Test
+    void testAbandonStopsWaiting() {
+        SearchCoalescer coalescer = coalescer(5000, 10);
+        coalescer.join("key");
+        SearchCoalescer.Flight follower = coalescer.join("key");
+        AtomicReference<Runnable> hook = new AtomicReference<>();
+        assertThrows(CancellationException.class, () -> follower.await(abandon -> {
+            hook.set(abandon);
+            abandon.run();
+        }));
+        assertNotNull(hook.get());
+    }
+
+    @Test
+    void testFanOutLimit() {
+        SearchCoalescer coalescer = coalescer(5000, 2);
+        assertTrue(coalescer.join("key").isLeader());
+        assertNotNull(coalescer.join("key"));
+        assertNotNull(coalescer.join("key"));
+        assertNull(coalescer.join("key"));
+        assertTrue(coalescer.join("other").isLeader());
+    }
+
+    @Test
+    void testInvalidateDetachesFlights() {
+        SearchCoalescer coalescer = coalescer(5000, 10);
+        SearchCoalescer.Flight first = coalescer.join("key");
+        coalescer.invalidate();
+        assertTrue(coalescer.join("key").isLeader());
+
+        // Completing the detached flight does not remove the new one
+        first.complete(SUCCESS, ENTRIES, Collections.emptyList());
+        assertEquals(1, coalescer.size());
+    }
+}
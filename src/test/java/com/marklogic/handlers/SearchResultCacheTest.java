@@ -0,0 +1,115 @@
+package com.marklogic.handlers;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DereferencePolicy;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.util.StaticUtils;
+
+/**
+ * Unit tests for SearchResultCache.
+ */
+class SearchResultCacheTest {
+
+    private static SearchResultCache cache(long ttlMillis, int maxResults, long maxBytes) {
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setSearchCacheTtlMillis(ttlMillis);
+        cfg.setSearchCacheMaxResults(maxResults);
+        cfg.setSearchCacheMaxBytes(maxBytes);
+        return new SearchResultCache("test", cfg);
+    }
+
+    private static String key(String boundDN, String filter, String... attrs) throws Exception {
+        return SearchResultCache.key(boundDN, "dc=example,dc=com", SearchScope.SUB, DereferencePolicy.NEVER,
+                0, false, Filter.create(filter), attrs);
+    }
+
+    private static List<SearchResultEntry> entries(String name) {
+        return List.of(new SearchResultEntry("cn=" + name + ",dc=example,dc=com",
+                new Attribute[] { new Attribute("memberOf", "cn=readers") }));
+    }
+
+    @Test
+    void testKeyIsCanonical() throws Exception {
+        assertEquals(key("cn=Admin", "(uid=User1)", "memberOf", "cn"),
+                key("CN=admin", "(UID=User1)", "CN", "memberof"));
+        assertNotEquals(key("cn=admin", "(uid=user1)"), key("cn=other", "(uid=user1)"));
+        assertNotEquals(key("cn=admin", "(uid=user1)"), key("cn=admin", "(uid=user1)", "cn"));
+    }
+
+    @Test
+    void testHitAndMissCounters() throws Exception {
+        SearchResultCache cache = cache(60000, 10, 1 << 20);
+        String key = key("cn=admin", "(uid=user1)");
+
+        assertNull(cache.get(key));
+        cache.put(key, cache.getGeneration(), entries("user1"), Collections.emptyList());
+        assertNotNull(cache.get(key));
+        assertEquals(1, cache.get(key).getEntries().size());
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testExpiredResultIsNotServed() throws Exception {
+        SearchResultCache cache = cache(-1, 10, 1 << 20);
+        String key = key("cn=admin", "(uid=user1)");
+        cache.put(key, cache.getGeneration(), entries("user1"), Collections.emptyList());
+
+        assertNull(cache.get(key));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    void testLeastRecentlyUsedResultIsEvicted() throws Exception {
+        SearchResultCache cache = cache(60000, 2, 1 << 20);
+        String first = key("cn=admin", "(uid=user1)");
+        String second = key("cn=admin", "(uid=user2)");
+        String third = key("cn=admin", "(uid=user3)");
+
+        cache.put(first, cache.getGeneration(), entries("user1"), Collections.emptyList());
+        cache.put(second, cache.getGeneration(), entries("user2"), Collections.emptyList());
+        cache.get(first);
+        cache.put(third, cache.getGeneration(), entries("user3"), Collections.emptyList());
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get(first));
+        assertNull(cache.get(second));
+    }
+
+    @Test
+    void testByteLimit() throws Exception {
+        SearchResultCache cache = cache(60000, 100, 1024);
+        List<SearchResultEntry> large = List.of(new SearchResultEntry("cn=large,dc=example,dc=com",
+                new Attribute[] { new Attribute("description", StaticUtils.getBytes("x".repeat(2048))) }));
+
+        cache.put(key("cn=admin", "(cn=large)"), cache.getGeneration(), large, Collections.emptyList());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testResultFromBeforeClearIsDiscarded() throws Exception {
+        SearchResultCache cache = cache(60000, 10, 1 << 20);
+        String key = key("cn=admin", "(uid=user1)");
+
+        long generation = cache.getGeneration();
+        cache.clear();
+        cache.put(key, generation, entries("user1"), Collections.emptyList());
+
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,59 @@
+package com.marklogic.handlers;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * Unit tests for SuffixRouter.
+ */
+class SuffixRouterTest {
+
+    private static SuffixRouter<String> router(String defaultBackend) throws Exception {
+        Map<String, String> suffixes = new LinkedHashMap<>();
+        suffixes.put("dc=emea,dc=example,dc=com", "emea");
+        suffixes.put("dc=amer,dc=example,dc=com", "amer");
+        suffixes.put("ou=uk,dc=emea,dc=example,dc=com", "uk");
+        return new SuffixRouter<>(suffixes, defaultBackend);
+    }
+
+    @Test
+    void testRoutesToLongestSuffix() throws Exception {
+        SuffixRouter<String> router = router("default");
+        assertEquals("emea", router.route("cn=jdoe,ou=fr,DC=EMEA,dc=example,dc=com"));
+        assertEquals("uk", router.route("cn=jdoe,ou=uk,dc=emea,dc=example,dc=com"));
+        assertEquals("amer", router.route("dc=amer,dc=example,dc=com"));
+        assertEquals("default", router.route("cn=jdoe,dc=apac,dc=example,dc=com"));
+        assertEquals("default", router.route("not a dn"));
+    }
+
+    @Test
+    void testSearchBelowSuffixUsesOneBackend() throws Exception {
+        SuffixRouter<String> router = router("default");
+        assertEquals(List.of("emea"), router.routeSearch("ou=people,dc=emea,dc=example,dc=com", SearchScope.SUB));
+        assertEquals(List.of("default"), router.routeSearch("dc=example,dc=com", SearchScope.BASE));
+    }
+
+    @Test
+    void testSearchAboveSuffixesFansOut() throws Exception {
+        SuffixRouter<String> router = router("default");
+        assertEquals(List.of("uk", "emea", "amer", "default"),
+                router.routeSearch("dc=example,dc=com", SearchScope.SUB));
+        assertEquals(List.of("emea", "amer", "default"),
+                router.routeSearch("dc=example,dc=com", SearchScope.ONE));
+        assertEquals(List.of("uk", "emea", "amer", "default"), router.routeSearch("", SearchScope.SUB));
+    }
+
+    @Test
+    void testDefaultServingASuffixIsNotSearchedTwice() throws Exception {
+        SuffixRouter<String> router = router("emea");
+        assertEquals(List.of("uk", "emea", "amer"), router.routeSearch("dc=example,dc=com", SearchScope.SUB));
+        assertEquals(List.of("emea"), router.routeSearch("dc=other", SearchScope.SUB));
+        assertEquals(List.of("uk", "emea", "amer"), router.getBackends());
+    }
+}
@@ -0,0 +1,53 @@
+package com.marklogic.processors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for AttributeNameMap.
+ */
+class AttributeNameMapTest {
+
+    @Test
+    void testLookupIgnoresCase() {
+        AttributeNameMap map = AttributeNameMap.parse("memberOf:isMemberOf,uid:sAMAccountName", false);
+
+        assertEquals("isMemberOf", map.map("memberof"));
+        assertEquals("sAMAccountName", map.map("UID"));
+        assertTrue(map.isMapped("MemberOf"));
+    }
+
+    @Test
+    void testReverseMapping() {
+        AttributeNameMap map = AttributeNameMap.parse("memberOf:isMemberOf", true);
+
+        assertEquals("memberOf", map.map("ISMEMBEROF"));
+        assertFalse(map.isMapped("memberOf"));
+    }
+
+    @Test
+    void testOptionsAreKept() {
+        AttributeNameMap map = AttributeNameMap.parse("member:uniqueMember", false);
+
+        assertEquals("uniqueMember;range=0-1499", map.map("member;range=0-1499"));
+        assertFalse(map.isMapped("memberOf"));
+    }
+
+    @Test
+    void testUnmappedNameIsReturnedUnchanged() {
+        AttributeNameMap map = AttributeNameMap.parse("memberOf:isMemberOf", false);
+        String name = "cn";
+
+        assertSame(name, map.map(name));
+        assertTrue(AttributeNameMap.parse("", false).isEmpty());
+    }
+
+    @Test
+    void testInvalidPairIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> AttributeNameMap.parse("memberOf", false));
+    }
+}
@@ -0,0 +1,180 @@
+package com.marklogic.processors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.marklogic.configuration.properties.RequestProcessorProperties;
+import com.marklogic.handlers.LDAPBackendPool;
+import com.marklogic.handlers.LDAPListenerContext;
+import com.marklogic.handlers.LDAPMetrics;
+import com.marklogic.handlers.LDAPRequestHandler;
+import com.marklogic.handlers.SuffixRouter;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.SingleServerSet;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for searches fanned out by ProxyRequestProcessor across the
+ * backends of several routed suffixes.
+ */
+class FanOutSearchTest {
+
+    private static final String PROCESSOR = "fan-out-test";
+    private static final String ROOT = "dc=example,dc=com";
+    private static final String EMEA = "dc=emea," + ROOT;
+    private static final String AMER = "dc=amer," + ROOT;
+    private static final int USERS = 3;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private InMemoryDirectoryServer emeaServer;
+    private InMemoryDirectoryServer amerServer;
+    private LDAPBackendPool emeaPool;
+    private LDAPBackendPool amerPool;
+    private LDAPListener listener;
+    private LDAPConnection client;
+
+    /**
+     * Starts a directory holding the root entry and one regional subtree.
+     */
+    private static InMemoryDirectoryServer startServer(String suffix, String region) throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(ROOT);
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig(region, 0));
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.add("dn: " + ROOT, "objectClass: domain", "dc: example");
+        server.add("dn: " + suffix, "objectClass: domain", "dc: " + region);
+        for (int i = 1; i <= USERS; i++) {
+            server.add("dn: cn=" + region + i + "," + suffix, "objectClass: inetOrgPerson",
+                    "cn: " + region + i, "sn: User");
+        }
+        server.startListening();
+        return server;
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        emeaServer = startServer(EMEA, "emea");
+        amerServer = startServer(AMER, "amer");
+
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolMaxWaitMillis(1000);
+        SingleServerSet emeaSet = new SingleServerSet("localhost", emeaServer.getListenPort());
+        emeaPool = new LDAPBackendPool("proxy", emeaSet, cfg);
+        amerPool = new LDAPBackendPool("proxy-amer", new SingleServerSet("localhost", amerServer.getListenPort()), cfg);
+        Map<String, LDAPBackendPool> suffixes = new LinkedHashMap<>();
+        suffixes.put(EMEA, emeaPool);
+        suffixes.put(AMER, amerPool);
+        SuffixRouter<LDAPBackendPool> router = new SuffixRouter<>(suffixes, emeaPool);
+
+        LDAPMetrics metrics = new LDAPMetrics(registry, "proxy");
+        metrics.bindBackendPool(emeaPool);
+        metrics.bindBackendPool(amerPool);
+
+        RequestProcessorProperties processorCfg = new RequestProcessorProperties();
+        processorCfg.setAuthClass(ProxyRequestProcessor.class.getName());
+        RequestProcessorRegistry.getOrInitialize(PROCESSOR, processorCfg);
+        LDAPRequestHandler handler = new LDAPRequestHandler(emeaSet, PROCESSOR,
+                new LDAPListenerContext("proxy", emeaPool, null, metrics, router));
+        listener = new LDAPListener(new LDAPListenerConfig(0, handler));
+        listener.startListening();
+        client = new LDAPConnection("localhost", listener.getListenPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        listener.shutDown(true);
+        emeaPool.close();
+        amerPool.close();
+        emeaServer.shutDown(true);
+        amerServer.shutDown(true);
+        RequestProcessorRegistry.clear();
+    }
+
+    private static SearchRequest usersSearch() {
+        return new SearchRequest(ROOT, SearchScope.SUB, "(objectClass=inetOrgPerson)", "cn");
+    }
+
+    private Timer searchTimer(String result) {
+        return registry.find("ldap.requests")
+                .tags("operation", "search", "result", result, "backend", LDAPMetrics.BACKEND_FANOUT)
+                .timer();
+    }
+
+    @Test
+    void testSearchAboveSuffixesReturnsEntriesOfEveryBackend() throws Exception {
+        SearchResult result = client.search(usersSearch());
+
+        assertEquals(ResultCode.SUCCESS, result.getResultCode());
+        Set<String> names = result.getSearchEntries().stream()
+                .map(entry -> entry.getAttributeValue("cn"))
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("emea1", "emea2", "emea3", "amer1", "amer2", "amer3"), names);
+
+        Timer timer = searchTimer("success");
+        assertNotNull(timer);
+        assertEquals(1, timer.count());
+        assertEquals(0, emeaPool.getActiveConnections());
+        assertEquals(0, amerPool.getActiveConnections());
+    }
+
+    @Test
+    void testSizeLimitAppliesToAllBackendsTogether() throws Exception {
+        SearchRequest request = usersSearch();
+        request.setSizeLimit(4);
+
+        LDAPSearchException e = assertThrows(LDAPSearchException.class, () -> client.search(request));
+
+        assertEquals(ResultCode.SIZE_LIMIT_EXCEEDED, e.getResultCode());
+        assertEquals(4, e.getEntryCount());
+        assertNotNull(searchTimer("size limit exceeded"));
+    }
+
+    @Test
+    void testFailedBackendFailsTheSearch() throws Exception {
+        amerServer.shutDown(true);
+
+        LDAPSearchException e = assertThrows(LDAPSearchException.class, () -> client.search(usersSearch()));
+
+        // The other backend's entries were already sent
+        assertNotEquals(ResultCode.NO_SUCH_OBJECT, e.getResultCode());
+        assertEquals(USERS, e.getEntryCount());
+        for (SearchResultEntry entry : e.getSearchEntries()) {
+            assertEquals(EMEA, entry.getParentDNString());
+        }
+    }
+
+    @Test
+    void testRoutedPoolsHaveTheirOwnGauges() throws Exception {
+        client.search(usersSearch());
+
+        assertEquals(0, registry.get("ldap.backend.connections")
+                .tags("listener", "proxy", "pool", "proxy-amer", "state", "active").gauge().value());
+        assertNotNull(registry.get("ldap.backend.connections")
+                .tags("listener", "proxy", "pool", "proxy", "state", "idle").gauge());
+    }
+}
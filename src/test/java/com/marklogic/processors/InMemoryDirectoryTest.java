@@ -0,0 +1,119 @@
+package com.marklogic.processors;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * Unit tests for InMemoryDirectory.
+ */
+class InMemoryDirectoryTest {
+
+    private InMemoryDirectory directory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = new InMemoryDirectory(List.of(
+                new Entry("ou=users,dc=example,dc=com",
+                        new Attribute("objectClass", "organizationalUnit"), new Attribute("ou", "users")),
+                user("admin", "admin"),
+                user("user1", "appreader", "appwriter"),
+                user("user2", "appreader"),
+                new Entry("cn=other,dc=elsewhere",
+                        new Attribute("objectClass", "person"), new Attribute("cn", "other"))),
+                List.of("uid", "cn", "memberOf"));
+    }
+
+    private static Entry user(String name, String... roles) {
+        Entry entry = new Entry("cn=" + name + ",ou=users,dc=example,dc=com");
+        entry.addAttribute("cn", name);
+        entry.addAttribute("uid", name);
+        entry.addAttribute("objectClass", "person");
+        entry.addAttribute("memberOf", roles);
+        return entry;
+    }
+
+    private int[] search(String base, SearchScope scope, String filter) throws LDAPException {
+        return directory.search(base, scope, Filter.create(filter));
+    }
+
+    @Test
+    void testLookupByDNIsCaseAndSpaceInsensitive() {
+        assertEquals(2, directory.getEntryId("CN=User1, OU=Users, DC=Example, DC=Com"));
+        assertEquals(-1, directory.getEntryId("cn=nobody,ou=users,dc=example,dc=com"));
+        assertEquals(-1, directory.getEntryId("not a dn"));
+    }
+
+    @Test
+    void testEqualityFilter() throws Exception {
+        assertArrayEquals(new int[] { 2 }, search("dc=example,dc=com", SearchScope.SUB, "(uid=USER1)"));
+        assertArrayEquals(new int[] { 2, 3 }, search("dc=example,dc=com", SearchScope.SUB, "(memberOf=appreader)"));
+        assertArrayEquals(new int[0], search("dc=example,dc=com", SearchScope.SUB, "(uid=missing)"));
+    }
+
+    @Test
+    void testBooleanFilters() throws Exception {
+        assertArrayEquals(new int[] { 2 },
+                search("", SearchScope.SUB, "(&(memberOf=appreader)(memberOf=appwriter))"));
+        assertArrayEquals(new int[] { 1, 3 },
+                search("", SearchScope.SUB, "(|(uid=admin)(uid=user2))"));
+        assertArrayEquals(new int[] { 1, 3 },
+                search("ou=users,dc=example,dc=com", SearchScope.ONE, "(!(uid=user1))"));
+    }
+
+    @Test
+    void testSubstringAndPresenceFilters() throws Exception {
+        assertArrayEquals(new int[] { 2, 3 }, search("", SearchScope.SUB, "(uid=user*)"));
+        assertArrayEquals(new int[] { 1 }, search("", SearchScope.SUB, "(cn=*dmi*)"));
+        assertArrayEquals(new int[] { 3 }, search("", SearchScope.SUB, "(uid=us*r2)"));
+        assertArrayEquals(new int[] { 1, 2, 3 }, search("", SearchScope.SUB, "(uid=*)"));
+    }
+
+    @Test
+    void testUnindexedAttributeFallsBackToScope() throws Exception {
+        assertArrayEquals(new int[] { 1, 2, 3 }, search("dc=example,dc=com", SearchScope.SUB, "(objectClass=person)"));
+        assertArrayEquals(new int[] { 0 }, search("dc=example,dc=com", SearchScope.SUB, "(ou=users)"));
+    }
+
+    @Test
+    void testScopes() throws Exception {
+        String base = "ou=users,dc=example,dc=com";
+        assertArrayEquals(new int[] { 0 }, search(base, SearchScope.BASE, "(objectClass=*)"));
+        assertArrayEquals(new int[] { 1, 2, 3 }, search(base, SearchScope.ONE, "(objectClass=*)"));
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, search(base, SearchScope.SUB, "(objectClass=*)"));
+        assertArrayEquals(new int[] { 1, 2, 3 }, search(base, SearchScope.SUBORDINATE_SUBTREE, "(objectClass=*)"));
+        assertArrayEquals(new int[] { 4 }, search("dc=elsewhere", SearchScope.SUB, "(cn=other)"));
+        assertArrayEquals(new int[0], search("dc=elsewhere", SearchScope.SUB, "(uid=admin)"));
+    }
+
+    @Test
+    void testUnknownBaseIsNoSuchObject() {
+        LDAPException e = assertThrows(LDAPException.class,
+                () -> search("ou=missing,dc=example,dc=com", SearchScope.SUB, "(objectClass=*)"));
+        assertEquals(ResultCode.NO_SUCH_OBJECT, e.getResultCode());
+        assertThrows(LDAPException.class, () -> search("dc=nowhere", SearchScope.BASE, "(objectClass=*)"));
+    }
+
+    @Test
+    void testDuplicateDNRejected() {
+        assertThrows(LDAPException.class, () -> new InMemoryDirectory(
+                List.of(user("admin"), user("ADMIN")), List.of("uid")));
+    }
+
+    @Test
+    void testPostingListOperations() {
+        assertArrayEquals(new int[] { 2, 5 }, InMemoryDirectory.intersect(new int[] { 1, 2, 5, 7 }, new int[] { 2, 3, 5 }));
+        assertArrayEquals(new int[] { 1, 2, 3, 5, 7 }, InMemoryDirectory.union(new int[] { 1, 2, 5, 7 }, new int[] { 2, 3, 5 }));
+    }
+}
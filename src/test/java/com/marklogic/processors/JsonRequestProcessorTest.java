@@ -0,0 +1,75 @@
+package com.marklogic.processors;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.marklogic.configuration.properties.RequestProcessorProperties;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.sdk.DereferencePolicy;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * Unit tests for JsonRequestProcessor binds and searches.
+ */
+class JsonRequestProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JsonRequestProcessor processor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path users = tempDir.resolve("users.json");
+        Files.writeString(users, """
+                {"users": [
+                  {"username": "admin", "password": "secret", "dn": "cn=admin,ou=users,dc=marklogic,dc=local"},
+                  {"username": "nopass", "dn": "cn=nopass,ou=users,dc=marklogic,dc=local"},
+                  {"username": "nullpass", "password": null, "dn": "cn=nullpass,ou=users,dc=marklogic,dc=local"}
+                ]}
+                """);
+        RequestProcessorProperties cfg = new RequestProcessorProperties();
+        cfg.setParm1(users.toString());
+        cfg.setReloadOnChange(false);
+        processor = new JsonRequestProcessor();
+        processor.initialize(cfg);
+    }
+
+    private int bind(String dn, String password) {
+        LDAPMessage response = processor.processBindRequest(1, new BindRequestProtocolOp(dn, password),
+                List.of(), null, null);
+        return response.getBindResponseProtocolOp().getResultCode();
+    }
+
+    @Test
+    void testBind() {
+        assertEquals(ResultCode.SUCCESS_INT_VALUE, bind("cn=admin,ou=users,dc=marklogic,dc=local", "secret"));
+        assertEquals(ResultCode.INVALID_CREDENTIALS_INT_VALUE, bind("cn=admin,ou=users,dc=marklogic,dc=local", ""));
+    }
+
+    @Test
+    void testUserWithoutPasswordCannotBind() {
+        assertEquals(ResultCode.INVALID_CREDENTIALS_INT_VALUE, bind("cn=nopass,ou=users,dc=marklogic,dc=local", ""));
+        assertEquals(ResultCode.INVALID_CREDENTIALS_INT_VALUE, bind("cn=nullpass,ou=users,dc=marklogic,dc=local", ""));
+        assertEquals(ResultCode.INVALID_CREDENTIALS_INT_VALUE, bind("cn=nullpass,ou=users,dc=marklogic,dc=local", "null"));
+    }
+
+    @Test
+    void testSearchOfUnknownBaseIsNoSuchObject() {
+        SearchRequestProtocolOp request = new SearchRequestProtocolOp("ou=missing,dc=marklogic,dc=local",
+                SearchScope.SUB, DereferencePolicy.NEVER, 0, 0, false, Filter.createPresenceFilter("objectClass"),
+                List.of());
+        LDAPMessage response = processor.processSearchRequest(2, request, List.of(), null, null);
+        assertEquals(ResultCode.NO_SUCH_OBJECT_INT_VALUE, response.getSearchResultDoneProtocolOp().getResultCode());
+    }
+}
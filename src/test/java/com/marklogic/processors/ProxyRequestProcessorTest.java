@@ -0,0 +1,133 @@
+package com.marklogic.processors;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.marklogic.handlers.LDAPBackendPool;
+import com.marklogic.handlers.LDAPBackendSession;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedCompareRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SingleServerSet;
+
+/**
+ * Unit tests for abandoning operations proxied by ProxyRequestProcessor.
+ */
+class ProxyRequestProcessorTest {
+
+    private static final String USER1 = "cn=user1,dc=marklogic,dc=local";
+
+    // Holds compares on the backend until released
+    private final CountDownLatch compareArrived = new CountDownLatch(1);
+    private final CountDownLatch releaseCompare = new CountDownLatch(1);
+    private final List<String> accessLog = new CopyOnWriteArrayList<>();
+
+    private InMemoryDirectoryServer server;
+    private LDAPBackendPool pool;
+    private ExecutorService client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=marklogic,dc=local");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("backend", 0));
+        config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+            @Override
+            public void processCompareRequest(InMemoryInterceptedCompareRequest request) {
+                compareArrived.countDown();
+                try {
+                    releaseCompare.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        config.setAccessLogHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                accessLog.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        server = new InMemoryDirectoryServer(config);
+        server.add("dn: dc=marklogic,dc=local", "objectClass: domain", "dc: marklogic");
+        server.add("dn: " + USER1, "objectClass: inetOrgPerson", "cn: user1", "sn: User");
+        server.startListening();
+
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolMaxConnections(1);
+        pool = new LDAPBackendPool("test", new SingleServerSet("localhost", server.getListenPort()), cfg);
+        client = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseCompare.countDown();
+        client.shutdownNow();
+        pool.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    void testAbandonCancelsBackendOperation() throws Exception {
+        ProxyRequestProcessor processor = new ProxyRequestProcessor();
+        LDAPBackendSession session = new LDAPBackendSession(pool);
+        CompareRequestProtocolOp compare = new CompareRequestProtocolOp(USER1, "cn", new ASN1OctetString("user1"));
+
+        Future<LDAPMessage> response = client.submit(
+                () -> processor.processCompareRequest(7, compare, List.of(), session, null));
+        assertTrue(compareArrived.await(5, TimeUnit.SECONDS));
+
+        // The operation is tracked once the request has been sent
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        boolean abandoned = false;
+        while (!abandoned && System.nanoTime() < deadline) {
+            abandoned = session.abandon(7);
+            if (!abandoned) {
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(abandoned);
+
+        // The client gets its answer without waiting for the backend
+        LDAPMessage message = response.get(5, TimeUnit.SECONDS);
+        assertEquals(ResultCode.CANCELED_INT_VALUE, message.getCompareResponseProtocolOp().getResultCode());
+        assertFalse(session.abandon(7));
+        assertEquals(0, pool.getActiveConnections());
+
+        // The backend receives the abandon once it has finished with the compare
+        releaseCompare.countDown();
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (accessLog.stream().noneMatch(line -> line.contains("ABANDON")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(accessLog.stream().anyMatch(line -> line.contains("ABANDON")));
+    }
+}
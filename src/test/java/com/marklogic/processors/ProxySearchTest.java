@@ -0,0 +1,205 @@
+package com.marklogic.processors;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.marklogic.configuration.properties.RequestProcessorProperties;
+import com.marklogic.handlers.LDAPBackendPool;
+import com.marklogic.handlers.LDAPListenerContext;
+import com.marklogic.handlers.LDAPRequestHandler;
+import com.marklogic.handlers.SearchResultCache;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.SingleServerSet;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+
+/**
+ * Unit tests for searches proxied by ProxyRequestProcessor: per-search limits,
+ * paging by the proxy and paging by the client.
+ */
+class ProxySearchTest {
+
+    private static final String PROCESSOR = "proxy-search-test";
+    private static final String BASE = "ou=users,dc=marklogic,dc=local";
+    private static final int USERS = 8;
+
+    private final List<String> accessLog = new CopyOnWriteArrayList<>();
+
+    private InMemoryDirectoryServer server;
+    private LDAPBackendPool pool;
+    private LDAPListener listener;
+    private LDAPConnection client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=marklogic,dc=local");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("backend", 0));
+        config.setAccessLogHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                accessLog.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        server = new InMemoryDirectoryServer(config);
+        server.add("dn: dc=marklogic,dc=local", "objectClass: domain", "dc: marklogic");
+        server.add("dn: " + BASE, "objectClass: organizationalUnit", "ou: users");
+        for (int i = 1; i <= USERS; i++) {
+            server.add("dn: cn=user" + i + "," + BASE, "objectClass: inetOrgPerson", "cn: user" + i, "sn: User");
+        }
+        server.startListening();
+
+        RequestProcessorProperties processorCfg = new RequestProcessorProperties();
+        processorCfg.setAuthClass(ProxyRequestProcessor.class.getName());
+        RequestProcessorRegistry.getOrInitialize(PROCESSOR, processorCfg);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+        if (listener != null) {
+            listener.shutDown(true);
+        }
+        if (pool != null) {
+            pool.close();
+        }
+        server.shutDown(true);
+        RequestProcessorRegistry.clear();
+    }
+
+    /**
+     * Starts a proxy listener in front of the backend and connects a client to it.
+     */
+    private void startProxy(LdapListenerProperties cfg) throws Exception {
+        SingleServerSet serverSet = new SingleServerSet("localhost", server.getListenPort());
+        pool = new LDAPBackendPool("test", serverSet, cfg);
+        LDAPRequestHandler handler = new LDAPRequestHandler(serverSet, PROCESSOR,
+                new LDAPListenerContext("test", pool, null, null));
+        listener = new LDAPListener(new LDAPListenerConfig(0, handler));
+        listener.startListening();
+        client = new LDAPConnection("localhost", listener.getListenPort());
+    }
+
+    private static SearchRequest usersSearch() {
+        return new SearchRequest(BASE, SearchScope.ONE, "(objectClass=inetOrgPerson)", "cn");
+    }
+
+    private long backendSearches() {
+        return accessLog.stream().filter(line -> line.contains("SEARCH REQUEST")).count();
+    }
+
+    @Test
+    void testMaxEntriesEndsWithSizeLimitExceeded() throws Exception {
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setSearchMaxEntries(3);
+        cfg.setSearchQueueEntries(1);
+        startProxy(cfg);
+
+        LDAPSearchException e = assertThrows(LDAPSearchException.class, () -> client.search(usersSearch()));
+
+        assertEquals(ResultCode.SIZE_LIMIT_EXCEEDED, e.getResultCode());
+        assertEquals(3, e.getEntryCount());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void testMaxBytesEndsWithSizeLimitExceeded() throws Exception {
+        long entrySize = SearchResultCache.estimateSize(
+                new SearchResultEntry("cn=user1," + BASE, new Attribute[] {new Attribute("cn", "user1")}));
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setSearchMaxBytes(2 * entrySize + entrySize / 2);
+        startProxy(cfg);
+
+        LDAPSearchException e = assertThrows(LDAPSearchException.class, () -> client.search(usersSearch()));
+
+        assertEquals(ResultCode.SIZE_LIMIT_EXCEEDED, e.getResultCode());
+        assertEquals(2, e.getEntryCount());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void testProxyPagesSearchesOfClientsThatDoNotPage() throws Exception {
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setSearchPageSize(3);
+        startProxy(cfg);
+
+        SearchResult result = client.search(usersSearch());
+
+        assertEquals(ResultCode.SUCCESS, result.getResultCode());
+        assertEquals(USERS, result.getEntryCount());
+        // The client did not ask for paging, so gets no paging control back
+        assertNull(SimplePagedResultsControl.get(result));
+        assertEquals(0, result.getResponseControls().length);
+        assertEquals(3, backendSearches());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void testClientPagingKeepsItsCookieConnection() throws Exception {
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setPoolMaxConnections(2);
+        startProxy(cfg);
+
+        // Two paged searches interleaved on one client connection
+        SearchResult first = page(null);
+        SearchResult second = page(null);
+        assertEquals(2, pool.getActiveConnections());
+        int firstEntries = first.getEntryCount();
+        int secondEntries = second.getEntryCount();
+        while (SimplePagedResultsControl.get(first).moreResultsToReturn()) {
+            first = page(first);
+            firstEntries += first.getEntryCount();
+            if (SimplePagedResultsControl.get(second).moreResultsToReturn()) {
+                second = page(second);
+                secondEntries += second.getEntryCount();
+            }
+        }
+
+        assertEquals(USERS, firstEntries);
+        assertEquals(USERS, secondEntries);
+        assertNotNull(SimplePagedResultsControl.get(second));
+        assertFalse(SimplePagedResultsControl.get(second).moreResultsToReturn());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    private SearchResult page(SearchResult previous) throws Exception {
+        SearchRequest request = usersSearch();
+        request.setControls(new SimplePagedResultsControl(3,
+                previous == null ? null : SimplePagedResultsControl.get(previous).getCookie()));
+        SearchResult result = client.search(request);
+        assertEquals(ResultCode.SUCCESS, result.getResultCode());
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+package com.marklogic.processors;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.marklogic.configuration.properties.LdapListenerProperties;
+import com.marklogic.handlers.SearchLimits;
+import com.unboundid.ldap.listener.CannedResponseRequestHandler;
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * Unit tests for the bounded queue between the backend reader and the client
+ * in SearchResultListener.
+ */
+class SearchResultListenerTest {
+
+    private static final int ENTRIES = 5;
+
+    private ServerSocket serverSocket;
+    private Socket clientSocket;
+    private LDAPListenerClientConnection clientConnection;
+    private ExecutorService backend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // The client side of the socket is never read; the few entries fit in its buffers
+        serverSocket = new ServerSocket(0);
+        clientSocket = new Socket("localhost", serverSocket.getLocalPort());
+        clientConnection = new LDAPListenerClientConnection(null, serverSocket.accept(),
+                new CannedResponseRequestHandler(), null);
+        backend = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        backend.shutdownNow();
+        clientConnection.close();
+        clientSocket.close();
+        serverSocket.close();
+    }
+
+    private static SearchLimits limits(int queueEntries, int maxEntries) {
+        LdapListenerProperties cfg = new LdapListenerProperties();
+        cfg.setSearchQueueEntries(queueEntries);
+        cfg.setSearchMaxEntries(maxEntries);
+        return new SearchLimits(cfg);
+    }
+
+    /**
+     * Returns entries from a backend reader thread, counting those the listener accepted.
+     */
+    private Future<?> returnEntries(SearchResultListener listener, AtomicInteger accepted) {
+        return backend.submit(() -> {
+            for (int i = 1; i <= ENTRIES; i++) {
+                listener.searchEntryReturned(new SearchResultEntry("cn=user" + i + ",dc=marklogic,dc=local",
+                        new Attribute[] {new Attribute("cn", "user" + i)}));
+                accepted.incrementAndGet();
+            }
+            listener.searchResultReceived(null, new SearchResult(1, ResultCode.SUCCESS, null, null, null,
+                    ENTRIES, 0, null));
+        });
+    }
+
+    private static void awaitAccepted(AtomicInteger accepted, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (accepted.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, accepted.get());
+    }
+
+    @Test
+    void testBackendReaderWaitsForTheClient() throws Exception {
+        SearchResultListener listener = new SearchResultListener(clientConnection, 1);
+        listener.streamResults(limits(2, 0));
+        AtomicInteger accepted = new AtomicInteger();
+
+        Future<?> reader = returnEntries(listener, accepted);
+
+        // The reader stops once the queue is full and nothing is forwarded
+        awaitAccepted(accepted, 2);
+        Thread.sleep(100);
+        assertEquals(2, accepted.get());
+        assertFalse(reader.isDone());
+
+        SearchResult result = listener.forwardResults();
+        assertEquals(ResultCode.SUCCESS, result.getResultCode());
+        reader.get(5, TimeUnit.SECONDS);
+        assertEquals(ENTRIES, accepted.get());
+    }
+
+    @Test
+    void testMaxEntriesReleasesBlockedReader() throws Exception {
+        SearchResultListener listener = new SearchResultListener(clientConnection, 1);
+        listener.streamResults(limits(1, 2));
+        AtomicInteger accepted = new AtomicInteger();
+
+        Future<?> reader = returnEntries(listener, accepted);
+
+        LDAPException e = assertThrows(LDAPException.class, listener::forwardResults);
+        assertEquals(ResultCode.SIZE_LIMIT_EXCEEDED, e.getResultCode());
+        // Later results are discarded instead of blocking the reader
+        reader.get(5, TimeUnit.SECONDS);
+        assertEquals(ENTRIES, accepted.get());
+    }
+
+    @Test
+    void testAbandonReleasesBlockedReader() throws Exception {
+        SearchResultListener listener = new SearchResultListener(clientConnection, 1);
+        listener.streamResults(limits(1, 0));
+        AtomicInteger accepted = new AtomicInteger();
+
+        Future<?> reader = returnEntries(listener, accepted);
+        awaitAccepted(accepted, 1);
+
+        listener.abandon();
+
+        reader.get(5, TimeUnit.SECONDS);
+        LDAPException e = assertThrows(LDAPException.class, listener::forwardResults);
+        assertEquals(ResultCode.CANCELED, e.getResultCode());
+    }
+}
@@ -0,0 +1,80 @@
+package com.marklogic.processors;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * Unit tests for the XMLRequestProcessor users file loader.
+ */
+class XMLRequestProcessorTest {
+
+    private static final String BASE = "ou=users,dc=marklogic,dc=local";
+
+    private static UserDirectory load(String xml) throws Exception {
+        return XMLRequestProcessor.loadUsers(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testLoadsBundledUsers() throws Exception {
+        UserDirectory users;
+        try (InputStream in = XMLRequestProcessor.class.getResourceAsStream("/users.xml")) {
+            users = XMLRequestProcessor.loadUsers(in);
+        }
+        InMemoryDirectory directory = users.directory();
+
+        int id = directory.getEntryId("CN=user1," + BASE);
+        Entry user1 = directory.getEntry(id);
+        assertEquals("password", users.passwords()[id]);
+        assertEquals("user1", user1.getAttributeValue("sAMAccountName"));
+        assertEquals("user1", user1.getAttributeValue("cn"));
+        assertEquals(3, user1.getAttributeValueStrings("memberOf").length);
+        assertNull(user1.getAttribute("userPassword"));
+    }
+
+    @Test
+    void testSearchByAttributeValue() throws Exception {
+        UserDirectory users = load("""
+                <ldap>
+                    <users basedn="ou=users,dc=marklogic,dc=local">
+                        <user dn="cn=a"><sAMAccountName>a</sAMAccountName><memberOf>cn=g1</memberOf></user>
+                        <user dn="cn=b"><sAMAccountName>b</sAMAccountName><memberOf>cn=g1</memberOf></user>
+                    </users>
+                    <users basedn="ou=other,dc=marklogic,dc=local">
+                        <user dn="cn=a"><sAMAccountName>a</sAMAccountName></user>
+                    </users>
+                </ldap>
+                """);
+        InMemoryDirectory directory = users.directory();
+
+        assertArrayEquals(new int[] { 0 }, directory.search(BASE, SearchScope.SUB, Filter.create("(sAMAccountName=A)")));
+        assertArrayEquals(new int[] { 0, 1 }, directory.search(BASE, SearchScope.SUB, Filter.create("(memberOf=cn=g1)")));
+        assertEquals(2, directory.getEntryId("cn=a,ou=other,dc=marklogic,dc=local"));
+        assertNull(users.passwords()[2]);
+    }
+
+    @Test
+    void testRejectsInvalidFiles() {
+        assertThrows(XMLStreamException.class, () -> load("<ldap><user dn=\"cn=a\"/></ldap>"));
+        assertThrows(LDAPException.class, () -> load("""
+                <ldap><users basedn="ou=users"><user dn="cn=a"/><user dn="CN=A"/></users></ldap>
+                """));
+        assertThrows(XMLStreamException.class, () -> load("""
+                <!DOCTYPE ldap [<!ENTITY x SYSTEM "file:///etc/passwd">]>
+                <ldap><users basedn="ou=users"><user dn="cn=a"><cn>&x;</cn></user></users></ldap>
+                """));
+    }
+}
@@ -0,0 +1,100 @@
+package com.marklogic.repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.marklogic.repository.JsonUserRepository.UserInfo;
+
+/**
+ * Unit tests for BinaryUserStore and BinaryUserStoreConverter.
+ */
+class BinaryUserStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path convert(String json) throws Exception {
+        Path jsonFile = tempDir.resolve("users.json");
+        Files.writeString(jsonFile, json);
+        Path binaryFile = tempDir.resolve("users.bin");
+        BinaryUserStoreConverter.convert(jsonFile, binaryFile);
+        return binaryFile;
+    }
+
+    @Test
+    void testLookupByUsername() throws Exception {
+        BinaryUserStore store = BinaryUserStore.open(convert("""
+                {"users": [
+                  {"username": "zed", "password": "z", "dn": "cn=zed", "roles": ["appreader"]},
+                  {"username": "Admin", "password": "password", "dn": "cn=admin", "roles": ["admin", "appreader"],
+                   "rfc6238code": "IVKFK3B4OI4VQMDGENEVURT5GRYFIWTM"},
+                  {"username": "manager", "password": "password", "dn": "cn=manager", "roles": []}
+                ]}
+                """));
+
+        assertEquals(3, store.size());
+        UserInfo admin = store.find("admin");
+        assertEquals("Admin", admin.getUsername());
+        assertEquals("password", admin.getPassword());
+        assertEquals("cn=admin", admin.getDn());
+        assertEquals("IVKFK3B4OI4VQMDGENEVURT5GRYFIWTM", admin.getRfc6238code());
+        assertEquals(List.of("admin", "appreader"), admin.getRoles());
+        assertNull(store.find("manager").getRfc6238code());
+        assertTrue(store.roles("manager").isEmpty());
+        assertNull(store.find("nobody"));
+        assertTrue(store.roles("nobody").isEmpty());
+
+        // Role names are decoded once and shared
+        assertSame(store.roles("zed").get(0), store.roles("admin").get(1));
+    }
+
+    @Test
+    void testLaterDuplicateReplacesEarlierUser() throws Exception {
+        BinaryUserStore store = BinaryUserStore.open(convert("""
+                {"users": [
+                  {"username": "user1", "password": "old"},
+                  {"username": "", "password": "skipped"},
+                  {"username": "USER1", "password": "new"}
+                ]}
+                """));
+
+        assertEquals(1, store.size());
+        assertEquals("new", store.find("user1").getPassword());
+        assertEquals(1, store.all().size());
+    }
+
+    @Test
+    void testRepositoryOpensBinaryStore() throws Exception {
+        Path binaryFile = convert("""
+                {"users": [{"username": "admin", "password": "password", "roles": ["admin"]}]}
+                """);
+        JsonUserRepository repository = new JsonUserRepository();
+        repository.initialize(binaryFile.toString());
+
+        assertTrue(repository.isInitialized());
+        assertTrue(repository.validatePassword("ADMIN", "password"));
+        assertEquals(List.of("admin"), repository.getUserRoles("admin"));
+    }
+
+    @Test
+    void testRejectsCorruptFile() throws Exception {
+        Path binaryFile = convert("""
+                {"users": [{"username": "admin", "password": "password"}]}
+                """);
+        byte[] bytes = Files.readAllBytes(binaryFile);
+        Files.write(binaryFile, Arrays.copyOf(bytes, bytes.length - 1));
+
+        assertThrows(IOException.class, () -> BinaryUserStore.open(binaryFile));
+    }
+}
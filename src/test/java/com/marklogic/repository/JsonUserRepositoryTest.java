@@ -8,6 +8,9 @@ import java.util.List;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -170,6 +173,24 @@ class JsonUserRepositoryTest {
         assertTrue(user.getRoles().contains("appwriter"));
     }
     
+    @Test
+    void testRoleNamesAreShared() throws Exception {
+        File jsonFile = createTestUsersJson();
+        repository.initialize(jsonFile.getAbsolutePath());
+        
+        List<String> user1Roles = repository.getUserRoles("user1");
+        List<String> user2Roles = repository.getUserRoles("user2");
+        
+        assertSame(user1Roles.get(0), user2Roles.get(0));
+        assertSame(user1Roles, repository.findByUsername("user1").getRoles());
+        assertThrows(UnsupportedOperationException.class, () -> user1Roles.add("other"));
+        
+        JsonUserRepository.UserInfo user = repository.findByUsername("user2");
+        user.addRole("other");
+        assertEquals(List.of("appreader", "appwriter", "other"), user.getRoles());
+        assertEquals(3, user1Roles.size());
+    }
+    
     @Test
     void testGetJsonFilePath() throws Exception {
         File jsonFile = createTestUsersJson();
@@ -180,6 +201,35 @@ class JsonUserRepositoryTest {
         assertEquals(jsonPath, repository.getJsonFilePath());
     }
     
+    @Test
+    void testReloadReplacesUsers() throws Exception {
+        File jsonFile = createTestUsersJson();
+        repository.initialize(jsonFile.getAbsolutePath());
+        
+        try (FileWriter writer = new FileWriter(jsonFile)) {
+            writer.write("{\"users\": [{\"username\": \"newuser\", \"password\": \"secret\", \"roles\": [\"admin\"]}]}");
+        }
+        repository.reload();
+        
+        assertEquals(1, repository.getUserCount());
+        assertTrue(repository.validatePassword("newuser", "secret"));
+        assertNull(repository.findByUsername("admin"));
+    }
+    
+    @Test
+    void testInvalidReloadKeepsUsers() throws Exception {
+        File jsonFile = createTestUsersJson();
+        repository.initialize(jsonFile.getAbsolutePath());
+        
+        try (FileWriter writer = new FileWriter(jsonFile)) {
+            writer.write("{\"users\": [{\"username\": ");
+        }
+        
+        assertThrows(Exception.class, () -> repository.reload());
+        assertEquals(4, repository.getUserCount());
+        assertNotNull(repository.findByUsername("admin"));
+    }
+    
     private File createTestUsersJson() throws Exception {
         File jsonFile = tempDir.resolve("users.json").toFile();
         
@@ -0,0 +1,60 @@
+package com.marklogic.repository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for UserFileWatcher.
+ */
+class UserFileWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static void awaitVersion(UserFileWatcher watcher, long version) throws InterruptedException {
+        for (int i = 0; i < 1000 && watcher.getVersion() < version; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(version, watcher.getVersion());
+    }
+
+    @Test
+    void testReloadsWhenFileChanges() throws Exception {
+        Path file = tempDir.resolve("users.json");
+        Files.writeString(file, "v1");
+        AtomicInteger reloads = new AtomicInteger();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (UserFileWatcher watcher = new UserFileWatcher("test", file, reloads::incrementAndGet, registry)) {
+            Files.writeString(tempDir.resolve("other.json"), "ignored");
+            Files.writeString(file, "v2");
+            awaitVersion(watcher, 2);
+            assertEquals(1, reloads.get());
+            assertEquals(2.0, registry.get("users.reload.version").gauge().value());
+            assertEquals(1, registry.get("users.reload").tag("outcome", "success").timer().count());
+        }
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void testFailedReloadKeepsVersion() throws Exception {
+        Path file = tempDir.resolve("users.xml");
+        Files.writeString(file, "v1");
+
+        try (UserFileWatcher watcher = new UserFileWatcher("test", file, () -> {
+            throw new IllegalStateException("invalid");
+        }, null)) {
+            assertFalse(watcher.reload());
+            assertEquals(1, watcher.getVersion());
+        }
+    }
+}
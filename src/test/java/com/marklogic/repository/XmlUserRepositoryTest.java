@@ -180,6 +180,37 @@ class XmlUserRepositoryTest {
         assertEquals(xmlPath, repository.getXmlFilePath());
     }
     
+    @Test
+    void testNestedGroupsAreInherited() throws Exception {
+        File xmlFile = tempDir.resolve("nested.xml").toFile();
+        try (FileWriter writer = new FileWriter(xmlFile)) {
+            writer.write("""
+                    <ldap>
+                      <users basedn="ou=groups,dc=marklogic,dc=local">
+                        <user dn="cn=appadmin">
+                          <memberOf>CN=appwriter, ou=groups,dc=marklogic,dc=local</memberOf>
+                        </user>
+                        <user dn="cn=appwriter">
+                          <memberOf>cn=appreader,ou=groups,dc=marklogic,dc=local</memberOf>
+                        </user>
+                        <user dn="cn=appreader">
+                          <memberOf>cn=appadmin,ou=groups,dc=marklogic,dc=local</memberOf>
+                        </user>
+                      </users>
+                      <users basedn="ou=users,dc=marklogic,dc=local">
+                        <user dn="cn=user1">
+                          <sAMAccountName>user1</sAMAccountName>
+                          <memberOf>cn=appadmin,ou=groups,dc=marklogic,dc=local</memberOf>
+                        </user>
+                      </users>
+                    </ldap>
+                    """);
+        }
+        repository.initialize(xmlFile.getAbsolutePath());
+        
+        assertEquals(List.of("appadmin", "appwriter", "appreader"), repository.getUserRoles("user1"));
+    }
+    
     private File createTestUsersXml() throws Exception {
         File xmlFile = tempDir.resolve("users.xml").toFile();
         